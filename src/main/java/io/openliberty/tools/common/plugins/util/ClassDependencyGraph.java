@@ -0,0 +1,265 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class-level dependencies between the compiled classes of a project, built
+ * from the constant pools of the class files that each compile writes, and
+ * kept for the whole dev mode session.
+ * <p>
+ * After a compile, {@link #update(Collection, Map)} compares the ABI of the
+ * recompiled classes with their previous ABI, so that only the sources that
+ * depend on a class whose signatures changed need to be recompiled. Changes
+ * to method bodies do not change the ABI and are not propagated.
+ */
+public class ClassDependencyGraph {
+
+    private static final String EMPTY_CONSTANTS_HASH = ClassFileInfo.hash(Collections.<String>emptyList());
+
+    /**
+     * A compiled class and the source file it was compiled from.
+     */
+    private static class ClassNode {
+        private final File source;
+        private final ClassFileInfo info;
+
+        ClassNode(File source, ClassFileInfo info) {
+            this.source = source;
+            this.info = info;
+        }
+    }
+
+    /**
+     * The classes affected by a change to the graph.
+     */
+    public static class Change {
+        private final Set<String> abiChangedClasses;
+        private final boolean constantsChanged;
+
+        Change(Set<String> abiChangedClasses, boolean constantsChanged) {
+            this.abiChangedClasses = abiChangedClasses;
+            this.constantsChanged = constantsChanged;
+        }
+
+        /**
+         * @return the classes whose ABI or constants changed, including removed
+         *         classes
+         */
+        public Set<String> getAbiChangedClasses() {
+            return abiChangedClasses;
+        }
+
+        /**
+         * Whether the value of a compile-time constant changed. Before Java 9,
+         * javac inlined constants without recording a reference to the class
+         * that declares them, so the classes that use them cannot be found from
+         * the graph when compiling with an older compiler.
+         */
+        public boolean isConstantsChanged() {
+            return constantsChanged;
+        }
+    }
+
+    private final Map<String, ClassNode> classes = new HashMap<String, ClassNode>();
+    private final Map<File, Set<String>> sourceClasses = new HashMap<File, Set<String>>();
+    /** for each class, the classes that reference it */
+    private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+    /**
+     * Replace the classes of recompiled sources.
+     *
+     * @param sources  the recompiled sources
+     * @param compiled the information of each class written by the compile, and
+     *                 the source it was compiled from
+     * @return the classes whose ABI changed
+     */
+    public synchronized Change update(Collection<File> sources, Map<ClassFileInfo, File> compiled) {
+        Map<String, ClassNode> previous = new HashMap<String, ClassNode>();
+        for (File source : sources) {
+            for (String className : removeSourceClasses(source)) {
+                previous.put(className, classes.remove(className));
+            }
+        }
+        for (Map.Entry<ClassFileInfo, File> entry : compiled.entrySet()) {
+            String className = entry.getKey().getClassName();
+            ClassNode old = classes.get(className);
+            if (old != null) {
+                // moved from a source that was not recompiled
+                previous.put(className, old);
+                Set<String> oldSourceClasses = sourceClasses.get(old.source);
+                if (oldSourceClasses != null) {
+                    oldSourceClasses.remove(className);
+                }
+                removeDependencies(old);
+            }
+            ClassNode node = new ClassNode(entry.getValue(), entry.getKey());
+            classes.put(className, node);
+            Set<String> names = sourceClasses.get(node.source);
+            if (names == null) {
+                names = new HashSet<String>();
+                sourceClasses.put(node.source, names);
+            }
+            names.add(className);
+            for (String referenced : node.info.getReferencedClasses()) {
+                Set<String> users = dependents.get(referenced);
+                if (users == null) {
+                    users = new HashSet<String>();
+                    dependents.put(referenced, users);
+                }
+                users.add(className);
+            }
+        }
+
+        Set<String> abiChanged = new LinkedHashSet<String>();
+        boolean constantsChanged = false;
+        for (Map.Entry<String, ClassNode> entry : previous.entrySet()) {
+            ClassNode now = classes.get(entry.getKey());
+            ClassNode before = entry.getValue();
+            if (now == null) {
+                abiChanged.add(entry.getKey());
+                constantsChanged |= !before.info.getConstantsHash().equals(EMPTY_CONSTANTS_HASH);
+            } else if (!now.info.getConstantsHash().equals(before.info.getConstantsHash())) {
+                // classes that inline the constants have to be recompiled like users of a changed ABI
+                abiChanged.add(entry.getKey());
+                constantsChanged = true;
+            } else if (!now.info.getAbiHash().equals(before.info.getAbiHash())) {
+                abiChanged.add(entry.getKey());
+            }
+        }
+        return new Change(abiChanged, constantsChanged);
+    }
+
+    /**
+     * Remove the classes of deleted sources.
+     *
+     * @param sources the deleted sources
+     * @return the removed classes, whose dependents need to be recompiled
+     */
+    public synchronized Change remove(Collection<File> sources) {
+        return update(sources, Collections.<ClassFileInfo, File>emptyMap());
+    }
+
+    /**
+     * Get the sources that reference any of the given classes.
+     *
+     * @param classNames the classes
+     * @return the sources of the classes that reference them
+     */
+    public synchronized Set<File> getDependentSources(Collection<String> classNames) {
+        Set<File> result = new LinkedHashSet<File>();
+        for (String className : classNames) {
+            Set<String> users = dependents.get(className);
+            if (users == null) {
+                continue;
+            }
+            for (String user : users) {
+                ClassNode node = classes.get(user);
+                if (node != null) {
+                    result.add(node.source);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the classes that directly reference any of the given classes.
+     *
+     * @param classNames the classes
+     * @return the binary names of the classes that reference them
+     */
+    public synchronized Set<String> getDependentClasses(Collection<String> classNames) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (String className : classNames) {
+            Set<String> users = dependents.get(className);
+            if (users != null) {
+                result.addAll(users);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the source a class was compiled from.
+     *
+     * @param className the binary name of the class
+     * @return the source file, or null if the class is not in the graph
+     */
+    public synchronized File getSource(String className) {
+        ClassNode node = classes.get(className);
+        return node == null ? null : node.source;
+    }
+
+    /**
+     * @return the binary names of all classes in the graph
+     */
+    public synchronized Set<String> getClassNames() {
+        return new HashSet<String>(classes.keySet());
+    }
+
+    /**
+     * Get the classes compiled from a source.
+     *
+     * @param source the source file
+     * @return the binary names of the classes
+     */
+    public synchronized Set<String> getClasses(File source) {
+        Set<String> names = sourceClasses.get(source);
+        return names == null ? Collections.<String>emptySet() : new HashSet<String>(names);
+    }
+
+    /**
+     * @return the number of classes in the graph
+     */
+    public synchronized int size() {
+        return classes.size();
+    }
+
+    private Set<String> removeSourceClasses(File source) {
+        Set<String> names = sourceClasses.remove(source);
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        for (String className : names) {
+            ClassNode node = classes.get(className);
+            if (node != null) {
+                removeDependencies(node);
+            }
+        }
+        return names;
+    }
+
+    private void removeDependencies(ClassNode node) {
+        for (String referenced : node.info.getReferencedClasses()) {
+            Set<String> users = dependents.get(referenced);
+            if (users != null) {
+                users.remove(node.info.getClassName());
+                if (users.isEmpty()) {
+                    dependents.remove(referenced);
+                }
+            }
+        }
+    }
+}
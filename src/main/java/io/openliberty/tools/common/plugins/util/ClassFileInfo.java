@@ -0,0 +1,373 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a class file that matter for incremental compilation: the
+ * classes it references through its constant pool, a hash of its ABI (the
+ * signatures that other classes can compile against), and a hash of the
+ * values of its compile-time constants, which javac inlines into other classes
+ * without leaving a reference behind. It also has a hash of the shape of the
+ * class (its hierarchy, modifiers, fields and methods, but not the method
+ * bodies), which must not change for the class to be redefined in a running
+ * JVM.
+ */
+public class ClassFileInfo {
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    /** access flags that do not change what other classes compile against */
+    private static final int IGNORED_ACCESS_FLAGS = 0x0020 /* ACC_SUPER or ACC_SYNCHRONIZED */;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String className;
+    private final Set<String> referencedClasses;
+    private final String abiHash;
+    private final String constantsHash;
+    private final String shapeHash;
+
+    ClassFileInfo(String className, Set<String> referencedClasses, String abiHash, String constantsHash,
+            String shapeHash) {
+        this.className = className;
+        this.referencedClasses = referencedClasses;
+        this.abiHash = abiHash;
+        this.constantsHash = constantsHash;
+        this.shapeHash = shapeHash;
+    }
+
+    /**
+     * @return the binary name of the class, with dots as package separators
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the binary names of the other classes that this class references
+     */
+    public Set<String> getReferencedClasses() {
+        return referencedClasses;
+    }
+
+    /**
+     * @return a hash of the non-private signatures of the class
+     */
+    public String getAbiHash() {
+        return abiHash;
+    }
+
+    /**
+     * @return a hash of the values of the non-private compile-time constants of
+     *         the class
+     */
+    public String getConstantsHash() {
+        return constantsHash;
+    }
+
+    /**
+     * @return a hash of everything in the class except the method bodies,
+     *         including its private members
+     */
+    public String getShapeHash() {
+        return shapeHash;
+    }
+
+    /**
+     * Read a class file.
+     *
+     * @param classFile the class file
+     * @return the class information
+     * @throws IOException if the file could not be read or is not a class file
+     */
+    public static ClassFileInfo read(File classFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(classFile))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a class file.
+     *
+     * @param stream the class file contents
+     * @return the class information
+     * @throws IOException if the stream could not be read or is not a class file
+     */
+    public static ClassFileInfo read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        Object[] values = new Object[count];
+        // for entries that refer to other entries, the indexes they refer to
+        int[] refs = new int[count];
+        Set<Integer> stringValues = new HashSet<Integer>();
+        Set<Integer> classNames = new HashSet<Integer>();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+            case CONSTANT_UTF8:
+                values[i] = in.readUTF();
+                break;
+            case CONSTANT_INTEGER:
+                values[i] = in.readInt();
+                break;
+            case CONSTANT_FLOAT:
+                values[i] = in.readFloat();
+                break;
+            case CONSTANT_LONG:
+                values[i] = in.readLong();
+                i++;
+                break;
+            case CONSTANT_DOUBLE:
+                values[i] = in.readDouble();
+                i++;
+                break;
+            case CONSTANT_CLASS:
+                refs[i] = in.readUnsignedShort();
+                classNames.add(refs[i]);
+                break;
+            case CONSTANT_STRING:
+                refs[i] = in.readUnsignedShort();
+                stringValues.add(refs[i]);
+                break;
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                refs[i] = in.readUnsignedShort();
+                break;
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                break;
+            case CONSTANT_METHOD_HANDLE:
+                in.readUnsignedByte();
+                in.readUnsignedShort();
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String thisClass = utf8(values, refs[in.readUnsignedShort()]);
+        int superIndex = in.readUnsignedShort();
+        String superClass = superIndex == 0 ? "" : utf8(values, refs[superIndex]);
+        List<String> interfaces = new ArrayList<String>();
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(utf8(values, refs[in.readUnsignedShort()]));
+        }
+        // the JVM compares the interfaces in order when a class is redefined
+        List<String> shape = new ArrayList<String>();
+        shape.add("class " + access + " " + thisClass + " " + superClass + " " + interfaces);
+        Collections.sort(interfaces);
+
+        List<String> abi = new ArrayList<String>();
+        List<String> constants = new ArrayList<String>();
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            readMember(in, tags, values, refs, "field ", abi, constants, shape);
+        }
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            readMember(in, tags, values, refs, "method ", abi, null, shape);
+        }
+        String classSignature = "";
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = utf8(values, in.readUnsignedShort());
+            int length = in.readInt();
+            if ("Signature".equals(name)) {
+                classSignature = utf8(values, in.readUnsignedShort());
+            } else {
+                skipFully(in, length);
+            }
+        }
+        Collections.sort(abi);
+        Collections.sort(constants);
+        abi.add(0, "class " + (access & ~IGNORED_ACCESS_FLAGS) + " " + thisClass + " " + superClass + " "
+                + interfaces + " " + classSignature);
+
+        Set<String> referenced = new HashSet<String>();
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == CONSTANT_CLASS) {
+                addClassName(referenced, utf8(values, refs[i]));
+            } else if (tags[i] == CONSTANT_UTF8 && !stringValues.contains(i) && !classNames.contains(i)) {
+                // descriptors and signatures, including the types of annotations
+                addDescriptorTypes(referenced, (String) values[i]);
+            }
+        }
+        String binaryName = thisClass.replace('/', '.');
+        referenced.remove(binaryName);
+        return new ClassFileInfo(binaryName, Collections.unmodifiableSet(referenced), hash(abi), hash(constants),
+                hash(shape));
+    }
+
+    private static void readMember(DataInputStream in, int[] tags, Object[] values, int[] refs, String kind,
+            List<String> abi, List<String> constants, List<String> shape) throws IOException {
+        int access = in.readUnsignedShort();
+        String name = utf8(values, in.readUnsignedShort());
+        String descriptor = utf8(values, in.readUnsignedShort());
+        String signature = "";
+        String constantValue = null;
+        List<String> exceptions = new ArrayList<String>();
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attribute = utf8(values, in.readUnsignedShort());
+            int length = in.readInt();
+            if ("Signature".equals(attribute)) {
+                signature = utf8(values, in.readUnsignedShort());
+            } else if ("ConstantValue".equals(attribute)) {
+                int index = in.readUnsignedShort();
+                constantValue = tags[index] == CONSTANT_STRING ? "\"" + utf8(values, refs[index]) + "\""
+                        : String.valueOf(values[index]);
+            } else if ("Exceptions".equals(attribute)) {
+                int exceptionCount = in.readUnsignedShort();
+                for (int j = 0; j < exceptionCount; j++) {
+                    exceptions.add(utf8(values, refs[in.readUnsignedShort()]));
+                }
+            } else {
+                skipFully(in, length);
+            }
+        }
+        // inlined constants are part of the shape, since their users are not redefined with the class
+        shape.add(kind + access + " " + name + " " + descriptor + " " + constantValue);
+        if ((access & ACC_PRIVATE) != 0) {
+            return;
+        }
+        abi.add(kind + (access & ~IGNORED_ACCESS_FLAGS) + " " + name + " " + descriptor + " " + signature + " "
+                + exceptions);
+        if (constants != null && constantValue != null && (access & (ACC_STATIC | ACC_FINAL)) == (ACC_STATIC | ACC_FINAL)) {
+            constants.add(name + "=" + constantValue);
+        }
+    }
+
+    private static String utf8(Object[] values, int index) throws IOException {
+        if (index <= 0 || index >= values.length || !(values[index] instanceof String)) {
+            throw new IOException("Invalid constant pool reference " + index);
+        }
+        return (String) values[index];
+    }
+
+    private static void addClassName(Set<String> referenced, String name) {
+        if (name.startsWith("[")) {
+            addDescriptorTypes(referenced, name);
+        } else {
+            referenced.add(name.replace('/', '.'));
+        }
+    }
+
+    /**
+     * Add the class types of a descriptor or signature, such as
+     * <code>(Ljava/util/List&lt;Lcom/example/A;&gt;;I)V</code>.
+     */
+    static void addDescriptorTypes(Set<String> referenced, String descriptor) {
+        int length = descriptor.length();
+        int i = 0;
+        while (i < length) {
+            if (descriptor.charAt(i) != 'L') {
+                i++;
+                continue;
+            }
+            int start = i + 1;
+            int end = start;
+            while (end < length && isClassNameChar(descriptor.charAt(end))) {
+                end++;
+            }
+            if (end > start && end < length && (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<')) {
+                referenced.add(descriptor.substring(start, end).replace('/', '.'));
+            }
+            i = end;
+        }
+    }
+
+    private static boolean isClassNameChar(char c) {
+        return c != ';' && c != '<' && c != '>' && c != '(' && c != ')' && c != '.' && c != '[' && c != ':'
+                && !Character.isWhitespace(c);
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    static String hash(List<String> parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
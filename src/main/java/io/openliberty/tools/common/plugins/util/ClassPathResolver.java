@@ -0,0 +1,261 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Expands a class path by following the Class-Path manifest entries of its
+ * jars. The manifest entries of each jar are cached by canonical path, size and
+ * modification time, jars that are not cached are read in parallel, and the
+ * whole expansion is reused while its inputs and jars are unchanged.
+ */
+public class ClassPathResolver {
+
+    private static final int MAX_THREADS = 4;
+
+    /**
+     * The manifest class path of a jar, and the size and modification time it
+     * was read at.
+     */
+    private static class JarEntry {
+        private final long length;
+        private final long lastModified;
+        /** canonical paths of the existing manifest class path entries */
+        private final List<String> manifestClassPath;
+
+        JarEntry(long length, long lastModified, List<String> manifestClassPath) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.manifestClassPath = manifestClassPath;
+        }
+
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    private final Map<String, JarEntry> jars = new ConcurrentHashMap<String, JarEntry>();
+    private List<String> lastPaths;
+    private Set<File> lastResult;
+    /** paths of the last expansion that did not exist */
+    private List<File> lastMissing;
+    private ExecutorService executor;
+
+    /**
+     * Expand a class path.
+     *
+     * @param paths      the class path entries, which are canonicalized
+     * @param outputDirs directories to include in the result as they are
+     * @return the output directories and every jar reachable from the paths
+     * @throws IOException unable to resolve canonical path
+     */
+    public synchronized Set<File> resolve(List<String> paths, List<File> outputDirs) throws IOException {
+        List<String> key = new ArrayList<String>(paths.size() + outputDirs.size());
+        key.addAll(paths);
+        for (File outputDir : outputDirs) {
+            key.add(outputDir.getPath());
+        }
+        if (key.equals(lastPaths) && jarsUnchanged(lastResult) && stillMissing(lastMissing)) {
+            return new HashSet<File>(lastResult);
+        }
+
+        Set<String> parsed = new HashSet<String>();
+        List<String> level = new ArrayList<String>();
+        for (String path : paths) {
+            level.add(new File(path).getCanonicalPath());
+        }
+        Set<File> classPathElements = new LinkedHashSet<File>(outputDirs);
+        List<File> missing = new ArrayList<File>();
+        // expand one level of manifest class paths at a time, reading the jars of a level in parallel
+        while (!level.isEmpty()) {
+            List<String> levelJars = new ArrayList<String>();
+            for (String path : level) {
+                if (parsed.add(path)) {
+                    File file = new File(path);
+                    if (!file.exists()) {
+                        missing.add(file);
+                    } else if (file.getName().endsWith(".jar")) {
+                        classPathElements.add(file);
+                        if (!file.isDirectory()) {
+                            levelJars.add(path);
+                        }
+                    }
+                }
+            }
+            Map<String, JarEntry> entries = getJarEntries(levelJars);
+            level = new ArrayList<String>();
+            for (String path : levelJars) {
+                level.addAll(entries.get(path).manifestClassPath);
+            }
+        }
+        lastPaths = key;
+        lastResult = classPathElements;
+        lastMissing = missing;
+        return new HashSet<File>(classPathElements);
+    }
+
+    private boolean jarsUnchanged(Set<File> classPath) {
+        for (File file : classPath) {
+            if (file.isDirectory()) {
+                continue;
+            }
+            JarEntry entry = jars.get(file.getPath());
+            if (entry == null || !entry.matches(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean stillMissing(List<File> files) {
+        for (File file : files) {
+            if (file.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, JarEntry> getJarEntries(List<String> paths) throws IOException {
+        Map<String, JarEntry> entries = new LinkedHashMap<String, JarEntry>();
+        List<String> misses = new ArrayList<String>();
+        for (String path : paths) {
+            JarEntry entry = jars.get(path);
+            if (entry != null && entry.matches(new File(path))) {
+                entries.put(path, entry);
+            } else {
+                misses.add(path);
+            }
+        }
+        if (misses.size() == 1) {
+            entries.put(misses.get(0), readJar(misses.get(0)));
+        } else if (!misses.isEmpty()) {
+            Map<String, Future<JarEntry>> futures = new LinkedHashMap<String, Future<JarEntry>>();
+            for (final String path : misses) {
+                futures.put(path, getExecutor().submit(new Callable<JarEntry>() {
+                    @Override
+                    public JarEntry call() throws Exception {
+                        return readJar(path);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<JarEntry>> future : futures.entrySet()) {
+                try {
+                    entries.put(future.getKey(), future.getValue().get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading the class path", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private JarEntry readJar(String path) throws IOException {
+        File file = new File(path);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        List<String> manifestClassPath = new ArrayList<String>();
+        try (JarFile jar = new JarFile(file)) {
+            Manifest mf = jar.getManifest();
+            if (mf != null && mf.getMainAttributes() != null) {
+                Object classPath = mf.getMainAttributes().get(Attributes.Name.CLASS_PATH);
+                if (classPath != null) {
+                    for (String i : classPath.toString().split(" ")) {
+                        File f;
+                        try {
+                            URL u = new URL(i);
+                            f = new File(u.getPath());
+                        } catch (MalformedURLException e) {
+                            f = new File(file.getParentFile(), i);
+                        }
+                        if (f.exists()) {
+                            manifestClassPath.add(f.getCanonicalPath());
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open class path file " + file, e);
+        }
+        JarEntry entry = new JarEntry(length, lastModified, Collections.unmodifiableList(manifestClassPath));
+        jars.put(path, entry);
+        return entry;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+            executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "liberty-dev-classpath");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * The number of jars whose manifest class path is cached.
+     */
+    int getCachedJarCount() {
+        return jars.size();
+    }
+
+    /**
+     * Stop the threads that read jars.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.tools.JavaCompiler;
+
+/**
+ * Stops a javac task at the start of its next parse, attribute or generate
+ * step once a flag is set, by throwing from a task listener, which makes the
+ * task fail with a runtime exception.
+ */
+class CompileCanceller extends JavacTaskListener {
+
+    private final AtomicBoolean cancelled;
+
+    private CompileCanceller(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Add a cancellation check to a compilation task.
+     *
+     * @return true if the task can be cancelled between its steps
+     */
+    static boolean install(JavaCompiler.CompilationTask task, AtomicBoolean cancelled) {
+        return new CompileCanceller(cancelled).install(task);
+    }
+
+    @Override
+    void started(Event e) {
+        if (cancelled.get()) {
+            throw new CancellationException();
+        }
+    }
+
+    @Override
+    void finished(Event e) {
+    }
+}
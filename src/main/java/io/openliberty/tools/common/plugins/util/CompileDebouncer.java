@@ -0,0 +1,149 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides how long to wait after the last Java file change before compiling,
+ * based on how the user saves and how the recent compiles went.
+ * <p>
+ * The wait is long enough to cover the gaps between the saves of an editing
+ * burst, such as an editor that saves on every keystroke pause, and grows when
+ * compiles fail because another save follows shortly after. A speculative
+ * compile can start before the wait is over, early enough for a compile of
+ * the usual duration to finish when it ends.
+ */
+public class CompileDebouncer {
+
+    /** Save gaps longer than this are pauses between editing bursts */
+    private static final long MAX_BURST_GAP_MILLIS = 3000;
+
+    /** The number of save gaps and compile durations that are remembered */
+    private static final int SAMPLES = 20;
+
+    /** A failed compile followed by a save within this time was too early */
+    private static final long EARLY_FAILURE_MILLIS = 2000;
+
+    private static final double MAX_BACKOFF = 4;
+
+    private final long initialDelayMillis;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private boolean adaptive = true;
+    private final List<Long> gaps = new ArrayList<Long>();
+    private final List<Long> compileMillis = new ArrayList<Long>();
+    private long lastChange;
+    private long lastFailure;
+    private double backoff = 1;
+
+    /**
+     * @param initialDelayMillis the wait before anything has been learned
+     * @param minDelayMillis     the shortest wait
+     * @param maxDelayMillis     the longest wait
+     */
+    public CompileDebouncer(long initialDelayMillis, long minDelayMillis, long maxDelayMillis) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.minDelayMillis = Math.min(minDelayMillis, initialDelayMillis);
+        this.maxDelayMillis = Math.max(maxDelayMillis, initialDelayMillis);
+    }
+
+    /**
+     * @param adaptive false to always wait the initial delay
+     */
+    public synchronized void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Record a Java file change.
+     *
+     * @param time the time of the change in milliseconds
+     */
+    public synchronized void changed(long time) {
+        if (lastChange > 0) {
+            long gap = time - lastChange;
+            if (gap > 0 && gap <= MAX_BURST_GAP_MILLIS) {
+                add(gaps, gap);
+            }
+        }
+        if (lastFailure > 0 && time - lastFailure <= EARLY_FAILURE_MILLIS) {
+            // the user was still editing when the compile ran
+            backoff = Math.min(backoff * 1.5, MAX_BACKOFF);
+        }
+        lastFailure = 0;
+        lastChange = time;
+    }
+
+    /**
+     * Record the result of a compile.
+     *
+     * @param time    the time the compile finished in milliseconds
+     * @param millis  how long the compiler ran
+     * @param success whether the compile was successful
+     */
+    public synchronized void compiled(long time, long millis, boolean success) {
+        add(compileMillis, millis);
+        if (success) {
+            backoff = Math.max(1, backoff * 0.8);
+            lastFailure = 0;
+        } else {
+            lastFailure = time;
+        }
+    }
+
+    /**
+     * @return how long to wait after the last change before compiling
+     */
+    public synchronized long getDelayMillis() {
+        if (!adaptive) {
+            return initialDelayMillis;
+        }
+        long delay = gaps.size() < 3 ? initialDelayMillis : percentile(gaps, 75) * 5 / 4;
+        delay = (long) (Math.max(delay, minDelayMillis) * backoff);
+        return Math.min(Math.max(delay, minDelayMillis), maxDelayMillis);
+    }
+
+    /**
+     * @return how long after the last change a speculative compile should start,
+     *         so that a compile of the usual duration finishes when the wait ends
+     */
+    public synchronized long getSpeculationDelayMillis() {
+        long delay = getDelayMillis();
+        long expected = compileMillis.isEmpty() ? 0 : percentile(compileMillis, 50);
+        return Math.max(Math.min(minDelayMillis, delay), delay - expected);
+    }
+
+    private static void add(List<Long> samples, long value) {
+        if (samples.size() == SAMPLES) {
+            samples.remove(0);
+        }
+        samples.add(value);
+    }
+
+    private static long percentile(List<Long> samples, int percentile) {
+        List<Long> sorted = new ArrayList<Long>(samples);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
+/**
+ * The compiler messages of a compile, grouped by the file they are reported
+ * for, and how long the compiler spent on each file.
+ */
+public class CompileReport implements DiagnosticListener<JavaFileObject> {
+
+    /**
+     * The compiler phases that are timed per file.
+     */
+    public enum Phase {
+        PARSE("parse"), ATTRIBUTE("attribute"), GENERATE("generate");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * A compiler message.
+     */
+    public static class Message {
+        private final Diagnostic.Kind kind;
+        private final File file;
+        private final long line;
+        private final long column;
+        private final String text;
+
+        Message(Diagnostic.Kind kind, File file, long line, long column, String text) {
+            this.kind = kind;
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.text = text;
+        }
+
+        public Diagnostic.Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the file the message is for, or null if it is not for a file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the line number, or -1 if there is none
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @return the column number, or -1 if there is none
+         */
+        public long getColumn() {
+            return column;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isError() {
+            return kind == Diagnostic.Kind.ERROR;
+        }
+
+        @Override
+        public String toString() {
+            if (file == null) {
+                return text;
+            }
+            if (line < 0) {
+                return file + ": " + text;
+            }
+            return file + ":[" + line + "," + column + "] " + text;
+        }
+    }
+
+    private final List<Message> messages = new ArrayList<Message>();
+    private final Map<File, long[]> timings = new LinkedHashMap<File, long[]>();
+    private long elapsedNanos;
+
+    @Override
+    public synchronized void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+        File file = null;
+        JavaFileObject source = diagnostic.getSource();
+        if (source != null) {
+            URI uri = source.toUri();
+            if ("file".equals(uri.getScheme())) {
+                file = new File(uri);
+            }
+        }
+        messages.add(new Message(diagnostic.getKind(), file, diagnostic.getLineNumber(),
+                diagnostic.getColumnNumber(), diagnostic.getMessage(null)));
+    }
+
+    /**
+     * @return all compiler messages in the order they were reported
+     */
+    public synchronized List<Message> getMessages() {
+        return new ArrayList<Message>(messages);
+    }
+
+    public synchronized List<Message> getErrors() {
+        List<Message> errors = new ArrayList<Message>();
+        for (Message message : messages) {
+            if (message.isError()) {
+                errors.add(message);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * @return the files that have errors
+     */
+    public synchronized Set<File> getErrorFiles() {
+        Set<File> files = new LinkedHashSet<File>();
+        for (Message message : messages) {
+            if (message.isError() && message.getFile() != null) {
+                files.add(message.getFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Whether there are errors that are not for a specific file, such as an
+     * invalid compiler option.
+     */
+    public synchronized boolean hasGeneralErrors() {
+        for (Message message : messages) {
+            if (message.isError() && message.getFile() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void addTime(File file, Phase phase, long nanos) {
+        long[] times = timings.get(file);
+        if (times == null) {
+            times = new long[Phase.values().length];
+            timings.put(file, times);
+        }
+        times[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * @return how long the compiler spent in a phase for a file, in milliseconds
+     */
+    public synchronized long getMillis(File file, Phase phase) {
+        long[] times = timings.get(file);
+        return times == null ? 0 : TimeUnit.NANOSECONDS.toMillis(times[phase.ordinal()]);
+    }
+
+    /**
+     * @return the files that were timed
+     */
+    public synchronized Set<File> getTimedFiles() {
+        return new LinkedHashSet<File>(timings.keySet());
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return how long the compile took in milliseconds
+     */
+    public synchronized long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Format the timings of the files the compiler spent the most time on.
+     *
+     * @param max the maximum number of files
+     * @return one line per file, slowest first
+     */
+    public synchronized List<String> formatSlowestFiles(int max) {
+        List<Map.Entry<File, long[]>> entries = new ArrayList<Map.Entry<File, long[]>>(timings.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<File, long[]>>() {
+            @Override
+            public int compare(Map.Entry<File, long[]> a, Map.Entry<File, long[]> b) {
+                return Long.compare(total(b.getValue()), total(a.getValue()));
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<File, long[]> entry : entries.subList(0, Math.min(max, entries.size()))) {
+            StringBuilder line = new StringBuilder(entry.getKey().getName()).append(':');
+            for (Phase phase : Phase.values()) {
+                line.append(' ').append(phase.getLabel()).append(' ')
+                        .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue()[phase.ordinal()])).append(" ms");
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static long total(long[] times) {
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * Add the messages and timings of another report to this one.
+     */
+    synchronized void addAll(CompileReport other) {
+        messages.addAll(other.getMessages());
+        synchronized (other) {
+            for (Map.Entry<File, long[]> entry : other.timings.entrySet()) {
+                for (Phase phase : Phase.values()) {
+                    addTime(entry.getKey(), phase, entry.getValue()[phase.ordinal()]);
+                }
+            }
+            elapsedNanos += other.elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers, across dev mode sessions, what each Java source was last compiled
+ * from and into: a hash of its content, the classes it produced, and a
+ * fingerprint of the class path and compiler options. On startup, a source
+ * whose content, classes and fingerprint are unchanged does not need to be
+ * compiled again.
+ */
+public class CompileStateStore {
+
+    private static final String HEADER = "# liberty dev mode compile state 1";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * The recorded state of a source.
+     */
+    private static class Entry {
+        private long length;
+        private long lastModified;
+        private final String hash;
+        private final String fingerprint;
+        private final List<String> classNames;
+
+        Entry(long length, long lastModified, String hash, String fingerprint, List<String> classNames) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.fingerprint = fingerprint;
+            this.classNames = classNames;
+        }
+    }
+
+    private final File file;
+    private final Map<File, Entry> entries = new HashMap<File, Entry>();
+    private boolean modified;
+
+    /**
+     * @param file the file the state is kept in
+     */
+    public CompileStateStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Load the state from the file. A missing or unreadable file leaves the
+     * state empty, so that every source is compiled.
+     *
+     * @return true if the state was loaded
+     */
+    public synchronized boolean load() {
+        entries.clear();
+        modified = false;
+        if (!file.isFile()) {
+            return false;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return false;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length != 6) {
+                    continue;
+                }
+                List<String> classNames = fields[5].isEmpty() ? Collections.<String>emptyList()
+                        : Arrays.asList(fields[5].split(","));
+                entries.put(new File(fields[0]), new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields[3], fields[4], classNames));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Write the state to the file if it changed since it was loaded or saved.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create the directory " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<File, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                StringBuilder classNames = new StringBuilder();
+                for (String className : entry.classNames) {
+                    if (classNames.length() > 0) {
+                        classNames.append(',');
+                    }
+                    classNames.append(className);
+                }
+                writer.write(mapEntry.getKey().getPath() + SEPARATOR + entry.length + SEPARATOR + entry.lastModified
+                        + SEPARATOR + entry.hash + SEPARATOR + entry.fingerprint + SEPARATOR + classNames + '\n');
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        modified = false;
+    }
+
+    /**
+     * Record that a source was compiled.
+     *
+     * @param source      the source file
+     * @param fingerprint the fingerprint of the class path and compiler options
+     * @param classNames  the binary names of the classes it produced
+     * @throws IOException if the source could not be read
+     */
+    public synchronized void record(File source, String fingerprint, Collection<String> classNames)
+            throws IOException {
+        entries.put(source, new Entry(source.length(), source.lastModified(), hash(source), fingerprint,
+                new ArrayList<String>(classNames)));
+        modified = true;
+    }
+
+    /**
+     * Forget a source, for example because it was deleted.
+     */
+    public synchronized void remove(File source) {
+        if (entries.remove(source) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the sources that have a recorded state
+     */
+    public synchronized Set<File> getSources() {
+        return new HashSet<File>(entries.keySet());
+    }
+
+    /**
+     * @return the classes a source produced when it was last compiled, or null if
+     *         it was not recorded
+     */
+    public synchronized List<String> getClassNames(File source) {
+        Entry entry = entries.get(source);
+        return entry == null ? null : Collections.unmodifiableList(entry.classNames);
+    }
+
+    /**
+     * Check whether the classes of a source are up to date: its content and the
+     * fingerprint are unchanged since it was recorded, and the classes it
+     * produced are still in the output directory.
+     *
+     * @param source      the source file
+     * @param fingerprint the current fingerprint of the class path and compiler
+     *                    options
+     * @param outputDir   the output directory of the classes
+     * @return the classes the source produced if they are up to date, or null
+     * @throws IOException if the source could not be read
+     */
+    public synchronized List<String> getUpToDateClassNames(File source, String fingerprint, File outputDir)
+            throws IOException {
+        Entry entry = entries.get(source);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        if (source.length() != entry.length || source.lastModified() != entry.lastModified) {
+            // touched, but possibly not changed
+            if (!entry.hash.equals(hash(source))) {
+                return null;
+            }
+            entry.length = source.length();
+            entry.lastModified = source.lastModified();
+            modified = true;
+        }
+        for (String className : entry.classNames) {
+            if (!getClassFile(outputDir, className).isFile()) {
+                return null;
+            }
+        }
+        return Collections.unmodifiableList(entry.classNames);
+    }
+
+    /**
+     * Find the classes of a source that was compiled without a recorded state,
+     * for example by the build, by the naming of its top level class and the
+     * nested classes in it.
+     *
+     * @param source     the source file
+     * @param sourceRoot the source directory that contains the source
+     * @param outputDir  the output directory of the classes
+     * @return the classes of the source, starting with its top level class, or
+     *         null if the top level class file does not exist
+     */
+    public static List<String> findClassNames(File source, File sourceRoot, File outputDir) {
+        String relative = sourceRoot.toPath().relativize(source.toPath()).toString();
+        if (!relative.endsWith(".java") || relative.startsWith("..")) {
+            return null;
+        }
+        String path = relative.substring(0, relative.length() - ".java".length());
+        File classFile = new File(outputDir, path + ".class");
+        if (!classFile.isFile()) {
+            return null;
+        }
+        String className = path.replace(File.separatorChar, '.');
+        List<String> classNames = new ArrayList<String>();
+        classNames.add(className);
+        String simpleName = classFile.getName().substring(0, classFile.getName().length() - ".class".length());
+        File[] nested = classFile.getParentFile().listFiles();
+        if (nested != null) {
+            for (File file : nested) {
+                String name = file.getName();
+                if (name.startsWith(simpleName + "$") && name.endsWith(".class")) {
+                    String packagePrefix = className.substring(0, className.length() - simpleName.length());
+                    classNames.add(packagePrefix + name.substring(0, name.length() - ".class".length()));
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * @return the class file of a class in an output directory
+     */
+    public static File getClassFile(File outputDir, String className) {
+        return new File(outputDir, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    /**
+     * Compute a fingerprint of a class path and compiler options. Jars are
+     * identified by their path, size and modification time, and directories by
+     * their path only, since they include the output directories.
+     *
+     * @param classPath the class path
+     * @param options   the compiler options
+     * @return the fingerprint
+     */
+    public static String fingerprint(Collection<File> classPath, List<String> options) {
+        MessageDigest digest = newDigest();
+        List<String> elements = new ArrayList<String>();
+        for (File element : classPath) {
+            if (element.isFile()) {
+                elements.add(element.getPath() + "|" + element.length() + "|" + element.lastModified());
+            } else {
+                elements.add(element.getPath());
+            }
+        }
+        Collections.sort(elements);
+        for (String element : elements) {
+            digest.update(element.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        for (String option : options) {
+            digest.update(option.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 1);
+        }
+        return toHex(digest.digest());
+    }
+
+    static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
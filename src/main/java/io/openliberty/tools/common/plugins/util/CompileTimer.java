@@ -0,0 +1,88 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+
+/**
+ * Times the parse, attribute and generate phases of javac for each file and
+ * records them in a compile report. The files are not timed when the compiler
+ * does not support the javac task API.
+ */
+class CompileTimer extends JavacTaskListener {
+
+    private final CompileReport report;
+    private final Map<String, Long> started = new HashMap<String, Long>();
+
+    private CompileTimer(CompileReport report) {
+        this.report = report;
+    }
+
+    /**
+     * Add a timer to a compilation task.
+     *
+     * @return true if the task is timed
+     */
+    static boolean install(JavaCompiler.CompilationTask task, CompileReport report) {
+        return new CompileTimer(report).install(task);
+    }
+
+    @Override
+    void started(Event e) {
+        if (getPhase(e) != null) {
+            started.put(key(e), System.nanoTime());
+        }
+    }
+
+    @Override
+    void finished(Event e) {
+        CompileReport.Phase phase = getPhase(e);
+        if (phase == null) {
+            return;
+        }
+        Long start = started.remove(key(e));
+        URI uri = e.getSourceFile().toUri();
+        if (start != null && "file".equals(uri.getScheme())) {
+            report.addTime(new File(uri), phase, System.nanoTime() - start);
+        }
+    }
+
+    private static CompileReport.Phase getPhase(Event e) {
+        if (e.getSourceFile() == null) {
+            return null;
+        }
+        switch (e.getKind()) {
+        case "PARSE":
+            return CompileReport.Phase.PARSE;
+        case "ANALYZE":
+            return CompileReport.Phase.ATTRIBUTE;
+        case "GENERATE":
+            return CompileReport.Phase.GENERATE;
+        default:
+            return null;
+        }
+    }
+
+    private static String key(Event e) {
+        // analyze and generate events are per class, so one file can have several
+        return e.getKind() + " " + e.getSourceFile().toUri() + " " + e.getTypeElement();
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long each stage of the dev mode inner loop takes, from the time
+ * a file is saved until the application is updated and the tests are done, so
+ * that slow updates can be attributed to change detection, compilation, the
+ * Liberty application update or the tests.
+ * <p>
+ * A change cycle starts with the first detected file change and ends when the
+ * tests for it finish, or when the change is applied if tests do not run
+ * automatically.
+ */
+public class DevLoopMetrics {
+
+    public enum Stage {
+        /** from the file modification time until dev mode detected the change */
+        DETECT("detect"),
+        /** from the first detected change until compilation started */
+        DEBOUNCE("debounce"),
+        /** Java compilation */
+        COMPILE("compile"),
+        /** waiting for the application updated message */
+        APP_UPDATE("app update"),
+        /** unit tests */
+        UNIT_TESTS("unit tests"),
+        /** integration tests */
+        INTEGRATION_TESTS("integration tests"),
+        /** from the first detected change until the change cycle ended */
+        END_TO_END("end to end");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Latency samples of one stage. The most recent samples are kept for the
+     * percentiles, while the count and maximum cover all samples.
+     */
+    public static class Histogram {
+        private final long[] samples;
+        private int next;
+        private int size;
+        private long count;
+        private long max;
+
+        Histogram(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            if (size < samples.length) {
+                size++;
+            }
+            count++;
+            max = Math.max(max, millis);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the nearest-rank percentile of the recent samples, or 0 if there
+         *         are none
+         */
+        public synchronized long getPercentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * size);
+            return sorted[Math.min(Math.max(rank, 1), size) - 1];
+        }
+    }
+
+    private static final int MAX_SAMPLES = 1000;
+
+    private final Map<Stage, Histogram> histograms = new EnumMap<Stage, Histogram>(Stage.class);
+    /** start of the current change cycle, or 0 if there is none */
+    private final AtomicLong cycleStart = new AtomicLong();
+
+    public DevLoopMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new Histogram(MAX_SAMPLES));
+        }
+    }
+
+    /**
+     * Record a stage duration.
+     *
+     * @param stage  the stage
+     * @param millis the duration, ignored if negative
+     */
+    public void record(Stage stage, long millis) {
+        if (millis >= 0) {
+            histograms.get(stage).record(millis);
+        }
+    }
+
+    /**
+     * Record the duration of a stage that started at the given time.
+     *
+     * @param stage      the stage
+     * @param startNanos the start time from {@link System#nanoTime()}
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, (System.nanoTime() - startNanos) / 1000000);
+    }
+
+    public Histogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * Record the detection of a file change, starting a change cycle if none is
+     * in progress.
+     *
+     * @param lastModified   the modification time of the file, or 0 if unknown
+     * @param detectedMillis when dev mode detected the change
+     */
+    public void changeDetected(long lastModified, long detectedMillis) {
+        if (lastModified > 0) {
+            record(Stage.DETECT, detectedMillis - lastModified);
+        }
+        cycleStart.compareAndSet(0, detectedMillis);
+    }
+
+    /**
+     * Whether a change cycle is in progress.
+     */
+    public boolean inCycle() {
+        return cycleStart.get() != 0;
+    }
+
+    /**
+     * Record the time from the start of the change cycle until now, if a cycle
+     * is in progress.
+     *
+     * @param stage the stage
+     */
+    public void recordSinceCycleStart(Stage stage) {
+        long start = cycleStart.get();
+        if (start != 0) {
+            record(stage, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * End the change cycle in progress, if any, and record its end to end time.
+     */
+    public void endCycle() {
+        long start = cycleStart.getAndSet(0);
+        if (start != 0) {
+            record(Stage.END_TO_END, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Format the recorded timings as a table with one line per stage that has
+     * samples.
+     *
+     * @return the lines of the table, or an empty list if nothing was recorded
+     */
+    public List<String> format() {
+        List<String> lines = new ArrayList<String>();
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = histograms.get(stage);
+            if (histogram.getCount() > 0) {
+                lines.add(String.format("%-18s %8d %8d %8d %8d", stage.getLabel(), histogram.getCount(),
+                        histogram.getPercentile(50), histogram.getPercentile(95), histogram.getMax()));
+            }
+        }
+        if (!lines.isEmpty()) {
+            lines.add(0, String.format("%-18s %8s %8s %8s %8s", "stage (ms)", "count", "p50", "p95", "max"));
+        }
+        return lines;
+    }
+
+    /**
+     * Write the recorded timings to a file, if anything was recorded.
+     *
+     * @param file the file to write
+     * @return true if the file was written
+     * @throws IOException if the file could not be written
+     */
+    public boolean write(File file) throws IOException {
+        List<String> lines = format();
+        if (lines.isEmpty()) {
+            return false;
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return true;
+    }
+}
@@ -18,6 +18,7 @@ package io.openliberty.tools.common.plugins.util;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -29,7 +30,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MalformedURLException;
 import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -46,14 +46,14 @@ import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.Watchable;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -61,27 +61,32 @@ import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.StandardLocation;
-import javax.tools.ToolProvider;
-
-import com.sun.nio.file.SensitivityWatchEventModifier;
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.monitor.FileAlterationListenerAdaptor;
 import org.apache.commons.io.monitor.FileAlterationObserver;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 import io.openliberty.tools.ant.ServerTask;
+import io.openliberty.tools.common.plugins.util.PathClassifier.PathCategory;
+import io.openliberty.tools.common.plugins.util.WatchRegistrationManager.WatchPriority;
 
 /**
  * Utility class for dev mode.
@@ -91,6 +96,9 @@ public abstract class DevUtil {
     private static final String START_SERVER_MESSAGE_PREFIX = "CWWKF0011I:";
     private static final String START_APP_MESSAGE_REGEXP = "CWWKZ0001I.*";
     private static final String UPDATED_APP_MESSAGE_REGEXP = "CWWKZ0003I.*";
+    /** javac since Java 9 references the class of each constant it inlines */
+    private static final boolean JAVAC_RECORDS_INLINED_CONSTANTS = !System.getProperty("java.specification.version",
+            "").startsWith("1.");
     private static final String PORT_IN_USE_MESSAGE_PREFIX = "CWWKO0221E:";
     private static final String WEB_APP_AVAILABLE_MESSAGE_PREFIX = "CWWKT0016I:";
     private static final String LISTENING_ON_PORT_MESSAGE_PREFIX = "CWWKO0219I:";
@@ -102,17 +110,20 @@ public abstract class DevUtil {
     private static final String DEVMODE_CONTAINER_NAME = "libertyDev";
     private static final String DEVMODE_IMAGE_NAME = "liberty-dev-mode";
 
-    private static final String[] IGNORE_DIRECTORY_PREFIXES = new String[] { "." };
-    private static final String[] IGNORE_FILE_PREFIXES = new String[] { "." };
-    private static final String[] IGNORE_FILE_POSTFIXES = new String[] {
-            // core dumps
-            ".dmp",
-            // vim
-            "~",
-            // intellij
-            "___jb_tmp___", "___jb_old___" };
-
     private static final String[] DEFAULT_COMPILER_OPTIONS = new String[] { "-g", "-parameters" };
+    /** the integration test classes that Maven Failsafe includes by default */
+    private static final Pattern INTEGRATION_TEST_CLASS = Pattern.compile("(IT[^$]*|[^$]*IT|[^$]*ITCase)");
+
+    private static final long DEFAULT_FILE_CHANGE_COALESCE_MILLIS = 100;
+    private static final long MIN_COMPILE_WAIT_MILLIS = 100;
+    private static final int MAX_REPORTED_COMPILE_TIMINGS = 5;
+    private static final long MAX_COMPILE_WAIT_MILLIS = 3000;
+    private static final int MAX_REGISTRATION_THREADS = 4;
+    private static final long WATCH_PROBE_TIMEOUT_MILLIS = 2000;
+    private static final long WATCH_PROBE_RECHECK_MILLIS = 60000;
+    private static final int DEFAULT_CHANGE_STORM_THRESHOLD = 50;
+    private static final long DEFAULT_CHANGE_STORM_QUIET_MILLIS = 1000;
+    private static final long MAX_POLLING_INTERVAL_MILLIS = 1000;
 
     /**
      * Log debug
@@ -277,20 +288,60 @@ public abstract class DevUtil {
     private String httpPort;
     private String httpsPort;
     private final long compileWaitMillis;
+    private final CompileDebouncer compileDebouncer;
     private AtomicBoolean inputUnavailable;
     private int alternativeDebugPort = -1;
+    private boolean hotSwap;
+    private MessagesLogTailer logTailer;
     private boolean libertyDebug;
     private int libertyDebugPort;
     private AtomicBoolean detectedAppStarted;
     private long serverStartTimeout;
     private boolean useBuildRecompile;
     private Map<File, Properties> propertyFilesMap;
-    final private Set<FileAlterationObserver> fileObservers;
-    final private Set<FileAlterationObserver> newFileObservers;
+    final private PollingScanner pollingScanner;
+    private int maxFileWatches;
+    private WatchRegistrationManager watchManager;
     private AtomicBoolean calledShutdownHook;
     private boolean gradle;
     private long pollingInterval;
     private FileTrackMode trackingMode;
+    private final FileChangeBus fileChangeBus;
+    private final FileFingerprintCache fingerprintCache;
+    private volatile IgnoreRules ignoreRules;
+    private ChangeTransaction changeTransaction;
+    private WatchBackendProbe backendProbe;
+    /** probed roots, and whether they are watched recursively */
+    private final Map<Path, Boolean> probeRoots = new HashMap<Path, Boolean>();
+    private List<String> ignorePatterns;
+    private boolean useGitIgnore;
+    private final DevLoopMetrics loopMetrics = new DevLoopMetrics();
+    /** number of test jobs queued, used to tell whether a change cycle ends with tests */
+    private final AtomicLong queuedTestJobs = new AtomicLong();
+    private final TestScheduler testScheduler = new TestScheduler(new TestRunner());
+    private volatile ThreadPoolExecutor testExecutor;
+    private File loopMetricsFile;
+    private JavaCompilerService compilerService;
+    private final ClassPathResolver classPathResolver = new ClassPathResolver();
+    private final ClassDependencyGraph dependencyGraph = new ClassDependencyGraph();
+    private final TestImpactAnalyzer testImpactAnalyzer;
+    private boolean testImpactAnalysis;
+    /** the unit tests affected by the changes of the running tests, or null to run all */
+    private volatile Set<String> selectedUnitTests;
+    /** the integration tests to run, or null to run all */
+    private volatile Set<String> selectedIntegrationTests;
+    private TestOutcomeStore testOutcomes;
+    private File testOutcomesFile;
+    private List<File> testReportsDirectories = Collections.emptyList();
+    private volatile WarmUnitTestRunner warmUnitTestRunner;
+    private int integrationTestShards = 1;
+    private IntegrationTestSharder integrationTestSharder;
+    private File integrationTestReportsDirectory;
+    private File integrationTestDurationsFile;
+    private List<String> serialIntegrationTests = Collections.emptyList();
+    private List<String> serialIntegrationTestAnnotations = IntegrationTestSharder.DEFAULT_SERIAL_ANNOTATIONS;
+    private volatile CompileStateStore compileState;
+    private File compileStateFile;
     private final boolean container;
     private String imageName;
     private File dockerfile;
@@ -309,6 +360,7 @@ public abstract class DevUtil {
         this.serverDirectory = serverDirectory;
         this.sourceDirectory = sourceDirectory;
         this.testSourceDirectory = testSourceDirectory;
+        this.testImpactAnalyzer = new TestImpactAnalyzer(dependencyGraph, testSourceDirectory);
         this.configDirectory = configDirectory;
         this.projectDirectory = projectDirectory;
         this.resourceDirs = resourceDirs;
@@ -322,20 +374,35 @@ public abstract class DevUtil {
         this.appUpdateTimeout = appUpdateTimeout;
         this.devStop = new AtomicBoolean(false);
         this.compileWaitMillis = compileWaitMillis;
+        this.compileDebouncer = new CompileDebouncer(compileWaitMillis, MIN_COMPILE_WAIT_MILLIS,
+                MAX_COMPILE_WAIT_MILLIS);
         this.inputUnavailable = new AtomicBoolean(false);
         this.libertyDebug = libertyDebug;
         this.detectedAppStarted = new AtomicBoolean(false);
         this.useBuildRecompile = useBuildRecompile;
         this.calledShutdownHook = new AtomicBoolean(false);
         this.gradle = gradle;
-        this.fileObservers = new HashSet<FileAlterationObserver>();
-        this.newFileObservers = new HashSet<FileAlterationObserver>();
         this.pollingInterval = 100;
+        this.pollingScanner = new PollingScanner(new PollingScanner.Listener() {
+            @Override
+            public void onChange(File file, boolean isDirectory, ChangeType changeType, boolean fallbackRoot) {
+                if (WatchBackendProbe.isCanary(file)) {
+                    return;
+                }
+                fileChangeBus.publish(file, isDirectory, changeType);
+            }
+        }, pollingInterval, MAX_POLLING_INTERVAL_MILLIS);
         if (pollingTest) {
             this.trackingMode = FileTrackMode.POLLING;
         } else {
             this.trackingMode = FileTrackMode.NOT_SET;
         }
+        this.fileChangeBus = new FileChangeBus(DEFAULT_FILE_CHANGE_COALESCE_MILLIS, DEFAULT_CHANGE_STORM_THRESHOLD,
+                DEFAULT_CHANGE_STORM_QUIET_MILLIS);
+        this.fingerprintCache = new FileFingerprintCache();
+        this.ignoreRules = new IgnoreRules.Builder(projectDirectory).addAll(Arrays.asList(IgnoreRules.DEFAULT_PATTERNS))
+                .build();
+        this.pollingScanner.setIgnoreRules(ignoreRules);
         this.container = container;
         this.dockerfile = dockerfile;
         this.dockerRunOpts = dockerRunOpts;
@@ -365,61 +432,75 @@ public abstract class DevUtil {
                 error("Could not get the server task for running tests.", e);
             }
 
-            File logFile = getMessagesLogFile(serverTask);
+            MessagesLogTailer tailer = getLogTailer(getMessagesLogFile(serverTask));
 
             String regexp = UPDATED_APP_MESSAGE_REGEXP + applicationId;
 
+            testScheduler.setInterruptible(true);
             try {
                 Thread.sleep(500);
             } catch (InterruptedException e) {
                 debug("Thread interrupted while waiting to start tests.", e);
+            } finally {
+                testScheduler.setInterruptible(false);
             }
 
-            // if queue size >= 1, it means a newer test has been queued so we
-            // should skip this and let that run instead
-            if (executor.getQueue().size() >= 1) {
-                Runnable head = executor.getQueue().peek();
-                boolean manualInvocation = ((TestJob) head).isManualInvocation();
+            // if newer tests were requested, skip this and let them run instead
+            if (isTestRunCancelled(false)) {
+                return;
+            }
 
-                if (manualInvocation) {
-                    debug("Tests were re-invoked before previous tests began. Cancelling previous tests and resubmitting them.");
+            Set<String> selected = selectedUnitTests;
+            if (selected != null && !gradle && !(skipUTs || forceSkipUTs)) {
+                if (selected.isEmpty()) {
+                    info("No unit tests are selected to run.");
+                    forceSkipUTs = true;
                 } else {
-                    debug("Changes were detected before tests began. Cancelling tests and resubmitting them.");
+                    debug("Unit tests selected to run: " + selected);
                 }
-                return;
             }
 
             // skip unit tests if invoked by Gradle
             if (!gradle && !(skipUTs || forceSkipUTs)) {
                 info("Running unit tests...");
+                long unitTestStart = System.nanoTime();
                 try {
                     runUnitTests();
                     info("Unit tests finished.");
                 } catch (PluginScenarioException e) {
                     debug(e);
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                     error(e.getMessage());
                     // if unit tests failed, don't run integration tests
+                    loopMetrics.recordSince(DevLoopMetrics.Stage.UNIT_TESTS, unitTestStart);
+                    loopMetrics.endCycle();
                     return;
                 } catch (PluginExecutionException e) {
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                     error(e.getMessage());
                 }
+                loopMetrics.recordSince(DevLoopMetrics.Stage.UNIT_TESTS, unitTestStart);
             }
 
-            // if queue size >= 1, it means a newer test has been queued so we
-            // should skip this and let that run instead
-            if (executor.getQueue().size() >= 1) {
-                Runnable head = executor.getQueue().peek();
-                boolean manualInvocation = ((TestJob) head).isManualInvocation();
+            // if newer tests were requested, skip this and let them run instead
+            if (isTestRunCancelled(true)) {
+                return;
+            }
 
-                if (manualInvocation) {
-                    info("Tests were invoked while previous tests were running. Restarting tests.");
+            Set<String> selectedITs = selectedIntegrationTests;
+            if (selectedITs != null && !skipITs) {
+                if (selectedITs.isEmpty()) {
+                    debug("No integration tests are selected to run.");
                 } else {
-                    info("Changes were detected while tests were running. Restarting tests.");
+                    debug("Integration tests selected to run: " + selectedITs);
                 }
-                return;
             }
 
-            if (!skipITs) {
+            if (!skipITs && (selectedITs == null || !selectedITs.isEmpty())) {
                 if (!detectedAppStarted.get()) {
                     if (appStartupTimeout < 0) {
                         warn("The verifyTimeout (verifyAppStartTimeout) value needs to be an integer greater than or equal to 0.  The default value of 30 seconds will be used.");
@@ -430,9 +511,19 @@ public abstract class DevUtil {
                     // Wait for the app started message in messages.log
                     info("Waiting up to " + appStartupTimeout
                             + " seconds to find the application start up or update message...");
-                    String startMessage = serverTask.waitForStringInLog(
-                            "(" + START_APP_MESSAGE_REGEXP + "|" + UPDATED_APP_MESSAGE_REGEXP + applicationId + ")",
-                            timeout, logFile);
+                    String startMessage = null;
+                    testScheduler.setInterruptible(true);
+                    try {
+                        startMessage = tailer.waitFor("(" + START_APP_MESSAGE_REGEXP + "|"
+                                + UPDATED_APP_MESSAGE_REGEXP + applicationId + ")", 1, timeout);
+                    } catch (InterruptedException e) {
+                        debug("Thread interrupted while waiting for the application to start.", e);
+                    } finally {
+                        testScheduler.setInterruptible(false);
+                    }
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                     if (startMessage == null) {
                         error("Unable to verify if the application was started after " + appStartupTimeout
                                 + " seconds.  Consider increasing the verifyTimeout value if this continues to occur.");
@@ -445,7 +536,19 @@ public abstract class DevUtil {
                         appUpdateTimeout = 5;
                     }
                     long timeout = appUpdateTimeout * 1000;
-                    serverTask.waitForUpdatedStringInLog(regexp, timeout, logFile, messageOccurrences);
+                    long appUpdateStart = System.nanoTime();
+                    testScheduler.setInterruptible(true);
+                    try {
+                        tailer.waitFor(regexp, messageOccurrences + 1, timeout);
+                    } catch (InterruptedException e) {
+                        debug("Thread interrupted while waiting for the application to update.", e);
+                    } finally {
+                        testScheduler.setInterruptible(false);
+                    }
+                    loopMetrics.recordSince(DevLoopMetrics.Stage.APP_UPDATE, appUpdateStart);
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                 }
 
                 if (gradle) {
@@ -453,8 +556,9 @@ public abstract class DevUtil {
                 } else {
                     info("Running integration tests...");
                 }
+                long integrationTestStart = System.nanoTime();
                 try {
-                    runIntegrationTests();
+                    runAllIntegrationTests();
                     if (gradle) {
                         info("Tests finished.");
                     } else {
@@ -462,16 +566,373 @@ public abstract class DevUtil {
                     }
                 } catch (PluginScenarioException e) {
                     debug(e);
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                     error(e.getMessage());
-                    // if unit tests failed, don't run integration tests
-                    return;
                 } catch (PluginExecutionException e) {
+                    if (isTestRunCancelled(true)) {
+                        return;
+                    }
                     error(e.getMessage());
                 }
+                loopMetrics.recordSince(DevLoopMetrics.Stage.INTEGRATION_TESTS, integrationTestStart);
+            }
+        }
+        loopMetrics.endCycle();
+    }
+
+    /**
+     * Check whether the running tests were cancelled because newer tests were
+     * requested, and if so say that they are restarted.
+     * 
+     * @param started whether the tests already started running
+     * @return true if the tests were cancelled
+     */
+    private boolean isTestRunCancelled(boolean started) {
+        if (!testScheduler.isCancelled()) {
+            return false;
+        }
+        TestScheduler.Request next = testScheduler.getPendingRequest();
+        boolean manualInvocation = next != null && next.isManualInvocation();
+        if (!started) {
+            if (manualInvocation) {
+                debug("Tests were re-invoked before previous tests began. Cancelling previous tests and resubmitting them.");
+            } else {
+                debug("Changes were detected before tests began. Cancelling tests and resubmitting them.");
+            }
+        } else if (manualInvocation) {
+            info("Tests were invoked while previous tests were running. Restarting tests.");
+        } else {
+            info("Changes were detected while tests were running. Restarting tests.");
+        }
+        return true;
+    }
+
+    /**
+     * Called when the running tests are cancelled because newer tests were
+     * requested. Subclasses that run tests in a forked process can stop it here,
+     * so that the newer tests start sooner. The test methods should then return
+     * or throw promptly.
+     */
+    protected void cancelRunningTests() {
+    }
+
+    /**
+     * Run the unit tests in a test JVM that dev mode keeps between test runs,
+     * instead of running the test goal of the build. This is meant for
+     * {@link #runUnitTests()} implementations. The jars of the test class path
+     * are loaded once for as long as they do not change, and the class
+     * directories are loaded again for every run. The tests run on the JUnit
+     * Platform launcher, or on JUnit 4 if the launcher is not on the test class
+     * path. Only the {@link #getSelectedUnitTests() selected unit tests} run, if
+     * there are any.
+     * 
+     * @param testClassPath       the class path of the tests, including the
+     *                            classes and test classes output directories
+     * @param testOutputDirectory the directory of the compiled tests
+     * @throws PluginScenarioException  if unit tests failed
+     * @throws PluginExecutionException if unit tests could not be run
+     */
+    protected void runWarmUnitTests(List<File> testClassPath, File testOutputDirectory)
+            throws PluginScenarioException, PluginExecutionException {
+        WarmUnitTestRunner runner;
+        synchronized (this) {
+            if (warmUnitTestRunner == null) {
+                warmUnitTestRunner = new WarmUnitTestRunner();
+            }
+            runner = warmUnitTestRunner;
+        }
+        final Map<String, Set<String>> failedTests = new HashMap<String, Set<String>>();
+        WarmUnitTestRunner.Result result;
+        try {
+            result = runner.run(testClassPath, testOutputDirectory, getSelectedUnitTests(),
+                    new WarmUnitTestRunner.Listener() {
+                        @Override
+                        public void testFinished(String testClass, String test, String status, String message) {
+                            if ("FAILED".equals(status)) {
+                                error("Test " + testClass + "." + test + " failed: " + message);
+                                Set<String> failed = failedTests.get(testClass);
+                                if (failed == null) {
+                                    failed = new TreeSet<String>();
+                                    failedTests.put(testClass, failed);
+                                }
+                                failed.add(test);
+                            } else {
+                                debug("Test " + testClass + "." + test + ": " + status);
+                            }
+                        }
+
+                        @Override
+                        public void output(String line) {
+                            info(line);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new PluginExecutionException("Could not run the unit tests in the test JVM: " + e.getMessage(), e);
+        }
+        if (result.getError() != null) {
+            throw new PluginExecutionException("Could not run the unit tests: " + result.getError());
+        }
+        Map<String, Set<String>> outcomes = new LinkedHashMap<String, Set<String>>();
+        for (String testClass : result.getTestClasses()) {
+            Set<String> failed = failedTests.get(testClass);
+            outcomes.put(testClass, failed == null ? Collections.<String>emptySet() : failed);
+        }
+        recordTestOutcomes(outcomes);
+        info("Tests run: " + result.getTests() + ", Failures: " + result.getFailures() + ", Skipped: "
+                + result.getSkipped() + ", Time elapsed: " + result.getElapsedMillis() / 1000.0 + " s");
+        if (result.getFailures() > 0) {
+            throw new PluginScenarioException("There are unit test failures.");
+        }
+    }
+
+    /**
+     * Whether {@link #runIntegrationTests(IntegrationTestShard)} is implemented,
+     * so that the integration tests can run in shards at the same time.
+     * Defaults to false.
+     * 
+     * @return whether a shard of the integration tests can be run
+     */
+    protected boolean isIntegrationTestShardingSupported() {
+        return false;
+    }
+
+    /**
+     * Run a shard of the integration tests, at the same time as the other
+     * shards. Implementations run only the test classes of the shard, pass the
+     * host name and ports of the shard to the tests, and write the Surefire XML
+     * reports to the reports directory of the shard, which are merged into one
+     * report once all shards finish. They must also override
+     * {@link #isIntegrationTestShardingSupported()}. When newer tests cancel the
+     * run, the thread of each shard is interrupted, and implementations should
+     * then stop their tests and return or throw promptly.
+     * 
+     * @param shard the test classes to run and where to report their results
+     * @throws PluginScenarioException  if integration tests failed
+     * @throws PluginExecutionException if integration tests could not be run
+     */
+    protected void runIntegrationTests(IntegrationTestShard shard)
+            throws PluginScenarioException, PluginExecutionException {
+        throw new PluginExecutionException("Running the integration tests in shards is not supported.");
+    }
+
+    /**
+     * Whether {@link #runIntegrationTests()} only runs the
+     * {@link #getSelectedIntegrationTests() selected integration tests}, when
+     * there is a selection. Defaults to false.
+     * 
+     * @return whether the integration tests that run can be selected
+     */
+    protected boolean isIntegrationTestSelectionSupported() {
+        return false;
+    }
+
+    /**
+     * Run the integration tests, in shards if more than one shard is configured
+     * and supported, or else with {@link #runIntegrationTests()}. Selected
+     * integration tests run in shards whenever shards are supported, since a
+     * shard only runs its own test classes.
+     */
+    private void runAllIntegrationTests() throws PluginScenarioException, PluginExecutionException {
+        Set<String> selected = selectedIntegrationTests;
+        boolean shardingSupported = !gradle && testOutputDirectory != null && isIntegrationTestShardingSupported();
+        List<String> testClasses = Collections.emptyList();
+        if (shardingSupported && selected != null) {
+            testClasses = new ArrayList<String>(selected);
+        } else if (shardingSupported && integrationTestShards > 1) {
+            testClasses = getIntegrationTestClasses();
+        }
+        if (testClasses.isEmpty() || (selected == null && testClasses.size() < 2)) {
+            if (selected != null && !isIntegrationTestSelectionSupported()) {
+                warn("The selected integration test classes " + selected
+                        + " cannot be run on their own with this build. Running all integration tests.");
+            }
+            runIntegrationTests();
+            return;
+        }
+        IntegrationTestSharder sharder = getIntegrationTestSharder();
+        File reportsDirectory = getIntegrationTestReportsDirectory();
+        List<IntegrationTestShard> shards = sharder.plan(testClasses, Math.max(1, integrationTestShards),
+                testOutputDirectory,
+                reportsDirectory, hostName, httpPort, httpsPort);
+        try {
+            sharder.prepare(shards, reportsDirectory);
+        } catch (IOException e) {
+            throw new PluginExecutionException("Could not prepare the integration test reports directory "
+                    + reportsDirectory + ": " + e.getMessage(), e);
+        }
+        info("Running " + testClasses.size() + " integration test classes in " + shards.size() + " shards...");
+        List<IntegrationTestShard> parallel = new ArrayList<IntegrationTestShard>();
+        IntegrationTestShard serial = null;
+        for (IntegrationTestShard shard : shards) {
+            debug("Integration test shard " + shard.getIndex() + (shard.isSerial() ? " (serial)" : "") + ": "
+                    + shard.getTestClasses());
+            if (shard.isSerial()) {
+                serial = shard;
+            } else {
+                parallel.add(shard);
+            }
+        }
+
+        boolean failed = false;
+        PluginExecutionException executionException = null;
+        ExecutorService shardExecutor = Executors.newFixedThreadPool(Math.max(1, parallel.size()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "liberty-dev-it-shard");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final IntegrationTestShard shard : parallel) {
+                futures.add(shardExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runIntegrationTests(shard);
+                        return null;
+                    }
+                }));
+            }
+            // newer tests interrupt the wait, and the shards are stopped below
+            testScheduler.setInterruptible(true);
+            try {
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof PluginScenarioException) {
+                            debug(e.getCause());
+                            failed = true;
+                        } else if (executionException == null) {
+                            executionException = e.getCause() instanceof PluginExecutionException
+                                    ? (PluginExecutionException) e.getCause()
+                                    : new PluginExecutionException(e.getCause());
+                        }
+                    }
+                }
+            } finally {
+                testScheduler.setInterruptible(false);
+            }
+            if (testScheduler.isCancelled()) {
+                throw new PluginExecutionException("The integration tests were cancelled.");
+            }
+            // the tests that are not safe to run in parallel run alone
+            if (serial != null && executionException == null) {
+                try {
+                    runIntegrationTests(serial);
+                } catch (PluginScenarioException e) {
+                    debug(e);
+                    failed = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new PluginExecutionException("Interrupted while running the integration tests.", e);
+        } finally {
+            // stops the shards that are still running when the tests were cancelled
+            shardExecutor.shutdownNow();
+        }
+
+        IntegrationTestSharder.Report report;
+        try {
+            report = sharder.merge(shards, reportsDirectory);
+        } catch (IOException e) {
+            throw new PluginExecutionException("Could not merge the integration test reports: " + e.getMessage(), e);
+        }
+        try {
+            getTestOutcomes().recordReports(reportsDirectory, 0);
+        } catch (IOException e) {
+            debug("Could not record the outcomes of the integration tests", e);
+        }
+        if (executionException != null) {
+            throw executionException;
+        }
+        info("Integration tests run: " + report.getTests() + ", Failures: " + report.getFailures() + ", Errors: "
+                + report.getErrors() + ", Skipped: " + report.getSkipped() + ". The reports are in "
+                + reportsDirectory);
+        if (failed || report.getFailures() > 0 || report.getErrors() > 0) {
+            for (String failedTest : report.getFailedTests()) {
+                error("Failed integration test: " + failedTest);
+            }
+            throw new PluginScenarioException("There are integration test failures.");
+        }
+    }
+
+    /**
+     * Get the compiled test classes with the names Maven Failsafe includes by
+     * default.
+     */
+    private List<String> getIntegrationTestClasses() {
+        List<String> testClasses = new ArrayList<String>();
+        for (String testClass : testImpactAnalyzer.getTestClasses()) {
+            if (INTEGRATION_TEST_CLASS.matcher(testClass.substring(testClass.lastIndexOf('.') + 1)).matches()) {
+                testClasses.add(testClass);
+            }
+        }
+        return testClasses;
+    }
+
+    private synchronized IntegrationTestSharder getIntegrationTestSharder() {
+        if (integrationTestSharder == null) {
+            File file = integrationTestDurationsFile;
+            if (file == null) {
+                file = new File(outputDirectory.getAbsoluteFile().getParentFile(), ".liberty-dev-it-durations");
+            }
+            integrationTestSharder = new IntegrationTestSharder(file);
+        }
+        integrationTestSharder.setSerialPatterns(serialIntegrationTests);
+        integrationTestSharder.setSerialAnnotations(serialIntegrationTestAnnotations);
+        return integrationTestSharder;
+    }
+
+    private File getIntegrationTestReportsDirectory() {
+        if (integrationTestReportsDirectory != null) {
+            return integrationTestReportsDirectory;
+        }
+        return new File(outputDirectory.getAbsoluteFile().getParentFile(), "liberty-dev-it-reports");
+    }
+
+    private void recordTestOutcomes(Map<String, ? extends Collection<String>> outcomes) {
+        try {
+            getTestOutcomes().record(outcomes);
+        } catch (IOException e) {
+            debug("Could not record the test outcomes", e);
+        }
+    }
+
+    /**
+     * Record the outcomes in the test reports that were written since the tests
+     * started.
+     */
+    private void recordTestReports(long startMillis) {
+        // file times can have a resolution of one second
+        long modifiedSince = startMillis - startMillis % 1000;
+        for (File reportsDirectory : testReportsDirectories) {
+            try {
+                getTestOutcomes().recordReports(reportsDirectory, modifiedSince);
+            } catch (IOException e) {
+                debug("Could not record the test outcomes in " + reportsDirectory, e);
             }
         }
     }
 
+    private void stopWarmUnitTestRunner() {
+        WarmUnitTestRunner runner = warmUnitTestRunner;
+        if (runner != null) {
+            runner.close();
+        }
+    }
+
+    /**
+     * @return whether tests are running, waiting to run, or being cancelled
+     */
+    public TestScheduler.State getTestState() {
+        return testScheduler.getState();
+    }
+
     /**
      * Get the number of times the application updated message has appeared in the
      * application log
@@ -482,10 +943,8 @@ public abstract class DevUtil {
         int messageOccurrences = -1;
         if (!(skipTests || skipITs)) {
             try {
-                ServerTask serverTask = getServerTask();
-                File logFile = getMessagesLogFile(serverTask);
                 String regexp = UPDATED_APP_MESSAGE_REGEXP + applicationId;
-                messageOccurrences = serverTask.countStringOccurrencesInFile(regexp, logFile);
+                messageOccurrences = getLogTailer(getMessagesLogFile(getServerTask())).count(regexp);
                 debug("Message occurrences before compile: " + messageOccurrences);
             } catch (Exception e) {
                 debug("Failed to get message occurrences before compile", e);
@@ -510,6 +969,45 @@ public abstract class DevUtil {
         return logFile;
     }
 
+    /**
+     * Get the tailer that follows the messages log, starting one if the log
+     * changed or none was started yet.
+     * 
+     * @param logFile the messages log file
+     * @return the tailer
+     */
+    private synchronized MessagesLogTailer getLogTailer(File logFile) {
+        if (logTailer == null || !logTailer.getLogFile().equals(getCanonicalLogFile(logFile))) {
+            startLogTailer(logFile);
+        }
+        return logTailer;
+    }
+
+    /**
+     * Start following a messages log from its start, replacing the tailer of a
+     * previous server run.
+     */
+    private synchronized void startLogTailer(File logFile) {
+        stopLogTailer();
+        logTailer = new MessagesLogTailer(getCanonicalLogFile(logFile));
+        logTailer.start();
+    }
+
+    private static File getCanonicalLogFile(File logFile) {
+        try {
+            return logFile.getCanonicalFile();
+        } catch (IOException e) {
+            return logFile.getAbsoluteFile();
+        }
+    }
+
+    private synchronized void stopLogTailer() {
+        if (logTailer != null) {
+            logTailer.close();
+            logTailer = null;
+        }
+    }
+
     /**
      * Start the server and keep it running in a background thread.
      * 
@@ -665,9 +1163,16 @@ public abstract class DevUtil {
                 serverStartTimeout = 90;
             }
             long serverStartTimeoutMillis = serverStartTimeout * 1000;
+            // follow the messages.log of this server run
+            startLogTailer(messagesLogFile);
+            MessagesLogTailer tailer = logTailer;
             // Wait for the server started message in messages.log
-            String startMessage = serverTask.waitForStringInLog(START_SERVER_MESSAGE_PREFIX, serverStartTimeoutMillis,
-                    messagesLogFile);
+            String startMessage = null;
+            try {
+                startMessage = tailer.waitFor(START_SERVER_MESSAGE_PREFIX, 1, serverStartTimeoutMillis);
+            } catch (InterruptedException e) {
+                debug("Thread interrupted while waiting for the server to start.", e);
+            }
             if (startMessage == null) {
                 setDevStop(true);
                 if (container) {
@@ -680,12 +1185,12 @@ public abstract class DevUtil {
                         "For example, " + getServerStartTimeoutExample());
             }
             // Check for port already in use error
-            String portError = serverTask.findStringInFile(PORT_IN_USE_MESSAGE_PREFIX, messagesLogFile);
+            String portError = tailer.find(PORT_IN_USE_MESSAGE_PREFIX);
             if (portError != null) {
                 error(portError.split(PORT_IN_USE_MESSAGE_PREFIX)[1]);
             }
             // Parse hostname, http, https ports for integration tests to use
-            parseHostNameAndPorts(serverTask, messagesLogFile);
+            parseHostNameAndPorts(tailer);
         } catch (IOException e) {
             throw new PluginExecutionException("An error occurred while starting the server: " + e.getMessage(), e);
         }
@@ -1160,17 +1665,15 @@ public abstract class DevUtil {
         info("The server has been restarted.");
     }
 
-    private void parseHostNameAndPorts(final ServerTask serverTask, File messagesLogFile)
-            throws PluginExecutionException {
-        String webAppMessage = serverTask.findStringInFile(WEB_APP_AVAILABLE_MESSAGE_PREFIX, messagesLogFile);
+    private void parseHostNameAndPorts(MessagesLogTailer tailer) throws PluginExecutionException {
+        String webAppMessage = tailer.find(WEB_APP_AVAILABLE_MESSAGE_PREFIX);
         debug("Web app available message: " + webAppMessage);
         if (webAppMessage != null) {
             int portPrefixIndex = parseHostName(webAppMessage);
             parseHttpPort(webAppMessage, portPrefixIndex);
         }
-        List<String> listeningOnPortMessages = serverTask.findStringsInFile(LISTENING_ON_PORT_MESSAGE_PREFIX,
-                messagesLogFile);
-        if (listeningOnPortMessages != null) {
+        List<String> listeningOnPortMessages = tailer.getMatches(LISTENING_ON_PORT_MESSAGE_PREFIX);
+        if (!listeningOnPortMessages.isEmpty()) {
             parseHttpsPort(listeningOnPortMessages);
         }
     }
@@ -1336,9 +1839,11 @@ public abstract class DevUtil {
     private void runShutdownHook(final ThreadPoolExecutor executor) {
         if (!calledShutdownHook.getAndSet(true)) {
 
-            if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
-                disablePolling();
-            }
+            pollingScanner.close();
+            writeLoopMetrics();
+            saveCompileState();
+            closeCompilerService();
+            classPathResolver.close();
 
             setDevStop(true);
             cleanUpTempConfig();
@@ -1361,19 +1866,44 @@ public abstract class DevUtil {
         }
     }
 
-    private void disablePolling() {
-        synchronized (newFileObservers) {
-            consolidateFileObservers();
-            for (FileAlterationObserver observer : fileObservers) {
-                try {
-                    observer.destroy();
-                } catch (Exception e) {
-                    debug("Could not destroy file observer", e);
-                }
+    private synchronized JavaCompilerService getCompilerService() {
+        if (compilerService == null) {
+            compilerService = new JavaCompilerService();
+        }
+        return compilerService;
+    }
+
+    private synchronized void closeCompilerService() {
+        if (compilerService != null) {
+            try {
+                compilerService.close();
+            } catch (IOException e) {
+                debug("Could not close the Java compiler", e);
             }
         }
     }
 
+    /**
+     * Load the compiler and index the class path in the background, so that the
+     * first compile after startup does not pay for it.
+     */
+    private void prewarmCompiler(final File outputDirectory, final List<String> artifactPaths) {
+        if (useBuildRecompile || outputDirectory == null || artifactPaths == null) {
+            return;
+        }
+        getCompilerService().prewarm(new Callable<Collection<File>>() {
+            @Override
+            public Collection<File> call() throws Exception {
+                return getClassPath(artifactPaths, Collections.singletonList(outputDirectory));
+            }
+        });
+    }
+
+    private void disablePolling() {
+        // keep polling the trees that could not be registered with the file watcher
+        pollingScanner.retainFallbackRoots();
+    }
+
     /**
      * Gets a map of the environment variables to set for debug mode.
      * 
@@ -1531,6 +2061,10 @@ public abstract class DevUtil {
                         } else {
                             info("Press the Enter key to run tests on demand. To stop the server and quit dev mode, use Ctrl-C or type 'q' and press the Enter key.");
                         }
+                        if (startedNewHotkeyReader) {
+                            info("To print how long each stage of the dev loop takes, type 't' and press the Enter key.");
+                            info("To run only the tests that failed in the last run, type 'f' and press the Enter key. To run them first and then the other tests, type 'ff'.");
+                        }
                     } else {
                         debug("Cannot read user input, setting hotTests to true.");
                         info("Tests will run automatically when changes are detected.");
@@ -1582,6 +2116,15 @@ public abstract class DevUtil {
                             || line.trim().equalsIgnoreCase("exit"))) {
                         debug("Detected exit command");
                         runShutdownHook(executor);
+                    } else if (line != null && (line.trim().equalsIgnoreCase("t")
+                            || line.trim().equalsIgnoreCase("timings"))) {
+                        printLoopMetrics();
+                    } else if (line != null && line.trim().equalsIgnoreCase("f")) {
+                        debug("Detected failed tests command. Running the tests that failed...");
+                        runTestThread(false, executor, -1, false, true, null, TestScheduler.FailedTests.ONLY);
+                    } else if (line != null && line.trim().equalsIgnoreCase("ff")) {
+                        debug("Detected failed first command. Running the tests that failed, then the others...");
+                        runTestThread(false, executor, -1, false, true, null, TestScheduler.FailedTests.FIRST);
                     } else {
                         debug("Detected Enter key. Running tests...");
                         runTestThread(false, executor, -1, false, true);
@@ -1604,9 +2147,21 @@ public abstract class DevUtil {
     Collection<File> failedCompilationJavaTests;
     long lastJavaSourceChange;
     long lastJavaTestChange;
+    /** incremented on every Java file change, to tell whether a speculative compile is current */
+    long javaChangeGeneration;
+    long speculatedGeneration;
+    /** the source and test compiles running on the compile executor */
+    private Future<?> sourceCompile;
+    private Future<?> testCompile;
+    private final AtomicInteger compileJobs = new AtomicInteger();
+    /** the watch loop thread while it is in a wait that a finished compile interrupts */
+    private Thread waitingWatchLoop;
+    private final Object watchLoopLock = new Object();
+    private ExecutorService compileExecutor;
     boolean triggerJavaSourceRecompile;
     boolean triggerJavaTestRecompile;
     File outputDirectory;
+    File testOutputDirectory;
     File serverXmlFile;
     File serverXmlFileParent;
     File bootstrapPropertiesFile;
@@ -1616,6 +2171,7 @@ public abstract class DevUtil {
     File buildFile;
     List<String> artifactPaths;
     WatchService watcher;
+    private volatile PathClassifier pathClassifier;
 
     // The serverXmlFile parameter can be null when using the server.xml from the
     // configDirectory, which has a default value.
@@ -1624,6 +2180,7 @@ public abstract class DevUtil {
             File bootstrapPropertiesFile, File jvmOptionsFile) throws Exception {
         this.buildFile = buildFile;
         this.outputDirectory = outputDirectory;
+        this.testOutputDirectory = testOutputDirectory;
         this.serverXmlFile = serverXmlFile;
         this.bootstrapPropertiesFile = bootstrapPropertiesFile;
         this.jvmOptionsFile = jvmOptionsFile;
@@ -1631,6 +2188,7 @@ public abstract class DevUtil {
 
         try {
             watcher = FileSystems.getDefault().newWatchService();
+            watchManager = new WatchRegistrationManager(watcher, maxFileWatches);
             serverXmlFileParent = null;
             if (serverXmlFile != null && serverXmlFile.exists()) {
                 serverXmlFileParent = serverXmlFile.getParentFile();
@@ -1650,6 +2208,10 @@ public abstract class DevUtil {
             Path testSrcPath = this.testSourceDirectory.getCanonicalFile().toPath();
             Path configPath = this.configDirectory.getCanonicalFile().toPath();
 
+            // record file contents before watching, so rewrites with identical content are ignored
+            recordFingerprints();
+            prewarmCompiler(outputDirectory, artifactPaths);
+
             boolean sourceDirRegistered = false;
             boolean testSourceDirRegistered = false;
             boolean configDirRegistered = false;
@@ -1657,36 +2219,39 @@ public abstract class DevUtil {
             boolean bootstrapPropertiesFileRegistered = false;
             boolean jvmOptionsFileRegistered = false;
 
+            // roots to register at startup, which are registered concurrently
+            List<Path> startupRoots = new ArrayList<Path>();
+
             if (this.sourceDirectory.exists()) {
-                registerAll(srcPath, executor);
+                startupRoots.add(srcPath);
                 sourceDirRegistered = true;
             }
 
             if (this.testSourceDirectory.exists()) {
-                registerAll(testSrcPath, executor);
+                startupRoots.add(testSrcPath);
                 testSourceDirRegistered = true;
             }
 
             if (this.configDirectory.exists()) {
-                registerAll(configPath, executor);
+                startupRoots.add(configPath);
                 configDirRegistered = true;
             }
 
             if (serverXmlFile != null && serverXmlFile.exists() && serverXmlFileParent.exists()) {
                 Path serverXmlFilePath = serverXmlFileParent.getCanonicalFile().toPath();
-                registerAll(serverXmlFilePath, executor);
+                startupRoots.add(serverXmlFilePath);
                 serverXmlFileRegistered = true;
             }
 
             if (bootstrapPropertiesFile != null && bootstrapPropertiesFile.exists() && bootstrapPropertiesFileParent.exists()) {
                 Path bootstrapPropertiesFilePath = bootstrapPropertiesFileParent.getCanonicalFile().toPath();
-                registerAll(bootstrapPropertiesFilePath, executor);
+                startupRoots.add(bootstrapPropertiesFilePath);
                 bootstrapPropertiesFileRegistered = true;
             }
 
             if (jvmOptionsFile != null && jvmOptionsFile.exists() && jvmOptionsFileParent.exists()) {
                 Path jvmOptionsFilePath = jvmOptionsFileParent.getCanonicalFile().toPath();
-                registerAll(jvmOptionsFilePath, executor);
+                startupRoots.add(jvmOptionsFilePath);
                 jvmOptionsFileRegistered = true;
             }
 
@@ -1694,11 +2259,13 @@ public abstract class DevUtil {
             for (File resourceDir : resourceDirs) {
                 resourceMap.put(resourceDir, false);
                 if (resourceDir.exists()) {
-                    registerAll(resourceDir.getCanonicalFile().toPath(), executor);
+                    startupRoots.add(resourceDir.getCanonicalFile().toPath());
                     resourceMap.put(resourceDir, true);
                 }
             }
 
+            registerRoots(startupRoots, executor);
+
             registerSingleFile(buildFile, executor);
 
             if (propertyFilesMap != null) {
@@ -1707,7 +2274,11 @@ public abstract class DevUtil {
                 }
             }
 
-            initWatchLoop();
+            reportWatchRegistration();
+            buildPathClassifier();
+            startBackendProbes(startupRoots);
+
+            initWatchLoop(outputDirectory, testOutputDirectory);
 
             while (true) {
                 // Check the server and stop dev mode by throwing an exception if the server stopped.
@@ -1791,59 +2362,85 @@ public abstract class DevUtil {
 
                 if (trackingMode == FileTrackMode.FILE_WATCHER || trackingMode == FileTrackMode.NOT_SET) {
                     try {
-                        final WatchKey wk = watcher.poll(100, TimeUnit.MILLISECONDS);
-                        final Watchable watchable = wk.watchable();
-                        final Path directory = (Path) watchable;
+                        final WatchKey wk;
+                        // a compile that finishes interrupts the wait, so its pipeline can take the next changes
+                        setWatchLoopInterruptible(true);
+                        try {
+                            wk = watcher.poll(Math.min(100, getJavaCompilationWaitMillis()), TimeUnit.MILLISECONDS);
+                        } finally {
+                            setWatchLoopInterruptible(false);
+                        }
+                        if (wk != null) {
+                            final Watchable watchable = wk.watchable();
+                            final Path directory = (Path) watchable;
 
-                        List<WatchEvent<?>> events = wk.pollEvents();
+                            List<WatchEvent<?>> events = wk.pollEvents();
 
-                        for (WatchEvent<?> event : events) {
-                            if (trackingMode == FileTrackMode.NOT_SET) {
-                                trackingMode = FileTrackMode.FILE_WATCHER;
-                                disablePolling();
-                            }
-                            final Path changed = (Path) event.context();
-                            debug("Processing events for watched directory: " + directory);
+                            for (WatchEvent<?> event : events) {
+                                final Path changed = (Path) event.context();
+                                if (backendProbe != null && backendProbe.onWatchEvent(directory.resolve(changed))) {
+                                    // canary created by the watch backend probe
+                                    continue;
+                                }
+                                debug("Processing events for watched directory: " + directory);
 
-                            File fileChanged = new File(directory.toString(), changed.toString());
-                            if (ignoreFileOrDir(fileChanged)) {
-                                // skip this file or directory, and continue to the next file or directory
-                                continue;
+                                File fileChanged = new File(directory.toString(), changed.toString());
+                                if (ignoreFileOrDir(fileChanged)) {
+                                    // skip this file or directory, and continue to the next file or directory
+                                    continue;
+                                }
+                                debug("Changed: " + changed + "; " + event.kind());
+
+                                ChangeType changeType = null;
+                                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                    changeType = ChangeType.CREATE;
+                                } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                                    changeType = ChangeType.MODIFY;
+                                } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                                    changeType = ChangeType.DELETE;
+                                }
+                                fileChangeBus.publish(fileChanged, false, changeType);
                             }
-                            debug("Changed: " + changed + "; " + event.kind());
-
-                            ChangeType changeType = null;
-                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
-                                changeType = ChangeType.CREATE;
-                            } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
-                                changeType = ChangeType.MODIFY;
-                            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-                                changeType = ChangeType.DELETE;
+                            // reset the key
+                            boolean valid = wk.reset();
+                            if (!valid) {
+                                debug("WatchService key has been unregistered for " + directory);
                             }
-                            processFileChanges(executor, fileChanged, outputDirectory, false, changeType);
-
-                        }
-                        // reset the key
-                        boolean valid = wk.reset();
-                        if (!valid) {
-                            debug("WatchService key has been unregistered for " + directory);
                         }
                     } catch (InterruptedException | NullPointerException e) {
                         // do nothing let loop continue
                     }
                 }
-                if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
-                    synchronized (newFileObservers) {
-                        consolidateFileObservers();
+                if (backendProbe != null) {
+                    backendProbe.tick();
+                    if (trackingMode == FileTrackMode.NOT_SET && !backendProbe.isPending()) {
+                        // every root has a backend now, so stop polling the roots that get native events
+                        trackingMode = FileTrackMode.FILE_WATCHER;
+                        disablePolling();
                     }
-                    // iterate through file observers
-                    for (FileAlterationObserver observer : fileObservers) {
-                        observer.checkAndNotify();
+                }
+                // scan polled directories, including subtrees that could not be watched within the watch limit
+                pollingScanner.scanIfDue();
+                if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
+                    setWatchLoopInterruptible(true);
+                    try {
+                        Thread.sleep(Math.min(pollingInterval, getJavaCompilationWaitMillis()));
+                    } catch (InterruptedException e) {
+                        // woken up by a compile that finished
+                    } finally {
+                        setWatchLoopInterruptible(false);
                     }
-                    Thread.sleep(pollingInterval);
                 }
+
+                processFileChangeBatch(executor, fileChangeBus.drain());
             }
         } finally {
+            shutdownCompileExecutor();
+            stopLogTailer();
+            stopWarmUnitTestRunner();
+            if (backendProbe != null) {
+                backendProbe.close();
+            }
             if (watcher != null) {
                 try {
                     watcher.close();
@@ -1855,218 +2452,660 @@ public abstract class DevUtil {
     }
 
     /**
-     * Consolidate new file observers into the main observers set
+     * Log how many directories are watched, how long registration took, and
+     * which directory trees are polled because the watch limit was reached.
      */
-    private void consolidateFileObservers() {
-        fileObservers.addAll(newFileObservers);
-        newFileObservers.removeAll(newFileObservers);
+    private void reportWatchRegistration() {
+        if (trackingMode == FileTrackMode.POLLING) {
+            return;
+        }
+        int budget = watchManager.getBudget();
+        debug("Registered " + watchManager.getWatchCount() + " directories with the file watcher in "
+                + watchManager.getRegistrationMillis() + " ms"
+                + (budget == Integer.MAX_VALUE ? "" : " (limit " + budget + ")"));
+        for (WatchRegistrationManager.RootRegistration registration : watchManager.getRootRegistrations()) {
+            debug("  " + registration.getRoot() + ": " + registration.getDirectories() + " directories, "
+                    + registration.getMillis() + " ms");
+        }
+        List<Path> pollingRoots = watchManager.getPollingRoots();
+        if (!pollingRoots.isEmpty()) {
+            warn("The limit of " + budget + " watched directories was reached. The following " + pollingRoots.size()
+                    + " directory trees will be polled for changes instead: " + pollingRoots
+                    + ". On Linux, you can increase the fs.inotify.max_user_watches system setting to watch more directories.");
+        }
     }
 
-    private void registerSingleFile(final File registerFile, final ThreadPoolExecutor executor) throws IOException {
-        if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
-            String parentPath = registerFile.getParentFile().getCanonicalPath();
-
-            debug("Registering single file polling for " + registerFile.toString());
-
-            // synchronize on the new observer set since only those are being updated in separate threads
-            synchronized (newFileObservers) {
-                Set<FileAlterationObserver> tempCombinedObservers = new HashSet<FileAlterationObserver>();
-                tempCombinedObservers.addAll(fileObservers);
-                tempCombinedObservers.addAll(newFileObservers);
-
-                // if this path is already observed, ignore it
-                for (FileAlterationObserver observer : tempCombinedObservers) {
-                    if (parentPath.equals(observer.getDirectory().getCanonicalPath())) {
-                        debug("Skipping single file polling for " + registerFile.toString() + " since its parent directory is already being observed");
-                        return;
-                    }
+    /**
+     * Check whether the file watcher delivers events for each watched root, by
+     * creating a canary in the root. Until every root has a result, both the
+     * file watcher and polling are used.
+     * 
+     * @param roots the directory trees registered at startup
+     * @throws IOException unable to resolve canonical path
+     */
+    private void startBackendProbes(List<Path> roots) throws IOException {
+        if (trackingMode != FileTrackMode.NOT_SET) {
+            return;
+        }
+        probeRoots.clear();
+        for (Path root : roots) {
+            probeRoots.put(root, true);
+        }
+        // directories of individually watched files
+        List<File> singleFiles = new ArrayList<File>();
+        singleFiles.add(buildFile);
+        if (propertyFilesMap != null) {
+            singleFiles.addAll(propertyFilesMap.keySet());
+        }
+        for (File file : singleFiles) {
+            if (file != null && file.getParentFile() != null) {
+                Path parent = file.getParentFile().getCanonicalFile().toPath();
+                if (!probeRoots.containsKey(parent)) {
+                    probeRoots.put(parent, false);
                 }
+            }
+        }
 
-                FileFilter singleFileFilter = new FileFilter() {
-                    @Override
-                    public boolean accept(File file) {
-                        try {
-                            if (file.getCanonicalFile().equals(registerFile.getCanonicalFile())) {
-                                return true;
-                            }
-                        } catch (IOException e) {
-                            if (file.equals(registerFile)) {
-                                return true;
-                            }
-                        }
-                        return false;
-                    }
-                };
+        backendProbe = new WatchBackendProbe(new WatchBackendProbe.Listener() {
+            @Override
+            public void onResult(Path root, boolean nativeEvents, long latencyMillis, boolean recheck) {
+                onBackendProbeResult(root, nativeEvents, latencyMillis, recheck);
+            }
+        }, WATCH_PROBE_TIMEOUT_MILLIS, WATCH_PROBE_RECHECK_MILLIS);
+        for (Path root : probeRoots.keySet()) {
+            WatchBackendProbe.deleteStaleCanaries(root);
+            if (watchManager.isPolled(root)) {
+                // already polled because of the watch limit
+                continue;
+            }
+            debug("Checking file change notifications for " + root);
+            backendProbe.probe(root);
+        }
+    }
 
+    private void onBackendProbeResult(Path root, boolean nativeEvents, long latencyMillis, boolean recheck) {
+        boolean recursive = Boolean.TRUE.equals(probeRoots.get(root));
+        if (nativeEvents && !recheck) {
+            debug("Using file change notifications for " + root + " (event received after " + latencyMillis + " ms)");
+        } else if (nativeEvents) {
+            info("File change notifications are now received for " + root + ". It will no longer be polled.");
+            pollingScanner.removeRoot(root.toFile());
+            if (recursive) {
+                watchManager.removePollingRoot(root);
                 try {
-                    debug("Adding single file observer for: " + registerFile.toString());
-                    addFileAlterationObserver(executor, parentPath, singleFileFilter);
-                } catch (Exception e) {
-                    error("Could not observe single file " + registerFile.toString(), e);
+                    // register any directories that were created while the root was polled
+                    registerTree(root);
+                } catch (IOException e) {
+                    debug("Could not register " + root + " with the file watcher", e);
                 }
             }
+        } else {
+            info("File change notifications were not received for " + root + " within " + WATCH_PROBE_TIMEOUT_MILLIS
+                    + " ms. It will be polled for changes.");
+            pollingScanner.markFallback(root.toFile());
+            if (recursive) {
+                watchManager.addPollingRoot(root);
+            }
         }
-        if (trackingMode == FileTrackMode.FILE_WATCHER || trackingMode == FileTrackMode.NOT_SET) {
-            debug("Adding directory to WatchService " + registerFile.getParentFile().toPath() + " for single file " + registerFile.getName());
-            registerFile.getParentFile().toPath().register(
-                watcher, new WatchEvent.Kind[] { StandardWatchEventKinds.ENTRY_MODIFY,
-                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_CREATE },
-                SensitivityWatchEventModifier.HIGH);
-        }
-    }
-
-    private void addFileAlterationObserver(final ThreadPoolExecutor executor, String parentPath, FileFilter filter)
-            throws Exception {
-        FileAlterationObserver observer = getFileAlterationObserver(executor, parentPath, filter);
-        observer.initialize();
-        newFileObservers.add(observer);
     }
 
-    private FileAlterationObserver getFileAlterationObserver(final ThreadPoolExecutor executor, final String parentPath, FileFilter filter) {
-        FileAlterationObserver observer = new FileAlterationObserver(parentPath, filter);
-        observer.addListener(new FileAlterationListenerAdaptor() {
-            @Override
-            public void onDirectoryCreate(File file) {
-                onAlteration(executor, parentPath, file, true, ChangeType.CREATE);
+    /**
+     * Poll a directory tree, or a single file if a filter is specified, for
+     * changes because it could not be registered with the WatchService.
+     * 
+     * @param root   the directory to poll
+     * @param filter the file filter, or null to poll the entire tree
+     */
+    private void addPollingFallback(Path root, FileFilter filter) {
+        if (pollingScanner.addRoot(root.toFile(), filter, filter == null, true)) {
+            if (filter == null) {
+                watchManager.addPollingRoot(root);
             }
+            debug("Polling for changes in " + root + " since it could not be registered with the file watcher");
+        }
+    }
 
-            @Override
-            public void onDirectoryDelete(File file) {
-                onAlteration(executor, parentPath, file, true, ChangeType.DELETE);
+    /**
+     * Get the watch priority for a directory. Resource directories can contain
+     * large static trees, so they are registered after everything else and
+     * cannot use up the entire watch budget.
+     * 
+     * @param dir the directory
+     * @return the priority of the directory
+     * @throws IOException unable to resolve canonical path
+     */
+    private WatchPriority getWatchPriority(Path dir) throws IOException {
+        if (resourceDirs != null) {
+            for (File resourceDir : resourceDirs) {
+                if (dir.startsWith(resourceDir.getCanonicalFile().toPath())) {
+                    return WatchPriority.LOW;
+                }
             }
+        }
+        return WatchPriority.HIGH;
+    }
 
+    private void registerSingleFile(final File registerFile, final ThreadPoolExecutor executor) throws IOException {
+        final String fileName = registerFile.getName();
+        FileFilter singleFileFilter = new FileFilter() {
             @Override
-            public void onDirectoryChange(File file) {
-                onAlteration(executor, parentPath, file, true, ChangeType.MODIFY);
+            public boolean accept(File file) {
+                return file.getName().equals(fileName);
             }
-
-            @Override
-            public void onFileCreate(File file) {
-                onAlteration(executor, parentPath, file, false, ChangeType.CREATE);
+        };
+        if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
+            debug("Registering single file polling for " + registerFile.toString());
+            if (!pollingScanner.addRoot(registerFile.getParentFile().getCanonicalFile(), singleFileFilter, false, false)) {
+                debug("Skipping single file polling for " + registerFile.toString() + " since its parent directory is already being polled");
             }
-
-            @Override
-            public void onFileDelete(File file) {
-                onAlteration(executor, parentPath, file, false, ChangeType.DELETE);
+        }
+        if (trackingMode == FileTrackMode.FILE_WATCHER || trackingMode == FileTrackMode.NOT_SET) {
+            Path parent = registerFile.getParentFile().toPath();
+            if (watchManager.isPolled(registerFile.getParentFile().getCanonicalFile().toPath())) {
+                debug("Skipping WatchService for single file " + registerFile.getName() + " since its parent directory is already being polled");
+                return;
             }
-
-            @Override
-            public void onFileChange(File file) {
-                onAlteration(executor, parentPath, file, false, ChangeType.MODIFY);
+            debug("Adding directory to WatchService " + parent + " for single file " + registerFile.getName());
+            if (!watchManager.register(parent, WatchPriority.HIGH)) {
+                addPollingFallback(registerFile.getParentFile().getCanonicalFile().toPath(), singleFileFilter);
             }
+        }
+    }
 
-            private void onAlteration(final ThreadPoolExecutor executor, final String parentPath, File file,
-                    boolean isDirectory, ChangeType changeType) {
-                if (trackingMode == FileTrackMode.NOT_SET) {
-                    try {
-                        WatchKey wk = null;
-                        if (watcher != null) {
-                            wk = watcher.poll(100, TimeUnit.MILLISECONDS);
-                        }
-                        List<WatchEvent<?>> events = null;
-                        if (wk != null) {
-                            events = wk.pollEvents();
-                        }
-                        if ((events == null) || events.isEmpty()) {
-                            trackingMode = FileTrackMode.POLLING;
-                            if (watcher != null) {
-                                watcher.close();
-                            }
-                        } else {
-                            trackingMode = FileTrackMode.FILE_WATCHER;
-                            disablePolling();
-                        }
-                    } catch (Exception e) {
-                        error("An error occured attempting to retrieve the watch key or close the file watcher. " + e.getMessage(), e);
-                    }
+    /**
+     * Process a batch of coalesced file changes in the order they were first
+     * detected. The changes of a change storm are processed as one transaction,
+     * so that the config sync, redeploy or restart, and test run happen once for
+     * the whole batch. A change that fails is reported and does not stop the
+     * rest of the batch.
+     * 
+     * @param executor the test thread executor
+     * @param batch    the coalesced file changes
+     * @throws IOException              unable to copy the config files of a
+     *                                  change storm
+     * @throws PluginExecutionException if the application could not be
+     *                                  redeployed or the server restarted after
+     *                                  a change storm
+     */
+    private void processFileChangeBatch(final ThreadPoolExecutor executor, FileChangeBus.Batch batch)
+            throws IOException, PluginExecutionException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        debug("Processing " + batch.size() + " coalesced file changes");
+        if (batch.isStorm()) {
+            info("Detected changes to " + batch.size() + " files. Applying them as a single update.");
+            changeTransaction = new ChangeTransaction(countApplicationUpdatedMessages());
+        }
+        long testJobsBefore = queuedTestJobs.get();
+        try {
+            for (FileChangeBus.FileChangeEvent event : batch.getEvents()) {
+                if (event.getRawEvents() > 1) {
+                    debug("Coalesced file change: " + event);
+                }
+                if (event.getChangeType() == ChangeType.DELETE) {
+                    fingerprintCache.remove(event.getFile());
+                    loopMetrics.changeDetected(0, event.getFirstSeen());
+                } else if (!event.isDirectory() && fingerprintCache.isUnchanged(event.getFile())) {
+                    debug("Skipping " + event.getFile() + " since its content did not change");
+                    continue;
+                } else {
+                    loopMetrics.changeDetected(event.getFile().lastModified(), event.getFirstSeen());
                 }
                 try {
-                    processFileChanges(executor, file, outputDirectory, isDirectory, changeType);
-                } catch(Exception e) {
+                    processFileChanges(executor, event.getFile(), outputDirectory, event.isDirectory(),
+                            event.getChangeType());
+                } catch (Exception e) {
+                    // report the failed change and continue with the rest of the batch
                     debug(e);
-                    error("Could not file process changes for " + file.getAbsolutePath() + ": " + e.getMessage());
+                    error("Could not file process changes for " + event.getFile().getAbsolutePath() + ": "
+                            + e.getMessage());
                 }
             }
-        });
-        return observer;
+        } finally {
+            if (changeTransaction != null) {
+                ChangeTransaction transaction = changeTransaction;
+                changeTransaction = null;
+                commitChangeTransaction(executor, transaction);
+            }
+            endCycleIfDone(testJobsBefore);
+        }
+    }
+
+    /**
+     * End the change cycle unless Java files are waiting to be compiled or are
+     * being compiled, or tests were queued since the given count, in which case
+     * the compile or the tests end it.
+     */
+    private void endCycleIfDone(long testJobsBefore) {
+        if (recompileJavaSources.isEmpty() && deleteJavaSources.isEmpty() && recompileJavaTests.isEmpty()
+                && deleteJavaTests.isEmpty() && compileJobs.get() == 0 && queuedTestJobs.get() == testJobsBefore) {
+            loopMetrics.endCycle();
+        }
+    }
+
+    /**
+     * Apply the deferred actions of a change storm.
+     * 
+     * @param executor    the test thread executor
+     * @param transaction the deferred actions
+     * @throws IOException              unable to copy config files
+     * @throws PluginExecutionException if the application could not be
+     *                                  redeployed or the server restarted
+     */
+    private void commitChangeTransaction(final ThreadPoolExecutor executor, ChangeTransaction transaction)
+            throws IOException, PluginExecutionException {
+        if (!transaction.configChanges.isEmpty()) {
+            copyConfigFolder(transaction.configChanges);
+            for (ConfigChange configChange : transaction.configChanges) {
+                copyFile(configChange.file, configChange.srcDir, serverDirectory, configChange.targetFileName);
+            }
+        }
+        if (transaction.enableServerDebug) {
+            // re-enable debug variables in server.env
+            enableServerDebug(false);
+        }
+        if (transaction.restartServer) {
+            restartServer();
+        } else if (transaction.redeployApp) {
+            redeployApp();
+        }
+        if (transaction.runTests) {
+            if (!recompileJavaSources.isEmpty() || !deleteJavaSources.isEmpty()) {
+                // the source compile for this batch runs the tests once it is done
+                debug("Tests will run after the Java sources from this batch are compiled");
+            } else {
+                runTestThread(true, executor, transaction.messageOccurrences, transaction.forceSkipUTs, false,
+                        transaction.testChanges);
+            }
+        }
+    }
+
+    /**
+     * Copy a changed config file to the server, or defer it to the end of the
+     * current change storm.
+     */
+    private void syncConfigFile(File fileChanged, File srcDir, String targetFileName) throws IOException {
+        if (changeTransaction != null) {
+            changeTransaction.configChanges.add(new ConfigChange(fileChanged, srcDir, targetFileName));
+        } else {
+            copyConfigFolder(fileChanged, srcDir, targetFileName);
+            copyFile(fileChanged, srcDir, serverDirectory, targetFileName);
+        }
+    }
+
+    private void requestRedeploy() throws PluginExecutionException {
+        if (changeTransaction != null) {
+            changeTransaction.redeployApp = true;
+        } else {
+            redeployApp();
+        }
+    }
+
+    private void requestRestart() throws PluginExecutionException {
+        if (changeTransaction != null) {
+            changeTransaction.restartServer = true;
+        } else {
+            restartServer();
+        }
+    }
+
+    private void requestServerDebug() throws IOException {
+        if (changeTransaction != null) {
+            changeTransaction.enableServerDebug = true;
+        } else {
+            // re-enable debug variables in server.env
+            enableServerDebug(false);
+        }
+    }
+
+    private void requestTests(ThreadPoolExecutor executor, int messageOccurrences, boolean forceSkipUTs) {
+        // changes that skip the unit tests do not affect any of them
+        requestTests(executor, messageOccurrences, forceSkipUTs,
+                forceSkipUTs ? Collections.<String>emptySet() : null);
+    }
+
+    private void requestTests(ThreadPoolExecutor executor, int messageOccurrences, boolean forceSkipUTs,
+            Collection<String> changes) {
+        if (changeTransaction != null) {
+            changeTransaction.runTests = true;
+            // only skip unit tests if none of the changes need them
+            changeTransaction.forceSkipUTs &= forceSkipUTs;
+            if (changes == null) {
+                changeTransaction.testChanges = null;
+            } else if (changeTransaction.testChanges != null) {
+                changeTransaction.testChanges.addAll(changes);
+            }
+        } else {
+            runTestThread(true, executor, messageOccurrences, forceSkipUTs, false, changes);
+        }
     }
 
-    private void processJavaCompilation(File outputDirectory, File testOutputDirectory, final ThreadPoolExecutor executor,
-            List<String> artifactPaths) throws IOException, PluginExecutionException {
+    void processJavaCompilation(final File outputDirectory, final File testOutputDirectory,
+            final ThreadPoolExecutor executor, final List<String> artifactPaths) throws IOException {
         // process java source files if no changes detected after the compile wait time
-        boolean processSources = System.currentTimeMillis() > lastJavaSourceChange + compileWaitMillis;
-        boolean processTests = System.currentTimeMillis() > lastJavaTestChange + compileWaitMillis;
+        long compileWait = compileDebouncer.getDelayMillis();
+        boolean processSources = System.currentTimeMillis() > lastJavaSourceChange + compileWait;
+        boolean processTests = System.currentTimeMillis() > lastJavaTestChange + compileWait;
         if (processSources) {
-            // delete before recompiling, so if a file is in both lists, its class will be
-            // deleted then recompiled
-            if (!deleteJavaSources.isEmpty()) {
-                debug("Deleting Java source files: " + deleteJavaSources);
-                for (File file : deleteJavaSources) {
-                    deleteJavaFile(file, outputDirectory, this.sourceDirectory);
-                }
-            }
-            if (!recompileJavaSources.isEmpty() || triggerJavaSourceRecompile) {
-                // try to recompile java files that previously did not compile successfully
-                if (!failedCompilationJavaSources.isEmpty()) {
-                    recompileJavaSources.addAll(failedCompilationJavaSources);
-                }
-                if (recompileJavaSource(recompileJavaSources, artifactPaths, executor, outputDirectory,
-                        testOutputDirectory)) {
-                    // successful compilation so we can clear failedCompilation list
-                    failedCompilationJavaSources.clear();
-                } else {
-                    failedCompilationJavaSources.addAll(recompileJavaSources);
-                }
-            }
+            // a pipeline takes the next changes once its current compile is done
+            boolean startSources = !isCompiling(sourceCompile) && (!deleteJavaSources.isEmpty()
+                    || !recompileJavaSources.isEmpty() || triggerJavaSourceRecompile);
             // additionally, process java test files if no changes detected after a
             // different timeout
             // (but source timeout takes precedence i.e. don't recompile tests if someone
             // keeps changing the source)
-            if (processTests) {
-                // delete before recompiling, so if a file is in both lists, its class will be
-                // deleted then recompiled
-                if (!deleteJavaTests.isEmpty()) {
-                    debug("Deleting Java test files: " + deleteJavaTests);
-                    for (File file : deleteJavaTests) {
-                        deleteJavaFile(file, testOutputDirectory, this.testSourceDirectory);
-                    }
-                }
-                if (!recompileJavaTests.isEmpty() || triggerJavaTestRecompile) {
-                    debug("Recompiling Java test files: " + recompileJavaTests);
-                    if (!failedCompilationJavaTests.isEmpty()) {
-                        recompileJavaTests.addAll(failedCompilationJavaTests);
+            boolean startTests = processTests && !isCompiling(testCompile) && (!deleteJavaTests.isEmpty()
+                    || !recompileJavaTests.isEmpty() || triggerJavaTestRecompile);
+            if (startSources || startTests) {
+                loopMetrics.recordSinceCycleStart(DevLoopMetrics.Stage.DEBOUNCE);
+            }
+            if (startSources) {
+                // counted before the changes are taken, so the change cycle does not end in between
+                compileJobs.incrementAndGet();
+                final Set<File> deleted = drain(deleteJavaSources);
+                final Set<File> changed = drain(recompileJavaSources);
+                final boolean trigger = triggerJavaSourceRecompile;
+                triggerJavaSourceRecompile = false;
+                sourceCompile = submitCompile(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        compileJavaSources(deleted, changed, trigger, outputDirectory, testOutputDirectory, executor,
+                                artifactPaths);
+                        return null;
                     }
-                    if (recompileJavaTest(recompileJavaTests, artifactPaths, executor, outputDirectory,
-                            testOutputDirectory)) {
-                        // successful compilation so we can clear failedCompilation list
-                        failedCompilationJavaTests.clear();
-                    } else {
-                        failedCompilationJavaTests.addAll(recompileJavaTests);
+                });
+            }
+            if (startTests) {
+                compileJobs.incrementAndGet();
+                final Set<File> deleted = drain(deleteJavaTests);
+                final Set<File> changed = drain(recompileJavaTests);
+                final boolean trigger = triggerJavaTestRecompile;
+                triggerJavaTestRecompile = false;
+                // the tests are compiled against the classes of the source compile
+                final Future<?> sources = sourceCompile;
+                testCompile = submitCompile(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (sources != null) {
+                            try {
+                                sources.get();
+                            } catch (ExecutionException e) {
+                                // reported by the source compile
+                            } catch (InterruptedException e) {
+                                // dev mode is stopping
+                                return null;
+                            }
+                        }
+                        compileJavaTests(deleted, changed, trigger, outputDirectory, testOutputDirectory, executor,
+                                artifactPaths);
+                        return null;
                     }
-                }
+                });
             }
+        }
+        speculateJavaCompilation(outputDirectory, testOutputDirectory, artifactPaths);
+    }
 
+    /**
+     * Delete and recompile Java source files. Runs on the compile executor.
+     */
+    private void compileJavaSources(Collection<File> deleted, Collection<File> changed, boolean trigger,
+            File outputDirectory, File testOutputDirectory, ThreadPoolExecutor executor, List<String> artifactPaths)
+            throws IOException, PluginExecutionException {
+        // delete before recompiling, so if a file is in both lists, its class will be
+        // deleted then recompiled
+        if (!deleted.isEmpty()) {
+            debug("Deleting Java source files: " + deleted);
+            for (File file : deleted) {
+                deleteJavaFile(file, outputDirectory, this.sourceDirectory);
+            }
+            deleteCompiledClassFiles(deleted, outputDirectory);
+            queueDependents(dependencyGraph.remove(deleted), deleted);
+            forgetCompileState(deleted);
+        }
+        if (!changed.isEmpty() || trigger) {
+            // try to recompile java files that previously did not compile successfully
+            changed.addAll(copy(failedCompilationJavaSources));
+            // the files that fail are kept in the failedCompilation list
+            recompileJavaSource(changed, artifactPaths, executor, outputDirectory, testOutputDirectory);
+        } else if (!deleted.isEmpty()) {
             // run tests if files were deleted without any other changes, since
             // recompileJavaSource won't run (which normally handles tests)
-            if (!deleteJavaSources.isEmpty() && recompileJavaSources.isEmpty()) {
-                // run tests after waiting for app update since app changed
-                int numApplicationUpdatedMessages = countApplicationUpdatedMessages();
-                runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
-            } else if (processTests && !deleteJavaTests.isEmpty() && recompileJavaTests.isEmpty()) {
-                // run all tests without waiting for app update since only tests changed
-                runTestThread(false, executor, -1, false, false);
+            // run tests after waiting for app update since app changed
+            int numApplicationUpdatedMessages = countApplicationUpdatedMessages();
+            runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
+        }
+    }
+
+    /**
+     * Delete and recompile Java test files. Runs on the compile executor.
+     */
+    private void compileJavaTests(Collection<File> deleted, Collection<File> changed, boolean trigger,
+            File outputDirectory, File testOutputDirectory, ThreadPoolExecutor executor, List<String> artifactPaths)
+            throws IOException, PluginExecutionException {
+        // delete before recompiling, so if a file is in both lists, its class will be
+        // deleted then recompiled
+        if (!deleted.isEmpty()) {
+            debug("Deleting Java test files: " + deleted);
+            for (File file : deleted) {
+                deleteJavaFile(file, testOutputDirectory, this.testSourceDirectory);
             }
+            deleteCompiledClassFiles(deleted, testOutputDirectory);
+            queueDependents(dependencyGraph.remove(deleted), deleted);
+            forgetCompileState(deleted);
+        }
+        if (!changed.isEmpty() || trigger) {
+            debug("Recompiling Java test files: " + changed);
+            changed.addAll(copy(failedCompilationJavaTests));
+            // the files that fail are kept in the failedCompilation list
+            recompileJavaTest(changed, artifactPaths, executor, outputDirectory, testOutputDirectory);
+        } else if (!deleted.isEmpty()) {
+            // run all tests without waiting for app update since only tests changed
+            runTestThread(false, executor, -1, false, false);
+        }
+    }
 
-            deleteJavaSources.clear();
-            recompileJavaSources.clear();
-            triggerJavaTestRecompile = false;
-            triggerJavaSourceRecompile = false;
+    private void forgetCompileState(Collection<File> deleted) {
+        CompileStateStore state = compileState;
+        if (state != null) {
+            for (File file : deleted) {
+                state.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Run a compile job on the compile executor, so that the watch loop keeps
+     * processing file changes and checking the server while javac runs. The
+     * caller counts the job in compileJobs.
+     */
+    private Future<?> submitCompile(final Callable<Void> job) {
+        return getCompileExecutor().submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                long testJobsBefore = queuedTestJobs.get();
+                try {
+                    return job.call();
+                } catch (Exception e) {
+                    error("An error occurred while compiling Java files: " + e.getMessage(), e);
+                    throw e;
+                } finally {
+                    saveCompileState();
+                    compileJobs.decrementAndGet();
+                    endCycleIfDone(testJobsBefore);
+                    wakeWatchLoop();
+                }
+            }
+        });
+    }
+
+    /**
+     * Set whether the watch loop is in a wait that a finished compile can
+     * interrupt. Leaving the wait clears a pending interrupt, so that it does not
+     * affect the next step of the loop.
+     * 
+     * @param interruptible whether the current wait can be interrupted
+     */
+    private void setWatchLoopInterruptible(boolean interruptible) {
+        synchronized (watchLoopLock) {
+            waitingWatchLoop = interruptible ? Thread.currentThread() : null;
+            if (!interruptible) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Wake up the watch loop if it is waiting, so that it does not sleep through
+     * the end of a compile while changes are pending.
+     */
+    private void wakeWatchLoop() {
+        synchronized (watchLoopLock) {
+            if (waitingWatchLoop != null) {
+                waitingWatchLoop.interrupt();
+            }
+        }
+    }
+
+    private synchronized ExecutorService getCompileExecutor() {
+        if (compileExecutor == null) {
+            // one thread for each of the source and test pipelines
+            compileExecutor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "liberty-dev-compile");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return compileExecutor;
+    }
+
+    private synchronized void shutdownCompileExecutor() {
+        if (compileExecutor != null) {
+            compileExecutor.shutdownNow();
+            compileExecutor = null;
+        }
+    }
+
+    private static boolean isCompiling(Future<?> compile) {
+        return compile != null && !compile.isDone();
+    }
 
-            if (processTests) {
-                deleteJavaTests.clear();
-                recompileJavaTests.clear();
+    /**
+     * Copy and clear a collection that is shared with the compile executor.
+     */
+    private static Set<File> drain(Collection<File> files) {
+        synchronized (files) {
+            Set<File> copy = new HashSet<File>(files);
+            files.clear();
+            return copy;
+        }
+    }
+
+    private static Set<File> copy(Collection<File> files) {
+        synchronized (files) {
+            return new HashSet<File>(files);
+        }
+    }
+
+    /**
+     * Start a background compile of the pending Java files before the compile
+     * wait is over. Its classes are published by the regular compile if no other
+     * change arrived in between, and discarded otherwise.
+     */
+    private void speculateJavaCompilation(File outputDirectory, File testOutputDirectory, List<String> artifactPaths)
+            throws IOException {
+        boolean tests;
+        long lastChange;
+        Set<File> files = new HashSet<File>();
+        if (canSpeculate(false)) {
+            tests = false;
+            lastChange = lastJavaSourceChange;
+            files.addAll(copy(recompileJavaSources));
+            files.addAll(copy(failedCompilationJavaSources));
+        } else if (canSpeculate(true)) {
+            tests = true;
+            lastChange = lastJavaTestChange;
+            files.addAll(copy(recompileJavaTests));
+            files.addAll(copy(failedCompilationJavaTests));
+        } else {
+            return;
+        }
+        if (System.currentTimeMillis() < lastChange + compileDebouncer.getSpeculationDelayMillis()) {
+            return;
+        }
+        speculatedGeneration = javaChangeGeneration;
+        debug("Speculatively compiling Java " + (tests ? "test " : "") + "files: " + files);
+        getCompilerService().speculate(files,
+                getCompileClassPath(artifactPaths, tests, outputDirectory, testOutputDirectory),
+                tests ? testOutputDirectory : outputDirectory, Arrays.asList(DEFAULT_COMPILER_OPTIONS));
+    }
+
+    /**
+     * Whether a speculative compile of the pending Java source files, or of the
+     * pending Java test files if there are no pending source files, can start
+     * once the speculation delay has passed.
+     */
+    private boolean canSpeculate(boolean tests) {
+        if (useBuildRecompile || !compileDebouncer.isAdaptive() || speculatedGeneration == javaChangeGeneration
+                || !deleteJavaSources.isEmpty() || triggerJavaSourceRecompile || isCompiling(sourceCompile)) {
+            return false;
+        }
+        if (!tests) {
+            return !recompileJavaSources.isEmpty();
+        }
+        return recompileJavaSources.isEmpty() && !recompileJavaTests.isEmpty() && deleteJavaTests.isEmpty()
+                && !triggerJavaTestRecompile && !isCompiling(testCompile);
+    }
+
+    /**
+     * Record a Java file change for the compile wait.
+     * 
+     * @return the time of the change
+     */
+    private long javaFileChanged() {
+        long now = System.currentTimeMillis();
+        compileDebouncer.changed(now);
+        javaChangeGeneration++;
+        synchronized (this) {
+            if (compilerService != null) {
+                compilerService.cancelSpeculation();
             }
         }
+        return now;
+    }
+
+    /**
+     * Get how long the watch loop can wait before pending Java files are due to
+     * be compiled, or speculatively compiled. The pending files of a pipeline
+     * that is compiling are taken when its compile is done, which wakes up the
+     * watch loop.
+     */
+    long getJavaCompilationWaitMillis() {
+        long due = Long.MAX_VALUE;
+        long delay = compileDebouncer.getDelayMillis();
+        if (!isCompiling(sourceCompile)
+                && (!recompileJavaSources.isEmpty() || !deleteJavaSources.isEmpty() || triggerJavaSourceRecompile)) {
+            due = Math.min(due, lastJavaSourceChange
+                    + (canSpeculate(false) ? compileDebouncer.getSpeculationDelayMillis() : delay));
+        }
+        if (!isCompiling(testCompile)
+                && (!recompileJavaTests.isEmpty() || !deleteJavaTests.isEmpty() || triggerJavaTestRecompile)) {
+            if (canSpeculate(true)) {
+                due = Math.min(due, lastJavaTestChange + compileDebouncer.getSpeculationDelayMillis());
+            } else {
+                // the tests are only compiled once the source files have also been quiet for the compile wait
+                due = Math.min(due, Math.max(lastJavaTestChange, lastJavaSourceChange) + delay);
+            }
+        }
+        if (due == Long.MAX_VALUE) {
+            return due;
+        }
+        // the compile runs once the wait has passed, so wake up just after it
+        return Math.max(0, due + 1 - System.currentTimeMillis());
     }
  
     private void checkStopDevMode() throws PluginScenarioException {
@@ -2085,15 +3124,18 @@ public abstract class DevUtil {
         }
     }
 
-    private void initWatchLoop() throws IOException {
-        recompileJavaSources = new HashSet<File>();
-        recompileJavaTests = new HashSet<File>();
-        deleteJavaSources = new HashSet<File>();
-        deleteJavaTests = new HashSet<File>();
-        failedCompilationJavaSources = new HashSet<File>();
-        failedCompilationJavaTests = new HashSet<File>();
+    private void initWatchLoop(File outputDirectory, File testOutputDirectory) throws IOException {
+        // shared with the compile executor
+        recompileJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        recompileJavaTests = Collections.synchronizedSet(new HashSet<File>());
+        deleteJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        deleteJavaTests = Collections.synchronizedSet(new HashSet<File>());
+        failedCompilationJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        failedCompilationJavaTests = Collections.synchronizedSet(new HashSet<File>());
         lastJavaSourceChange = System.currentTimeMillis();
         lastJavaTestChange = System.currentTimeMillis();
+        javaChangeGeneration = 0;
+        speculatedGeneration = 0;
         triggerJavaSourceRecompile = false;
         triggerJavaTestRecompile = false;
 
@@ -2101,12 +3143,126 @@ public abstract class DevUtil {
         if (this.sourceDirectory.exists()) {
             Collection<File> allJavaSources = FileUtils.listFiles(this.sourceDirectory.getCanonicalFile(),
                     new String[] { "java" }, true);
-            recompileJavaSources.addAll(allJavaSources);
+            if (useBuildRecompile) {
+                recompileJavaSources.addAll(allJavaSources);
+            } else {
+                checkUpToDate(allJavaSources, false, outputDirectory, testOutputDirectory);
+            }
         }
         if (this.testSourceDirectory.exists()) {
             Collection<File> allJavaTestSources = FileUtils.listFiles(this.testSourceDirectory.getCanonicalFile(),
                     new String[] { "java" }, true);
-            recompileJavaTests.addAll(allJavaTestSources);
+            if (useBuildRecompile) {
+                recompileJavaTests.addAll(allJavaTestSources);
+            } else {
+                checkUpToDate(allJavaTestSources, true, outputDirectory, testOutputDirectory);
+            }
+        }
+    }
+
+    /**
+     * Queue the Java files whose classes are out of date for the initial compile,
+     * and the recorded Java files that were deleted since the last session for
+     * deletion. The dependency graph is loaded from the classes that are up to
+     * date, so that later changes to them still recompile their dependents.
+     * 
+     * @param sources             the Java files in the source directory
+     * @param tests               whether the Java files are test files
+     * @param outputDirectory     the directory for compiled classes
+     * @param testOutputDirectory the directory for compiled test classes
+     * @throws IOException unable to resolve canonical path
+     */
+    private void checkUpToDate(Collection<File> sources, boolean tests, File outputDirectory,
+            File testOutputDirectory) throws IOException {
+        long start = System.currentTimeMillis();
+        File sourceRoot = (tests ? testSourceDirectory : sourceDirectory).getCanonicalFile();
+        File classesDir = tests ? testOutputDirectory : outputDirectory;
+        CompileStateStore state = getCompileState(outputDirectory);
+        String fingerprint = CompileStateStore.fingerprint(
+                getCompileClassPath(artifactPaths, tests, outputDirectory, testOutputDirectory),
+                Arrays.asList(DEFAULT_COMPILER_OPTIONS));
+        Set<File> outOfDate = new HashSet<File>();
+        List<File> loaded = new ArrayList<File>();
+        Map<ClassFileInfo, File> infos = new HashMap<ClassFileInfo, File>();
+        for (File source : sources) {
+            List<String> classNames = state.getUpToDateClassNames(source, fingerprint, classesDir);
+            boolean upToDate = classNames != null;
+            if (!upToDate) {
+                // compiled by the build without dev mode, or changed since the last session
+                List<String> buildClassNames = CompileStateStore.findClassNames(source, sourceRoot, classesDir);
+                if (buildClassNames != null && state.getClassNames(source) == null && CompileStateStore
+                        .getClassFile(classesDir, buildClassNames.get(0)).lastModified() >= source.lastModified()) {
+                    state.record(source, fingerprint, buildClassNames);
+                    upToDate = true;
+                }
+                classNames = buildClassNames != null ? buildClassNames : state.getClassNames(source);
+            }
+            // the previous classes of out of date files are loaded too, so that their
+            // dependents are recompiled if the ABI changed
+            if (classNames != null && readClassFiles(source, classNames, classesDir, infos)) {
+                loaded.add(source);
+            } else {
+                upToDate = false;
+            }
+            if (!upToDate) {
+                outOfDate.add(source);
+            }
+        }
+        Set<File> deleted = new HashSet<File>();
+        for (File source : state.getSources()) {
+            if (!source.exists() && source.getPath().startsWith(sourceRoot.getPath() + File.separator)) {
+                // load its classes so that they and their dependents are cleaned up
+                if (readClassFiles(source, state.getClassNames(source), classesDir, infos)) {
+                    loaded.add(source);
+                }
+                deleted.add(source);
+            }
+        }
+        dependencyGraph.update(loaded, infos);
+        (tests ? recompileJavaTests : recompileJavaSources).addAll(outOfDate);
+        (tests ? deleteJavaTests : deleteJavaSources).addAll(deleted);
+        debug("Checked " + sources.size() + " Java " + (tests ? "test " : "") + "files in "
+                + (System.currentTimeMillis() - start) + " ms: " + outOfDate.size() + " out of date, "
+                + deleted.size() + " deleted");
+    }
+
+    private boolean readClassFiles(File source, List<String> classNames, File classesDir,
+            Map<ClassFileInfo, File> infos) {
+        Map<ClassFileInfo, File> read = new HashMap<ClassFileInfo, File>();
+        for (String className : classNames) {
+            try {
+                read.put(ClassFileInfo.read(CompileStateStore.getClassFile(classesDir, className)), source);
+            } catch (IOException e) {
+                debug("Could not read the class " + className, e);
+                return false;
+            }
+        }
+        infos.putAll(read);
+        return true;
+    }
+
+    private synchronized CompileStateStore getCompileState(File outputDirectory) {
+        if (compileState == null) {
+            File file = compileStateFile;
+            if (file == null) {
+                file = new File(outputDirectory.getAbsoluteFile().getParentFile(), ".liberty-dev-compile-state");
+            }
+            compileState = new CompileStateStore(file);
+            if (!compileState.load()) {
+                debug("No compile state found in " + file + ". Checking the classes of the build.");
+            }
+        }
+        return compileState;
+    }
+
+    private void saveCompileState() {
+        CompileStateStore state = compileState;
+        if (state != null) {
+            try {
+                state.save();
+            } catch (IOException e) {
+                debug("Could not save the compile state to " + state.getFile(), e);
+            }
         }
     }
 
@@ -2121,162 +3277,220 @@ public abstract class DevUtil {
 
         debug("Processing file changes for " + fileChanged + ", change type " + changeType);
 
-        Path srcPath = this.sourceDirectory.getCanonicalFile().toPath();
-        Path testSrcPath = this.testSourceDirectory.getCanonicalFile().toPath();
-        Path configPath = this.configDirectory.getCanonicalFile().toPath();
+        if (fileChanged.isDirectory()) {
+            // if new directory added, watch the entire directory
+            if (changeType == ChangeType.CREATE) {
+                registerAll(fileChanged.toPath(), executor);
+            }
+            // otherwise if a directory was modified, just continue to the next entry
+            // (if delete, can't tell if it was a directory since it doesn't exist anymore)
+            return;
+        }
 
-        Path directory = fileChanged.getParentFile().toPath();
+        List<PathClassifier.Classification> classifications = pathClassifier.classify(fileChanged);
+        if (classifications.isEmpty()) {
+            debug("No action needed for " + fileChanged);
+            return;
+        }
 
-        // resource file check
-        File resourceParent = null;
-        for (File resourceDir : resourceDirs) {
-            if (directory.startsWith(resourceDir.getCanonicalFile().toPath())) {
-                resourceParent = resourceDir;
-                break;
+        int numApplicationUpdatedMessages = changeTransaction != null ? changeTransaction.messageOccurrences
+                : countApplicationUpdatedMessages();
+
+        for (PathClassifier.Classification classification : classifications) {
+            switch (classification.getCategory()) {
+            case JAVA_SOURCE: // src/main/java
+                if (fileChanged.exists() && fileChanged.getName().endsWith(".java")
+                        && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
+                    debug("Java source file modified: " + fileChanged.getName() + ". Adding to list for processing.");
+                    lastJavaSourceChange = javaFileChanged();
+                    recompileJavaSources.add(fileChanged);
+                } else if (changeType == ChangeType.DELETE) {
+                    debug("Java file deleted: " + fileChanged.getName() + ". Adding to list for processing.");
+                    lastJavaSourceChange = javaFileChanged();
+                    deleteJavaSources.add(fileChanged);
+                }
+                return;
+            case JAVA_TEST: // src/test/java
+                if (fileChanged.exists() && fileChanged.getName().endsWith(".java")
+                        && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
+                    debug("Java test file modified: " + fileChanged.getName() + ". Adding to list for processing.");
+                    lastJavaTestChange = javaFileChanged();
+                    recompileJavaTests.add(fileChanged);
+                } else if (changeType == ChangeType.DELETE) {
+                    debug("Java test file deleted: " + fileChanged.getName() + ". Adding to list for processing.");
+                    lastJavaTestChange = javaFileChanged();
+                    deleteJavaTests.add(fileChanged);
+                }
+                return;
+            case CONFIG: // config files
+                if (isGeneratedConfigFile(fileChanged, configDirectory, serverDirectory)) {
+                    continue;
+                }
+                if (fileChanged.exists() && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
+                    syncConfigFile(fileChanged, configDirectory, null);
+                    if (changeType == ChangeType.CREATE) {
+                        requestRedeploy();
+                    }
+                    if (fileChanged.getName().equals("server.env")) {
+                        requestServerDebug();
+                    }
+
+                    if ((fileChanged.getName().equals("bootstrap.properties") && bootstrapPropertiesFileParent == null)
+                            || (fileChanged.getName().equals("jvm.options") && jvmOptionsFileParent == null)) {
+                        // restart server to load new properties
+                        requestRestart();
+                    }
+                    requestTests(executor, numApplicationUpdatedMessages, true);
+                } else if (changeType == ChangeType.DELETE) {
+                    info("Config file deleted: " + fileChanged.getName());
+                    deleteFile(fileChanged, configDirectory, serverDirectory, null);
+                    if (fileChanged.getName().equals("server.env")) {
+                        requestServerDebug();
+                    }
+                    requestTests(executor, numApplicationUpdatedMessages, true);
+                }
+                return;
+            case SERVER_XML:
+                if (fileChanged.exists() && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
+                    syncConfigFile(fileChanged, serverXmlFileParent, "server.xml");
+                    if (changeType == ChangeType.CREATE) {
+                        requestRedeploy();
+                    }
+                    requestTests(executor, numApplicationUpdatedMessages, true);
+                } else if (changeType == ChangeType.DELETE) {
+                    info("Config file deleted: " + fileChanged.getName());
+                    deleteFile(fileChanged, configDirectory, serverDirectory, "server.xml");
+                    requestTests(executor, numApplicationUpdatedMessages, true);
+                }
+                return;
+            case BOOTSTRAP_PROPERTIES:
+                // restart server to load new properties
+                requestRestart();
+                return;
+            case JVM_OPTIONS:
+                // restart server to load new options
+                requestRestart();
+                return;
+            case RESOURCE: // resources
+                File resourceParent = classification.getRoot();
+                debug("Resource dir: " + resourceParent.toString());
+                if (fileChanged.exists() && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
+                    copyFile(fileChanged, resourceParent, outputDirectory, null);
+
+                    // run the tests that reach the resource
+                    requestTests(executor, numApplicationUpdatedMessages, false,
+                            Collections.singleton(getResourcePath(fileChanged, resourceParent)));
+                } else if (changeType == ChangeType.DELETE) {
+                    debug("Resource file deleted: " + fileChanged.getName());
+                    deleteFile(fileChanged, resourceParent, outputDirectory, null);
+                    // run the tests that reach the resource
+                    requestTests(executor, numApplicationUpdatedMessages, false,
+                            Collections.singleton(getResourcePath(fileChanged, resourceParent)));
+                }
+                return;
+            case BUILD_FILE: // pom.xml
+                if (changeType != ChangeType.MODIFY) {
+                    continue;
+                }
+                boolean recompiledBuild = recompileBuildFile(buildFile, artifactPaths, executor);
+                // run all tests on build file change
+                if (recompiledBuild) {
+                    // trigger java source recompile if there are compilation errors
+                    if (!failedCompilationJavaSources.isEmpty()) {
+                        triggerJavaSourceRecompile = true;
+                    }
+                    // trigger java test recompile if there are compilation errors
+                    if (!failedCompilationJavaTests.isEmpty()) {
+                        triggerJavaTestRecompile = true;
+                    }
+                    requestTests(executor, numApplicationUpdatedMessages, false);
+                }
+                return;
+            case PROPERTY_FILE: // properties file
+                boolean reloadedPropertyFile = reloadPropertyFile(classification.getRoot());
+                // run all tests on properties file change
+                if (reloadedPropertyFile) {
+                    requestTests(executor, numApplicationUpdatedMessages, false);
+                }
+                return;
             }
         }
+    }
 
-        if (fileChanged.isDirectory()) {
-            // if new directory added, watch the entire directory
-            if (changeType == ChangeType.CREATE) {
-                registerAll(fileChanged.toPath(), executor);
+    /**
+     * Record the content of watched files. Server configuration and build files
+     * are recorded before returning since unchanged rewrites of those can
+     * trigger a server restart. Source and resource directories can be large, so
+     * they are recorded in the background.
+     */
+    private void recordFingerprints() {
+        try {
+            fingerprintCache.recordAll(configDirectory.getCanonicalFile(), ignoreRules);
+            for (File file : new File[] { serverXmlFile, bootstrapPropertiesFile, jvmOptionsFile, buildFile }) {
+                if (file != null) {
+                    fingerprintCache.record(file.getCanonicalFile());
+                }
             }
-            // otherwise if a directory was modified, just continue to the next entry
-            // (if delete, can't tell if it was a directory since it doesn't exist anymore)
-            return;
-        }
-
-        int numApplicationUpdatedMessages = countApplicationUpdatedMessages();
-
-        // src/main/java directory
-        if (directory.startsWith(srcPath)) {
-            ArrayList<File> javaFilesChanged = new ArrayList<File>();
-            javaFilesChanged.add(fileChanged);
-            if (fileChanged.exists() && fileChanged.getName().endsWith(".java")
-                    && (changeType == ChangeType.MODIFY
-                            || changeType == ChangeType.CREATE)) {
-                debug("Java source file modified: " + fileChanged.getName()
-                        + ". Adding to list for processing.");
-                lastJavaSourceChange = System.currentTimeMillis();
-                recompileJavaSources.add(fileChanged);
-            } else if (changeType == ChangeType.DELETE) {
-                debug("Java file deleted: " + fileChanged.getName()
-                        + ". Adding to list for processing.");
-                lastJavaSourceChange = System.currentTimeMillis();
-                deleteJavaSources.add(fileChanged);
-            }
-        } else if (directory.startsWith(testSrcPath)) { // src/main/test
-            ArrayList<File> javaFilesChanged = new ArrayList<File>();
-            javaFilesChanged.add(fileChanged);
-            if (fileChanged.exists() && fileChanged.getName().endsWith(".java")
-                    && (changeType == ChangeType.MODIFY
-                            || changeType == ChangeType.CREATE)) {
-                debug("Java test file modified: " + fileChanged.getName()
-                        + ". Adding to list for processing.");
-                lastJavaTestChange = System.currentTimeMillis();
-                recompileJavaTests.add(fileChanged);
-            } else if (changeType == ChangeType.DELETE) {
-                debug("Java test file deleted: " + fileChanged.getName()
-                        + ". Adding to list for processing.");
-                lastJavaTestChange = System.currentTimeMillis();
-                deleteJavaTests.add(fileChanged);
-            }
-        } else if (directory.startsWith(configPath)
-                && !isGeneratedConfigFile(fileChanged, configDirectory, serverDirectory)) { // config
-                                                                                            // files
-            if (fileChanged.exists() && (changeType == ChangeType.MODIFY
-                    || changeType == ChangeType.CREATE)) {
-                copyConfigFolder(fileChanged, configDirectory, null);
-                copyFile(fileChanged, configDirectory, serverDirectory, null);
-                if (changeType == ChangeType.CREATE) {
-                    redeployApp();
-                }
-                if (fileChanged.getName().equals("server.env")) {
-                    // re-enable debug variables in server.env
-                    enableServerDebug(false);
-                }
-                
-                if ((fileChanged.getName().equals("bootstrap.properties") && bootstrapPropertiesFileParent == null)
-                     || (fileChanged.getName().equals("jvm.options") && jvmOptionsFileParent == null)) {
-                    // restart server to load new properties
-                    restartServer();
-                }
-                runTestThread(true, executor, numApplicationUpdatedMessages, true, false);
-            } else if (changeType == ChangeType.DELETE) {
-                info("Config file deleted: " + fileChanged.getName());
-                deleteFile(fileChanged, configDirectory, serverDirectory, null);
-                if (fileChanged.getName().equals("server.env")) {
-                    // re-enable debug variables in server.env
-                    enableServerDebug(false);
-                }
-                runTestThread(true, executor, numApplicationUpdatedMessages, true, false);
-            }
-        } else if (serverXmlFileParent != null
-                && directory.equals(serverXmlFileParent.getCanonicalFile().toPath())
-                && fileChanged.getCanonicalPath().endsWith(serverXmlFile.getName())) {
-            if (fileChanged.exists() && (changeType == ChangeType.MODIFY || changeType == ChangeType.CREATE)) {
-                copyConfigFolder(fileChanged, serverXmlFileParent, "server.xml");
-                copyFile(fileChanged, serverXmlFileParent, serverDirectory, "server.xml");
-                if (changeType == ChangeType.CREATE) {
-                    redeployApp();
-                }
-                runTestThread(true, executor, numApplicationUpdatedMessages, true, false);
-
-            } else if (changeType == ChangeType.DELETE) {
-                info("Config file deleted: " + fileChanged.getName());
-                deleteFile(fileChanged, configDirectory, serverDirectory, "server.xml");
-                runTestThread(true, executor, numApplicationUpdatedMessages, true, false);
-            }
-        } else if (bootstrapPropertiesFileParent != null
-                   && directory.equals(bootstrapPropertiesFileParent.getCanonicalFile().toPath())
-                   && fileChanged.getCanonicalPath().endsWith(bootstrapPropertiesFile.getName())) {
-            // restart server to load new properties
-            restartServer();
-        } else if (jvmOptionsFileParent != null
-                && directory.equals(jvmOptionsFileParent.getCanonicalFile().toPath())
-                && fileChanged.getCanonicalPath().endsWith(jvmOptionsFile.getName())) {
-            // restart server to load new options
-            restartServer();
-        } else if (resourceParent != null
-                && directory.startsWith(resourceParent.getCanonicalFile().toPath())) { // resources
-            debug("Resource dir: " + resourceParent.toString());
-            if (fileChanged.exists() && (changeType == ChangeType.MODIFY
-                    || changeType == ChangeType.CREATE)) {
-                copyFile(fileChanged, resourceParent, outputDirectory, null);
-
-                // run all tests on resource change
-                runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
-            } else if (changeType == ChangeType.DELETE) {
-                debug("Resource file deleted: " + fileChanged.getName());
-                deleteFile(fileChanged, resourceParent, outputDirectory, null);
-                // run all tests on resource change
-                runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
+            if (propertyFilesMap != null) {
+                for (File propertyFile : propertyFilesMap.keySet()) {
+                    fingerprintCache.record(propertyFile.getCanonicalFile());
+                }
             }
-        } else if (fileChanged.equals(buildFile)
-                && directory.startsWith(buildFile.getParentFile().getCanonicalFile().toPath())
-                && changeType == ChangeType.MODIFY) { // pom.xml
+        } catch (IOException e) {
+            debug("Could not record the content of configuration files", e);
+        }
 
-            boolean recompiledBuild = recompileBuildFile(buildFile, artifactPaths, executor);
-            // run all tests on build file change
-            if (recompiledBuild) {
-                // trigger java source recompile if there are compilation errors
-                if (!failedCompilationJavaSources.isEmpty()) {
-                    triggerJavaSourceRecompile = true;
-                }
-                // trigger java test recompile if there are compilation errors
-                if (!failedCompilationJavaTests.isEmpty()) {
-                    triggerJavaTestRecompile = true;
+        final List<File> dirs = new ArrayList<File>();
+        dirs.add(sourceDirectory);
+        dirs.add(testSourceDirectory);
+        dirs.addAll(resourceDirs);
+        Thread fingerprintThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (File dir : dirs) {
+                    try {
+                        fingerprintCache.recordAll(dir.getCanonicalFile(), ignoreRules);
+                    } catch (IOException e) {
+                        debug("Could not record the content of " + dir, e);
+                    }
                 }
-                runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
+                debug("Recorded the content of " + fingerprintCache.size() + " watched files");
             }
-        } else if (propertyFilesMap != null && propertyFilesMap.keySet().contains(fileChanged)) { // properties
-                                                                                                  // file
-            boolean reloadedPropertyFile = reloadPropertyFile(fileChanged);
-            // run all tests on properties file change
-            if (reloadedPropertyFile) {
-                runTestThread(true, executor, numApplicationUpdatedMessages, false, false);
+        }, "liberty-dev-fingerprints");
+        fingerprintThread.setDaemon(true);
+        fingerprintThread.start();
+    }
+
+    /**
+     * Build the index used to classify changed files. This needs to be called
+     * again whenever the set of watched roots or files changes.
+     * 
+     * @throws IOException unable to resolve canonical path
+     */
+    private void buildPathClassifier() throws IOException {
+        PathClassifier.Builder builder = new PathClassifier.Builder()
+                .addDirectory(PathCategory.JAVA_SOURCE, sourceDirectory)
+                .addDirectory(PathCategory.JAVA_TEST, testSourceDirectory)
+                .addDirectory(PathCategory.CONFIG, configDirectory);
+        if (serverXmlFileParent != null) {
+            builder.addFile(PathCategory.SERVER_XML, serverXmlFile);
+        }
+        if (bootstrapPropertiesFileParent != null) {
+            builder.addFile(PathCategory.BOOTSTRAP_PROPERTIES, bootstrapPropertiesFile);
+        }
+        if (jvmOptionsFileParent != null) {
+            builder.addFile(PathCategory.JVM_OPTIONS, jvmOptionsFile);
+        }
+        for (File resourceDir : resourceDirs) {
+            builder.addDirectory(PathCategory.RESOURCE, resourceDir);
+        }
+        builder.addFile(PathCategory.BUILD_FILE, buildFile);
+        if (propertyFilesMap != null) {
+            for (File propertyFile : propertyFilesMap.keySet()) {
+                builder.addFile(PathCategory.PROPERTY_FILE, propertyFile);
             }
         }
+        pathClassifier = builder.build();
     }
 
     /**
@@ -2329,6 +3543,17 @@ public abstract class DevUtil {
      * @throws IOException creating and copying to tempConfig directory
      */
     public void copyConfigFolder(File fileChanged, File srcDir, String targetFileName) throws IOException {
+        copyConfigFolder(Collections.singletonList(new ConfigChange(fileChanged, srcDir, targetFileName)));
+    }
+
+    /**
+     * Creates one temporary copy of the configuration with all of the changed
+     * files, and checks each changed file in the temporary directory.
+     * 
+     * @param configChanges the changed files
+     * @throws IOException creating and copying to tempConfig directory
+     */
+    private void copyConfigFolder(List<ConfigChange> configChanges) throws IOException {
         this.tempConfigPath = Files.createTempDirectory("tempConfig");
         File tempConfig = tempConfigPath.toFile();
         debug("Temporary configuration folder created: " + tempConfig);
@@ -2345,8 +3570,12 @@ public abstract class DevUtil {
                 return !skip;
             }
         }, true);
-        copyFile(fileChanged, srcDir, tempConfig, targetFileName);
-        checkConfigFile(fileChanged, tempConfig);
+        for (ConfigChange configChange : configChanges) {
+            copyFile(configChange.file, configChange.srcDir, tempConfig, configChange.targetFileName);
+        }
+        for (ConfigChange configChange : configChanges) {
+            checkConfigFile(configChange.file, tempConfig);
+        }
         cleanUpTempConfig();
     }
 
@@ -2357,29 +3586,35 @@ public abstract class DevUtil {
      * @return true if the file or directory should be ignored, false otherwise
      */
     private boolean ignoreFileOrDir(File file) {
-        String name = file.getName();
-        if (file.isDirectory()) {
-            for (String prefix : IGNORE_DIRECTORY_PREFIXES) {
-                if (name.startsWith(prefix)) {
-                    debug("Ignoring " + name);
-                    return true;
-                }
-            }
-        } else {
-            for (String prefix : IGNORE_FILE_PREFIXES) {
-                if (name.startsWith(prefix)) {
-                    debug("Ignoring " + name);
-                    return true;
-                }
+        if (ignoreRules.isIgnored(file)) {
+            debug("Ignoring " + file.getName());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compile the default ignore rules, the rules from the project's .gitignore
+     * file if enabled, and the configured ignore patterns, in that order of
+     * precedence.
+     */
+    private void buildIgnoreRules() {
+        File baseDir = projectDirectory;
+        IgnoreRules.Builder builder;
+        try {
+            if (baseDir != null) {
+                baseDir = baseDir.getCanonicalFile();
             }
-            for (String postfix : IGNORE_FILE_POSTFIXES) {
-                if (name.endsWith(postfix)) {
-                    debug("Ignoring " + name);
-                    return true;
-                }
+            builder = new IgnoreRules.Builder(baseDir).addAll(Arrays.asList(IgnoreRules.DEFAULT_PATTERNS));
+            if (useGitIgnore && baseDir != null) {
+                builder.addFile(new File(baseDir, ".gitignore"));
             }
+        } catch (IOException e) {
+            error("Could not read the .gitignore file: " + e.getMessage(), e);
+            builder = new IgnoreRules.Builder(baseDir).addAll(Arrays.asList(IgnoreRules.DEFAULT_PATTERNS));
         }
-        return false;
+        ignoreRules = builder.addAll(ignorePatterns).build();
+        pollingScanner.setIgnoreRules(ignoreRules);
     }
 
     /**
@@ -2416,6 +3651,15 @@ public abstract class DevUtil {
         return targetResource;
     }
 
+    /**
+     * Gets the path of a resource relative to its resource directory, with /
+     * separators, as it is found on the class path.
+     */
+    private String getResourcePath(File resource, File resourceDir) throws IOException {
+        String relPath = resource.getCanonicalPath().substring(resourceDir.getCanonicalPath().length() + 1);
+        return relPath.replace(File.separatorChar, '/');
+    }
+
     /**
      * Deletes the corresponding file in the targetDir.
      * 
@@ -2471,7 +3715,7 @@ public abstract class DevUtil {
         }
     }
 
-    private enum ChangeType {
+    enum ChangeType {
         CREATE,
         DELETE,
         MODIFY
@@ -2485,61 +3729,110 @@ public abstract class DevUtil {
      * @throws IOException unable to walk through file tree
      */
     protected void registerAll(final Path start, final ThreadPoolExecutor executor) throws IOException {
-        debug("Registering all files in directory: " + start.toString());
+        long startTime = System.nanoTime();
+        registerTree(start);
+        watchManager.addRegistrationTime(System.nanoTime() - startTime);
+    }
 
-        // register directory and sub-directories
-        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(final Path dir, BasicFileAttributes attrs) throws IOException {
-                if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
-                    // synchronize on the new observer set since only those are being updated in separate threads
-                    synchronized (newFileObservers) {
-                        Set<FileAlterationObserver> tempCombinedObservers = new HashSet<FileAlterationObserver>();
-                        tempCombinedObservers.addAll(fileObservers);
-                        tempCombinedObservers.addAll(newFileObservers);
-        
-                        // if this path is already observed, ignore it
-                        for (FileAlterationObserver observer : tempCombinedObservers) {
-                            if (dir.equals(observer.getDirectory().getCanonicalFile().toPath())) {
-                                debug("Skipping subdirectory " + dir.toString() + " since it already being observed");
-                                return FileVisitResult.CONTINUE;
-                            }
+    /**
+     * Register the watch roots that exist at startup. Each root is walked and
+     * registered on its own thread, using a bounded pool.
+     * 
+     * @param roots    the root directories
+     * @param executor the test thread executor
+     * @throws IOException unable to walk through a file tree
+     */
+    private void registerRoots(List<Path> roots, final ThreadPoolExecutor executor) throws IOException {
+        long startTime = System.nanoTime();
+        int threads = Math.min(roots.size(), Math.min(MAX_REGISTRATION_THREADS, Runtime.getRuntime().availableProcessors()));
+        if (threads <= 1) {
+            for (Path root : roots) {
+                registerStartupRoot(root);
+            }
+        } else {
+            ExecutorService registrationExecutor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>(roots.size());
+                for (final Path root : roots) {
+                    futures.add(registrationExecutor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            registerStartupRoot(root);
+                            return null;
                         }
-        
-                        FileFilter singleDirectoryFilter = new FileFilter() {
-                            @Override
-                            public boolean accept(File file) {
-                                try {
-                                    // if it's a direct child of this path
-                                    if (dir.equals(file.getParentFile().getCanonicalFile().toPath())) {
-                                        return true;
-                                    }
-                                } catch (IOException e) {
-                                    return false;
-                                }
-                                return false;
-                            }
-                        };
-            
-                        try {
-                            debug("Adding subdirectory to file observers: " + dir.toString());
-                            addFileAlterationObserver(executor, dir.toString(), singleDirectoryFilter);
-                        } catch (Exception e) {
-                            error("Could not observe directory " + dir.toString(), e);
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
                         }
+                        throw new IOException(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
                     }
-                } 
-                if (trackingMode == FileTrackMode.FILE_WATCHER || trackingMode == FileTrackMode.NOT_SET) {
-                    debug("Adding subdirectory to WatchService: " + dir.toString());
-                    dir.register(watcher,
-                            new WatchEvent.Kind[] { StandardWatchEventKinds.ENTRY_MODIFY,
-                                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_CREATE },
-                            SensitivityWatchEventModifier.HIGH);
                 }
-                return FileVisitResult.CONTINUE;
+            } finally {
+                registrationExecutor.shutdownNow();
             }
-        });
+        }
+        watchManager.addRegistrationTime(System.nanoTime() - startTime);
+    }
 
+    private void registerStartupRoot(Path root) throws IOException {
+        long startTime = System.nanoTime();
+        int directories = registerTree(root);
+        watchManager.recordRoot(root, directories, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Register a directory and all of its sub-directories.
+     * 
+     * @param start the directory
+     * @return the number of directories registered with the WatchService
+     * @throws IOException unable to walk through file tree
+     */
+    private int registerTree(final Path start) throws IOException {
+        debug("Registering all files in directory: " + start.toString());
+        final WatchPriority priority = getWatchPriority(start);
+        final AtomicInteger directories = new AtomicInteger();
+
+        if (trackingMode == FileTrackMode.POLLING || trackingMode == FileTrackMode.NOT_SET) {
+            if (pollingScanner.addRoot(start.toFile(), null, true, false)) {
+                debug("Adding directory to polling: " + start.toString());
+            } else {
+                debug("Skipping directory " + start.toString() + " since it is already being polled");
+            }
+        }
+
+        if (trackingMode == FileTrackMode.FILE_WATCHER || trackingMode == FileTrackMode.NOT_SET) {
+            // register directory and sub-directories
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (!dir.equals(start) && ignoreRules.isIgnored(dir.toFile(), true)) {
+                        debug("Skipping ignored subdirectory " + dir.toString());
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (watchManager.isPolled(dir)) {
+                        debug("Skipping subdirectory " + dir.toString() + " since it is already being polled");
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    debug("Adding subdirectory to WatchService: " + dir.toString());
+                    if (!watchManager.register(dir, priority)) {
+                        // out of watches, so poll this subtree instead of registering each directory
+                        addPollingFallback(dir, null);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    directories.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return directories.get();
     }
 
     /**
@@ -2654,9 +3947,17 @@ public abstract class DevUtil {
         try {
             int messageOccurrences = countApplicationUpdatedMessages();
             boolean compileResult;
+            long compileStart = System.nanoTime();
+            Set<File> failed;
+            boolean hotSwapped = false;
+            // the classes that were compiled, or null if they are not known
+            Set<String> changedClasses = null;
             
             if (useBuildRecompile) {
                 compileResult = compile(tests ? testSourceDirectory : sourceDirectory);
+                compileDebouncer.compiled(System.currentTimeMillis(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - compileStart), compileResult);
+                failed = compileResult ? Collections.<File>emptySet() : new HashSet<File>(javaFilesChanged);
             } else {
                 // source root is src/main/java or src/test/java
                 File classesDir = tests ? testOutputDirectory : outputDirectory;
@@ -2671,66 +3972,423 @@ public abstract class DevUtil {
                 }
 
                 List<String> optionList = new ArrayList<>(Arrays.asList(DEFAULT_COMPILER_OPTIONS));
-                List<File> outputDirs = new ArrayList<File>();
+                Set<File> classPathElems = getCompileClassPath(artifactPaths, tests, outputDirectory,
+                        testOutputDirectory);
+
+                List<File> compilationUnits = new ArrayList<File>();
+                for (File file : javaFilesChanged) {
+                    if (file.exists() && file.isFile()) {
+                        compilationUnits.add(file);
+                    } else {
+                        debug("The Java file " + file + " does not exist and will not be compiled.");
+                    }
+                }
+
+                Map<File, File> classFiles = new HashMap<File, File>();
+                CompileReport report = new CompileReport();
+                // the shapes of the classes before the compile, to tell whether they can be hot swapped
+                Map<String, String> shapes = isHotSwapEnabled(tests)
+                        ? readShapes(getCompiledClassFiles(compilationUnits, classesDir))
+                        : null;
+                failed = compileJavaFiles(compilationUnits, classPathElems, classesDir, optionList, classFiles,
+                        report);
+                compileDebouncer.compiled(System.currentTimeMillis(), report.getElapsedMillis(), failed.isEmpty());
+                List<File> compiled = new ArrayList<File>(compilationUnits);
+                compiled.removeAll(failed);
+                if (!compiled.isEmpty()) {
+                    // the files without errors were published, so their dependents are updated too
+                    recompileDependents(compiled, classFiles, tests, classPathElems, classesDir, optionList, failed,
+                            report);
+                }
+                List<String> slowest = report.formatSlowestFiles(MAX_REPORTED_COMPILE_TIMINGS);
+                if (!slowest.isEmpty()) {
+                    debug("Compile timings of the slowest files:");
+                    for (String line : slowest) {
+                        debug("    " + line);
+                    }
+                }
+                compileResult = failed.isEmpty();
+                hotSwapped = compileResult && shapes != null && hotSwap(classFiles, shapes);
+                changedClasses = new HashSet<String>();
+                for (File source : new HashSet<File>(classFiles.values())) {
+                    changedClasses.addAll(dependencyGraph.getClasses(source));
+                }
+            }
+            // only the files with errors are compiled again with the next change
+            Collection<File> failedCompilation = tests ? failedCompilationJavaTests : failedCompilationJavaSources;
+            failedCompilation.removeAll(javaFilesChanged);
+            failedCompilation.addAll(failed);
+            loopMetrics.recordSince(DevLoopMetrics.Stage.COMPILE, compileStart);
+            if (compileResult) {
+                if (tests) {
+                    info("Tests compilation was successful.");
+                } else {
+                    info("Source compilation was successful.");
+                }
 
+                if (hotSwapped && isApplicationRestartedOnClassChange()) {
+                    // the class files were also published to the output directory
+                    debug("The application monitor restarts the application for the hot swapped classes, so the tests wait for the application update");
+                    hotSwapped = false;
+                }
+                // run tests after successful compile
+                if (tests || hotSwapped) {
+                    // if only tests were compiled or the classes were hot
+                    // swapped without an application restart, don't need to
+                    // wait for app to update
+                    runTestThread(false, executor, -1, false, false, changedClasses);
+                } else {
+                    runTestThread(true, executor, messageOccurrences, false, false, changedClasses);
+                }
+                return true;
+            } else {
                 if (tests) {
-                    outputDirs.add(outputDirectory);
-                    outputDirs.add(testOutputDirectory);
+                    info("Tests compilation had errors.");
                 } else {
-                    outputDirs.add(outputDirectory);
+                    info("Source compilation had errors.");
                 }
-                Set<File> classPathElems = getClassPath(artifactPaths, outputDirs);
+                debug("Java files that failed to compile: " + failed);
+                return false;
+            }
+        } catch (Exception e) {
+            debug("Error compiling java files", e);
+            (tests ? failedCompilationJavaTests : failedCompilationJavaSources).addAll(javaFilesChanged);
+            return false;
+        }
+    }
 
-                JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-                StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    private boolean isHotSwapEnabled(boolean tests) {
+        return hotSwap && libertyDebug && !tests;
+    }
 
-                fileManager.setLocation(StandardLocation.CLASS_PATH, classPathElems);
-                fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(classesDir));
+    /**
+     * Whether the server restarts the application when its class files change,
+     * which is what the default polled application monitor does.
+     */
+    private boolean isApplicationRestartedOnClassChange() {
+        String updateTrigger = getApplicationUpdateTrigger(serverDirectory);
+        return !"mbean".equals(updateTrigger) && !"disabled".equals(updateTrigger);
+    }
 
-                Collection<JavaFileObject> compilationUnits = new HashSet<JavaFileObject>();
-                for (File file : javaFilesChanged) {
-                    if (file.exists() && file.isFile()) {
-                        for (JavaFileObject o : fileManager.getJavaFileObjects(file)) {
-                            compilationUnits.add(o);
-                        }    
-                    } else {
-                        debug("The Java file " + file + " does not exist and will not be compiled.");
+    /**
+     * Get the updateTrigger of the applicationMonitor that the server
+     * configuration sets, from the default config dropins, the server.xml and
+     * the override config dropins of the server directory, in that order.
+     * Included files are not read.
+     * 
+     * @param serverDirectory the server directory
+     * @return the update trigger, or null if it is not set in these files
+     */
+    static String getApplicationUpdateTrigger(File serverDirectory) {
+        List<File> configFiles = new ArrayList<File>();
+        configFiles.addAll(getConfigDropins(new File(serverDirectory, "configDropins/defaults")));
+        configFiles.add(new File(serverDirectory, "server.xml"));
+        configFiles.addAll(getConfigDropins(new File(serverDirectory, "configDropins/overrides")));
+        String updateTrigger = null;
+        for (File configFile : configFiles) {
+            if (!configFile.isFile()) {
+                continue;
+            }
+            try {
+                NodeList monitors = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(configFile)
+                        .getDocumentElement().getElementsByTagName("applicationMonitor");
+                for (int i = 0; i < monitors.getLength(); i++) {
+                    String value = ((Element) monitors.item(i)).getAttribute("updateTrigger");
+                    if (!value.isEmpty()) {
+                        updateTrigger = value;
                     }
                 }
+            } catch (Exception e) {
+                // the server reports configuration errors
+            }
+        }
+        return updateTrigger;
+    }
+
+    private static List<File> getConfigDropins(File dir) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xml");
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        // the server reads config dropins in alphabetical order
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private Map<String, String> readShapes(Collection<File> classFiles) {
+        Map<String, String> shapes = new HashMap<String, String>();
+        for (File classFile : classFiles) {
+            try {
+                ClassFileInfo info = ClassFileInfo.read(classFile);
+                shapes.put(info.getClassName(), info.getShapeHash());
+            } catch (IOException e) {
+                // the class cannot be compared, so it is not hot swapped
+                debug("Could not read class file " + classFile, e);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Redefine the classes of a compile in the server JVM through the debug port,
+     * if the compile only changed method bodies.
+     * 
+     * @param classFiles the class files written by the compile, and their sources
+     * @param shapes     the shape hashes of the classes before the compile
+     * @return true if the classes were redefined
+     */
+    private boolean hotSwap(Map<File, File> classFiles, Map<String, String> shapes) {
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        try {
+            for (File classFile : classFiles.keySet()) {
+                byte[] bytes = Files.readAllBytes(classFile.toPath());
+                ClassFileInfo info = ClassFileInfo.read(new ByteArrayInputStream(bytes));
+                if (!info.getShapeHash().equals(shapes.get(info.getClassName()))) {
+                    debug("Not hot swapping since " + info.getClassName() + " changed more than its method bodies");
+                    return false;
+                }
+                classes.put(info.getClassName(), bytes);
+            }
+        } catch (IOException e) {
+            debug("Not hot swapping since the class files could not be read", e);
+            return false;
+        }
+        if (classes.isEmpty() || !classes.keySet().equals(shapes.keySet())) {
+            debug("Not hot swapping since classes were added or removed");
+            return false;
+        }
+        int port = alternativeDebugPort == -1 ? libertyDebugPort : alternativeDebugPort;
+        try {
+            int redefined = new HotSwapClient("localhost", port).redefineClasses(classes);
+            info("Hot swapped " + redefined + " loaded classes through the debug port.");
+            return true;
+        } catch (IOException e) {
+            debug("Hot swap failed, so the application is updated instead", e);
+            return false;
+        }
+    }
+
+    /**
+     * Compile Java files and log the compiler messages. If some of the files
+     * have errors, the others are compiled again without them, so that their
+     * classes are published and only the files with errors are left to retry.
+     * 
+     * @param files      the Java files to compile
+     * @param classPath  the class path
+     * @param classesDir the output directory
+     * @param options    the compiler options
+     * @param classFiles receives the class files that were written, and their
+     *                   sources
+     * @param report     receives the compiler messages and timings
+     * @return the files that failed to compile
+     * @throws IOException unable to write the class files
+     */
+    private Set<File> compileJavaFiles(List<File> files, Set<File> classPath, File classesDir, List<String> options,
+            Map<File, File> classFiles, CompileReport report) throws IOException {
+        Set<File> failed = new LinkedHashSet<File>();
+        List<File> remaining = new ArrayList<File>(files);
+        while (!remaining.isEmpty()) {
+            CompileReport round = new CompileReport();
+            boolean success = getCompilerService().compile(remaining, classPath, classesDir, options, classFiles,
+                    getCompiledClassFiles(remaining, classesDir), round);
+            logCompilerMessages(round);
+            report.addAll(round);
+            if (success) {
+                debug("Published class files: " + getCompilerService().getLastPublish());
+                recordCompileState(remaining, classFiles, classPath, classesDir, options);
+                break;
+            }
+            Set<File> errorFiles = round.getErrorFiles();
+            errorFiles.retainAll(remaining);
+            if (errorFiles.isEmpty() || round.hasGeneralErrors()) {
+                // the errors cannot be narrowed down to files
+                failed.addAll(remaining);
+                break;
+            }
+            failed.addAll(errorFiles);
+            remaining.removeAll(errorFiles);
+            if (!remaining.isEmpty()) {
+                debug("Compiling the Java files without errors on their own: " + remaining);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Record the classes that the given Java files were compiled into, so that
+     * the next dev mode session does not compile them again.
+     */
+    private void recordCompileState(List<File> sources, Map<File, File> classFiles, Set<File> classPath,
+            File classesDir, List<String> options) throws IOException {
+        CompileStateStore state = compileState;
+        if (state == null) {
+            return;
+        }
+        Map<File, List<String>> classNames = new HashMap<File, List<String>>();
+        for (File source : sources) {
+            classNames.put(source, new ArrayList<String>());
+        }
+        String classesPath = classesDir.getAbsolutePath() + File.separator;
+        for (Map.Entry<File, File> entry : classFiles.entrySet()) {
+            List<String> names = classNames.get(entry.getValue());
+            String path = entry.getKey().getAbsolutePath();
+            if (names != null && path.startsWith(classesPath) && path.endsWith(".class")) {
+                names.add(path.substring(classesPath.length(), path.length() - ".class".length())
+                        .replace(File.separatorChar, '.'));
+            }
+        }
+        String fingerprint = CompileStateStore.fingerprint(classPath, options);
+        for (Map.Entry<File, List<String>> entry : classNames.entrySet()) {
+            state.record(entry.getKey(), fingerprint, entry.getValue());
+        }
+    }
+
+    private void logCompilerMessages(CompileReport report) {
+        for (CompileReport.Message message : report.getMessages()) {
+            switch (message.getKind()) {
+            case ERROR:
+                error(message.toString());
+                break;
+            case WARNING:
+            case MANDATORY_WARNING:
+                warn(message.toString());
+                break;
+            default:
+                info(message.toString());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Recompile the sources that depend on classes whose ABI changed in a
+     * compile, until no more ABIs change. Test sources that depend on changed
+     * main classes are queued for the next test compile.
+     * 
+     * @param compiled   the sources that were compiled
+     * @param classFiles the class files written by the compile, and their sources
+     * @param tests      whether the compiled sources are test sources
+     * @param classPath  the class path
+     * @param classesDir the output directory
+     * @param options    the compiler options
+     * @param failed     receives the dependent sources that failed to compile
+     * @param report     receives the compiler messages and timings
+     * @throws IOException unable to resolve canonical path
+     */
+    private void recompileDependents(Collection<File> compiled, Map<File, File> classFiles, boolean tests,
+            Set<File> classPath, File classesDir, List<String> options, Set<File> failed, CompileReport report)
+            throws IOException {
+        Set<File> done = new HashSet<File>(compiled);
+        Collection<File> sources = compiled;
+        while (true) {
+            ClassDependencyGraph.Change change = dependencyGraph.update(sources, readClassFiles(classFiles));
+            List<File> next = new ArrayList<File>();
+            for (File dependent : getAffectedSources(change)) {
+                if (done.contains(dependent) || !dependent.isFile()) {
+                    continue;
+                }
+                if (isTestSource(dependent) == tests) {
+                    next.add(dependent);
+                } else if (!tests) {
+                    recompileJavaTests.add(dependent);
+                }
+            }
+            if (next.isEmpty()) {
+                return;
+            }
+            debug("Recompiling Java files that depend on changed classes: " + next);
+            done.addAll(next);
+            classFiles = new HashMap<File, File>();
+            // retry the dependents that fail with the next compile, since their errors come from this change
+            Set<File> failedDependents = compileJavaFiles(next, classPath, classesDir, options, classFiles, report);
+            failed.addAll(failedDependents);
+            next.removeAll(failedDependents);
+            if (next.isEmpty()) {
+                return;
+            }
+            sources = next;
+        }
+    }
+
+    /**
+     * Queue the sources that depend on removed classes for recompilation.
+     */
+    private void queueDependents(ClassDependencyGraph.Change change, Collection<File> deleted) throws IOException {
+        for (File dependent : getAffectedSources(change)) {
+            if (!deleted.contains(dependent) && dependent.isFile()) {
+                (isTestSource(dependent) ? recompileJavaTests : recompileJavaSources).add(dependent);
+            }
+        }
+    }
+
+    private Set<File> getAffectedSources(ClassDependencyGraph.Change change) throws IOException {
+        if (change.isConstantsChanged() && !JAVAC_RECORDS_INLINED_CONSTANTS) {
+            // the users of inlined constants cannot be found, so everything is recompiled
+            debug("A compile-time constant changed. Recompiling all Java files.");
+            Set<File> all = new HashSet<File>();
+            if (sourceDirectory.exists()) {
+                all.addAll(FileUtils.listFiles(sourceDirectory.getCanonicalFile(), new String[] { "java" }, true));
+            }
+            if (testSourceDirectory.exists()) {
+                all.addAll(FileUtils.listFiles(testSourceDirectory.getCanonicalFile(), new String[] { "java" }, true));
+            }
+            return all;
+        }
+        return dependencyGraph.getDependentSources(change.getAbiChangedClasses());
+    }
 
-                JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, optionList, null,
-                        compilationUnits);
+    /**
+     * Get the class files that the given sources produced in their last compile,
+     * including inner and anonymous classes.
+     */
+    private List<File> getCompiledClassFiles(Collection<File> sources, File classesDir) {
+        List<File> classFiles = new ArrayList<File>();
+        for (File source : sources) {
+            for (String className : dependencyGraph.getClasses(source)) {
+                classFiles.add(new File(classesDir, className.replace('.', File.separatorChar) + ".class"));
+            }
+        }
+        return classFiles;
+    }
 
-                compileResult = task.call();
+    private void deleteCompiledClassFiles(Collection<File> sources, File classesDir) {
+        for (File classFile : getCompiledClassFiles(sources, classesDir)) {
+            if (classFile.isFile() && classFile.delete()) {
+                debug("Deleted class file " + classFile);
             }
-            if (compileResult) {
-                if (tests) {
-                    info("Tests compilation was successful.");
-                } else {
-                    info("Source compilation was successful.");
-                }
+        }
+    }
 
-                // run tests after successful compile
-                if (tests) {
-                    // if only tests were compiled, don't need to wait for
-                    // app to update
-                    runTestThread(false, executor, -1, false, false);
-                } else {
-                    runTestThread(true, executor, messageOccurrences, false, false);
-                }
-                return true;
-            } else {
-                if (tests) {
-                    info("Tests compilation had errors.");
-                } else {
-                    info("Source compilation had errors.");
-                }
-                return false;
+    private boolean isTestSource(File file) throws IOException {
+        return file.getCanonicalPath().startsWith(testSourceDirectory.getCanonicalPath() + File.separator);
+    }
+
+    private Map<ClassFileInfo, File> readClassFiles(Map<File, File> classFiles) {
+        Map<ClassFileInfo, File> infos = new HashMap<ClassFileInfo, File>();
+        for (Map.Entry<File, File> entry : classFiles.entrySet()) {
+            try {
+                infos.put(ClassFileInfo.read(entry.getKey()), entry.getValue());
+            } catch (IOException e) {
+                // the class is treated as removed, so its dependents are recompiled
+                debug("Could not read class file " + entry.getKey(), e);
             }
-        } catch (Exception e) {
-            debug("Error compiling java files", e);
-            return false;
         }
+        return infos;
+    }
+
+    private Set<File> getCompileClassPath(List<String> artifactPaths, boolean tests, File outputDirectory,
+            File testOutputDirectory) throws IOException {
+        List<File> outputDirs = new ArrayList<File>();
+        outputDirs.add(outputDirectory);
+        if (tests) {
+            outputDirs.add(testOutputDirectory);
+        }
+        return getClassPath(artifactPaths, outputDirs);
     }
 
     /**
@@ -2742,63 +4400,18 @@ public abstract class DevUtil {
      * @throws IOException unable to resolve canonical path
      */
     protected Set<File> getClassPath(List<String> artifactPaths, List<File> outputDirs) throws IOException {
-        List<URL> urls = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
         ClassLoader c = Thread.currentThread().getContextClassLoader();
         while (c != null) {
             if (c instanceof URLClassLoader) {
-                urls.addAll(Arrays.asList(((URLClassLoader) c).getURLs()));
-            }
-            c = c.getParent();
-        }
-
-        Set<String> parsedFiles = new HashSet<>();
-        Deque<String> toParse = new ArrayDeque<>();
-        for (URL url : urls) {
-            toParse.add(new File(url.getPath()).getCanonicalPath());
-        }
-
-        for (String artifactPath : artifactPaths) {
-            toParse.add(new File(artifactPath).getCanonicalPath());
-        }
-
-        Set<File> classPathElements = new HashSet<>();
-        classPathElements.addAll(outputDirs);
-        while (!toParse.isEmpty()) {
-            String s = toParse.poll();
-            if (!parsedFiles.contains(s)) {
-                parsedFiles.add(s);
-                File file = new File(s);
-                if (file.exists() && file.getName().endsWith(".jar")) {
-                    classPathElements.add(file);
-                    if (!file.isDirectory()) {
-                        try (JarFile jar = new JarFile(file)) {
-                            Manifest mf = jar.getManifest();
-                            if (mf == null || mf.getMainAttributes() == null) {
-                                continue;
-                            }
-                            Object classPath = mf.getMainAttributes().get(Attributes.Name.CLASS_PATH);
-                            if (classPath != null) {
-                                for (String i : classPath.toString().split(" ")) {
-                                    File f;
-                                    try {
-                                        URL u = new URL(i);
-                                        f = new File(u.getPath());
-                                    } catch (MalformedURLException e) {
-                                        f = new File(file.getParentFile(), i);
-                                    }
-                                    if (f.exists()) {
-                                        toParse.add(f.getCanonicalPath());
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to open class path file " + file, e);
-                        }
-                    }
+                for (URL url : ((URLClassLoader) c).getURLs()) {
+                    paths.add(url.getPath());
                 }
             }
+            c = c.getParent();
         }
-        return classPathElements;
+        paths.addAll(artifactPaths);
+        return classPathResolver.resolve(paths, outputDirs);
     }
 
     /**
@@ -2814,16 +4427,71 @@ public abstract class DevUtil {
      */
     public void runTestThread(boolean waitForApplicationUpdate, ThreadPoolExecutor executor, int messageOccurrences,
             boolean forceSkipUTs, boolean manualInvocation) {
+        runTestThread(waitForApplicationUpdate, executor, messageOccurrences, forceSkipUTs, manualInvocation, null);
+    }
+
+    /**
+     * Run the tests affected by changes in a new thread.
+     * 
+     * @param waitForApplicationUpdate whether it should wait for the application to
+     *                                 update before running integration tests
+     * @param executor                 the thread pool executor
+     * @param messageOccurrences       how many times the application updated
+     *                                 message has occurred in the log
+     * @param forceSkipUTs             whether to force skip the unit tests
+     * @param manualInvocation         whether the tests were manually invoked
+     * @param changes                  the classes and resources that changed, or
+     *                                 null to run all tests
+     */
+    private void runTestThread(boolean waitForApplicationUpdate, ThreadPoolExecutor executor,
+            int messageOccurrences, boolean forceSkipUTs, boolean manualInvocation, Collection<String> changes) {
+        runTestThread(waitForApplicationUpdate, executor, messageOccurrences, forceSkipUTs, manualInvocation, changes,
+                TestScheduler.FailedTests.ANY);
+    }
+
+    /**
+     * Run tests in a new thread, based on the outcome of the last run.
+     * 
+     * @param waitForApplicationUpdate whether it should wait for the application to
+     *                                 update before running integration tests
+     * @param executor                 the thread pool executor
+     * @param messageOccurrences       how many times the application updated
+     *                                 message has occurred in the log
+     * @param forceSkipUTs             whether to force skip the unit tests
+     * @param manualInvocation         whether the tests were manually invoked
+     * @param changes                  the classes and resources that changed, or
+     *                                 null to run all tests
+     * @param failedTests              which tests to run based on the outcome of
+     *                                 the last run
+     */
+    private void runTestThread(boolean waitForApplicationUpdate, ThreadPoolExecutor executor,
+            int messageOccurrences, boolean forceSkipUTs, boolean manualInvocation, Collection<String> changes,
+            TestScheduler.FailedTests failedTests) {
         try {
             if (manualInvocation || hotTests) {
-                executor.execute(new TestJob(waitForApplicationUpdate, messageOccurrences, executor, forceSkipUTs,
-                        manualInvocation));
+                requestTests(executor, new TestScheduler.Request(waitForApplicationUpdate, messageOccurrences,
+                        forceSkipUTs, manualInvocation, changes, failedTests));
             }
         } catch (RejectedExecutionException e) {
             debug("Cannot add thread since max threads reached", e);
         }
     }
 
+    private void requestTests(ThreadPoolExecutor executor, TestScheduler.Request request) {
+        testExecutor = executor;
+        testScheduler.request(executor, request);
+        queuedTestJobs.incrementAndGet();
+    }
+
+    /**
+     * Requests a test run from the test scheduler when it runs.
+     * 
+     * @deprecated Test runs are scheduled so that the latest request wins, and
+     *             running a TestJob only requests one. Use
+     *             {@link #runTestThread(boolean, ThreadPoolExecutor, int, boolean, boolean)}
+     *             instead.
+     */
+    @Deprecated
     public class TestJob implements Runnable {
         private boolean waitForApplicationUpdate;
         private int messageOccurrences;
@@ -2842,10 +4510,10 @@ public abstract class DevUtil {
         @Override
         public void run() {
             try {
-                runTests(waitForApplicationUpdate, messageOccurrences, executor, forceSkipUTs);
-            } finally {
-                // start watching for hotkey presses if not already started, or re-print message if thread already running
-                runHotkeyReaderThread(executor);
+                requestTests(executor, new TestScheduler.Request(waitForApplicationUpdate, messageOccurrences,
+                        forceSkipUTs, manualInvocation));
+            } catch (RejectedExecutionException e) {
+                debug("Cannot add thread since max threads reached", e);
             }
         }
 
@@ -2854,6 +4522,136 @@ public abstract class DevUtil {
         }
     }
 
+    /**
+     * A config file to copy to the server.
+     */
+    private static class ConfigChange {
+        private final File file;
+        private final File srcDir;
+        private final String targetFileName;
+
+        ConfigChange(File file, File srcDir, String targetFileName) {
+            this.file = file;
+            this.srcDir = srcDir;
+            this.targetFileName = targetFileName;
+        }
+    }
+
+    /**
+     * Actions deferred until all file changes of a change storm are processed, so
+     * that each is done at most once.
+     */
+    private static class ChangeTransaction {
+        private final int messageOccurrences;
+        private final List<ConfigChange> configChanges = new ArrayList<ConfigChange>();
+        private boolean redeployApp;
+        private boolean restartServer;
+        private boolean enableServerDebug;
+        private boolean runTests;
+        private boolean forceSkipUTs = true;
+        /** the classes and resources that changed, or null if any test can be affected */
+        private Set<String> testChanges = new LinkedHashSet<String>();
+
+        ChangeTransaction(int messageOccurrences) {
+            this.messageOccurrences = messageOccurrences;
+        }
+    }
+
+    /**
+     * Runs the tests that the test scheduler asks for.
+     */
+    private class TestRunner implements TestScheduler.Runner {
+        @Override
+        public void run(TestScheduler.Request request) {
+            ThreadPoolExecutor executor = testExecutor;
+            long startMillis = System.currentTimeMillis();
+            try {
+                if (request.getFailedTests() != TestScheduler.FailedTests.ANY) {
+                    runFailedTests(request, executor);
+                    return;
+                }
+                // tests that are run from the hotkey always run in full
+                if (testImpactAnalysis && !request.isManualInvocation()) {
+                    selectedUnitTests = testImpactAnalyzer.getAffectedTests(request.getChanges());
+                }
+                runTests(request.isWaitForApplicationUpdate(), request.getMessageOccurrences(), executor,
+                        request.isForceSkipUTs());
+            } finally {
+                selectedUnitTests = null;
+                selectedIntegrationTests = null;
+                recordTestReports(startMillis);
+                if (testScheduler.getPendingRequest() == null) {
+                    // start watching for hotkey presses if not already started, or re-print message if thread already running
+                    runHotkeyReaderThread(executor);
+                }
+            }
+        }
+
+        /**
+         * Run the test classes that had failed tests in their last run, and then
+         * the other test classes if the request asks for them.
+         */
+        private void runFailedTests(TestScheduler.Request request, ThreadPoolExecutor executor) {
+            if (testOutputDirectory != null) {
+                try {
+                    getTestOutcomes().retainExisting(testOutputDirectory);
+                } catch (IOException e) {
+                    debug("Could not save the test outcomes", e);
+                }
+            }
+            Set<String> failed = getTestOutcomes().getFailedTestClasses();
+            if (failed.isEmpty()) {
+                info("No tests failed in the last run. Running all tests...");
+                runTests(request.isWaitForApplicationUpdate(), request.getMessageOccurrences(), executor,
+                        request.isForceSkipUTs());
+                return;
+            }
+            info("Running the " + failed.size() + " test classes that failed in the last run...");
+            selectTests(failed);
+            runTests(request.isWaitForApplicationUpdate(), request.getMessageOccurrences(), executor,
+                    request.isForceSkipUTs());
+            if (request.getFailedTests() != TestScheduler.FailedTests.FIRST || testScheduler.isCancelled()) {
+                return;
+            }
+            Set<String> others = testImpactAnalyzer.getTestClasses();
+            if (others.isEmpty()) {
+                // the test classes are not known, so run all of them again
+                selectedUnitTests = null;
+                selectedIntegrationTests = null;
+            } else {
+                others.removeAll(failed);
+                selectTests(others);
+            }
+            info("Running the other tests...");
+            runTests(false, request.getMessageOccurrences(), executor, request.isForceSkipUTs());
+        }
+
+        private void selectTests(Set<String> testClasses) {
+            Set<String> unitTests = new TreeSet<String>();
+            Set<String> integrationTests = new TreeSet<String>();
+            for (String testClass : testClasses) {
+                String simpleName = testClass.substring(testClass.lastIndexOf('.') + 1);
+                if (INTEGRATION_TEST_CLASS.matcher(simpleName).matches()) {
+                    integrationTests.add(testClass);
+                } else {
+                    unitTests.add(testClass);
+                }
+            }
+            selectedUnitTests = unitTests;
+            selectedIntegrationTests = integrationTests;
+        }
+
+        @Override
+        public void cancelled(TestScheduler.Request running) {
+            debug("Cancelling the running tests since newer tests were requested");
+            WarmUnitTestRunner runner = warmUnitTestRunner;
+            if (runner != null) {
+                runner.cancel();
+            }
+            cancelRunningTests();
+        }
+    }
+
     /**
      * Gets the Liberty server's host name.
      * @return hostName the host name, or null if the server is not started
@@ -2878,6 +4676,310 @@ public abstract class DevUtil {
         return httpsPort;
     }
 
+    /**
+     * Sets how long file changes are collected before they are processed, so
+     * that the multiple events produced by a single save are handled once.
+     * 
+     * @param coalesceMillis the coalesce window in milliseconds
+     */
+    public void setFileChangeCoalesceWindow(long coalesceMillis) {
+        fileChangeBus.setWindowMillis(coalesceMillis);
+    }
+
+    /**
+     * Sets how many file change events per second start a change storm. The
+     * changes of a storm are collected until the files stop changing, and then
+     * applied with a single compile, config update, redeploy or restart, and test
+     * run.
+     * 
+     * @param changeStormThreshold the number of events per second, or 0 to
+     *                             process all changes as they settle
+     */
+    public void setChangeStormThreshold(int changeStormThreshold) {
+        fileChangeBus.setStormThreshold(changeStormThreshold);
+    }
+
+    /**
+     * Sets the maximum number of directories to register with the file watcher.
+     * Directory trees beyond this limit are polled for changes instead.
+     * 
+     * @param maxFileWatches the maximum number of watched directories, or 0 to
+     *                       use the default for the operating system
+     */
+    public void setMaxFileWatches(int maxFileWatches) {
+        this.maxFileWatches = maxFileWatches;
+    }
+
+    /**
+     * Sets additional files and directories for dev mode to ignore. Ignored
+     * directories are not watched, polled or copied.
+     * 
+     * @param ignorePatterns patterns in .gitignore syntax, relative to the project
+     *                       directory
+     */
+    public void setIgnorePatterns(List<String> ignorePatterns) {
+        this.ignorePatterns = ignorePatterns;
+        buildIgnoreRules();
+    }
+
+    /**
+     * Sets whether dev mode also ignores the files and directories listed in the
+     * .gitignore file in the project directory.
+     * 
+     * @param useGitIgnore whether to use the project's .gitignore file
+     */
+    public void setUseGitIgnore(boolean useGitIgnore) {
+        this.useGitIgnore = useGitIgnore;
+        buildIgnoreRules();
+    }
+
+    /**
+     * Sets whether the wait after a Java file change before compiling adapts to
+     * how the user saves and how recent compiles went, and whether pending Java
+     * files are compiled speculatively in the background during the wait. When
+     * false, the compile wait given to the constructor is always used. Defaults
+     * to true.
+     * 
+     * @param adaptiveCompileWait whether the compile wait adapts
+     */
+    public void setAdaptiveCompileWait(boolean adaptiveCompileWait) {
+        compileDebouncer.setAdaptive(adaptiveCompileWait);
+    }
+
+    /**
+     * Sets whether Java source changes that only change method bodies are
+     * redefined in the running server through the debug port, when the server
+     * was started in debug mode. If the server rejects the new classes, the
+     * application is updated as usual. The class files are still written to the
+     * output directory, so the default polled application monitor also restarts
+     * the application. Set the updateTrigger of the applicationMonitor to mbean
+     * or disabled in the server configuration to keep the application running,
+     * in which case the tests that run after a hot swap do not wait for the
+     * application update message. Defaults to false.
+     * 
+     * @param hotSwap whether to hot swap method body changes
+     */
+    public void setHotSwap(boolean hotSwap) {
+        this.hotSwap = hotSwap;
+    }
+
+    /**
+     * Sets whether the unit tests that run after a change are only the ones that
+     * the change affects: the test classes that reach a changed class through
+     * their bytecode references, or that reached a changed class or resource in
+     * a coverage run recorded with the {@link #getTestImpactAnalyzer() test
+     * impact analyzer}. The affected tests are available from
+     * {@link #getSelectedUnitTests()} while the tests run. Tests that are run
+     * from the hotkey and integration tests, which reach the application over
+     * HTTP rather than through its classes, always run in full. Defaults to
+     * false.
+     * 
+     * @param testImpactAnalysis whether to only run the affected unit tests
+     */
+    public void setTestImpactAnalysis(boolean testImpactAnalysis) {
+        this.testImpactAnalysis = testImpactAnalysis;
+    }
+
+    /**
+     * Gets the analyzer that finds the tests affected by a change, so that
+     * coverage runs of the tests can be recorded with it.
+     * 
+     * @return the test impact analyzer
+     */
+    public TestImpactAnalyzer getTestImpactAnalyzer() {
+        return testImpactAnalyzer;
+    }
+
+    /**
+     * Gets the unit tests to run, for {@link #runUnitTests()} to pass to the
+     * test runner, for example as a test filter. The runner should still apply
+     * its own includes and excludes, since the selection can contain any class
+     * compiled from the test sources.
+     * 
+     * @return the binary names of the test classes affected by the changes of
+     *         the running tests or that failed before, or null to run all unit
+     *         tests
+     */
+    public Set<String> getSelectedUnitTests() {
+        return selectedUnitTests;
+    }
+
+    /**
+     * Gets the integration tests to run, for {@link #runIntegrationTests()} to
+     * pass to the test runner, for example as a test filter, in which case
+     * {@link #isIntegrationTestSelectionSupported()} should return true.
+     * Integration tests are only selected when the tests that failed in the last
+     * run are run again.
+     * 
+     * @return the binary names of the integration test classes to run, or null
+     *         to run all integration tests
+     */
+    public Set<String> getSelectedIntegrationTests() {
+        return selectedIntegrationTests;
+    }
+
+    /**
+     * Gets the outcome of the last run of each test class, which decides the
+     * tests that run when the failed tests are run again. Plugins that do not
+     * write reports to the {@link #setTestReportsDirectories(List) test reports
+     * directories} can record the outcomes with it.
+     * 
+     * @return the test outcomes
+     */
+    public synchronized TestOutcomeStore getTestOutcomes() {
+        if (testOutcomes == null) {
+            File file = testOutcomesFile;
+            if (file == null && outputDirectory != null) {
+                file = new File(outputDirectory.getAbsoluteFile().getParentFile(), ".liberty-dev-test-outcomes");
+            }
+            testOutcomes = new TestOutcomeStore(file);
+        }
+        return testOutcomes;
+    }
+
+    /**
+     * Sets the file that records the tests that failed in the last run of each
+     * test class, so that they can be run again after dev mode restarts.
+     * Defaults to .liberty-dev-test-outcomes next to the classes output
+     * directory.
+     * 
+     * @param testOutcomesFile the file
+     */
+    public void setTestOutcomesFile(File testOutcomesFile) {
+        this.testOutcomesFile = testOutcomesFile;
+    }
+
+    /**
+     * Sets the directories that the test runners write Surefire XML reports to,
+     * such as target/surefire-reports and target/failsafe-reports. The outcomes
+     * in the reports written by a test run are recorded once it finishes.
+     * 
+     * @param testReportsDirectories the directories
+     */
+    public void setTestReportsDirectories(List<File> testReportsDirectories) {
+        this.testReportsDirectories = new ArrayList<File>(testReportsDirectories);
+    }
+
+    /**
+     * Sets the file that records what each Java file was compiled into, so that
+     * only the Java files that changed are compiled when dev mode starts.
+     * Defaults to .liberty-dev-compile-state next to the classes output
+     * directory.
+     * 
+     * @param compileStateFile the file
+     */
+    public void setCompileStateFile(File compileStateFile) {
+        this.compileStateFile = compileStateFile;
+    }
+
+    /**
+     * Sets the number of shards that the integration tests run in at the same
+     * time against the server, if the plugin supports it. The test classes are
+     * split by how long they took before, so that the shards finish at about the
+     * same time. Defaults to 1, which runs the integration tests with
+     * {@link #runIntegrationTests()}.
+     * 
+     * @param integrationTestShards the number of shards
+     */
+    public void setIntegrationTestShards(int integrationTestShards) {
+        this.integrationTestShards = integrationTestShards;
+    }
+
+    /**
+     * Sets the patterns of the integration test classes that are not safe to run
+     * in parallel, which run alone after the other shards.
+     * 
+     * @param serialIntegrationTests regular expressions that match the whole
+     *                               binary name of the test classes
+     */
+    public void setSerialIntegrationTests(List<String> serialIntegrationTests) {
+        this.serialIntegrationTests = new ArrayList<String>(serialIntegrationTests);
+    }
+
+    /**
+     * Sets the annotations that mark the integration test classes that are not
+     * safe to run in parallel, which run alone after the other shards. Defaults
+     * to {@link IntegrationTestSharder#DEFAULT_SERIAL_ANNOTATIONS}.
+     * 
+     * @param serialIntegrationTestAnnotations the binary names of the annotations
+     */
+    public void setSerialIntegrationTestAnnotations(List<String> serialIntegrationTestAnnotations) {
+        this.serialIntegrationTestAnnotations = new ArrayList<String>(serialIntegrationTestAnnotations);
+    }
+
+    /**
+     * Sets the directory that the reports of the integration test shards are
+     * merged into. Its contents are replaced by every run in shards. Defaults to
+     * liberty-dev-it-reports next to the classes output directory.
+     * 
+     * @param integrationTestReportsDirectory the directory
+     */
+    public void setIntegrationTestReportsDirectory(File integrationTestReportsDirectory) {
+        this.integrationTestReportsDirectory = integrationTestReportsDirectory;
+    }
+
+    /**
+     * Sets the file that records how long each integration test class took, to
+     * balance the shards. Defaults to .liberty-dev-it-durations next to the
+     * classes output directory.
+     * 
+     * @param integrationTestDurationsFile the file
+     */
+    public void setIntegrationTestDurationsFile(File integrationTestDurationsFile) {
+        this.integrationTestDurationsFile = integrationTestDurationsFile;
+    }
+
+    /**
+     * Sets the file that the dev loop timings are written to when dev mode
+     * exits. Defaults to logs/devLoopTimings.txt in the server directory.
+     * 
+     * @param loopMetricsFile the file
+     */
+    public void setLoopMetricsFile(File loopMetricsFile) {
+        this.loopMetricsFile = loopMetricsFile;
+    }
+
+    /**
+     * Gets the timings of the dev loop stages recorded so far.
+     * 
+     * @return the dev loop timings
+     */
+    public DevLoopMetrics getLoopMetrics() {
+        return loopMetrics;
+    }
+
+    /**
+     * Print the p50, p95 and maximum time of each dev loop stage.
+     */
+    public void printLoopMetrics() {
+        List<String> lines = loopMetrics.format();
+        if (lines.isEmpty()) {
+            info("No dev loop timings have been recorded yet.");
+            return;
+        }
+        info("Dev loop timings:");
+        for (String line : lines) {
+            info("    " + line);
+        }
+    }
+
+    private void writeLoopMetrics() {
+        File file = loopMetricsFile;
+        if (file == null) {
+            if (serverDirectory == null) {
+                return;
+            }
+            file = new File(serverDirectory, "logs/devLoopTimings.txt");
+        }
+        try {
+            if (loopMetrics.write(file)) {
+                debug("Wrote dev loop timings to " + file);
+            }
+        } catch (IOException e) {
+            debug("Could not write dev loop timings to " + file, e);
+        }
+    }
+
     /**
      * Sets the preferred debug port.
      * 
@@ -2899,7 +5001,7 @@ public abstract class DevUtil {
         if (!Objects.equals(properties, propertyFilesMap.get(propertyFile))) {
             debug("Properties file " + propertyFile.getAbsolutePath() + " has changed. Restarting server...");
             propertyFilesMap.put(propertyFile, properties);    
-            restartServer();
+            requestRestart();
             return true;
         } else {
             debug("No changes detected in properties file " + propertyFile.getAbsolutePath());
@@ -2926,6 +5028,13 @@ public abstract class DevUtil {
             Properties properties = readPropertiesFromFile(propertyFile);
             propertyFilesMap.put(propertyFile, properties);
         }
+        if (pathClassifier != null) {
+            try {
+                buildPathClassifier();
+            } catch (IOException e) {
+                error("Could not update the watched property files: " + e.getMessage(), e);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,283 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.openliberty.tools.common.plugins.util.DevUtil.ChangeType;
+
+/**
+ * Collects raw file change events from the file watcher and polling backends,
+ * merges duplicate events for the same path, and releases them as ordered
+ * batches once the events have settled.
+ * <p>
+ * When events arrive faster than the storm threshold, for example during a
+ * branch switch or source generation, the bus switches to storm mode and holds
+ * the events until the file system has been quiet for the storm quiet period,
+ * so that the whole burst is released as one batch.
+ */
+public class FileChangeBus {
+
+    /**
+     * The maximum time an event can be held back while other events keep
+     * arriving, as a multiple of the coalesce window.
+     */
+    private static final int MAX_DELAY_WINDOWS = 10;
+
+    /** The maximum time events are held back during a storm */
+    private static final long MAX_STORM_MILLIS = 60000;
+
+    private static final long RATE_INTERVAL_MILLIS = 1000;
+
+    private final Map<File, FileChangeEvent> pending = new LinkedHashMap<File, FileChangeEvent>();
+    private long windowMillis;
+    private long lastEventTime;
+    private int stormThreshold;
+    private long stormQuietMillis;
+    private boolean storm;
+    private long rateIntervalStart;
+    private int rateIntervalEvents;
+
+    /**
+     * @param windowMillis how long the bus must be quiet before pending events
+     *                     are released
+     */
+    public FileChangeBus(long windowMillis) {
+        this(windowMillis, 0, 0);
+    }
+
+    /**
+     * @param windowMillis     how long the bus must be quiet before pending
+     *                         events are released
+     * @param stormThreshold   the number of raw events per second that starts a
+     *                         storm, or 0 to disable storm detection
+     * @param stormQuietMillis how long the bus must be quiet before the events of
+     *                         a storm are released
+     */
+    public FileChangeBus(long windowMillis, int stormThreshold, long stormQuietMillis) {
+        setWindowMillis(windowMillis);
+        setStormThreshold(stormThreshold);
+        setStormQuietMillis(stormQuietMillis);
+    }
+
+    public synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis < 0 ? 0 : windowMillis;
+    }
+
+    public synchronized long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public synchronized void setStormThreshold(int stormThreshold) {
+        this.stormThreshold = stormThreshold < 0 ? 0 : stormThreshold;
+    }
+
+    public synchronized void setStormQuietMillis(long stormQuietMillis) {
+        this.stormQuietMillis = stormQuietMillis < 0 ? 0 : stormQuietMillis;
+    }
+
+    /**
+     * Whether the pending events belong to a change storm. This stays true until
+     * the storm's events are drained.
+     */
+    public synchronized boolean isStorm() {
+        return storm;
+    }
+
+    /**
+     * Add a raw event to the bus. If an event is already pending for the same
+     * path, the two are merged.
+     *
+     * @param file        the file or directory that changed
+     * @param isDirectory whether the change is known to be for a directory
+     * @param changeType  the type of change
+     */
+    public synchronized void publish(File file, boolean isDirectory, ChangeType changeType) {
+        if (file == null || changeType == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastEventTime = now;
+        if (now - rateIntervalStart >= RATE_INTERVAL_MILLIS) {
+            rateIntervalStart = now;
+            rateIntervalEvents = 0;
+        }
+        rateIntervalEvents++;
+        if (stormThreshold > 0 && rateIntervalEvents >= stormThreshold) {
+            storm = true;
+        }
+        File key = file.getAbsoluteFile();
+        FileChangeEvent event = pending.get(key);
+        if (event == null) {
+            pending.put(key, new FileChangeEvent(file, isDirectory, changeType, now));
+        } else {
+            event.merge(isDirectory, changeType, now);
+            if (event.getChangeType() == null) {
+                // created and deleted again within the window, so there is nothing to do
+                pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Whether there are events waiting to be released.
+     */
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Release the pending events if no new events arrived within the coalesce
+     * window, or the storm quiet period during a storm, or if the oldest pending
+     * event has been held back for too long.
+     *
+     * @return the coalesced events in the order their paths were first seen, and
+     *         whether they are the result of a change storm, or an empty batch if
+     *         the events are not ready yet
+     */
+    public synchronized Batch drain() {
+        if (pending.isEmpty()) {
+            storm = false;
+            return Batch.EMPTY;
+        }
+        long now = System.currentTimeMillis();
+        long oldest = pending.values().iterator().next().getFirstSeen();
+        if (storm) {
+            if (now - lastEventTime < Math.max(windowMillis, stormQuietMillis) && now - oldest < MAX_STORM_MILLIS) {
+                return Batch.EMPTY;
+            }
+        } else if (now - lastEventTime < windowMillis && now - oldest < windowMillis * MAX_DELAY_WINDOWS) {
+            return Batch.EMPTY;
+        }
+        Batch batch = new Batch(new ArrayList<FileChangeEvent>(pending.values()), storm);
+        pending.clear();
+        storm = false;
+        return batch;
+    }
+
+    /**
+     * The events released by one drain of the bus.
+     */
+    public static class Batch {
+        static final Batch EMPTY = new Batch(Collections.<FileChangeEvent>emptyList(), false);
+
+        private final List<FileChangeEvent> events;
+        private final boolean storm;
+
+        Batch(List<FileChangeEvent> events, boolean storm) {
+            this.events = events;
+            this.storm = storm;
+        }
+
+        /**
+         * @return the coalesced events in the order their paths were first seen
+         */
+        public List<FileChangeEvent> getEvents() {
+            return events;
+        }
+
+        /**
+         * Whether the events are the result of a change storm.
+         */
+        public boolean isStorm() {
+            return storm;
+        }
+
+        public boolean isEmpty() {
+            return events.isEmpty();
+        }
+
+        public int size() {
+            return events.size();
+        }
+    }
+
+    /**
+     * A coalesced change for a single path.
+     */
+    public static class FileChangeEvent {
+        private final File file;
+        private boolean directory;
+        private final boolean existedBefore;
+        private boolean existsNow;
+        private final long firstSeen;
+        private long lastSeen;
+        private int rawEvents;
+
+        FileChangeEvent(File file, boolean directory, ChangeType changeType, long time) {
+            this.file = file;
+            this.directory = directory;
+            this.existedBefore = changeType != ChangeType.CREATE;
+            this.existsNow = changeType != ChangeType.DELETE;
+            this.firstSeen = time;
+            this.lastSeen = time;
+            this.rawEvents = 1;
+        }
+
+        void merge(boolean directory, ChangeType changeType, long time) {
+            this.directory |= directory;
+            this.existsNow = changeType != ChangeType.DELETE;
+            this.lastSeen = time;
+            this.rawEvents++;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Get the net effect of all the merged events, based on whether the path
+         * existed before the first event and whether it exists after the last one.
+         *
+         * @return the change type, or null if the path was created and then deleted
+         */
+        public ChangeType getChangeType() {
+            if (existedBefore) {
+                return existsNow ? ChangeType.MODIFY : ChangeType.DELETE;
+            }
+            return existsNow ? ChangeType.CREATE : null;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * @return the number of raw events that were merged into this event
+         */
+        public int getRawEvents() {
+            return rawEvents;
+        }
+
+        @Override
+        public String toString() {
+            return file + " " + getChangeType() + " (" + rawEvents + " events)";
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers the size, modification time and content hash of watched files, so
+ * that change events for files that were rewritten with identical content can be
+ * ignored. The size and modification time are checked first, so the content is
+ * only hashed for files whose timestamp changed.
+ */
+public class FileFingerprintCache {
+
+    /** Files larger than this are never hashed and always count as changed */
+    private static final long MAX_HASHED_FILE_SIZE = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long NO_HASH = -1;
+
+    /**
+     * Modification times closer than this to the time a file was recorded may
+     * not change on a rewrite, on file systems with coarse timestamps
+     */
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
+    private final ConcurrentHashMap<Path, Fingerprint> fingerprints = new ConcurrentHashMap<Path, Fingerprint>();
+
+    /**
+     * Record the current contents of a file.
+     *
+     * @param file the file, ignored if it is not a regular file
+     */
+    public void record(File file) {
+        Path key = toKey(file);
+        Fingerprint fingerprint = read(key, true);
+        if (fingerprint != null) {
+            fingerprints.put(key, fingerprint);
+        }
+    }
+
+    /**
+     * Record the current contents of all files in a directory tree. Files that are
+     * modified after the walk started are left out, so that the recorded content
+     * is never newer than the change events that will be reported for it.
+     *
+     * @param dir         the root directory, ignored if it does not exist
+     * @param ignoreRules files and directories to skip, or null to record all
+     *                    files
+     * @throws IOException if the directory could not be walked
+     */
+    public void recordAll(File dir, final IgnoreRules ignoreRules) throws IOException {
+        if (dir == null || !dir.isDirectory()) {
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        final Path start = toKey(dir);
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) {
+                if (ignoreRules != null && !subdir.equals(start) && ignoreRules.isIgnored(subdir.toFile(), true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (ignoreRules != null && ignoreRules.isIgnored(file.toFile(), false)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() < startTime) {
+                    Fingerprint fingerprint = read(file, true);
+                    // skip the file if it changed while it was being hashed
+                    if (fingerprint != null && fingerprint.lastModified == attrs.lastModifiedTime().toMillis()) {
+                        fingerprints.putIfAbsent(file, fingerprint);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Check whether a file has the same content as when it was last recorded, and
+     * record its current state.
+     *
+     * @param file the file that was reported as changed
+     * @return true if the file was recorded before and its content is identical,
+     *         false if it changed, was not known or could not be read
+     */
+    public boolean isUnchanged(File file) {
+        Path key = toKey(file);
+        Fingerprint previous = fingerprints.get(key);
+        if (previous == null) {
+            record(file);
+            return false;
+        }
+        Fingerprint current = read(key, false);
+        if (current != null && current.length == previous.length && current.lastModified == previous.lastModified
+                && !previous.isRacy()) {
+            return true;
+        }
+        current = read(key, true);
+        if (current == null) {
+            fingerprints.remove(key);
+            return false;
+        }
+        fingerprints.put(key, current);
+        return current.length == previous.length && current.hash != NO_HASH && current.hash == previous.hash;
+    }
+
+    /**
+     * Forget a deleted file, or all files in a deleted directory.
+     *
+     * @param file the deleted file or directory
+     */
+    public void remove(File file) {
+        Path key = toKey(file);
+        fingerprints.remove(key);
+        for (Iterator<Path> it = fingerprints.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(key)) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    private static Path toKey(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private static Fingerprint read(Path path, boolean hash) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            long length = attrs.size();
+            long contentHash = NO_HASH;
+            if (hash && length <= MAX_HASHED_FILE_SIZE) {
+                contentHash = hash(path);
+            }
+            return new Fingerprint(length, attrs.lastModifiedTime().toMillis(), contentHash, System.currentTimeMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long hash(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Fingerprint {
+        private final long length;
+        private final long lastModified;
+        /** CRC-32 of the content, or NO_HASH if it was not computed */
+        private final long hash;
+        private final long recordedTime;
+
+        Fingerprint(long length, long lastModified, long hash, long recordedTime) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.recordedTime = recordedTime;
+        }
+
+        /**
+         * Whether the file was recorded so soon after it was written that another
+         * write could keep the same modification time, in which case the content
+         * must be compared.
+         */
+        boolean isRacy() {
+            return recordedTime - lastModified < TIMESTAMP_GRANULARITY_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redefines classes in a running JVM through its JDWP debug port. This speaks
+ * the few JDWP commands it needs directly over a socket, so it does not depend
+ * on the JDI classes of the JDK that runs the build.
+ */
+public class HotSwapClient {
+
+    private static final byte[] HANDSHAKE = "JDWP-Handshake".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VIRTUAL_MACHINE = 1;
+    private static final int CLASSES_BY_SIGNATURE = 2;
+    private static final int DISPOSE = 6;
+    private static final int ID_SIZES = 7;
+    private static final int CAPABILITIES_NEW = 17;
+    private static final int REDEFINE_CLASSES = 18;
+    /** the index of canRedefineClasses in the reply to CapabilitiesNew */
+    private static final int CAN_REDEFINE_CLASSES = 7;
+    private static final int REPLY_FLAG = 0x80;
+
+    private final String host;
+    private final int port;
+    private int timeoutMillis = 5000;
+
+    private DataInputStream in;
+    private DataOutputStream out;
+    private int nextId = 1;
+    private int referenceTypeIdSize;
+
+    /**
+     * @param host the host of the JVM
+     * @param port the JDWP port of the JVM
+     */
+    public HotSwapClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Set how long to wait to connect to the JVM and for each of its replies.
+     *
+     * @param timeoutMillis the timeout in milliseconds
+     */
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Redefine classes in the JVM. Classes that the JVM has not loaded are
+     * skipped, since it loads their new class files when they are first used. A
+     * class that is loaded by several class loaders is redefined in all of them.
+     *
+     * @param classes the binary names of the classes and their new class files
+     * @return the number of loaded classes that were redefined
+     * @throws IOException if the JVM could not be reached, or it rejected the
+     *                     new class files, for example because they add or
+     *                     remove methods or fields
+     */
+    public int redefineClasses(Map<String, byte[]> classes) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            handshake();
+            try {
+                return redefine(classes);
+            } finally {
+                try {
+                    // let the JVM release the debugger connection right away
+                    send(DISPOSE, new byte[0]);
+                } catch (IOException e) {
+                    // the connection is closed anyway
+                }
+            }
+        }
+    }
+
+    private void handshake() throws IOException {
+        out.write(HANDSHAKE);
+        out.flush();
+        byte[] reply = new byte[HANDSHAKE.length];
+        in.readFully(reply);
+        if (!Arrays.equals(HANDSHAKE, reply)) {
+            throw new IOException("The JDWP handshake with " + host + ":" + port + " failed");
+        }
+    }
+
+    private int redefine(Map<String, byte[]> classes) throws IOException {
+        DataInputStream sizes = command(ID_SIZES, new byte[0]);
+        sizes.readInt(); // field ID size
+        sizes.readInt(); // method ID size
+        sizes.readInt(); // object ID size
+        referenceTypeIdSize = sizes.readInt();
+
+        DataInputStream capabilities = command(CAPABILITIES_NEW, new byte[0]);
+        for (int i = 0; i < CAN_REDEFINE_CLASSES; i++) {
+            capabilities.readBoolean();
+        }
+        if (!capabilities.readBoolean()) {
+            throw new IOException("The JVM at " + host + ":" + port + " cannot redefine classes");
+        }
+
+        List<byte[]> typeIds = new ArrayList<byte[]>();
+        List<byte[]> classFiles = new ArrayList<byte[]>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            writeString(new DataOutputStream(request), "L" + entry.getKey().replace('.', '/') + ";");
+            DataInputStream loaded = command(CLASSES_BY_SIGNATURE, request.toByteArray());
+            int count = loaded.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.readByte(); // type tag
+                byte[] typeId = new byte[referenceTypeIdSize];
+                loaded.readFully(typeId);
+                loaded.readInt(); // status
+                typeIds.add(typeId);
+                classFiles.add(entry.getValue());
+            }
+        }
+        if (typeIds.isEmpty()) {
+            return 0;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream request = new DataOutputStream(bytes);
+        request.writeInt(typeIds.size());
+        for (int i = 0; i < typeIds.size(); i++) {
+            request.write(typeIds.get(i));
+            request.writeInt(classFiles.get(i).length);
+            request.write(classFiles.get(i));
+        }
+        command(REDEFINE_CLASSES, bytes.toByteArray());
+        return typeIds.size();
+    }
+
+    private int send(int command, byte[] data) throws IOException {
+        int id = nextId++;
+        out.writeInt(11 + data.length);
+        out.writeInt(id);
+        out.writeByte(0);
+        out.writeByte(VIRTUAL_MACHINE);
+        out.writeByte(command);
+        out.write(data);
+        out.flush();
+        return id;
+    }
+
+    /**
+     * Send a command of the VirtualMachine command set and read its reply.
+     *
+     * @return the data of the reply
+     */
+    private DataInputStream command(int command, byte[] data) throws IOException {
+        int id = send(command, data);
+        while (true) {
+            int length = in.readInt();
+            int replyId = in.readInt();
+            int flags = in.readUnsignedByte();
+            // replies have an error code where commands have their command set and command
+            int errorCode = in.readUnsignedShort();
+            byte[] reply = new byte[length - 11];
+            in.readFully(reply);
+            if ((flags & REPLY_FLAG) == 0 || replyId != id) {
+                // an event or a late reply
+                continue;
+            }
+            if (errorCode != 0) {
+                throw new IOException("The JVM at " + host + ":" + port + " rejected the JDWP command " + command
+                        + " with error " + errorCode);
+            }
+            return new DataInputStream(new ByteArrayInputStream(reply));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files and directories dev mode ignores, using rules with the
+ * same syntax as .gitignore files: glob wildcards (<code>*</code>,
+ * <code>?</code>, <code>**</code> and character classes), a trailing
+ * <code>/</code> to match only directories, a leading or inner <code>/</code> to
+ * anchor a pattern to the base directory, and a leading <code>!</code> to
+ * re-include files excluded by an earlier rule. As with git, the last matching
+ * rule wins.
+ * <p>
+ * The rules are compiled once. Patterns without wildcards that match a plain
+ * name are looked up in a map, and all other patterns are compiled to regular
+ * expressions.
+ */
+public class IgnoreRules {
+
+    /** Rules that were hardcoded before ignore rules could be configured */
+    public static final String[] DEFAULT_PATTERNS = new String[] {
+            // hidden files and directories
+            ".*",
+            // core dumps
+            "*.dmp",
+            // vim
+            "*~",
+            // intellij
+            "*___jb_tmp___", "*___jb_old___" };
+
+    private static final boolean CASE_INSENSITIVE = OSUtil.isWindows();
+
+    private static class Rule {
+        private final int order;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        /** null if the rule is matched by name lookup */
+        private final Pattern pattern;
+
+        Rule(int order, boolean negated, boolean directoryOnly, Pattern pattern) {
+            this.order = order;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.pattern = pattern;
+        }
+    }
+
+    private final String basePath;
+    private final Map<String, List<Rule>> literalNameRules;
+    private final List<Rule> nameRules;
+    private final List<Rule> pathRules;
+
+    private IgnoreRules(File baseDir, Map<String, List<Rule>> literalNameRules, List<Rule> nameRules,
+            List<Rule> pathRules) {
+        this.basePath = baseDir == null ? null : normalize(baseDir.getAbsolutePath());
+        this.literalNameRules = literalNameRules;
+        this.nameRules = nameRules;
+        this.pathRules = pathRules;
+    }
+
+    /**
+     * Whether a file or directory is ignored. Only the path itself is checked,
+     * so callers that walk a tree are expected to skip the contents of ignored
+     * directories.
+     *
+     * @param file        the file or directory
+     * @param isDirectory whether it is a directory
+     * @return true if the last matching rule ignores the path
+     */
+    public boolean isIgnored(File file, boolean isDirectory) {
+        String name = normalize(file.getName());
+        Rule match = null;
+        List<Rule> literal = literalNameRules.get(name);
+        if (literal != null) {
+            match = last(match, literal, name, isDirectory);
+        }
+        match = last(match, nameRules, name, isDirectory);
+        if (!pathRules.isEmpty() && basePath != null) {
+            String path = normalize(file.getAbsolutePath());
+            if (path.length() > basePath.length() + 1 && path.startsWith(basePath)
+                    && path.charAt(basePath.length()) == '/') {
+                match = last(match, pathRules, path.substring(basePath.length() + 1), isDirectory);
+            }
+        }
+        return match != null && !match.negated;
+    }
+
+    /**
+     * Whether a path is ignored, checking whether the path is a directory on
+     * disk.
+     *
+     * @param file the file or directory
+     * @return true if the path is ignored
+     */
+    public boolean isIgnored(File file) {
+        return isIgnored(file, file.isDirectory());
+    }
+
+    private static Rule last(Rule match, List<Rule> rules, String value, boolean isDirectory) {
+        // rules are sorted by order, so search backwards for the last match
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (match != null && rule.order < match.order) {
+                break;
+            }
+            if ((!rule.directoryOnly || isDirectory) && (rule.pattern == null || rule.pattern.matcher(value).matches())) {
+                return rule;
+            }
+        }
+        return match;
+    }
+
+    private static String normalize(String path) {
+        path = path.replace(File.separatorChar, '/');
+        return CASE_INSENSITIVE ? path.toLowerCase() : path;
+    }
+
+    /**
+     * Translate a glob to a regular expression. <code>**</code> matches across
+     * directory boundaries and the other wildcards match within one path
+     * segment.
+     */
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int length = glob.length();
+        for (int i = 0; i < length; i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+            case '*':
+                if (i + 1 < length && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < length && glob.charAt(i + 1) == '/') {
+                        // "**/" matches zero or more directories
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+                break;
+            case '?':
+                regex.append("[^/]");
+                break;
+            case '[':
+                int end = glob.indexOf(']', i + 2);
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                    i = end;
+                }
+                break;
+            case '\\':
+                if (i + 1 < length) {
+                    i++;
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                }
+                break;
+            default:
+                if (".$^{}()|+".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    private static boolean hasWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[\\".indexOf(glob.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds IgnoreRules. Rules added later take precedence over rules added
+     * earlier.
+     */
+    public static class Builder {
+        private final File baseDir;
+        private final Map<String, List<Rule>> literalNameRules = new HashMap<String, List<Rule>>();
+        private final List<Rule> nameRules = new ArrayList<Rule>();
+        private final List<Rule> pathRules = new ArrayList<Rule>();
+        private int order;
+
+        /**
+         * @param baseDir the directory that anchored patterns are relative to, or
+         *                null to only match patterns against file names
+         */
+        public Builder(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        /**
+         * Add a rule.
+         *
+         * @param line a pattern in .gitignore syntax; blank lines and comments are
+         *             ignored
+         * @return this builder
+         */
+        public Builder add(String line) {
+            if (line == null) {
+                return this;
+            }
+            String pattern = trimTrailingSpaces(line);
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return this;
+            }
+            boolean negated = false;
+            if (pattern.startsWith("!")) {
+                negated = true;
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = false;
+            if (pattern.endsWith("/")) {
+                directoryOnly = true;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            // a slash at the start or in the middle anchors the pattern to the base directory
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.startsWith("**/")) {
+                String rest = pattern.substring(3);
+                if (rest.indexOf('/') < 0) {
+                    // "**/name" is the same as "name"
+                    pattern = rest;
+                    anchored = false;
+                }
+            }
+            if (pattern.isEmpty()) {
+                return this;
+            }
+            pattern = normalize(pattern);
+            if (anchored) {
+                pathRules.add(new Rule(order++, negated, directoryOnly, Pattern.compile(toRegex(pattern))));
+            } else if (!hasWildcard(pattern)) {
+                List<Rule> rules = literalNameRules.get(pattern);
+                if (rules == null) {
+                    rules = new ArrayList<Rule>(1);
+                    literalNameRules.put(pattern, rules);
+                }
+                rules.add(new Rule(order++, negated, directoryOnly, null));
+            } else {
+                nameRules.add(new Rule(order++, negated, directoryOnly, Pattern.compile(toRegex(pattern))));
+            }
+            return this;
+        }
+
+        /**
+         * Add several rules.
+         *
+         * @param lines patterns in .gitignore syntax, ignored if null
+         * @return this builder
+         */
+        public Builder addAll(Iterable<String> lines) {
+            if (lines != null) {
+                for (String line : lines) {
+                    add(line);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add the rules from an ignore file such as .gitignore.
+         *
+         * @param ignoreFile the file, ignored if it does not exist
+         * @return this builder
+         * @throws IOException if the file could not be read
+         */
+        public Builder addFile(File ignoreFile) throws IOException {
+            if (ignoreFile != null && ignoreFile.isFile()) {
+                addAll(Files.readAllLines(ignoreFile.toPath(), StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        public IgnoreRules build() {
+            return new IgnoreRules(baseDir, new HashMap<String, List<Rule>>(literalNameRules),
+                    new ArrayList<Rule>(nameRules), new ArrayList<Rule>(pathRules));
+        }
+
+        private static String trimTrailingSpaces(String line) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+                end--;
+            }
+            return line.substring(0, end);
+        }
+    }
+}
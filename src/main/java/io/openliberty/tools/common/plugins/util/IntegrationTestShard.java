@@ -0,0 +1,97 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A part of the integration tests that runs at the same time as the other
+ * shards, against the same server.
+ */
+public class IntegrationTestShard {
+
+    private final int index;
+    private final List<String> testClasses;
+    private final boolean serial;
+    private final File reportsDirectory;
+    private final String hostName;
+    private final String httpPort;
+    private final String httpsPort;
+
+    IntegrationTestShard(int index, List<String> testClasses, boolean serial, File reportsDirectory,
+            String hostName, String httpPort, String httpsPort) {
+        this.index = index;
+        this.testClasses = Collections.unmodifiableList(testClasses);
+        this.serial = serial;
+        this.reportsDirectory = reportsDirectory;
+        this.hostName = hostName;
+        this.httpPort = httpPort;
+        this.httpsPort = httpsPort;
+    }
+
+    /**
+     * @return the number of the shard, starting from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the binary names of the test classes to run
+     */
+    public List<String> getTestClasses() {
+        return testClasses;
+    }
+
+    /**
+     * @return whether the shard has the tests that are not safe to run in
+     *         parallel, which run when no other shard is running
+     */
+    public boolean isSerial() {
+        return serial;
+    }
+
+    /**
+     * @return the directory that the runner must write the Surefire XML reports
+     *         of the shard to
+     */
+    public File getReportsDirectory() {
+        return reportsDirectory;
+    }
+
+    /**
+     * @return the host name of the server, or null if it is not known
+     */
+    public String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * @return the HTTP port of the server, or null if it is not known
+     */
+    public String getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * @return the HTTPS port of the server, or null if it is not known
+     */
+    public String getHttpsPort() {
+        return httpsPort;
+    }
+}
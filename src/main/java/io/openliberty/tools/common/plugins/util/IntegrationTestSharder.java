@@ -0,0 +1,431 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Splits integration test classes into shards that take about as long as each
+ * other, using how long each class took before, and merges the Surefire XML
+ * reports of the shards into one report. Test classes that are not safe to run
+ * in parallel, because their names match a serial pattern or they are
+ * annotated with a serial annotation, are put in a serial shard that runs
+ * after the others.
+ */
+public class IntegrationTestSharder {
+
+    /** annotations that mark test classes that are not safe to run in parallel */
+    public static final List<String> DEFAULT_SERIAL_ANNOTATIONS = Collections.unmodifiableList(
+            Arrays.asList("net.jcip.annotations.NotThreadSafe", "org.junit.jupiter.api.parallel.Isolated"));
+
+    private static final String REPORT_PREFIX = "TEST-";
+    private static final String REPORT_SUFFIX = ".xml";
+
+    /**
+     * The totals of the merged reports.
+     */
+    public static class Report {
+        private final int tests;
+        private final int failures;
+        private final int errors;
+        private final int skipped;
+        private final List<String> failedTests;
+
+        Report(int tests, int failures, int errors, int skipped, List<String> failedTests) {
+            this.tests = tests;
+            this.failures = failures;
+            this.errors = errors;
+            this.skipped = skipped;
+            this.failedTests = Collections.unmodifiableList(failedTests);
+        }
+
+        public int getTests() {
+            return tests;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the tests that failed or had errors, as class.method
+         */
+        public List<String> getFailedTests() {
+            return failedTests;
+        }
+    }
+
+    private final File historyFile;
+    private Map<String, Long> durations;
+    private List<Pattern> serialPatterns = Collections.emptyList();
+    private Set<String> serialAnnotations = new LinkedHashSet<String>(DEFAULT_SERIAL_ANNOTATIONS);
+
+    /**
+     * @param historyFile the file that records how long each test class took
+     */
+    public IntegrationTestSharder(File historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    /**
+     * Sets the patterns of the test classes that are not safe to run in
+     * parallel.
+     *
+     * @param regexps regular expressions that match the whole binary name of
+     *                the test classes
+     */
+    public void setSerialPatterns(Collection<String> regexps) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regexp : regexps) {
+            patterns.add(Pattern.compile(regexp));
+        }
+        this.serialPatterns = patterns;
+    }
+
+    /**
+     * Sets the annotations that mark the test classes that are not safe to run
+     * in parallel. Defaults to {@link #DEFAULT_SERIAL_ANNOTATIONS}.
+     *
+     * @param annotations the binary names of the annotations
+     */
+    public void setSerialAnnotations(Collection<String> annotations) {
+        this.serialAnnotations = new LinkedHashSet<String>(annotations);
+    }
+
+    /**
+     * Whether a test class is not safe to run in parallel. A class is treated as
+     * annotated with a serial annotation if its class file refers to it.
+     *
+     * @param className      the binary name of the test class
+     * @param testClassesDir the directory of the compiled tests
+     * @return whether the test class must run alone
+     */
+    public boolean isSerial(String className, File testClassesDir) {
+        for (Pattern pattern : serialPatterns) {
+            if (pattern.matcher(className).matches()) {
+                return true;
+            }
+        }
+        File classFile = new File(testClassesDir, className.replace('.', File.separatorChar) + ".class");
+        if (serialAnnotations.isEmpty() || !classFile.isFile()) {
+            return false;
+        }
+        try {
+            Set<String> referenced = ClassFileInfo.read(classFile).getReferencedClasses();
+            for (String annotation : serialAnnotations) {
+                if (referenced.contains(annotation)) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            // run it in parallel, as if it had no annotations
+        }
+        return false;
+    }
+
+    /**
+     * Plan the shards of a test run.
+     *
+     * @param testClasses      the binary names of the test classes
+     * @param shardCount       the number of shards to run at the same time
+     * @param testClassesDir   the directory of the compiled tests
+     * @param reportsDirectory the directory of the merged reports, which will
+     *                         have a directory for the reports of each shard
+     * @param hostName         the host name of the server
+     * @param httpPort         the HTTP port of the server
+     * @param httpsPort        the HTTPS port of the server
+     * @return the shards that run at the same time, followed by the serial shard
+     *         if there are serial test classes
+     */
+    public List<IntegrationTestShard> plan(Collection<String> testClasses, int shardCount, File testClassesDir,
+            File reportsDirectory, String hostName, String httpPort, String httpsPort) {
+        List<String> parallel = new ArrayList<String>();
+        List<String> serial = new ArrayList<String>();
+        for (String testClass : testClasses) {
+            (isSerial(testClass, testClassesDir) ? serial : parallel).add(testClass);
+        }
+        List<IntegrationTestShard> shards = new ArrayList<IntegrationTestShard>();
+        for (List<String> classes : balance(parallel, shardCount)) {
+            int index = shards.size();
+            shards.add(new IntegrationTestShard(index, classes, false, new File(reportsDirectory, "shard-" + index),
+                    hostName, httpPort, httpsPort));
+        }
+        if (!serial.isEmpty()) {
+            Collections.sort(serial);
+            int index = shards.size();
+            shards.add(new IntegrationTestShard(index, serial, true, new File(reportsDirectory, "shard-" + index),
+                    hostName, httpPort, httpsPort));
+        }
+        return shards;
+    }
+
+    /**
+     * Split test classes into shards that take about as long as each other,
+     * giving the longest classes first to the shard that has the least to do.
+     * Classes that did not run before count as the average of the others.
+     *
+     * @param testClasses the binary names of the test classes
+     * @param shardCount  the number of shards
+     * @return the test classes of the shards that are not empty
+     */
+    public synchronized List<List<String>> balance(Collection<String> testClasses, int shardCount) {
+        final Map<String, Long> expected = new HashMap<String, Long>();
+        long known = 0;
+        int knownCount = 0;
+        for (String testClass : testClasses) {
+            Long duration = getDurations().get(testClass);
+            if (duration != null) {
+                expected.put(testClass, duration);
+                known += duration;
+                knownCount++;
+            }
+        }
+        long average = knownCount == 0 ? 1 : Math.max(1, known / knownCount);
+        List<String> sorted = new ArrayList<String>(new LinkedHashSet<String>(testClasses));
+        for (String testClass : sorted) {
+            if (!expected.containsKey(testClass)) {
+                expected.put(testClass, average);
+            }
+        }
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byDuration = expected.get(b).compareTo(expected.get(a));
+                return byDuration != 0 ? byDuration : a.compareTo(b);
+            }
+        });
+
+        int count = Math.max(1, shardCount);
+        List<List<String>> shards = new ArrayList<List<String>>();
+        long[] loads = new long[count];
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<String>());
+        }
+        for (String testClass : sorted) {
+            int least = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[least]) {
+                    least = i;
+                }
+            }
+            shards.get(least).add(testClass);
+            loads[least] += expected.get(testClass);
+        }
+        List<List<String>> nonEmpty = new ArrayList<List<String>>();
+        for (List<String> shard : shards) {
+            if (!shard.isEmpty()) {
+                Collections.sort(shard);
+                nonEmpty.add(shard);
+            }
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Remove the reports of a previous run, so that the shards start empty.
+     *
+     * @param shards           the shards to run
+     * @param reportsDirectory the directory of the merged reports
+     * @throws IOException if the reports could not be removed
+     */
+    public void prepare(List<IntegrationTestShard> shards, File reportsDirectory) throws IOException {
+        if (reportsDirectory.isDirectory()) {
+            FileUtils.cleanDirectory(reportsDirectory);
+        }
+        for (IntegrationTestShard shard : shards) {
+            FileUtils.forceMkdir(shard.getReportsDirectory());
+        }
+    }
+
+    /**
+     * Merge the Surefire XML reports of the shards into the reports directory,
+     * and record how long each test class took for the next plan.
+     *
+     * @param shards           the shards that ran
+     * @param reportsDirectory the directory of the merged reports
+     * @return the totals of the reports
+     * @throws IOException if the reports could not be merged
+     */
+    public synchronized Report merge(List<IntegrationTestShard> shards, File reportsDirectory) throws IOException {
+        int tests = 0;
+        int failures = 0;
+        int errors = 0;
+        int skipped = 0;
+        List<String> failedTests = new ArrayList<String>();
+        for (IntegrationTestShard shard : shards) {
+            for (File report : listReports(shard.getReportsDirectory())) {
+                Element suite = readReport(report);
+                tests += parseInt(suite.getAttribute("tests"));
+                failures += parseInt(suite.getAttribute("failures"));
+                errors += parseInt(suite.getAttribute("errors"));
+                skipped += parseInt(suite.getAttribute("skipped"));
+                for (Element testCase : getFailedTestCases(suite)) {
+                    failedTests.add(testCase.getAttribute("classname") + "." + testCase.getAttribute("name"));
+                }
+                String testClass = suite.getAttribute("name");
+                if (!testClass.isEmpty()) {
+                    recordDuration(testClass, parseSeconds(suite.getAttribute("time")));
+                }
+                FileUtils.copyFileToDirectory(report, reportsDirectory);
+            }
+        }
+        saveDurations();
+        return new Report(tests, failures, errors, skipped, failedTests);
+    }
+
+    /**
+     * @param reportsDirectory a directory of Surefire XML reports
+     * @return the reports in the directory, sorted by name
+     */
+    static List<File> listReports(File reportsDirectory) {
+        List<File> reports = new ArrayList<File>();
+        File[] files = reportsDirectory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(REPORT_PREFIX) && name.endsWith(REPORT_SUFFIX) && file.isFile()) {
+                    reports.add(file);
+                }
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * @param report a Surefire XML report
+     * @return the testsuite element of the report
+     * @throws IOException if the report could not be read
+     */
+    static Element readReport(File report) throws IOException {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report).getDocumentElement();
+        } catch (Exception e) {
+            throw new IOException("Could not read the test report " + report, e);
+        }
+    }
+
+    /**
+     * @param suite the testsuite element of a Surefire XML report
+     * @return the testcase elements of the tests that failed or had errors
+     */
+    static List<Element> getFailedTestCases(Element suite) {
+        List<Element> failed = new ArrayList<Element>();
+        NodeList testCases = suite.getElementsByTagName("testcase");
+        for (int i = 0; i < testCases.getLength(); i++) {
+            Element testCase = (Element) testCases.item(i);
+            if (testCase.getElementsByTagName("failure").getLength() > 0
+                    || testCase.getElementsByTagName("error").getLength() > 0) {
+                failed.add(testCase);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @param testClass the binary name of the test class
+     * @return how long the test class took in milliseconds, or -1 if it did not
+     *         run before
+     */
+    public synchronized long getDuration(String testClass) {
+        Long duration = getDurations().get(testClass);
+        return duration == null ? -1 : duration;
+    }
+
+    private void recordDuration(String testClass, long millis) {
+        Long previous = getDurations().get(testClass);
+        // smooth out runs that were slow because of something else
+        durations.put(testClass, previous == null ? millis : (previous + millis) / 2);
+    }
+
+    private Map<String, Long> getDurations() {
+        if (durations == null) {
+            durations = new HashMap<String, Long>();
+            if (historyFile.isFile()) {
+                Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(historyFile)) {
+                    properties.load(in);
+                    for (String testClass : properties.stringPropertyNames()) {
+                        durations.put(testClass, Long.parseLong(properties.getProperty(testClass)));
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // the durations are recorded again by the next run
+                    durations.clear();
+                }
+            }
+        }
+        return durations;
+    }
+
+    private void saveDurations() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : getDurations().entrySet()) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        FileUtils.forceMkdir(historyFile.getAbsoluteFile().getParentFile());
+        try (OutputStream out = new FileOutputStream(historyFile)) {
+            properties.store(out, "Milliseconds that each integration test class took");
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value.isEmpty() ? 0 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            // some reports group the digits of long times
+            return Math.round(Double.parseDouble(value.replace(",", "").trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,575 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles Java files for a dev mode session with one long-lived compiler and
+ * file manager, so that the jar indexes of the class path are kept between
+ * compiles instead of being re-read each time.
+ * <p>
+ * The file manager is only updated for what changed between compiles. A new
+ * class path is set on the same file manager so that the jars it already
+ * opened are reused, and the file manager is only recreated when a jar that it
+ * may have cached was modified.
+ * <p>
+ * Java files can also be compiled speculatively in the background, and a later
+ * compile of the same unchanged files publishes that result instead of running
+ * the compiler again.
+ */
+public class JavaCompilerService implements Closeable {
+
+    private static final String WARMUP_CLASS_NAME = "LibertyDevCompilerWarmup";
+    private static final String WARMUP_SOURCE = "class " + WARMUP_CLASS_NAME + " { Object o = new java.util.ArrayList<String>(); }";
+
+    /**
+     * Size and modification time of a class path jar.
+     */
+    private static class Stamp {
+        private final long length;
+        private final long lastModified;
+
+        Stamp(File file) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * The classes of a compile, held until they are published.
+     */
+    private static class Compilation {
+        private final StagedClassOutput staged;
+        private final CompileReport report;
+        private final Map<File, File> classFiles = new HashMap<File, File>();
+        private boolean success;
+
+        Compilation(StagedClassOutput staged, CompileReport report) {
+            this.staged = staged;
+            this.report = report;
+        }
+    }
+
+    /**
+     * A background compile and the inputs it was started with.
+     */
+    private static class Speculation {
+        private final List<File> files;
+        private final List<File> classPath;
+        private final File outputDir;
+        private final List<String> options;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private int publishCount;
+        private Map<File, List<Long>> stamps;
+        private Compilation result;
+
+        Speculation(List<File> files, List<File> classPath, File outputDir, List<String> options) {
+            this.files = files;
+            this.classPath = classPath;
+            this.outputDir = outputDir;
+            this.options = options;
+        }
+    }
+
+    private final JavaCompiler compiler;
+    private StandardJavaFileManager fileManager;
+    private List<File> classPath;
+    private File classOutput;
+    private final Map<File, Stamp> jarStamps = new HashMap<File, Stamp>();
+    private int fileManagerCount;
+    private StagedClassOutput.Result lastPublish;
+    private volatile int publishCount;
+    // set and cleared without the lock, so that a change does not wait for a running compile
+    private final AtomicReference<Speculation> speculation = new AtomicReference<Speculation>();
+    private int speculativeCompileCount;
+    private ExecutorService speculationExecutor;
+    private final Object speculationExecutorLock = new Object();
+    private volatile boolean closed;
+
+    public JavaCompilerService() {
+        this(ToolProvider.getSystemJavaCompiler());
+    }
+
+    /**
+     * @param compiler the compiler to use, or null if no compiler is available
+     */
+    public JavaCompilerService(JavaCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Compile Java files.
+     *
+     * @param javaFiles the Java files to compile, files that do not exist are
+     *                  skipped
+     * @param classPath the class path
+     * @param outputDir the output directory for the classes
+     * @param options   the compiler options
+     * @return true if the compilation was successful
+     * @throws IOException if the class path or output directory could not be set
+     */
+    public boolean compile(Collection<File> javaFiles, Collection<File> classPath, File outputDir,
+            List<String> options) throws IOException {
+        return compile(javaFiles, classPath, outputDir, options, null);
+    }
+
+    /**
+     * Compile Java files, and collect the class files that were written.
+     *
+     * @param javaFiles  the Java files to compile, files that do not exist are
+     *                   skipped
+     * @param classPath  the class path
+     * @param outputDir  the output directory for the classes
+     * @param options    the compiler options
+     * @param classFiles receives each class file that was written and the source
+     *                   file it was compiled from, or null
+     * @return true if the compilation was successful
+     * @throws IOException if the class path or output directory could not be set
+     */
+    public boolean compile(Collection<File> javaFiles, Collection<File> classPath, File outputDir,
+            List<String> options, Map<File, File> classFiles) throws IOException {
+        return compile(javaFiles, classPath, outputDir, options, classFiles, null);
+    }
+
+    /**
+     * Compile Java files. The class files are held in memory during the compile
+     * and only written to the output directory if it succeeds, together with the
+     * removal of the class files that the sources no longer produce.
+     *
+     * @param javaFiles       the Java files to compile, files that do not exist
+     *                        are skipped
+     * @param classPath       the class path
+     * @param outputDir       the output directory for the classes
+     * @param options         the compiler options
+     * @param classFiles      receives each class file that was written and the
+     *                        source file it was compiled from, or null
+     * @param staleClassFiles the class files that the Java files produced before,
+     *                        which are deleted if they are not produced again, or
+     *                        null
+     * @return true if the compilation was successful
+     * @throws IOException if the class path or output directory could not be
+     *                     set, or the class files could not be written
+     */
+    public boolean compile(Collection<File> javaFiles, Collection<File> classPath, File outputDir,
+            List<String> options, Map<File, File> classFiles, Collection<File> staleClassFiles)
+            throws IOException {
+        return compile(javaFiles, classPath, outputDir, options, classFiles, staleClassFiles, null);
+    }
+
+    /**
+     * Compile Java files. The class files are held in memory during the compile
+     * and only written to the output directory if it succeeds, together with the
+     * removal of the class files that the sources no longer produce.
+     *
+     * @param javaFiles       the Java files to compile, files that do not exist
+     *                        are skipped
+     * @param classPath       the class path
+     * @param outputDir       the output directory for the classes
+     * @param options         the compiler options
+     * @param classFiles      receives each class file that was written and the
+     *                        source file it was compiled from, or null
+     * @param staleClassFiles the class files that the Java files produced before,
+     *                        which are deleted if they are not produced again, or
+     *                        null
+     * @param report          receives the compiler messages and the time spent
+     *                        on each file, or null to let the compiler print its
+     *                        messages
+     * @return true if the compilation was successful
+     * @throws IOException if the class path or output directory could not be
+     *                     set, or the class files could not be written
+     */
+    public synchronized boolean compile(Collection<File> javaFiles, Collection<File> classPath, File outputDir,
+            List<String> options, Map<File, File> classFiles, Collection<File> staleClassFiles,
+            CompileReport report) throws IOException {
+        List<File> files = existing(javaFiles);
+        // the messages that a speculative compile held back can only be passed on in a report
+        Compilation compilation = report == null ? null : takeSpeculation(files, classPath, outputDir, options);
+        if (compilation == null) {
+            compilation = run(files, classPath, outputDir, options, report, null);
+        } else {
+            report.addAll(compilation.report);
+        }
+        if (!compilation.success) {
+            compilation.staged.discard();
+            return false;
+        }
+        if (classFiles != null) {
+            classFiles.putAll(compilation.classFiles);
+        }
+        lastPublish = compilation.staged.publish(staleClassFiles);
+        publishCount++;
+        return true;
+    }
+
+    /**
+     * Compile Java files in the background without publishing the classes. A
+     * later call to {@link #compile} with a compile report and the same Java
+     * files, class path, output directory and options uses the result, and adds
+     * its compiler messages to the report, instead of compiling again, as long
+     * as the Java files and the class path jars were not modified and no other
+     * classes were published in between. Only the latest speculative compile is
+     * kept, and its compiler messages are held back. This does not wait for a
+     * compile that is running.
+     *
+     * @param javaFiles the Java files to compile, files that do not exist are
+     *                  skipped
+     * @param classPath the class path
+     * @param outputDir the output directory for the classes
+     * @param options   the compiler options
+     * @return the background compile, or null if no compiler is available
+     */
+    public Future<?> speculate(Collection<File> javaFiles, Collection<File> classPath, File outputDir,
+            List<String> options) {
+        if (compiler == null || closed) {
+            return null;
+        }
+        final Speculation next = new Speculation(existing(javaFiles), new ArrayList<File>(classPath), outputDir,
+                new ArrayList<String>(options));
+        next.publishCount = publishCount;
+        cancel(speculation.getAndSet(next));
+        return getSpeculationExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                runSpeculation(next);
+            }
+        });
+    }
+
+    /**
+     * Drop the result of the latest speculative compile, or skip it if it has
+     * not started yet. A speculative compile that is running stops at the start
+     * of its next compiler step. This does not wait for a compile that is
+     * running.
+     */
+    public void cancelSpeculation() {
+        cancel(speculation.getAndSet(null));
+    }
+
+    private static void cancel(Speculation s) {
+        if (s != null) {
+            s.cancelled.set(true);
+        }
+    }
+
+    private synchronized void runSpeculation(Speculation s) {
+        if (s.cancelled.get() || s != speculation.get() || closed) {
+            // a newer speculative or regular compile replaced this one
+            return;
+        }
+        s.stamps = stamps(s.files);
+        try {
+            Compilation result = run(s.files, s.classPath, s.outputDir, s.options, new CompileReport(), s.cancelled);
+            s.result = s.cancelled.get() ? null : result;
+        } catch (IOException | RuntimeException e) {
+            // cancelled, or the regular compile reports the problem
+            s.result = null;
+        }
+    }
+
+    private Compilation takeSpeculation(List<File> files, Collection<File> classPath, File outputDir,
+            List<String> options) {
+        Speculation s = speculation.getAndSet(null);
+        if (s == null || s.cancelled.get() || s.result == null || !s.result.success || s.publishCount != publishCount
+                || !new HashSet<File>(files).equals(new HashSet<File>(s.files))
+                || !new ArrayList<File>(classPath).equals(s.classPath) || !outputDir.equals(s.outputDir)
+                || !options.equals(s.options) || !s.stamps.equals(stamps(files)) || jarsModified()) {
+            return null;
+        }
+        speculativeCompileCount++;
+        return s.result;
+    }
+
+    private Compilation run(List<File> files, Collection<File> classPath, File outputDir, List<String> options,
+            CompileReport report, AtomicBoolean cancelled) throws IOException {
+        long start = System.nanoTime();
+        StandardJavaFileManager manager = prepare(classPath, outputDir);
+        Collection<JavaFileObject> compilationUnits = new LinkedHashSet<JavaFileObject>();
+        for (JavaFileObject o : manager.getJavaFileObjectsFromFiles(files)) {
+            compilationUnits.add(o);
+        }
+        final Compilation compilation = new Compilation(new StagedClassOutput(outputDir), report);
+        JavaFileManager stagingManager = new ForwardingJavaFileManager<JavaFileManager>(manager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                    JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+                if (location != StandardLocation.CLASS_OUTPUT || kind != JavaFileObject.Kind.CLASS) {
+                    return super.getJavaFileForOutput(location, className, kind, sibling);
+                }
+                final File classFile = compilation.staged.getClassFile(className);
+                if (sibling != null && isFile(sibling.toUri())) {
+                    compilation.classFiles.put(classFile, new File(sibling.toUri()));
+                }
+                return new SimpleJavaFileObject(classFile.toURI(), JavaFileObject.Kind.CLASS) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return compilation.staged.openOutputStream(classFile);
+                    }
+                };
+            }
+        };
+        JavaCompiler.CompilationTask task = compiler.getTask(null, stagingManager, report, options, null,
+                compilationUnits);
+        if (report != null) {
+            // without the javac task API, the files are not timed
+            CompileTimer.install(task, report);
+        }
+        if (cancelled != null) {
+            // without the javac task API, the task runs to the end
+            CompileCanceller.install(task, cancelled);
+            if (cancelled.get()) {
+                throw new CancellationException();
+            }
+        }
+        compilation.success = task.call();
+        if (report != null) {
+            report.setElapsedNanos(System.nanoTime() - start);
+        }
+        return compilation;
+    }
+
+    private static List<File> existing(Collection<File> javaFiles) {
+        List<File> files = new ArrayList<File>();
+        for (File file : javaFiles) {
+            if (file.exists() && file.isFile()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static Map<File, List<Long>> stamps(List<File> files) {
+        Map<File, List<Long>> stamps = new HashMap<File, List<Long>>();
+        for (File file : files) {
+            stamps.put(file, Arrays.asList(file.length(), file.lastModified()));
+        }
+        return stamps;
+    }
+
+    /**
+     * The number of compiles that used the result of a speculative compile.
+     */
+    synchronized int getSpeculativeCompileCount() {
+        return speculativeCompileCount;
+    }
+
+    /**
+     * @return how many class files the last successful compile wrote, left
+     *         unchanged and deleted, or null if there was none
+     */
+    public synchronized StagedClassOutput.Result getLastPublish() {
+        return lastPublish;
+    }
+
+    private static boolean isFile(URI uri) {
+        return "file".equals(uri.getScheme());
+    }
+
+    /**
+     * Load the compiler and index the class path in a background thread, so
+     * that the first compile does not pay for it. A compile that is requested
+     * while the warm-up runs waits for it to finish.
+     *
+     * @param classPath computes the class path to index
+     * @return the warm-up thread, or null if no compiler is available
+     */
+    public Thread prewarm(final Callable<Collection<File>> classPath) {
+        if (compiler == null) {
+            return null;
+        }
+        Thread thread = new Thread("liberty-dev-compiler-warmup") {
+            @Override
+            public void run() {
+                try {
+                    warmup(classPath.call());
+                } catch (Exception e) {
+                    // the next compile reports any problem with the class path
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private synchronized void warmup(Collection<File> classPath) throws IOException {
+        if (closed) {
+            return;
+        }
+        StandardJavaFileManager manager = prepare(classPath, null);
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///" + WARMUP_CLASS_NAME + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return WARMUP_SOURCE;
+            }
+        };
+        // discard the class file so the warm-up leaves nothing behind
+        JavaFileManager discardingManager = new ForwardingJavaFileManager<JavaFileManager>(manager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String className,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("discard:///" + className.replace('.', '/') + kind.extension),
+                        kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new OutputStream() {
+                            @Override
+                            public void write(int b) {
+                            }
+
+                            @Override
+                            public void write(byte[] b, int off, int len) {
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        compiler.getTask(null, discardingManager, null, Collections.singletonList("-proc:none"), null,
+                Collections.singletonList(source)).call();
+    }
+
+    private StandardJavaFileManager prepare(Collection<File> classPath, File outputDir) throws IOException {
+        if (compiler == null) {
+            throw new IllegalStateException(
+                    "The Java compiler is not available. Ensure that dev mode runs with a JDK rather than a JRE.");
+        }
+        if (closed) {
+            throw new IllegalStateException("The compiler service is closed.");
+        }
+        if (fileManager != null && jarsModified()) {
+            // the file manager may have cached the old contents of the jars
+            fileManager.close();
+            fileManager = null;
+        }
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, null, null);
+            fileManagerCount++;
+            this.classPath = null;
+            this.classOutput = null;
+            jarStamps.clear();
+        }
+        List<File> newClassPath = new ArrayList<File>(classPath);
+        if (!newClassPath.equals(this.classPath)) {
+            fileManager.setLocation(StandardLocation.CLASS_PATH, newClassPath);
+            this.classPath = newClassPath;
+            updateJarStamps(newClassPath);
+        }
+        if (outputDir != null && !outputDir.equals(classOutput)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(outputDir));
+            classOutput = outputDir;
+        }
+        return fileManager;
+    }
+
+    private boolean jarsModified() {
+        for (Map.Entry<File, Stamp> entry : jarStamps.entrySet()) {
+            if (!entry.getValue().matches(entry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateJarStamps(List<File> newClassPath) {
+        // jars that leave the class path stay in the file manager's cache, so
+        // their stamps are kept until the file manager is recreated
+        for (File file : newClassPath) {
+            if (!jarStamps.containsKey(file) && file.isFile()) {
+                jarStamps.put(file, new Stamp(file));
+            }
+        }
+    }
+
+    private ExecutorService getSpeculationExecutor() {
+        // not the service lock, which a running compile holds
+        synchronized (speculationExecutorLock) {
+            if (speculationExecutor == null) {
+                speculationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "liberty-dev-speculative-compile");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return speculationExecutor;
+        }
+    }
+
+    /**
+     * The number of file managers created so far.
+     */
+    synchronized int getFileManagerCount() {
+        return fileManagerCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        // stop a running speculative compile instead of waiting for it
+        cancelSpeculation();
+        synchronized (speculationExecutorLock) {
+            if (speculationExecutor != null) {
+                speculationExecutor.shutdownNow();
+                speculationExecutor = null;
+            }
+        }
+        synchronized (this) {
+            if (fileManager != null) {
+                fileManager.close();
+                fileManager = null;
+            }
+        }
+    }
+}
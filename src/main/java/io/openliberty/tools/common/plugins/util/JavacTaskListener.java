@@ -0,0 +1,142 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+
+/**
+ * Listens to the steps of a javac task. The javac task API
+ * (com.sun.source.util) is in tools.jar on JDK 8, which is not on the compile
+ * classpath, so the listener is added through reflection, as a proxy for the
+ * TaskListener interface of the class loader that loaded the task.
+ */
+abstract class JavacTaskListener {
+
+    /**
+     * A javac task event.
+     */
+    static class Event {
+        private final String kind;
+        private final JavaFileObject sourceFile;
+        private final TypeElement typeElement;
+
+        Event(String kind, JavaFileObject sourceFile, TypeElement typeElement) {
+            this.kind = kind;
+            this.sourceFile = sourceFile;
+            this.typeElement = typeElement;
+        }
+
+        /**
+         * @return the name of the kind of the event, for example PARSE, ANALYZE or
+         *         GENERATE
+         */
+        String getKind() {
+            return kind;
+        }
+
+        JavaFileObject getSourceFile() {
+            return sourceFile;
+        }
+
+        TypeElement getTypeElement() {
+            return typeElement;
+        }
+    }
+
+    /**
+     * Called when a step of the task starts. A runtime exception thrown here
+     * makes the task fail with that exception.
+     */
+    abstract void started(Event e);
+
+    /**
+     * Called when a step of the task finishes.
+     */
+    abstract void finished(Event e);
+
+    /**
+     * Add this listener to a compilation task.
+     *
+     * @return true if the listener was added, or false if the task does not
+     *         support the javac task API
+     */
+    boolean install(JavaCompiler.CompilationTask task) {
+        try {
+            ClassLoader loader = task.getClass().getClassLoader();
+            Class<?> javacTask = Class.forName("com.sun.source.util.JavacTask", false, loader);
+            if (!javacTask.isInstance(task)) {
+                return false;
+            }
+            Class<?> taskListener = Class.forName("com.sun.source.util.TaskListener", false, loader);
+            Class<?> taskEvent = Class.forName("com.sun.source.util.TaskEvent", false, loader);
+            Object proxy = Proxy.newProxyInstance(taskListener.getClassLoader(), new Class<?>[] { taskListener },
+                    new Handler(taskEvent));
+            javacTask.getMethod("addTaskListener", taskListener).invoke(task, proxy);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private class Handler implements InvocationHandler {
+        private final Method getKind;
+        private final Method getSourceFile;
+        private final Method getTypeElement;
+
+        Handler(Class<?> taskEvent) throws NoSuchMethodException {
+            getKind = taskEvent.getMethod("getKind");
+            getSourceFile = taskEvent.getMethod("getSourceFile");
+            getTypeElement = taskEvent.getMethod("getTypeElement");
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                return JavacTaskListener.this.toString();
+            }
+            if ("started".equals(name)) {
+                started(toEvent(args[0]));
+            } else if ("finished".equals(name)) {
+                finished(toEvent(args[0]));
+            }
+            return null;
+        }
+
+        private Event toEvent(Object event) throws Throwable {
+            try {
+                return new Event(String.valueOf(getKind.invoke(event)), (JavaFileObject) getSourceFile.invoke(event),
+                        (TypeElement) getTypeElement.invoke(event));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows a server log such as messages.log, reading only the bytes that were
+ * added since it last looked. It keeps the lines that match the patterns it was
+ * asked about and, for every message code, how often it appeared and its latest
+ * line, so that callers do not need to scan the whole log again. When the
+ * server rolls the log to a file such as messages_20.01.01_00.00.00.0.log, the
+ * rest of the rolled file is read before following the new log from its start.
+ * Counts and matches cover every log that was followed, including the rolled
+ * ones, so they only grow.
+ */
+public class MessagesLogTailer implements Closeable {
+
+    private static final Pattern MESSAGE_CODE = Pattern.compile("\\b([A-Z]{4,5}[0-9]{4}[IWEAD]):");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class Matches {
+        private final Pattern pattern;
+        private final List<String> lines = new ArrayList<String>();
+
+        Matches(Pattern pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Reads the lines of a file from an offset, a buffer at a time, keeping an
+     * incomplete last line until the rest of it is read.
+     */
+    private static abstract class LineReader {
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private long offset;
+
+        /**
+         * Read from the offset up to a limit, or the end of the file if it is
+         * shorter.
+         */
+        void read(File file, long limit) throws IOException {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                long end = Math.min(limit, in.length());
+                if (end <= offset) {
+                    return;
+                }
+                in.seek(offset);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while (offset < end
+                        && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - offset))) > 0) {
+                    offset += read;
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            partialLine.write(buffer, start, i - start);
+                            endLine();
+                            start = i + 1;
+                        }
+                    }
+                    partialLine.write(buffer, start, read - start);
+                }
+            }
+        }
+
+        /**
+         * Handle the incomplete last line as a complete line, for example at the
+         * end of a rolled log.
+         */
+        void endLine() {
+            if (partialLine.size() == 0) {
+                return;
+            }
+            String line = new String(partialLine.toByteArray(), StandardCharsets.UTF_8);
+            partialLine.reset();
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            handle(line);
+        }
+
+        abstract void handle(String line);
+    }
+
+    private final File logFile;
+    private final Map<String, Matches> patterns = new LinkedHashMap<String, Matches>();
+    private final Map<String, Integer> codeCounts = new HashMap<String, Integer>();
+    private final Map<String, String> latestByCode = new HashMap<String, String>();
+    private final LineReader tail = new LineReader() {
+        @Override
+        void handle(String line) {
+            addLine(line);
+        }
+    };
+    /** the files that the log was rolled to while it was followed */
+    private final List<File> rolledFiles = new ArrayList<File>();
+    private Object fileKey;
+    private int lineCount;
+    private int rolls;
+    private long pollIntervalMillis = 100;
+    private Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * @param logFile the log to follow
+     */
+    public MessagesLogTailer(File logFile) {
+        this.logFile = logFile;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Set how often the background thread and waiting callers look for new
+     * lines.
+     *
+     * @param pollIntervalMillis the interval in milliseconds
+     */
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Start following the log in a background thread, so that counts and
+     * matches are up to date when they are asked for.
+     */
+    public synchronized void start() {
+        if (thread != null || closed) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!closed) {
+                    try {
+                        poll();
+                        Thread.sleep(pollIntervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "liberty-dev-log-tailer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            notifyAll();
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Read the lines that were added to the log since it was last read.
+     *
+     * @return true if lines were read
+     */
+    public synchronized boolean poll() {
+        int before = lineCount;
+        try {
+            readNewBytes();
+        } catch (IOException e) {
+            // the log is being rolled or recreated, so try again with the next poll
+        }
+        if (lineCount != before) {
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    private void readNewBytes() throws IOException {
+        if (!logFile.isFile()) {
+            return;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(logFile.toPath(), BasicFileAttributes.class);
+        Object key = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        if (fileKey != null && (!fileKey.equals(key) || attributes.size() < tail.offset)) {
+            File rolled = findRolledFile();
+            if (rolled != null) {
+                tail.read(rolled, Long.MAX_VALUE);
+                rolledFiles.add(rolled);
+            }
+            tail.endLine();
+            tail.offset = 0;
+            rolls++;
+        }
+        fileKey = key;
+        tail.read(logFile, Long.MAX_VALUE);
+    }
+
+    /**
+     * Find the file that the log was rolled to: the one with the same file key
+     * if the file system has them, or else the most recently modified one.
+     */
+    private File findRolledFile() throws IOException {
+        String name = logFile.getName();
+        int dot = name.lastIndexOf('.');
+        final String prefix = (dot < 0 ? name : name.substring(0, dot)) + "_";
+        final String suffix = dot < 0 ? "" : name.substring(dot);
+        File[] candidates = logFile.getAbsoluteFile().getParentFile().listFiles();
+        File rolled = null;
+        if (candidates == null) {
+            return null;
+        }
+        for (File candidate : candidates) {
+            String candidateName = candidate.getName();
+            if (!candidateName.startsWith(prefix) || !candidateName.endsWith(suffix) || !candidate.isFile()) {
+                continue;
+            }
+            Object key = Files.readAttributes(candidate.toPath(), BasicFileAttributes.class).fileKey();
+            if (key != null && key.equals(fileKey)) {
+                return candidate;
+            }
+            if (rolled == null || candidate.lastModified() > rolled.lastModified()) {
+                rolled = candidate;
+            }
+        }
+        return rolled != null && rolled.length() >= tail.offset ? rolled : null;
+    }
+
+    private void addLine(String line) {
+        lineCount++;
+        Matcher code = MESSAGE_CODE.matcher(line);
+        if (code.find()) {
+            Integer count = codeCounts.get(code.group(1));
+            codeCounts.put(code.group(1), count == null ? 1 : count + 1);
+            latestByCode.put(code.group(1), line);
+        }
+        for (Matches matches : patterns.values()) {
+            if (matches.pattern.matcher(line).find()) {
+                matches.lines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Get the lines matching a pattern. A pattern that was not asked about
+     * before is matched against the lines that were already read: those of the
+     * rolled logs, if the server has not deleted them since, and those of the
+     * current log.
+     */
+    private Matches getMatchesFor(String regexp) {
+        poll();
+        Matches matches = patterns.get(regexp);
+        if (matches == null) {
+            final Matches seeded = new Matches(Pattern.compile(regexp));
+            LineReader reader = new LineReader() {
+                @Override
+                void handle(String line) {
+                    if (seeded.pattern.matcher(line).find()) {
+                        seeded.lines.add(line);
+                    }
+                }
+            };
+            try {
+                for (File rolled : rolledFiles) {
+                    if (rolled.isFile()) {
+                        reader.offset = 0;
+                        reader.read(rolled, Long.MAX_VALUE);
+                        reader.endLine();
+                    }
+                }
+                // the partial last line is matched when it is complete
+                reader.offset = 0;
+                reader.read(logFile, tail.offset - tail.partialLine.size());
+            } catch (IOException e) {
+                // the lines that could not be read again are not matched
+            }
+            matches = seeded;
+            patterns.put(regexp, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * @param regexp a regular expression to find in the lines of the log
+     * @return the number of lines that match
+     */
+    public synchronized int count(String regexp) {
+        return getMatchesFor(regexp).lines.size();
+    }
+
+    /**
+     * @param regexp a regular expression to find in the lines of the log
+     * @return the lines that match, in the order they were logged
+     */
+    public synchronized List<String> getMatches(String regexp) {
+        return Collections.unmodifiableList(new ArrayList<String>(getMatchesFor(regexp).lines));
+    }
+
+    /**
+     * @param regexp a regular expression to find in the lines of the log
+     * @return the first line that matches, or null if there is none
+     */
+    public synchronized String find(String regexp) {
+        List<String> lines = getMatchesFor(regexp).lines;
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    /**
+     * Wait until a pattern has matched a number of lines.
+     *
+     * @param regexp        a regular expression to find in the lines of the log
+     * @param occurrences   the number of matching lines to wait for
+     * @param timeoutMillis how long to wait
+     * @return the line that reached the number of occurrences, or null if the
+     *         wait timed out or the occurrences are less than 1
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public synchronized String waitFor(String regexp, int occurrences, long timeoutMillis)
+            throws InterruptedException {
+        if (occurrences < 1) {
+            return null;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed) {
+            List<String> lines = getMatchesFor(regexp).lines;
+            if (lines.size() >= occurrences) {
+                return lines.get(occurrences - 1);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(Math.min(remaining, pollIntervalMillis));
+        }
+        return null;
+    }
+
+    /**
+     * @param messageCode a message code such as CWWKZ0003I
+     * @return how many times the message was logged
+     */
+    public synchronized int getCount(String messageCode) {
+        poll();
+        Integer count = codeCounts.get(messageCode);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param messageCode a message code such as CWWKZ0003I
+     * @return the latest line with the message, or null if it was not logged
+     */
+    public synchronized String getLatest(String messageCode) {
+        poll();
+        return latestByCode.get(messageCode);
+    }
+
+    /**
+     * @return how many times the log was rolled while it was followed
+     */
+    public synchronized int getRollCount() {
+        return rolls;
+    }
+}
@@ -28,4 +28,14 @@ public class OSUtil {
         return osName.indexOf("windows") >= 0;
     }
 
+    /**
+     * Determines if the current OS is Linux.
+     * 
+     * @return true if running on Linux, false otherwise
+     */
+    public static boolean isLinux() {
+        String osName = System.getProperty("os.name", "unknown").toLowerCase();
+        return osName.indexOf("linux") >= 0;
+    }
+
 }
@@ -0,0 +1,244 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index that maps a changed file to the kinds of dev mode paths it
+ * belongs to. Watched directory roots and individual files are stored in a
+ * prefix trie over their normalized path segments, so classifying a file costs
+ * one walk down its path without resolving canonical paths.
+ */
+public class PathClassifier {
+
+    /**
+     * Kinds of paths watched by dev mode, in the order that they take
+     * precedence when a file matches more than one.
+     */
+    public enum PathCategory {
+        JAVA_SOURCE, JAVA_TEST, CONFIG, SERVER_XML, BOOTSTRAP_PROPERTIES, JVM_OPTIONS, RESOURCE, BUILD_FILE,
+        PROPERTY_FILE
+    }
+
+    /**
+     * A match of a file against a watched root or file.
+     */
+    public static class Classification {
+        private final PathCategory category;
+        private final File root;
+        private final int index;
+
+        Classification(PathCategory category, File root, int index) {
+            this.category = category;
+            this.root = root;
+            this.index = index;
+        }
+
+        public PathCategory getCategory() {
+            return category;
+        }
+
+        /**
+         * @return the root directory or file that was matched, as it was added to
+         *         the index
+         */
+        public File getRoot() {
+            return root;
+        }
+
+        /**
+         * @return the position of the root among roots of the same category
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return category + "[" + index + "] " + root;
+        }
+    }
+
+    private static final Comparator<Classification> PRECEDENCE = new Comparator<Classification>() {
+        @Override
+        public int compare(Classification a, Classification b) {
+            int result = a.category.compareTo(b.category);
+            return result != 0 ? result : Integer.compare(a.index, b.index);
+        }
+    };
+
+    private static final boolean CASE_INSENSITIVE = OSUtil.isWindows();
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        /** roots that contain every path below this node */
+        private final List<Classification> directoryEntries = new ArrayList<Classification>(1);
+        /** files that are exactly this node */
+        private final List<Classification> fileEntries = new ArrayList<Classification>(1);
+    }
+
+    private final Node root;
+
+    private PathClassifier(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Classify a file.
+     *
+     * @param file the changed file
+     * @return the matching classifications in order of precedence, or an empty
+     *         list if the file is not within any watched root
+     */
+    public List<Classification> classify(File file) {
+        List<String> segments = toSegments(file.toPath().toAbsolutePath().normalize());
+        List<Classification> matches = null;
+        Node node = root;
+        for (int i = 0; i < segments.size() && node != null; i++) {
+            if (!node.directoryEntries.isEmpty()) {
+                // directory roots only match files below them, not the root itself
+                matches = add(matches, node.directoryEntries);
+            }
+            node = node.children.get(segments.get(i));
+        }
+        if (node != null && !node.fileEntries.isEmpty()) {
+            matches = add(matches, node.fileEntries);
+        }
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        if (matches.size() > 1) {
+            Collections.sort(matches, PRECEDENCE);
+        }
+        return matches;
+    }
+
+    private static List<Classification> add(List<Classification> matches, List<Classification> entries) {
+        if (matches == null) {
+            matches = new ArrayList<Classification>(entries.size());
+        }
+        for (Classification entry : entries) {
+            if (!matches.contains(entry)) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    private static List<String> toSegments(Path path) {
+        List<String> segments = new ArrayList<String>(path.getNameCount() + 1);
+        if (path.getRoot() != null) {
+            segments.add(normalizeSegment(path.getRoot().toString()));
+        }
+        for (Path name : path) {
+            segments.add(normalizeSegment(name.toString()));
+        }
+        return segments;
+    }
+
+    private static String normalizeSegment(String segment) {
+        return CASE_INSENSITIVE ? segment.toLowerCase() : segment;
+    }
+
+    /**
+     * Builds a PathClassifier. Each root is indexed under both its absolute and
+     * canonical path, so that events reported through either form are matched.
+     */
+    public static class Builder {
+        private final Node root = new Node();
+        private final Map<PathCategory, Integer> counts = new HashMap<PathCategory, Integer>();
+
+        /**
+         * Add a directory whose contents belong to the category.
+         *
+         * @param category the category
+         * @param dir      the directory, ignored if null
+         * @return this builder
+         * @throws IOException unable to resolve canonical path
+         */
+        public Builder addDirectory(PathCategory category, File dir) throws IOException {
+            if (dir != null) {
+                Classification entry = new Classification(category, dir, nextIndex(category));
+                for (Path path : getPaths(dir)) {
+                    getNode(path).directoryEntries.add(entry);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add a single file that belongs to the category.
+         *
+         * @param category the category
+         * @param file     the file, ignored if null
+         * @return this builder
+         * @throws IOException unable to resolve canonical path
+         */
+        public Builder addFile(PathCategory category, File file) throws IOException {
+            if (file != null) {
+                Classification entry = new Classification(category, file, nextIndex(category));
+                for (Path path : getPaths(file)) {
+                    getNode(path).fileEntries.add(entry);
+                }
+            }
+            return this;
+        }
+
+        public PathClassifier build() {
+            return new PathClassifier(root);
+        }
+
+        private int nextIndex(PathCategory category) {
+            Integer count = counts.get(category);
+            int index = count == null ? 0 : count;
+            counts.put(category, index + 1);
+            return index;
+        }
+
+        private static List<Path> getPaths(File file) throws IOException {
+            List<Path> paths = new ArrayList<Path>(2);
+            Path absolute = file.toPath().toAbsolutePath().normalize();
+            Path canonical = file.getCanonicalFile().toPath();
+            paths.add(absolute);
+            if (!canonical.equals(absolute)) {
+                paths.add(canonical);
+            }
+            return paths;
+        }
+
+        private Node getNode(Path path) {
+            Node node = root;
+            for (String segment : toSegments(path)) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+    }
+}
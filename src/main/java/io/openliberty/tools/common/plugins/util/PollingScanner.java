@@ -0,0 +1,508 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.openliberty.tools.common.plugins.util.DevUtil.ChangeType;
+
+/**
+ * Polls directory trees for changes by comparing snapshots of their contents.
+ * A single scanner serves all polled roots. Each snapshot stores the relative
+ * paths, modification times and sizes of a root in flat arrays sorted in
+ * directory traversal order, so a scan is a merge of the previous and current
+ * snapshot. Roots are scanned in parallel, and the poll interval backs off while
+ * nothing changes.
+ */
+public class PollingScanner {
+
+    /**
+     * Receives the changes found by a scan.
+     */
+    public interface Listener {
+        /**
+         * @param file         the file or directory that changed
+         * @param isDirectory  whether it is a directory
+         * @param changeType   the type of change
+         * @param fallbackRoot whether the change was found in a root that is polled
+         *                     because it could not be registered with the file
+         *                     watcher
+         */
+        void onChange(File file, boolean isDirectory, ChangeType changeType, boolean fallbackRoot);
+    }
+
+    /** How long after the last change to keep polling at the minimum interval */
+    private static final long ACTIVE_PERIOD_MILLIS = 10000;
+
+    private final List<Root> roots = new ArrayList<Root>();
+    private final Listener listener;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private long intervalMillis;
+    private long nextScanTime;
+    private long lastChangeTime;
+    private ExecutorService scanExecutor;
+    private volatile IgnoreRules ignoreRules;
+
+    /**
+     * @param listener          receives the changes
+     * @param minIntervalMillis the poll interval while changes are happening
+     * @param maxIntervalMillis the poll interval when idle
+     */
+    public PollingScanner(Listener listener, long minIntervalMillis, long maxIntervalMillis) {
+        this.listener = listener;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+        this.intervalMillis = minIntervalMillis;
+        this.lastChangeTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Set the rules for files and directories to leave out of scans. The
+     * contents of ignored directories are not scanned.
+     *
+     * @param ignoreRules the rules, or null to scan everything
+     */
+    public void setIgnoreRules(IgnoreRules ignoreRules) {
+        this.ignoreRules = ignoreRules;
+    }
+
+    /**
+     * Start polling a directory. The current contents are recorded without
+     * reporting any changes.
+     *
+     * @param dir          the directory
+     * @param filter       if not null, only direct children accepted by the
+     *                     filter are polled
+     * @param recursive    whether to poll the entire tree or only the direct
+     *                     children
+     * @param fallbackRoot whether the directory is polled because it could not be
+     *                     registered with the file watcher
+     * @return true if the root was added, false if it is already polled
+     */
+    public boolean addRoot(File dir, FileFilter filter, boolean recursive, boolean fallbackRoot) {
+        synchronized (this) {
+            if (isCovered(dir, fallbackRoot)) {
+                return false;
+            }
+        }
+        // take the initial snapshot outside of the lock so roots can be added concurrently
+        Root root = new Root(this, dir, filter, recursive, fallbackRoot);
+        root.snapshot = root.scan();
+        synchronized (this) {
+            if (isCovered(dir, fallbackRoot)) {
+                return false;
+            }
+            if (recursive) {
+                // the new root replaces any roots of the same kind that it contains
+                for (Iterator<Root> it = roots.iterator(); it.hasNext();) {
+                    Root existing = it.next();
+                    if (existing.fallback == fallbackRoot && existing.dir.toPath().startsWith(dir.toPath())) {
+                        it.remove();
+                    }
+                }
+            }
+            roots.add(root);
+            return true;
+        }
+    }
+
+    /**
+     * Whether all changes in a directory are already polled.
+     *
+     * @param dir the directory
+     * @return true if the directory is within a recursively polled root
+     */
+    public synchronized boolean isPolled(File dir) {
+        return isCovered(dir, false) || isCovered(dir, true);
+    }
+
+    private boolean isCovered(File dir, boolean fallbackRoot) {
+        for (Root root : roots) {
+            if (root.fallback == fallbackRoot && root.filter == null
+                    && (root.recursive ? dir.toPath().startsWith(root.dir.toPath()) : dir.equals(root.dir))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop polling all roots except the ones that could not be registered with
+     * the file watcher.
+     */
+    public synchronized void retainFallbackRoots() {
+        for (Iterator<Root> it = roots.iterator(); it.hasNext();) {
+            if (!it.next().fallback) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Keep polling a directory after the file watcher is chosen, because the file
+     * watcher does not deliver events for it. If the directory is not polled yet,
+     * it is added as a recursive root.
+     *
+     * @param dir the directory
+     */
+    public void markFallback(File dir) {
+        synchronized (this) {
+            boolean found = false;
+            for (Root root : roots) {
+                if (root.dir.equals(dir)) {
+                    root.fallback = true;
+                    found = true;
+                }
+            }
+            if (found) {
+                return;
+            }
+        }
+        addRoot(dir, null, true, true);
+    }
+
+    /**
+     * Stop polling a directory.
+     *
+     * @param dir the root directory
+     * @return true if the directory was polled
+     */
+    public synchronized boolean removeRoot(File dir) {
+        boolean removed = false;
+        for (Iterator<Root> it = roots.iterator(); it.hasNext();) {
+            if (it.next().dir.equals(dir)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int getRootCount() {
+        return roots.size();
+    }
+
+    /**
+     * Scan all roots if the current poll interval has elapsed, and report the
+     * changes to the listener on the calling thread.
+     *
+     * @return true if any changes were found
+     */
+    public boolean scanIfDue() {
+        long now = System.currentTimeMillis();
+        List<Root> toScan;
+        synchronized (this) {
+            if (roots.isEmpty() || now < nextScanTime) {
+                return false;
+            }
+            toScan = new ArrayList<Root>(roots);
+        }
+        List<List<Change>> results = scan(toScan);
+        boolean changed = false;
+        for (int i = 0; i < toScan.size(); i++) {
+            Root root = toScan.get(i);
+            for (Change change : results.get(i)) {
+                changed = true;
+                listener.onChange(new File(root.dir, change.path), change.directory, change.changeType, root.fallback);
+            }
+        }
+        long end = System.currentTimeMillis();
+        synchronized (this) {
+            if (changed) {
+                lastChangeTime = end;
+                intervalMillis = minIntervalMillis;
+            } else if (end - lastChangeTime > ACTIVE_PERIOD_MILLIS) {
+                intervalMillis = Math.min(intervalMillis * 2, maxIntervalMillis);
+            }
+            // don't spend more than a third of the time scanning
+            nextScanTime = end + Math.max(intervalMillis, 2 * (end - now));
+        }
+        return changed;
+    }
+
+    /**
+     * Poll at the minimum interval again, for example after changes were
+     * detected through another backend.
+     */
+    public synchronized void resetInterval() {
+        lastChangeTime = System.currentTimeMillis();
+        intervalMillis = minIntervalMillis;
+        nextScanTime = Math.min(nextScanTime, lastChangeTime + minIntervalMillis);
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private List<List<Change>> scan(List<Root> toScan) {
+        List<List<Change>> results = new ArrayList<List<Change>>(toScan.size());
+        if (toScan.size() == 1) {
+            results.add(toScan.get(0).rescan());
+            return results;
+        }
+        List<Future<List<Change>>> futures = new ArrayList<Future<List<Change>>>(toScan.size());
+        ExecutorService executor = getScanExecutor();
+        for (final Root root : toScan) {
+            futures.add(executor.submit(new Callable<List<Change>>() {
+                @Override
+                public List<Change> call() {
+                    return root.rescan();
+                }
+            }));
+        }
+        for (Future<List<Change>> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(new ArrayList<Change>());
+            } catch (ExecutionException e) {
+                results.add(new ArrayList<Change>());
+            }
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService getScanExecutor() {
+        if (scanExecutor == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            scanExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "liberty-dev-polling");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scanExecutor;
+    }
+
+    /**
+     * Stop polling and release the scan threads.
+     */
+    public synchronized void close() {
+        roots.clear();
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+            scanExecutor = null;
+        }
+    }
+
+    private static class Change {
+        private final String path;
+        private final boolean directory;
+        private final ChangeType changeType;
+
+        Change(String path, boolean directory, ChangeType changeType) {
+            this.path = path;
+            this.directory = directory;
+            this.changeType = changeType;
+        }
+    }
+
+    private static class Root {
+        private final PollingScanner scanner;
+        private final File dir;
+        private final FileFilter filter;
+        private final boolean recursive;
+        private boolean fallback;
+        private Snapshot snapshot;
+
+        Root(PollingScanner scanner, File dir, FileFilter filter, boolean recursive, boolean fallback) {
+            this.scanner = scanner;
+            this.dir = dir;
+            this.filter = filter;
+            this.recursive = recursive;
+            this.fallback = fallback;
+        }
+
+        /**
+         * Take a new snapshot and return the differences from the previous one.
+         */
+        List<Change> rescan() {
+            Snapshot current = scan();
+            List<Change> changes = snapshot.diff(current);
+            snapshot = current;
+            return changes;
+        }
+
+        Snapshot scan() {
+            Snapshot.Builder builder = new Snapshot.Builder();
+            scanDirectory(dir, "", builder, scanner.ignoreRules);
+            return builder.build();
+        }
+
+        private void scanDirectory(File directory, String relativePath, Snapshot.Builder builder,
+                IgnoreRules ignoreRules) {
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                File child = new File(directory, name);
+                if (filter != null && !filter.accept(child)) {
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child.toPath(), BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // deleted while scanning
+                    continue;
+                }
+                boolean isDirectory = attrs.isDirectory();
+                if (ignoreRules != null && ignoreRules.isIgnored(child, isDirectory)) {
+                    continue;
+                }
+                String childPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                builder.add(childPath, attrs.lastModifiedTime().toMillis(), isDirectory ? 0 : attrs.size(),
+                        isDirectory);
+                if (isDirectory && recursive) {
+                    scanDirectory(child, childPath, builder, ignoreRules);
+                }
+            }
+        }
+    }
+
+    /**
+     * The contents of a root at one point in time, in depth-first order with the
+     * children of each directory sorted by name.
+     */
+    static class Snapshot {
+        private final String[] paths;
+        private final long[] lastModified;
+        private final long[] lengths;
+        private final BitSet directories;
+        private final int size;
+
+        private Snapshot(String[] paths, long[] lastModified, long[] lengths, BitSet directories, int size) {
+            this.paths = paths;
+            this.lastModified = lastModified;
+            this.lengths = lengths;
+            this.directories = directories;
+            this.size = size;
+        }
+
+        List<Change> diff(Snapshot current) {
+            List<Change> changes = new ArrayList<Change>();
+            int i = 0;
+            int j = 0;
+            while (i < size || j < current.size) {
+                int cmp;
+                if (i >= size) {
+                    cmp = 1;
+                } else if (j >= current.size) {
+                    cmp = -1;
+                } else {
+                    cmp = comparePaths(paths[i], current.paths[j]);
+                }
+                if (cmp < 0) {
+                    changes.add(new Change(paths[i], directories.get(i), ChangeType.DELETE));
+                    i++;
+                } else if (cmp > 0) {
+                    changes.add(new Change(current.paths[j], current.directories.get(j), ChangeType.CREATE));
+                    j++;
+                } else {
+                    boolean wasDirectory = directories.get(i);
+                    boolean isDirectory = current.directories.get(j);
+                    if (wasDirectory != isDirectory) {
+                        changes.add(new Change(paths[i], wasDirectory, ChangeType.DELETE));
+                        changes.add(new Change(current.paths[j], isDirectory, ChangeType.CREATE));
+                    } else if (!isDirectory
+                            && (lastModified[i] != current.lastModified[j] || lengths[i] != current.lengths[j])) {
+                        changes.add(new Change(current.paths[j], false, ChangeType.MODIFY));
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            return changes;
+        }
+
+        /**
+         * Compare relative paths in the order they are visited, where a directory's
+         * children come right after the directory.
+         */
+        static int comparePaths(String a, String b) {
+            int length = Math.min(a.length(), b.length());
+            for (int k = 0; k < length; k++) {
+                char ca = a.charAt(k);
+                char cb = b.charAt(k);
+                if (ca != cb) {
+                    if (ca == '/') {
+                        return -1;
+                    }
+                    if (cb == '/') {
+                        return 1;
+                    }
+                    return ca - cb;
+                }
+            }
+            return a.length() - b.length();
+        }
+
+        int size() {
+            return size;
+        }
+
+        static class Builder {
+            private String[] paths = new String[64];
+            private long[] lastModified = new long[64];
+            private long[] lengths = new long[64];
+            private final BitSet directories = new BitSet();
+            private int size;
+
+            void add(String path, long modified, long length, boolean directory) {
+                if (size == paths.length) {
+                    int capacity = size * 2;
+                    paths = Arrays.copyOf(paths, capacity);
+                    lastModified = Arrays.copyOf(lastModified, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                }
+                paths[size] = path;
+                lastModified[size] = modified;
+                lengths[size] = length;
+                if (directory) {
+                    directories.set(size);
+                }
+                size++;
+            }
+
+            Snapshot build() {
+                return new Snapshot(Arrays.copyOf(paths, size), Arrays.copyOf(lastModified, size),
+                        Arrays.copyOf(lengths, size), directories, size);
+            }
+        }
+    }
+}
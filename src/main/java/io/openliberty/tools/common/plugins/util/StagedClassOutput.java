@@ -0,0 +1,210 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Holds the class files of a compile in memory until the compile is done, and
+ * then publishes them to the output directory in one short batch, so that the
+ * server does not pick up a partly written set of classes.
+ * <p>
+ * Class files whose content did not change are not rewritten. The changed ones
+ * are written to a staging directory next to the output directory and then
+ * renamed into place, and class files that the compiled sources no longer
+ * produce, such as removed inner and anonymous classes, are deleted in the
+ * same step.
+ */
+public class StagedClassOutput {
+
+    /**
+     * The number of class files changed by a publish.
+     */
+    public static class Result {
+        private final int written;
+        private final int unchanged;
+        private final int deleted;
+
+        Result(int written, int unchanged, int deleted) {
+            this.written = written;
+            this.unchanged = unchanged;
+            this.deleted = deleted;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public String toString() {
+            return written + " written, " + unchanged + " unchanged, " + deleted + " deleted";
+        }
+    }
+
+    private final File outputDir;
+    private final Map<File, byte[]> classFiles = new LinkedHashMap<File, byte[]>();
+
+    /**
+     * @param outputDir the output directory that the classes are published to
+     */
+    public StagedClassOutput(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Get the file that a class is published to.
+     *
+     * @param className the binary name of the class
+     * @return the class file in the output directory
+     */
+    public File getClassFile(String className) {
+        return new File(outputDir, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    /**
+     * Open a stream for the contents of a class file, which are staged when the
+     * stream is closed.
+     *
+     * @param classFile the class file in the output directory
+     * @return the stream
+     */
+    public synchronized OutputStream openOutputStream(final File classFile) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                stage(classFile, toByteArray());
+            }
+        };
+    }
+
+    synchronized void stage(File classFile, byte[] bytes) {
+        classFiles.put(classFile, bytes);
+    }
+
+    /**
+     * @return the staged class files
+     */
+    public synchronized Collection<File> getClassFiles() {
+        return new ArrayList<File>(classFiles.keySet());
+    }
+
+    /**
+     * Discard the staged class files.
+     */
+    public synchronized void discard() {
+        classFiles.clear();
+    }
+
+    /**
+     * Publish the staged class files to the output directory.
+     *
+     * @param staleClassFiles class files that were produced by the compiled
+     *                        sources before, and are deleted unless they were
+     *                        produced again
+     * @return the number of class files written, unchanged and deleted
+     * @throws IOException if a class file could not be written
+     */
+    public synchronized Result publish(Collection<File> staleClassFiles) throws IOException {
+        Map<File, byte[]> changed = new LinkedHashMap<File, byte[]>();
+        int unchanged = 0;
+        for (Map.Entry<File, byte[]> entry : classFiles.entrySet()) {
+            File target = entry.getKey();
+            byte[] bytes = entry.getValue();
+            if (target.isFile() && target.length() == bytes.length
+                    && Arrays.equals(Files.readAllBytes(target.toPath()), bytes)) {
+                unchanged++;
+            } else {
+                changed.put(target, bytes);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            File stagingDir = getStagingDir();
+            try {
+                // write everything first, so that publishing is only a series of renames
+                List<File[]> moves = new ArrayList<File[]>();
+                int i = 0;
+                for (Map.Entry<File, byte[]> entry : changed.entrySet()) {
+                    File staged = new File(stagingDir, (i++) + ".class");
+                    Files.write(staged.toPath(), entry.getValue());
+                    moves.add(new File[] { staged, entry.getKey() });
+                }
+                for (File[] move : moves) {
+                    File parent = move[1].getParentFile();
+                    if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                        throw new IOException("Could not create the directory " + parent);
+                    }
+                    try {
+                        Files.move(move[0].toPath(), move[1].toPath(), StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(move[0].toPath(), move[1].toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            } finally {
+                FileUtils.deleteQuietly(stagingDir);
+            }
+        }
+
+        int deleted = 0;
+        if (staleClassFiles != null) {
+            for (File stale : staleClassFiles) {
+                if (!classFiles.containsKey(stale) && stale.isFile() && stale.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        classFiles.clear();
+        return new Result(changed.size(), unchanged, deleted);
+    }
+
+    private File getStagingDir() throws IOException {
+        // next to the output directory, so that the renames stay on one file system
+        File parent = outputDir.getAbsoluteFile().getParentFile();
+        if (parent == null) {
+            parent = outputDir;
+        }
+        File stagingDir = new File(parent, "." + outputDir.getName() + "-staging");
+        FileUtils.deleteQuietly(stagingDir);
+        if (!stagingDir.mkdirs()) {
+            throw new IOException("Could not create the staging directory " + stagingDir);
+        }
+        return stagingDir;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the test classes affected by changed classes and resources. A test
+ * class is affected when it reaches a changed class through the references in
+ * the bytecode of the class dependency graph, directly or through other
+ * classes, or when a recorded coverage run of the test reached a changed class
+ * or resource. Resources are only found through coverage, so when a resource
+ * changes and a test has no recorded coverage, all tests are affected.
+ */
+public class TestImpactAnalyzer {
+
+    private final ClassDependencyGraph graph;
+    private final File testSourceDirectory;
+    /** for each test class, the classes and resources it reached in a coverage run */
+    private final Map<String, Set<String>> coverage = new HashMap<String, Set<String>>();
+
+    /**
+     * @param graph               the classes of the project and their references
+     * @param testSourceDirectory the directory of the test sources
+     */
+    public TestImpactAnalyzer(ClassDependencyGraph graph, File testSourceDirectory) {
+        this.graph = graph;
+        this.testSourceDirectory = testSourceDirectory;
+    }
+
+    /**
+     * Record what a test class reached in a coverage run, replacing what was
+     * recorded for it before.
+     *
+     * @param testClass the binary name of the test class
+     * @param reached   the binary names of the classes, and the paths of the
+     *                  resources relative to their resource directory, that the
+     *                  test reached
+     */
+    public synchronized void recordCoverage(String testClass, Collection<String> reached) {
+        coverage.put(testClass, new HashSet<String>(reached));
+    }
+
+    /**
+     * @param testClass the binary name of the test class
+     * @return whether a coverage run was recorded for the test class
+     */
+    public synchronized boolean hasCoverage(String testClass) {
+        return coverage.containsKey(testClass);
+    }
+
+    /**
+     * @return the binary names of the top level classes compiled from the test
+     *         sources
+     */
+    public Set<String> getTestClasses() {
+        Set<String> testClasses = new TreeSet<String>();
+        String testDir = getCanonicalPath(testSourceDirectory) + File.separator;
+        Map<File, Boolean> testSources = new HashMap<File, Boolean>();
+        for (String className : graph.getClassNames()) {
+            File source = graph.getSource(className);
+            Boolean test = testSources.get(source);
+            if (test == null) {
+                test = getCanonicalPath(source).startsWith(testDir);
+                testSources.put(source, test);
+            }
+            if (test) {
+                testClasses.add(getTopLevelClass(className));
+            }
+        }
+        return testClasses;
+    }
+
+    /**
+     * Get the test classes affected by a change.
+     *
+     * @param changed the binary names of the changed classes, and the paths of
+     *                the changed resources relative to their resource directory
+     * @return the binary names of the affected top level test classes, or null
+     *         if all tests are affected
+     */
+    public synchronized Set<String> getAffectedTests(Collection<String> changed) {
+        if (changed == null) {
+            return null;
+        }
+        Set<String> testClasses = getTestClasses();
+        Set<String> reached = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        for (String name : changed) {
+            if (graph.getSource(name) != null) {
+                if (reached.add(name)) {
+                    queue.add(name);
+                }
+            } else if (!coverage.keySet().containsAll(testClasses)) {
+                // a resource, or a removed class, whose users cannot be found without coverage
+                return null;
+            }
+        }
+        // every class that reaches a changed class is affected too
+        while (!queue.isEmpty()) {
+            for (String dependent : graph.getDependentClasses(Collections.singleton(queue.remove()))) {
+                if (reached.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+
+        Set<String> affected = new TreeSet<String>();
+        for (String className : reached) {
+            String topLevel = getTopLevelClass(className);
+            if (testClasses.contains(topLevel)) {
+                affected.add(topLevel);
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : coverage.entrySet()) {
+            if (!testClasses.contains(entry.getKey()) || affected.contains(entry.getKey())) {
+                continue;
+            }
+            for (String name : entry.getValue()) {
+                if (reached.contains(name) || changed.contains(name)) {
+                    affected.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return affected;
+    }
+
+    private static String getTopLevelClass(String className) {
+        int dollar = className.indexOf('$', className.lastIndexOf('.') + 1);
+        return dollar < 0 ? className : className.substring(0, dollar);
+    }
+
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.w3c.dom.Element;
+
+/**
+ * Records the outcome of the last run of each test class: the tests that
+ * failed, or none if all of them passed. The outcomes are kept in a file, so
+ * that the tests that failed before dev mode restarted can be run again first.
+ */
+public class TestOutcomeStore {
+
+    private final File file;
+    /** for each test class that ran, the tests that failed */
+    private Map<String, Set<String>> failedTests;
+
+    /**
+     * @param file the file that keeps the outcomes, or null to not keep them
+     *             after dev mode exits
+     */
+    public TestOutcomeStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Record the outcomes of test classes that ran, replacing their previous
+     * outcomes.
+     *
+     * @param results for each test class that ran, the names of the tests that
+     *                failed or had errors
+     * @throws IOException if the outcomes could not be saved
+     */
+    public synchronized void record(Map<String, ? extends Collection<String>> results) throws IOException {
+        if (results.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, ? extends Collection<String>> entry : results.entrySet()) {
+            getFailed().put(entry.getKey(), new TreeSet<String>(entry.getValue()));
+        }
+        save();
+    }
+
+    /**
+     * Record the outcomes in the Surefire XML reports of a directory.
+     *
+     * @param reportsDirectory the directory of the reports
+     * @param modifiedSince    only the reports written at or after this time,
+     *                         in milliseconds since the epoch, are recorded
+     * @throws IOException if a report could not be read or the outcomes could
+     *                     not be saved
+     */
+    public void recordReports(File reportsDirectory, long modifiedSince) throws IOException {
+        Map<String, Set<String>> results = new LinkedHashMap<String, Set<String>>();
+        for (File report : IntegrationTestSharder.listReports(reportsDirectory)) {
+            if (report.lastModified() < modifiedSince) {
+                continue;
+            }
+            Element suite = IntegrationTestSharder.readReport(report);
+            Set<String> failed = new TreeSet<String>();
+            for (Element testCase : IntegrationTestSharder.getFailedTestCases(suite)) {
+                failed.add(testCase.getAttribute("name"));
+            }
+            if (!suite.getAttribute("name").isEmpty()) {
+                results.put(suite.getAttribute("name"), failed);
+            }
+        }
+        record(results);
+    }
+
+    /**
+     * Drop the outcomes of test classes that no longer have a class file, for
+     * example because they were deleted or renamed.
+     *
+     * @param testOutputDirectory the directory of the compiled test classes
+     * @throws IOException if the outcomes could not be saved
+     */
+    public synchronized void retainExisting(File testOutputDirectory) throws IOException {
+        boolean changed = false;
+        for (Iterator<String> it = getFailed().keySet().iterator(); it.hasNext();) {
+            String testClass = it.next();
+            if (!new File(testOutputDirectory, testClass.replace('.', '/') + ".class").isFile()) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * @return the binary names of the test classes that had failed tests in their
+     *         last run
+     */
+    public synchronized Set<String> getFailedTestClasses() {
+        Set<String> classes = new TreeSet<String>();
+        for (Map.Entry<String, Set<String>> entry : getFailed().entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                classes.add(entry.getKey());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param testClass the binary name of a test class
+     * @return the names of the tests of the class that failed in its last run
+     */
+    public synchronized Set<String> getFailedTests(String testClass) {
+        Set<String> failed = getFailed().get(testClass);
+        return failed == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(failed);
+    }
+
+    private Map<String, Set<String>> getFailed() {
+        if (failedTests == null) {
+            failedTests = new TreeMap<String, Set<String>>();
+            if (file != null && file.isFile()) {
+                Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                    for (String testClass : properties.stringPropertyNames()) {
+                        String value = properties.getProperty(testClass);
+                        failedTests.put(testClass, value.isEmpty() ? new TreeSet<String>()
+                                : new TreeSet<String>(Arrays.asList(value.split("\n"))));
+                    }
+                } catch (IOException e) {
+                    // the outcomes are recorded again by the next run
+                    failedTests.clear();
+                }
+            }
+        }
+        return failedTests;
+    }
+
+    private void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Set<String>> entry : getFailed().entrySet()) {
+            StringBuilder value = new StringBuilder();
+            for (String test : entry.getValue()) {
+                if (value.length() > 0) {
+                    value.append('\n');
+                }
+                value.append(test);
+            }
+            properties.setProperty(entry.getKey(), value.toString());
+        }
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "The tests that failed in the last run of each test class");
+        }
+    }
+}
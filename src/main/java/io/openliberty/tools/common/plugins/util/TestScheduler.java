@@ -0,0 +1,325 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Schedules test runs so that the latest request wins. Requests that arrive
+ * while tests are waiting to run are merged into one, and a request that
+ * arrives while tests are running cancels that run and is merged with it, so
+ * that the tests of the newest change start as soon as possible. Cancelling is
+ * cooperative: the run checks {@link #isCancelled()} between its steps, is
+ * interrupted while it is in an interruptible step, and the runner is told to
+ * stop work it started elsewhere, such as a forked test process.
+ */
+public class TestScheduler {
+
+    public enum State {
+        /** no tests are running or waiting to run */
+        IDLE,
+        /** tests are waiting to run */
+        PENDING,
+        /** tests are running */
+        RUNNING,
+        /** the running tests were cancelled by a newer request */
+        CANCELLING
+    }
+
+    /**
+     * Which tests a request runs, based on the outcome of the last run.
+     */
+    public enum FailedTests {
+        /** the tests do not depend on the last outcome */
+        ANY,
+        /** only the tests that failed in the last run */
+        ONLY,
+        /** the tests that failed in the last run, and then the others */
+        FIRST
+    }
+
+    /**
+     * A request to run tests.
+     */
+    public static class Request {
+        private final boolean waitForApplicationUpdate;
+        private final int messageOccurrences;
+        private final boolean forceSkipUTs;
+        private final boolean manualInvocation;
+        private final Set<String> changes;
+        private final FailedTests failedTests;
+
+        /**
+         * @param waitForApplicationUpdate whether to wait for the application to
+         *                                 update before running integration tests
+         * @param messageOccurrences       how many times the application updated
+         *                                 message has occurred in the log
+         * @param forceSkipUTs             whether to skip the unit tests
+         * @param manualInvocation         whether the tests were manually invoked
+         */
+        public Request(boolean waitForApplicationUpdate, int messageOccurrences, boolean forceSkipUTs,
+                boolean manualInvocation) {
+            this(waitForApplicationUpdate, messageOccurrences, forceSkipUTs, manualInvocation, null);
+        }
+
+        /**
+         * @param waitForApplicationUpdate whether to wait for the application to
+         *                                 update before running integration tests
+         * @param messageOccurrences       how many times the application updated
+         *                                 message has occurred in the log
+         * @param forceSkipUTs             whether to skip the unit tests
+         * @param manualInvocation         whether the tests were manually invoked
+         * @param changes                  the classes and resources that changed,
+         *                                 or null if the change can affect any
+         *                                 test
+         */
+        public Request(boolean waitForApplicationUpdate, int messageOccurrences, boolean forceSkipUTs,
+                boolean manualInvocation, Collection<String> changes) {
+            this(waitForApplicationUpdate, messageOccurrences, forceSkipUTs, manualInvocation, changes,
+                    FailedTests.ANY);
+        }
+
+        /**
+         * @param waitForApplicationUpdate whether to wait for the application to
+         *                                 update before running integration tests
+         * @param messageOccurrences       how many times the application updated
+         *                                 message has occurred in the log
+         * @param forceSkipUTs             whether to skip the unit tests
+         * @param manualInvocation         whether the tests were manually invoked
+         * @param changes                  the classes and resources that changed,
+         *                                 or null if the change can affect any
+         *                                 test
+         * @param failedTests              which tests to run based on the outcome
+         *                                 of the last run
+         */
+        public Request(boolean waitForApplicationUpdate, int messageOccurrences, boolean forceSkipUTs,
+                boolean manualInvocation, Collection<String> changes, FailedTests failedTests) {
+            this.failedTests = failedTests;
+            this.waitForApplicationUpdate = waitForApplicationUpdate;
+            this.messageOccurrences = messageOccurrences;
+            this.forceSkipUTs = forceSkipUTs;
+            this.manualInvocation = manualInvocation;
+            this.changes = changes == null ? null
+                    : Collections.unmodifiableSet(new LinkedHashSet<String>(changes));
+        }
+
+        /**
+         * Merge a newer request into this one, so that the merged request does
+         * what both asked for: it waits for the newest application update if
+         * either waits, only skips the unit tests if both do, and includes the
+         * changes of both. The failed tests mode of the newest manual request is
+         * kept.
+         *
+         * @param newer the newer request
+         * @return the merged request
+         */
+        public Request merge(Request newer) {
+            int occurrences;
+            if (waitForApplicationUpdate && newer.waitForApplicationUpdate) {
+                occurrences = Math.max(messageOccurrences, newer.messageOccurrences);
+            } else {
+                occurrences = waitForApplicationUpdate ? messageOccurrences : newer.messageOccurrences;
+            }
+            Set<String> mergedChanges = null;
+            if (changes != null && newer.changes != null) {
+                mergedChanges = new LinkedHashSet<String>(changes);
+                mergedChanges.addAll(newer.changes);
+            }
+            FailedTests mergedFailedTests = newer.manualInvocation ? newer.failedTests
+                    : manualInvocation ? failedTests : FailedTests.ANY;
+            return new Request(waitForApplicationUpdate || newer.waitForApplicationUpdate, occurrences,
+                    forceSkipUTs && newer.forceSkipUTs, manualInvocation || newer.manualInvocation, mergedChanges,
+                    mergedFailedTests);
+        }
+
+        public boolean isWaitForApplicationUpdate() {
+            return waitForApplicationUpdate;
+        }
+
+        public int getMessageOccurrences() {
+            return messageOccurrences;
+        }
+
+        public boolean isForceSkipUTs() {
+            return forceSkipUTs;
+        }
+
+        public boolean isManualInvocation() {
+            return manualInvocation;
+        }
+
+        /**
+         * @return the classes and resources that changed, or null if the change
+         *         can affect any test
+         */
+        public Set<String> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return which tests to run based on the outcome of the last run
+         */
+        public FailedTests getFailedTests() {
+            return failedTests;
+        }
+    }
+
+    /**
+     * Runs the tests of a request.
+     */
+    public interface Runner {
+        /**
+         * Run the tests of a request, returning early if the run is cancelled.
+         */
+        void run(Request request);
+
+        /**
+         * Called when the running tests are cancelled by a newer request, from the
+         * thread that made the request.
+         */
+        void cancelled(Request running);
+    }
+
+    private final Runner runner;
+    private Request pending;
+    private Request running;
+    private Thread runningThread;
+    private boolean cancelled;
+    private boolean interruptible;
+    private boolean workerSubmitted;
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Request request;
+                synchronized (TestScheduler.this) {
+                    request = pending;
+                    pending = null;
+                    if (request == null) {
+                        workerSubmitted = false;
+                        return;
+                    }
+                    running = request;
+                    runningThread = Thread.currentThread();
+                    cancelled = false;
+                    interruptible = false;
+                }
+                try {
+                    runner.run(request);
+                } finally {
+                    synchronized (TestScheduler.this) {
+                        running = null;
+                        runningThread = null;
+                        interruptible = false;
+                        // clear an interrupt that arrived after the run stopped checking
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * @param runner runs the tests of each request
+     */
+    public TestScheduler(Runner runner) {
+        this.runner = runner;
+    }
+
+    /**
+     * Request a test run. The request is merged with one that is waiting to run,
+     * and it cancels the tests that are running.
+     *
+     * @param executor the executor to run the tests on, if none are running
+     * @param request  the request
+     * @throws RejectedExecutionException if the executor does not accept the
+     *                                    tests
+     */
+    public void request(Executor executor, Request request) {
+        Request cancelledRun = null;
+        synchronized (this) {
+            pending = pending == null ? request : pending.merge(request);
+            if (running != null && !cancelled) {
+                cancelled = true;
+                cancelledRun = running;
+                // the next run also does what the cancelled run did not get to do
+                pending = running.merge(pending);
+                if (interruptible) {
+                    runningThread.interrupt();
+                }
+            }
+            if (!workerSubmitted) {
+                try {
+                    executor.execute(worker);
+                } catch (RejectedExecutionException e) {
+                    pending = null;
+                    throw e;
+                }
+                workerSubmitted = true;
+            }
+        }
+        if (cancelledRun != null) {
+            runner.cancelled(cancelledRun);
+        }
+    }
+
+    /**
+     * @return whether the tests that are running on the current thread were
+     *         cancelled by a newer request
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled && runningThread == Thread.currentThread();
+    }
+
+    /**
+     * Set whether the running tests can be interrupted when they are cancelled,
+     * for example while they wait. When a run leaves an interruptible step, a
+     * pending interrupt is cleared, so that it does not affect the next step.
+     *
+     * @param interruptible whether the current step can be interrupted
+     */
+    public synchronized void setInterruptible(boolean interruptible) {
+        if (runningThread != Thread.currentThread()) {
+            return;
+        }
+        this.interruptible = interruptible;
+        if (interruptible && cancelled) {
+            runningThread.interrupt();
+        } else if (!interruptible) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * @return the request that is waiting to run, or null if there is none
+     */
+    public synchronized Request getPendingRequest() {
+        return pending;
+    }
+
+    public synchronized State getState() {
+        if (running != null) {
+            return cancelled ? State.CANCELLING : State.RUNNING;
+        }
+        return pending != null ? State.PENDING : State.IDLE;
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The main class of the test JVM that {@link WarmUnitTestRunner} keeps between
+ * test runs. It reads one run request per line from its standard input and
+ * writes the test classes it runs, the result of every test, and then the
+ * totals of the run, to its
+ * standard output. The output of the tests goes to its standard error. The
+ * jars of the class path are loaded by a class loader that is kept for as long
+ * as they do not change, and the class directories by a new class loader for
+ * every run, so that the tests see the latest compiled classes without loading
+ * their dependencies again. The tests run on the JUnit Platform launcher, or on
+ * JUnit 4 if the launcher is not on the class path.
+ * <p>
+ * This class only uses the JDK, since the test JVM has only this class and the
+ * test class path.
+ */
+public class WarmUnitTestJvm {
+
+    static final String RUN = "RUN";
+    static final String TEST_CLASS = "CLASS";
+    static final String TEST = "TEST";
+    static final String ERROR = "ERROR";
+    static final String DONE = "DONE";
+
+    static final String SUCCESSFUL = "SUCCESSFUL";
+    static final String FAILED = "FAILED";
+    static final String ABORTED = "ABORTED";
+    static final String SKIPPED = "SKIPPED";
+
+    /** the test classes that Maven Surefire includes by default */
+    private static final Pattern TEST_CLASS_NAME = Pattern.compile("(Test[^$]*|[^$]*Test|[^$]*Tests|[^$]*TestCase)");
+
+    private final PrintStream protocol;
+    private URLClassLoader dependencyLoader;
+    private String dependencyKey;
+    private int tests;
+    private int failures;
+    private int skipped;
+
+    WarmUnitTestJvm(PrintStream protocol) {
+        this.protocol = protocol;
+    }
+
+    public static void main(String[] args) throws IOException {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        // the output of the tests must not mix with the results
+        System.setOut(System.err);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        new WarmUnitTestJvm(protocol).serve(in);
+    }
+
+    void serve(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] fields = line.split("\t", -1);
+            if (RUN.equals(fields[0]) && fields.length == 4) {
+                List<String> selected = fields[3].isEmpty() ? null : Arrays.asList(fields[3].split(","));
+                run(split(fields[1]), new File(fields[2]), selected);
+            }
+        }
+    }
+
+    private static List<File> split(String path) {
+        List<File> files = new ArrayList<File>();
+        for (String element : path.split(Pattern.quote(File.pathSeparator))) {
+            if (!element.isEmpty()) {
+                files.add(new File(element));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Run the tests and report their results.
+     *
+     * @param classPath      the class path of the tests
+     * @param testClassesDir the directory of the compiled tests
+     * @param selected       the binary names of the test classes to run, or null
+     *                       to run all of them
+     */
+    void run(List<File> classPath, File testClassesDir, Collection<String> selected) {
+        long start = System.nanoTime();
+        tests = 0;
+        failures = 0;
+        skipped = 0;
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        URLClassLoader projectLoader = null;
+        try {
+            List<File> jars = new ArrayList<File>();
+            List<URL> dirs = new ArrayList<URL>();
+            for (File file : classPath) {
+                if (file.isDirectory()) {
+                    dirs.add(file.toURI().toURL());
+                } else if (file.isFile()) {
+                    jars.add(file);
+                }
+            }
+            projectLoader = new URLClassLoader(dirs.toArray(new URL[dirs.size()]), getDependencyLoader(jars));
+            thread.setContextClassLoader(projectLoader);
+            List<Class<?>> testClasses = findTestClasses(projectLoader, testClassesDir, selected);
+            for (Class<?> testClass : testClasses) {
+                send(TEST_CLASS, testClass.getName());
+            }
+            if (isLoadable(projectLoader, "org.junit.platform.launcher.core.LauncherFactory")) {
+                runOnPlatform(projectLoader, testClasses);
+            } else if (isLoadable(projectLoader, "org.junit.runner.JUnitCore")) {
+                runOnJUnit4(projectLoader, testClasses);
+            } else {
+                send(ERROR, "Neither the JUnit Platform launcher nor JUnit 4 is on the test class path.");
+            }
+        } catch (Throwable e) {
+            send(ERROR, getStackTrace(e instanceof InvocationTargetException ? e.getCause() : e));
+        } finally {
+            thread.setContextClassLoader(original);
+            if (projectLoader != null) {
+                try {
+                    projectLoader.close();
+                } catch (IOException e) {
+                    // the next run uses a new class loader anyway
+                }
+            }
+            send(DONE, String.valueOf(tests), String.valueOf(failures), String.valueOf(skipped),
+                    String.valueOf((System.nanoTime() - start) / 1000000));
+        }
+    }
+
+    /**
+     * Get the class loader of the jars, which is kept for as long as none of them
+     * changes.
+     */
+    private ClassLoader getDependencyLoader(List<File> jars) throws IOException {
+        StringBuilder key = new StringBuilder();
+        URL[] urls = new URL[jars.size()];
+        for (int i = 0; i < urls.length; i++) {
+            File jar = jars.get(i);
+            key.append(jar.getAbsolutePath()).append('@').append(jar.lastModified()).append(':')
+                    .append(jar.length()).append(File.pathSeparatorChar);
+            urls[i] = jar.toURI().toURL();
+        }
+        if (dependencyLoader == null || !key.toString().equals(dependencyKey)) {
+            if (dependencyLoader != null) {
+                dependencyLoader.close();
+            }
+            // the tests do not see the classes of this JVM's class path
+            dependencyLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+            dependencyKey = key.toString();
+        }
+        return dependencyLoader;
+    }
+
+    private static boolean isLoadable(ClassLoader loader, String className) {
+        try {
+            Class.forName(className, false, loader);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Find the concrete top level test classes, either the selected ones or all
+     * of them, that have the names Maven Surefire includes by default.
+     */
+    private static List<Class<?>> findTestClasses(ClassLoader loader, File testClassesDir,
+            Collection<String> selected) throws ClassNotFoundException {
+        List<String> names = new ArrayList<String>();
+        if (selected != null) {
+            names.addAll(selected);
+        } else {
+            findClassNames(testClassesDir, "", names);
+            Collections.sort(names);
+        }
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (String name : names) {
+            String simpleName = name.substring(name.lastIndexOf('.') + 1);
+            if (!TEST_CLASS_NAME.matcher(simpleName).matches()) {
+                continue;
+            }
+            Class<?> testClass = Class.forName(name, false, loader);
+            if (!testClass.isInterface() && !Modifier.isAbstract(testClass.getModifiers())) {
+                classes.add(testClass);
+            }
+        }
+        return classes;
+    }
+
+    private static void findClassNames(File dir, String packagePrefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                findClassNames(file, packagePrefix + name + ".", names);
+            } else if (name.endsWith(".class")) {
+                names.add(packagePrefix + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+
+    private void runOnPlatform(ClassLoader loader, List<Class<?>> testClasses) throws Exception {
+        Class<?> selectors = loader.loadClass("org.junit.platform.engine.discovery.DiscoverySelectors");
+        Method selectClass = selectors.getMethod("selectClass", Class.class);
+        List<Object> classSelectors = new ArrayList<Object>();
+        for (Class<?> testClass : testClasses) {
+            classSelectors.add(selectClass.invoke(null, testClass));
+        }
+        Class<?> builderClass = loader.loadClass("org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder");
+        Object builder = builderClass.getMethod("request").invoke(null);
+        builderClass.getMethod("selectors", List.class).invoke(builder, classSelectors);
+        Object request = builderClass.getMethod("build").invoke(builder);
+
+        Class<?> listenerInterface = loader.loadClass("org.junit.platform.launcher.TestExecutionListener");
+        Object listeners = Array.newInstance(listenerInterface, 1);
+        Array.set(listeners, 0, Proxy.newProxyInstance(loader,
+                new Class<?>[] { listenerInterface }, new PlatformListener()));
+        Class<?> launcherInterface = loader.loadClass("org.junit.platform.launcher.Launcher");
+        Object launcher = loader.loadClass("org.junit.platform.launcher.core.LauncherFactory").getMethod("create")
+                .invoke(null);
+        launcherInterface
+                .getMethod("execute", loader.loadClass("org.junit.platform.launcher.LauncherDiscoveryRequest"),
+                        listeners.getClass())
+                .invoke(launcher, request, listeners);
+    }
+
+    /**
+     * Reports the tests that the JUnit Platform launcher finished or skipped.
+     */
+    private class PlatformListener implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                return "hashCode".equals(name) ? System.identityHashCode(proxy) : "PlatformListener";
+            }
+            if ("executionFinished".equals(name) && isTest(args[0])) {
+                Object result = args[1];
+                String status = String.valueOf(call(result, "getStatus"));
+                Object throwable = call(call(result, "getThrowable"), "orElse", (Object) null);
+                testFinished(getTestClass(args[0]), getTestName(args[0]), status,
+                        throwable == null ? "" : getStackTrace((Throwable) throwable));
+            } else if ("executionSkipped".equals(name) && isTest(args[0])) {
+                testFinished(getTestClass(args[0]), getTestName(args[0]), SKIPPED, String.valueOf(args[1]));
+            }
+            return null;
+        }
+
+        private boolean isTest(Object testIdentifier) throws Exception {
+            return Boolean.TRUE.equals(call(testIdentifier, "isTest"));
+        }
+
+        private String getTestClass(Object testIdentifier) throws Exception {
+            Object source = getMethodSource(testIdentifier);
+            return source == null ? "" : String.valueOf(call(source, "getClassName"));
+        }
+
+        private String getTestName(Object testIdentifier) throws Exception {
+            Object source = getMethodSource(testIdentifier);
+            if (source != null) {
+                return String.valueOf(call(source, "getMethodName"));
+            }
+            return String.valueOf(call(testIdentifier, "getDisplayName"));
+        }
+
+        private Object getMethodSource(Object testIdentifier) throws Exception {
+            Object source = call(call(testIdentifier, "getSource"), "orElse", (Object) null);
+            if (source != null && source.getClass().getName()
+                    .equals("org.junit.platform.engine.support.descriptor.MethodSource")) {
+                return source;
+            }
+            return null;
+        }
+    }
+
+    private static Object call(Object target, String methodName, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterTypes().length == args.length) {
+                method.setAccessible(true);
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(target.getClass().getName() + "." + methodName);
+    }
+
+    private void runOnJUnit4(ClassLoader loader, List<Class<?>> testClasses) throws Exception {
+        Object core = loader.loadClass("org.junit.runner.JUnitCore").getDeclaredConstructor().newInstance();
+        Object result = core.getClass().getMethod("run", Class[].class).invoke(core,
+                (Object) testClasses.toArray(new Class<?>[testClasses.size()]));
+        // JUnit 4 only reports the failures, since its listeners cannot be implemented here
+        int run = (Integer) call(result, "getRunCount");
+        for (Object failure : (List<?>) call(result, "getFailures")) {
+            Object description = call(failure, "getDescription");
+            Object methodName = call(description, "getMethodName");
+            testFinished(String.valueOf(call(description, "getClassName")),
+                    String.valueOf(methodName != null ? methodName : call(failure, "getTestHeader")), FAILED,
+                    String.valueOf(call(failure, "getTrace")));
+        }
+        tests = run + (Integer) call(result, "getIgnoreCount");
+        skipped = (Integer) call(result, "getIgnoreCount");
+    }
+
+    private void testFinished(String testClass, String test, String status, String message) {
+        tests++;
+        if (FAILED.equals(status)) {
+            failures++;
+        } else if (SKIPPED.equals(status) || ABORTED.equals(status)) {
+            skipped++;
+        }
+        send(TEST, testClass, test, status, message);
+    }
+
+    private static String getStackTrace(Throwable e) {
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    private synchronized void send(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            line.append(escape(fields[i]));
+        }
+        protocol.println(line);
+    }
+
+    static String escape(String field) {
+        return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    static String unescape(String field) {
+        StringBuilder result = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'r' ? '\r' : next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
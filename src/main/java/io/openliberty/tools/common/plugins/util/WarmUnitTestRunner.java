@@ -0,0 +1,288 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs unit tests in a test JVM that is kept between runs, so that a run does
+ * not pay for starting a JVM and loading the test dependencies again. The jars
+ * of the test class path are loaded once for as long as they do not change, and
+ * the class directories are loaded again for every run. The results of the
+ * tests are reported as they finish. See {@link WarmUnitTestJvm} for the side
+ * of the test JVM.
+ */
+public class WarmUnitTestRunner implements Closeable {
+
+    /**
+     * Receives the results and output of the tests as they run.
+     */
+    public interface Listener {
+        /**
+         * @param testClass the binary name of the test class, or an empty string
+         *                  if the test is not a method of a class
+         * @param test      the name of the test
+         * @param status    SUCCESSFUL, FAILED, ABORTED or SKIPPED
+         * @param message   the stack trace of a failure or the reason the test
+         *                  was skipped, or an empty string
+         */
+        void testFinished(String testClass, String test, String status, String message);
+
+        /**
+         * @param line a line that the tests wrote to standard output or error
+         */
+        void output(String line);
+    }
+
+    /**
+     * The totals of a test run.
+     */
+    public static class Result {
+        private final int tests;
+        private final int failures;
+        private final int skipped;
+        private final long elapsedMillis;
+        private final String error;
+        private final List<String> testClasses;
+
+        Result(int tests, int failures, int skipped, long elapsedMillis, String error, List<String> testClasses) {
+            this.tests = tests;
+            this.failures = failures;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+            this.testClasses = Collections.unmodifiableList(testClasses);
+        }
+
+        public int getTests() {
+            return tests;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the binary names of the test classes that ran
+         */
+        public List<String> getTestClasses() {
+            return testClasses;
+        }
+
+        /**
+         * @return why the tests could not be run, or null if they ran
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private File javaExecutable = new File(new File(System.getProperty("java.home"), "bin"), "java");
+    private List<String> jvmOptions = Collections.emptyList();
+    private volatile Process process;
+    private BufferedWriter toJvm;
+    private BufferedReader fromJvm;
+    private volatile Listener listener;
+    private volatile boolean running;
+    private int starts;
+
+    /**
+     * Sets the java executable of the test JVM. Defaults to the one of this JVM.
+     *
+     * @param javaExecutable the java executable
+     */
+    public void setJavaExecutable(File javaExecutable) {
+        this.javaExecutable = javaExecutable;
+    }
+
+    /**
+     * Sets the options of the test JVM, such as system properties. They apply
+     * when the test JVM is started next.
+     *
+     * @param jvmOptions the JVM options
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = new ArrayList<String>(jvmOptions);
+    }
+
+    /**
+     * Run tests in the test JVM, starting it if it is not running.
+     *
+     * @param classPath      the class path of the tests, with the test classes
+     *                       directory
+     * @param testClassesDir the directory of the compiled tests
+     * @param testClasses    the binary names of the test classes to run, or null
+     *                       to run all test classes in the directory
+     * @param listener       receives the results and output of the tests
+     * @return the totals of the run
+     * @throws IOException if the test JVM could not be started or stopped during
+     *                     the run
+     */
+    public synchronized Result run(List<File> classPath, File testClassesDir, Collection<String> testClasses,
+            Listener listener) throws IOException {
+        if (process == null) {
+            start();
+        }
+        this.listener = listener;
+        running = true;
+        try {
+            StringBuilder path = new StringBuilder();
+            for (File file : classPath) {
+                if (path.length() > 0) {
+                    path.append(File.pathSeparatorChar);
+                }
+                path.append(file.getAbsolutePath());
+            }
+            StringBuilder selected = new StringBuilder();
+            if (testClasses != null) {
+                for (String testClass : testClasses) {
+                    if (selected.length() > 0) {
+                        selected.append(',');
+                    }
+                    selected.append(testClass);
+                }
+            }
+            toJvm.write(WarmUnitTestJvm.RUN + "\t" + path + "\t" + testClassesDir.getAbsolutePath() + "\t"
+                    + selected);
+            toJvm.newLine();
+            toJvm.flush();
+
+            String error = null;
+            List<String> ranClasses = new ArrayList<String>();
+            String line;
+            while ((line = fromJvm.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = WarmUnitTestJvm.unescape(fields[i]);
+                }
+                if (WarmUnitTestJvm.TEST_CLASS.equals(fields[0]) && fields.length == 2) {
+                    ranClasses.add(fields[1]);
+                } else if (WarmUnitTestJvm.TEST.equals(fields[0]) && fields.length == 5) {
+                    listener.testFinished(fields[1], fields[2], fields[3], fields[4]);
+                } else if (WarmUnitTestJvm.ERROR.equals(fields[0]) && fields.length == 2) {
+                    error = fields[1];
+                } else if (WarmUnitTestJvm.DONE.equals(fields[0]) && fields.length == 5) {
+                    return new Result(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), Long.parseLong(fields[4]), error, ranClasses);
+                }
+            }
+            throw new IOException("The test JVM exited during the test run.");
+        } catch (IOException e) {
+            // the next run starts a new test JVM
+            stop();
+            throw e;
+        } finally {
+            running = false;
+            this.listener = null;
+        }
+    }
+
+    private void start() throws IOException {
+        File classPath;
+        try {
+            classPath = new File(WarmUnitTestJvm.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(javaExecutable.getAbsolutePath());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classPath.getAbsolutePath());
+        command.add(WarmUnitTestJvm.class.getName());
+        final Process started = new ProcessBuilder(command).start();
+        toJvm = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        fromJvm = new BufferedReader(new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8));
+        Thread output = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(started.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        Listener current = listener;
+                        if (current != null) {
+                            current.output(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    // the test JVM stopped
+                }
+            }
+        }, "liberty-dev-test-jvm-output");
+        output.setDaemon(true);
+        output.start();
+        process = started;
+        starts++;
+    }
+
+    /**
+     * Stop the tests that are running, if any, by stopping the test JVM. The run
+     * returns with an IOException, and the next run starts a new test JVM.
+     */
+    public void cancel() {
+        // a run holds the lock while it waits for the test JVM, so the process is read without it
+        Process current = process;
+        if (running && current != null) {
+            current.destroy();
+        }
+    }
+
+    private synchronized void stop() {
+        if (process != null) {
+            process.destroy();
+            process = null;
+            toJvm = null;
+            fromJvm = null;
+        }
+    }
+
+    /**
+     * @return how many times the test JVM was started
+     */
+    public synchronized int getStartCount() {
+        return starts;
+    }
+
+    @Override
+    public void close() {
+        Process current = process;
+        if (current != null) {
+            current.destroy();
+        }
+        stop();
+    }
+}
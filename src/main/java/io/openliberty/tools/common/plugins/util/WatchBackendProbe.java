@@ -0,0 +1,245 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Decides for each watched root whether the file watcher delivers native
+ * events for it, by creating a canary in the root and waiting for the watcher
+ * to report it. The canary is an empty hidden directory, which version control
+ * and builds skip, and it is removed as soon as the probe finishes. Roots that do not deliver the canary within the
+ * timeout are polled, and are probed again periodically so they can move back
+ * to native events, for example once a network mount starts delivering them.
+ * <p>
+ * The probe does not block. Canaries are created by {@link #probe(Path)},
+ * the file watcher loop passes its events to {@link #onWatchEvent(Path)}, and
+ * {@link #tick()} times out probes and starts re-checks.
+ */
+public class WatchBackendProbe {
+
+    /** Prefix of canary names, hidden so that editors and builds skip them */
+    public static final String CANARY_PREFIX = ".liberty-dev-probe-";
+
+    /**
+     * Receives the result of each probe.
+     */
+    public interface Listener {
+        /**
+         * @param root          the probed root
+         * @param nativeEvents  whether the file watcher reported the canary
+         * @param latencyMillis how long the event took to arrive, or -1 if it did
+         *                      not arrive
+         * @param recheck       whether this was a periodic re-check of a polled
+         *                      root
+         */
+        void onResult(Path root, boolean nativeEvents, long latencyMillis, boolean recheck);
+    }
+
+    private static final AtomicLong CANARY_COUNTER = new AtomicLong();
+
+    private static class Probe {
+        private final Path root;
+        private final Path canary;
+        private final long startNanos;
+        private final boolean recheck;
+
+        Probe(Path root, Path canary, long startNanos, boolean recheck) {
+            this.root = root;
+            this.canary = canary;
+            this.startNanos = startNanos;
+            this.recheck = recheck;
+        }
+    }
+
+    private final Listener listener;
+    private final long timeoutMillis;
+    private final long recheckIntervalMillis;
+    private final Map<String, Probe> pending = new LinkedHashMap<String, Probe>();
+    /** polled roots and the time of their next re-check */
+    private final Map<Path, Long> polledRoots = new HashMap<Path, Long>();
+
+    /**
+     * @param listener              receives the probe results
+     * @param timeoutMillis         how long to wait for the canary event
+     * @param recheckIntervalMillis how often to probe polled roots again, or 0 to
+     *                              never re-check
+     */
+    public WatchBackendProbe(Listener listener, long timeoutMillis, long recheckIntervalMillis) {
+        this.listener = listener;
+        this.timeoutMillis = timeoutMillis;
+        this.recheckIntervalMillis = recheckIntervalMillis;
+    }
+
+    /**
+     * Whether a file is a canary created by a probe.
+     *
+     * @param file the file
+     * @return true if the file name has the canary prefix
+     */
+    public static boolean isCanary(File file) {
+        return file.getName().startsWith(CANARY_PREFIX);
+    }
+
+    /**
+     * Delete the canaries that are left in a root, for example by a dev mode
+     * process that was killed while it was probing.
+     *
+     * @param root the root directory
+     */
+    public static void deleteStaleCanaries(Path root) {
+        File[] children = root.toFile().listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (isCanary(child)) {
+                FileUtils.deleteQuietly(child);
+            }
+        }
+    }
+
+    /**
+     * Start probing a root that is registered with the file watcher.
+     *
+     * @param root the root directory
+     */
+    public synchronized void probe(Path root) {
+        startProbe(root, false);
+    }
+
+    private void startProbe(Path root, boolean recheck) {
+        String name = CANARY_PREFIX + CANARY_COUNTER.incrementAndGet();
+        Path canary = root.resolve(name);
+        long startNanos = System.nanoTime();
+        try {
+            Files.createDirectory(canary);
+        } catch (IOException e) {
+            // the watcher cannot be verified without writing to the root, so poll it
+            finish(new Probe(root, canary, startNanos, recheck), false, -1);
+            return;
+        }
+        pending.put(name, new Probe(root, canary, startNanos, recheck));
+    }
+
+    /**
+     * Handle an event from the file watcher.
+     *
+     * @param changed the changed path, resolved against the watched directory
+     * @return true if the event was for a canary and should not be
+     *         processed further
+     */
+    public synchronized boolean onWatchEvent(Path changed) {
+        Path fileName = changed.getFileName();
+        if (fileName == null || !fileName.toString().startsWith(CANARY_PREFIX)) {
+            return false;
+        }
+        Probe probe = pending.remove(fileName.toString());
+        if (probe != null) {
+            finish(probe, true, (System.nanoTime() - probe.startNanos) / 1000000);
+        }
+        return true;
+    }
+
+    /**
+     * Time out probes whose canary was not reported, and start the re-checks
+     * that are due.
+     */
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        // read before the time outs, so that a root that just timed out is not re-checked right away
+        long nowMillis = System.currentTimeMillis();
+        List<Probe> timedOut = new ArrayList<Probe>();
+        for (Iterator<Probe> it = pending.values().iterator(); it.hasNext();) {
+            Probe probe = it.next();
+            if ((now - probe.startNanos) / 1000000 >= timeoutMillis) {
+                it.remove();
+                timedOut.add(probe);
+            }
+        }
+        for (Probe probe : timedOut) {
+            finish(probe, false, -1);
+        }
+        if (recheckIntervalMillis > 0) {
+            for (Map.Entry<Path, Long> entry : polledRoots.entrySet()) {
+                if (nowMillis >= entry.getValue() && !isPending(entry.getKey())) {
+                    entry.setValue(nowMillis + recheckIntervalMillis);
+                    startProbe(entry.getKey(), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether any probe is waiting for its canary event.
+     */
+    public synchronized boolean isPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Stop probing and remove any remaining canaries.
+     */
+    public synchronized void close() {
+        for (Probe probe : pending.values()) {
+            deleteCanary(probe);
+        }
+        pending.clear();
+        polledRoots.clear();
+    }
+
+    private boolean isPending(Path root) {
+        for (Probe probe : pending.values()) {
+            if (probe.root.equals(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void finish(Probe probe, boolean nativeEvents, long latencyMillis) {
+        deleteCanary(probe);
+        if (nativeEvents) {
+            polledRoots.remove(probe.root);
+        } else if (!polledRoots.containsKey(probe.root)) {
+            polledRoots.put(probe.root, System.currentTimeMillis() + recheckIntervalMillis);
+        } else if (probe.recheck) {
+            // still no native events, so nothing changes
+            return;
+        }
+        listener.onResult(probe.root, nativeEvents, latencyMillis, probe.recheck);
+    }
+
+    private static void deleteCanary(Probe probe) {
+        try {
+            Files.deleteIfExists(probe.canary);
+        } catch (IOException e) {
+            probe.canary.toFile().deleteOnExit();
+        }
+    }
+}
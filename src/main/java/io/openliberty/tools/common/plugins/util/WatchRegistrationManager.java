@@ -0,0 +1,268 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.nio.file.SensitivityWatchEventModifier;
+
+/**
+ * Registers directories with the WatchService while keeping track of how many
+ * watches are in use, so that dev mode stays within the operating system limit
+ * (fs.inotify.max_user_watches on Linux). Once the budget is used up, callers
+ * are expected to poll the remaining subtrees instead.
+ * <p>
+ * Directories from different roots can be registered concurrently.
+ */
+public class WatchRegistrationManager {
+
+    /**
+     * The order in which watch roots are registered. Low priority roots cannot
+     * use the part of the budget that is reserved for high priority roots.
+     */
+    public enum WatchPriority {
+        /** Java sources, tests, server configuration and build files */
+        HIGH,
+        /** Resource directories, which can contain large static trees */
+        LOW
+    }
+
+    private static final File MAX_USER_WATCHES_FILE = new File("/proc/sys/fs/inotify/max_user_watches");
+
+    /** Percentage of the budget that low priority roots cannot use */
+    private static final int HIGH_PRIORITY_RESERVE_PERCENT = 10;
+
+    @SuppressWarnings("rawtypes")
+    private static final WatchEvent.Kind[] WATCH_EVENT_KINDS = new WatchEvent.Kind[] {
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_CREATE };
+
+    private final WatchService watcher;
+    private final int budget;
+    private final Set<Path> watchedDirs = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private final AtomicInteger watchCount = new AtomicInteger();
+    private final List<Path> pollingRoots = new CopyOnWriteArrayList<Path>();
+    private final List<RootRegistration> rootRegistrations = new CopyOnWriteArrayList<RootRegistration>();
+    private final AtomicLong registrationNanos = new AtomicLong();
+    private volatile boolean exhausted;
+
+    /**
+     * How many directories of a watch root were registered and how long it took.
+     */
+    public static class RootRegistration {
+        private final Path root;
+        private final int directories;
+        private final long nanos;
+
+        RootRegistration(Path root, int directories, long nanos) {
+            this.root = root;
+            this.directories = directories;
+            this.nanos = nanos;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        public int getDirectories() {
+            return directories;
+        }
+
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+    }
+
+    /**
+     * @param watcher the WatchService to register directories with
+     * @param budget  the maximum number of directories to watch, or a value less
+     *                than or equal to 0 to use the default for this system
+     */
+    public WatchRegistrationManager(WatchService watcher, int budget) {
+        this.watcher = watcher;
+        this.budget = budget > 0 ? budget : getDefaultBudget();
+    }
+
+    /**
+     * Get the default watch budget. On Linux this is half of the per-user
+     * inotify limit, since the limit is shared with IDEs and other tools. Other
+     * systems do not have a comparable limit.
+     *
+     * @return the default number of directories that can be watched
+     */
+    public static int getDefaultBudget() {
+        if (OSUtil.isLinux() && MAX_USER_WATCHES_FILE.isFile()) {
+            try {
+                List<String> lines = Files.readAllLines(MAX_USER_WATCHES_FILE.toPath(), StandardCharsets.UTF_8);
+                if (!lines.isEmpty()) {
+                    int maxUserWatches = Integer.parseInt(lines.get(0).trim());
+                    if (maxUserWatches > 0) {
+                        return Math.max(1, maxUserWatches / 2);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // fall through to unlimited
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Register a directory with the WatchService if the budget allows it.
+     *
+     * @param dir      the directory to watch
+     * @param priority the priority of the root that the directory belongs to
+     * @return true if the directory is watched, false if the budget is used up
+     *         and the directory should be polled instead
+     * @throws IOException if the directory could not be registered for a reason
+     *                     other than the watch limit
+     */
+    public boolean register(Path dir, WatchPriority priority) throws IOException {
+        if (watchedDirs.contains(dir)) {
+            return true;
+        }
+        if (exhausted || !reserveWatch(getLimit(priority))) {
+            return false;
+        }
+        if (!watchedDirs.add(dir)) {
+            // registered by another thread in the meantime
+            watchCount.decrementAndGet();
+            return true;
+        }
+        try {
+            dir.register(watcher, WATCH_EVENT_KINDS, SensitivityWatchEventModifier.HIGH);
+            return true;
+        } catch (IOException e) {
+            watchedDirs.remove(dir);
+            watchCount.decrementAndGet();
+            // the system limit was reached before our own budget, e.g. because other
+            // processes are using inotify watches
+            String message = e.getMessage();
+            if (message != null && (message.contains("inotify") || message.contains("limit"))) {
+                exhausted = true;
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean reserveWatch(int limit) {
+        while (true) {
+            int count = watchCount.get();
+            if (count >= limit) {
+                return false;
+            }
+            if (watchCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private int getLimit(WatchPriority priority) {
+        if (priority == WatchPriority.LOW && budget != Integer.MAX_VALUE) {
+            return budget - (int) ((long) budget * HIGH_PRIORITY_RESERVE_PERCENT / 100);
+        }
+        return budget;
+    }
+
+    /**
+     * Record a subtree that is polled because it could not be watched.
+     *
+     * @param root the root of the polled subtree
+     */
+    public void addPollingRoot(Path root) {
+        pollingRoots.add(root);
+    }
+
+    /**
+     * Stop treating a subtree as polled, once it can be watched again.
+     *
+     * @param root the root of the polled subtree
+     */
+    public void removePollingRoot(Path root) {
+        pollingRoots.remove(root);
+    }
+
+    /**
+     * Whether the path is within a subtree that is already polled.
+     *
+     * @param path the path to check
+     * @return true if the path is polled
+     */
+    public boolean isPolled(Path path) {
+        for (Path root : pollingRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add elapsed time spent registering directories to the registration time.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     */
+    public void addRegistrationTime(long nanos) {
+        registrationNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Record the registration of a watch root.
+     *
+     * @param root        the root directory
+     * @param directories the number of directories registered under the root
+     * @param nanos       the time spent walking and registering the root
+     */
+    public void recordRoot(Path root, int directories, long nanos) {
+        rootRegistrations.add(new RootRegistration(root, directories, nanos));
+    }
+
+    public int getWatchCount() {
+        return watchCount.get();
+    }
+
+    public List<Path> getPollingRoots() {
+        return new ArrayList<Path>(pollingRoots);
+    }
+
+    public List<RootRegistration> getRootRegistrations() {
+        return new ArrayList<RootRegistration>(rootRegistrations);
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public long getRegistrationMillis() {
+        return registrationNanos.get() / 1000000;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassDependencyGraphTest {
+
+    private static final List<String> OPTIONS = Arrays.asList("-g", "-proc:none");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+    private ClassDependencyGraph graph;
+    private File src;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+        graph = new ClassDependencyGraph();
+        src = temp.newFolder("src");
+        classes = temp.newFolder("classes");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        compiler.close();
+    }
+
+    private File source(String name, String content) throws Exception {
+        File file = new File(src, name.replace('.', '/') + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        return file;
+    }
+
+    private ClassDependencyGraph.Change compile(File... sources) throws Exception {
+        Map<File, File> classFiles = new HashMap<File, File>();
+        Collection<File> files = Arrays.asList(sources);
+        assertTrue(compiler.compile(files, Collections.singletonList(classes), classes, OPTIONS, classFiles));
+        Map<ClassFileInfo, File> infos = new HashMap<ClassFileInfo, File>();
+        for (Map.Entry<File, File> entry : classFiles.entrySet()) {
+            infos.put(ClassFileInfo.read(entry.getKey()), entry.getValue());
+        }
+        return graph.update(files, infos);
+    }
+
+    @Test
+    public void testBodyChangeDoesNotPropagate() throws Exception {
+        File service = source("app.Service", "package app; public class Service { public int get() { return 1; } }");
+        File resource = source("app.Resource",
+                "package app; public class Resource { int call() { return new Service().get(); } }");
+        ClassDependencyGraph.Change change = compile(service, resource);
+        assertTrue(change.getAbiChangedClasses().isEmpty());
+        assertEquals(2, graph.size());
+        assertEquals(Collections.singleton(resource), graph.getDependentSources(Collections.singleton("app.Service")));
+
+        source("app.Service", "package app; public class Service { public int get() { return 2; } "
+                + "private void helper() {} }");
+        change = compile(service);
+        assertTrue(change.getAbiChangedClasses().isEmpty());
+        assertFalse(change.isConstantsChanged());
+    }
+
+    @Test
+    public void testSignatureChangePropagates() throws Exception {
+        File service = source("app.Service", "package app; public class Service { public int get() { return 1; } }");
+        File resource = source("app.Resource",
+                "package app; public class Resource { long call() { return new Service().get(); } }");
+        File other = source("app.Other", "package app; public class Other { }");
+        compile(service, resource, other);
+
+        source("app.Service", "package app; public class Service { public long get() { return 1; } }");
+        ClassDependencyGraph.Change change = compile(service);
+        assertEquals(Collections.singleton("app.Service"), change.getAbiChangedClasses());
+        assertEquals(Collections.singleton(resource), graph.getDependentSources(change.getAbiChangedClasses()));
+    }
+
+    @Test
+    public void testRemovedInnerClassAndDeletedSource() throws Exception {
+        File outer = source("app.Outer",
+                "package app; public class Outer { public static class Inner { } }");
+        File user = source("app.User", "package app; public class User { Outer.Inner inner; }");
+        compile(outer, user);
+        assertEquals(2, graph.getClasses(outer).size());
+
+        source("app.Outer", "package app; public class Outer { }");
+        ClassDependencyGraph.Change change = compile(outer);
+        assertEquals(Collections.singleton("app.Outer$Inner"), change.getAbiChangedClasses());
+        assertEquals(Collections.singleton(user), graph.getDependentSources(change.getAbiChangedClasses()));
+
+        change = graph.remove(Collections.singleton(outer));
+        assertEquals(Collections.singleton("app.Outer"), change.getAbiChangedClasses());
+        assertEquals(1, graph.size());
+    }
+
+    @Test
+    public void testConstantChange() throws Exception {
+        File constants = source("app.Constants",
+                "package app; public class Constants { public static final String NAME = \"a\"; }");
+        File user = source("app.User", "package app; public class User { String name = Constants.NAME; }");
+        compile(constants, user);
+
+        source("app.Constants", "package app; public class Constants { public static final String NAME = \"b\"; }");
+        ClassDependencyGraph.Change change = compile(constants);
+        assertTrue(change.isConstantsChanged());
+        assertEquals(Collections.singleton("app.Constants"), change.getAbiChangedClasses());
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassFileInfoTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        compiler.close();
+    }
+
+    private ClassFileInfo compile(String className, String content) throws Exception {
+        File src = temp.newFolder();
+        File classes = temp.newFolder();
+        File file = new File(src, className.replace('.', '/') + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        assertTrue(compiler.compile(Collections.singletonList(file), Collections.<File>emptyList(), classes,
+                Arrays.asList("-proc:none")));
+        return ClassFileInfo.read(new File(classes, className.replace('.', '/') + ".class"));
+    }
+
+    @Test
+    public void testReferencedClasses() throws Exception {
+        ClassFileInfo info = compile("app.A",
+                "package app; import java.util.*; @Deprecated public class A extends java.io.Writer "
+                        + "implements Runnable { List<java.net.URI> uris; java.io.File[] files; "
+                        + "public void run() { new StringBuilder(); } "
+                        + "public void write(char[] c, int o, int l) {} public void flush() {} public void close() {} }");
+        assertEquals("app.A", info.getClassName());
+        Set<String> referenced = info.getReferencedClasses();
+        assertTrue(referenced.containsAll(Arrays.asList("java.io.Writer", "java.lang.Runnable", "java.util.List",
+                "java.net.URI", "java.io.File", "java.lang.StringBuilder", "java.lang.Deprecated")));
+        assertFalse(referenced.contains("app.A"));
+    }
+
+    @Test
+    public void testAbiHash() throws Exception {
+        String base = compile("app.A", "package app; public class A { public int get() { return 1; } }").getAbiHash();
+        assertEquals(base, compile("app.A",
+                "package app; public class A { public int get() { return 2 + helper(); } "
+                        + "private int helper() { return 0; } }").getAbiHash());
+        assertNotEquals(base,
+                compile("app.A", "package app; public class A { public long get() { return 1; } }").getAbiHash());
+        assertNotEquals(base, compile("app.A",
+                "package app; public class A { public int get() throws java.io.IOException { return 1; } }")
+                        .getAbiHash());
+    }
+
+    @Test
+    public void testShapeHash() throws Exception {
+        String base = compile("app.A",
+                "package app; public class A { private int i; public int get() { return i; } }").getShapeHash();
+        assertEquals(base, compile("app.A",
+                "package app; public class A { private int i; public int get() { return i * 2 + 1; } }")
+                        .getShapeHash());
+        // private members are not part of the ABI, but cannot be added to a running class
+        assertNotEquals(base, compile("app.A",
+                "package app; public class A { private int i; public int get() { return helper(); } "
+                        + "private int helper() { return i; } }").getShapeHash());
+        assertNotEquals(base, compile("app.A",
+                "package app; public class A { private long i; public int get() { return (int) i; } }")
+                        .getShapeHash());
+        assertNotEquals(base, compile("app.A",
+                "package app; public final class A { private int i; public int get() { return i; } }")
+                        .getShapeHash());
+    }
+
+    @Test
+    public void testDescriptorTypes() throws Exception {
+        Set<String> types = new HashSet<String>();
+        ClassFileInfo.addDescriptorTypes(types, "(Ljava/util/Map<Ljava/lang/String;[Lapp/B;>;I)Lapp/C$D;");
+        assertEquals(new HashSet<String>(Arrays.asList("java.util.Map", "java.lang.String", "app.B", "app.C$D")),
+                types);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAClassFile() throws Exception {
+        ClassFileInfo.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPathResolverTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ClassPathResolver resolver;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new ClassPathResolver();
+        classes = temp.newFolder("classes");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        resolver.close();
+    }
+
+    private File jar(String name, String manifestClassPath) throws Exception {
+        File jar = new File(temp.getRoot(), name);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (manifestClassPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, manifestClassPath);
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            // manifest only
+        }
+        return jar.getCanonicalFile();
+    }
+
+    private Set<File> resolve(File... jars) throws Exception {
+        String[] paths = new String[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            paths[i] = jars[i].getPath();
+        }
+        return resolver.resolve(Arrays.asList(paths), Collections.singletonList(classes));
+    }
+
+    @Test
+    public void testManifestClassPathExpansion() throws Exception {
+        File c = jar("c.jar", null);
+        File b = jar("b.jar", "c.jar missing.jar");
+        File a = jar("a.jar", "b.jar " + c.toURI().toURL());
+        File d = jar("d.jar", null);
+
+        Set<File> classPath = resolve(a, d);
+        assertEquals(5, classPath.size());
+        assertTrue(classPath.containsAll(Arrays.asList(classes, a, b, c, d)));
+        assertEquals(4, resolver.getCachedJarCount());
+    }
+
+    @Test
+    public void testChangedJarIsReread() throws Exception {
+        File c = jar("c.jar", null);
+        File a = jar("a.jar", null);
+        assertEquals(2, resolve(a).size());
+
+        jar("a.jar", "c.jar");
+        a.setLastModified(a.lastModified() + 5000);
+        Set<File> classPath = resolve(a);
+        assertEquals(3, classPath.size());
+        assertTrue(classPath.contains(c));
+    }
+
+    @Test
+    public void testMissingEntryThatAppearsIsResolved() throws Exception {
+        File a = new File(temp.getRoot(), "a.jar").getCanonicalFile();
+        List<String> paths = Collections.singletonList(a.getPath());
+        assertEquals(1, resolver.resolve(paths, Collections.singletonList(classes)).size());
+
+        jar("a.jar", null);
+        assertEquals(2, resolver.resolve(paths, Collections.singletonList(classes)).size());
+    }
+
+    @Test
+    public void testUnchangedResultIsReused() throws Exception {
+        File a = jar("a.jar", null);
+        Set<File> first = resolve(a);
+        first.clear();
+        // callers get a copy, so changing it does not affect later results
+        Set<File> second = resolve(a);
+        assertEquals(2, second.size());
+        assertEquals(1, resolver.getCachedJarCount());
+    }
+
+}
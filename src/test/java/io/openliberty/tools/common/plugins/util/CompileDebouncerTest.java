@@ -0,0 +1,96 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CompileDebouncerTest {
+
+    @Test
+    public void testInitialDelay() throws Exception {
+        CompileDebouncer debouncer = new CompileDebouncer(500, 100, 3000);
+        assertEquals(500, debouncer.getDelayMillis());
+        debouncer.changed(1000);
+        // a single gap is not enough to learn from
+        debouncer.changed(1200);
+        assertEquals(500, debouncer.getDelayMillis());
+    }
+
+    @Test
+    public void testLearnsSaveCadence() throws Exception {
+        CompileDebouncer debouncer = new CompileDebouncer(500, 100, 3000);
+        long time = 1000;
+        for (int i = 0; i < 10; i++) {
+            debouncer.changed(time);
+            time += 800;
+        }
+        assertEquals(1000, debouncer.getDelayMillis());
+
+        // pauses between bursts are not save gaps
+        debouncer = new CompileDebouncer(500, 100, 3000);
+        time = 1000;
+        for (int i = 0; i < 10; i++) {
+            debouncer.changed(time);
+            debouncer.changed(time + 40);
+            time += 10000;
+        }
+        assertEquals(100, debouncer.getDelayMillis());
+    }
+
+    @Test
+    public void testEarlyFailuresBackOff() throws Exception {
+        CompileDebouncer debouncer = new CompileDebouncer(500, 100, 3000);
+        debouncer.changed(1000);
+        debouncer.compiled(1600, 100, false);
+        debouncer.changed(1900);
+        assertEquals(750, debouncer.getDelayMillis());
+
+        // a failure that the user takes a while to fix does not back off
+        debouncer.compiled(2800, 100, false);
+        debouncer.changed(9000);
+        assertEquals(750, debouncer.getDelayMillis());
+
+        debouncer.compiled(9800, 100, true);
+        assertEquals(600, debouncer.getDelayMillis());
+    }
+
+    @Test
+    public void testSpeculationDelay() throws Exception {
+        CompileDebouncer debouncer = new CompileDebouncer(500, 100, 3000);
+        assertEquals(500, debouncer.getSpeculationDelayMillis());
+        debouncer.compiled(1000, 300, true);
+        assertEquals(200, debouncer.getSpeculationDelayMillis());
+        debouncer.compiled(2000, 2000, true);
+        debouncer.compiled(3000, 2000, true);
+        assertEquals(100, debouncer.getSpeculationDelayMillis());
+        assertTrue(debouncer.getSpeculationDelayMillis() <= debouncer.getDelayMillis());
+    }
+
+    @Test
+    public void testNotAdaptive() throws Exception {
+        CompileDebouncer debouncer = new CompileDebouncer(500, 100, 3000);
+        debouncer.setAdaptive(false);
+        long time = 1000;
+        for (int i = 0; i < 10; i++) {
+            debouncer.changed(time);
+            time += 2000;
+        }
+        assertEquals(500, debouncer.getDelayMillis());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompileReportTest {
+
+    private static final List<String> OPTIONS = Arrays.asList("-g", "-proc:none");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+    private File src;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+        src = temp.newFolder("src");
+        classes = temp.newFolder("classes");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        compiler.close();
+    }
+
+    private File source(String name, String content) throws Exception {
+        File file = new File(src, name + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        return file;
+    }
+
+    @Test
+    public void testErrorsByFile() throws Exception {
+        File good = source("Good", "public class Good { }");
+        File bad = source("Bad", "public class Bad {\n  Missing m;\n}");
+        CompileReport report = new CompileReport();
+        assertFalse(compiler.compile(Arrays.asList(good, bad), Collections.singletonList(classes), classes, OPTIONS,
+                null, null, report));
+        assertEquals(Collections.singleton(bad), report.getErrorFiles());
+        assertFalse(report.hasGeneralErrors());
+        CompileReport.Message error = report.getErrors().get(0);
+        assertEquals(2, error.getLine());
+        assertTrue(error.toString(), error.toString().startsWith(bad + ":[2,"));
+        assertFalse(new File(classes, "Good.class").exists());
+    }
+
+    @Test
+    public void testTimings() throws Exception {
+        File a = source("A", "public class A { class Inner { } }");
+        File b = source("B", "public class B { A a; }");
+        CompileReport report = new CompileReport();
+        assertTrue(compiler.compile(Arrays.asList(a, b), Collections.singletonList(classes), classes, OPTIONS, null,
+                null, report));
+        assertTrue(report.getErrors().isEmpty());
+        assertEquals(2, report.getTimedFiles().size());
+        assertTrue(report.getTimedFiles().contains(a));
+        List<String> lines = report.formatSlowestFiles(1);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).matches("[AB]\\.java: parse \\d+ ms attribute \\d+ ms generate \\d+ ms"));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompileStateStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File src;
+    private File classes;
+    private File stateFile;
+
+    @Before
+    public void setUp() throws Exception {
+        src = temp.newFolder("src");
+        classes = temp.newFolder("classes");
+        stateFile = new File(temp.getRoot(), "state");
+    }
+
+    private File write(File dir, String path, String content) throws Exception {
+        File file = new File(dir, path);
+        FileUtils.write(file, content, "UTF-8");
+        return file;
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File a = write(src, "p/A.java", "package p; public class A { }");
+        write(classes, "p/A.class", "A");
+        write(classes, "p/A$1.class", "A$1");
+
+        CompileStateStore state = new CompileStateStore(stateFile);
+        assertFalse(state.load());
+        state.record(a, "f", Arrays.asList("p.A", "p.A$1"));
+        state.save();
+        assertTrue(stateFile.isFile());
+
+        state = new CompileStateStore(stateFile);
+        assertTrue(state.load());
+        assertEquals(Collections.singleton(a), state.getSources());
+        assertEquals(Arrays.asList("p.A", "p.A$1"), state.getUpToDateClassNames(a, "f", classes));
+        // the class path or options changed
+        assertNull(state.getUpToDateClassNames(a, "g", classes));
+
+        state.remove(a);
+        state.save();
+        state = new CompileStateStore(stateFile);
+        assertTrue(state.load());
+        assertTrue(state.getSources().isEmpty());
+    }
+
+    @Test
+    public void testOutOfDate() throws Exception {
+        File a = write(src, "A.java", "public class A { }");
+        write(classes, "A.class", "A");
+        File inner = write(classes, "A$Inner.class", "A$Inner");
+        CompileStateStore state = new CompileStateStore(stateFile);
+        state.record(a, "f", Arrays.asList("A", "A$Inner"));
+
+        // touched without a change
+        assertTrue(a.setLastModified(a.lastModified() - 10000));
+        assertEquals(Arrays.asList("A", "A$Inner"), state.getUpToDateClassNames(a, "f", classes));
+
+        assertTrue(inner.delete());
+        assertNull(state.getUpToDateClassNames(a, "f", classes));
+        write(classes, "A$Inner.class", "A$Inner");
+
+        write(src, "A.java", "public class A { int i; }");
+        assertNull(state.getUpToDateClassNames(a, "f", classes));
+    }
+
+    @Test
+    public void testCorruptFile() throws Exception {
+        FileUtils.write(stateFile, "# liberty dev mode compile state 1\nA.java\tx\t1\th\tf\tA\n", "UTF-8");
+        CompileStateStore state = new CompileStateStore(stateFile);
+        assertFalse(state.load());
+        assertTrue(state.getSources().isEmpty());
+    }
+
+    @Test
+    public void testFindClassNames() throws Exception {
+        File a = write(src, "p/A.java", "package p; public class A { }");
+        assertNull(CompileStateStore.findClassNames(a, src, classes));
+        write(classes, "p/A.class", "A");
+        write(classes, "p/A$1.class", "A$1");
+        write(classes, "p/AB.class", "AB");
+        List<String> classNames = CompileStateStore.findClassNames(a, src, classes);
+        assertEquals("p.A", classNames.get(0));
+        assertEquals(new HashSet<String>(Arrays.asList("p.A", "p.A$1")), new HashSet<String>(classNames));
+        assertEquals(new File(classes, "p/A$1.class"), CompileStateStore.getClassFile(classes, "p.A$1"));
+    }
+
+    @Test
+    public void testFingerprint() throws Exception {
+        File jar = write(temp.getRoot(), "lib.jar", "jar");
+        List<String> options = Arrays.asList("-g");
+        String fingerprint = CompileStateStore.fingerprint(Arrays.asList(classes, jar), options);
+        assertEquals(fingerprint, CompileStateStore.fingerprint(Arrays.asList(jar, classes), options));
+        assertNotEquals(fingerprint, CompileStateStore.fingerprint(Arrays.asList(classes, jar), Arrays.asList("-O")));
+        // a class in the output directory does not change it
+        write(classes, "A.class", "A");
+        assertEquals(fingerprint, CompileStateStore.fingerprint(Arrays.asList(classes, jar), options));
+        write(temp.getRoot(), "lib.jar", "another jar");
+        assertNotEquals(fingerprint, CompileStateStore.fingerprint(Arrays.asList(classes, jar), options));
+    }
+}
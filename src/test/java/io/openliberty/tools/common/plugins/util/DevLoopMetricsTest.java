@@ -0,0 +1,100 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.openliberty.tools.common.plugins.util.DevLoopMetrics.Histogram;
+import io.openliberty.tools.common.plugins.util.DevLoopMetrics.Stage;
+
+public class DevLoopMetricsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testPercentiles() throws Exception {
+        DevLoopMetrics metrics = new DevLoopMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(Stage.COMPILE, i);
+        }
+        Histogram histogram = metrics.getHistogram(Stage.COMPILE);
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(95, histogram.getPercentile(95));
+        assertEquals(100, histogram.getMax());
+
+        // negative durations, for example from clock skew, are not recorded
+        metrics.record(Stage.COMPILE, -1);
+        assertEquals(100, histogram.getCount());
+        assertEquals(0, metrics.getHistogram(Stage.UNIT_TESTS).getPercentile(50));
+    }
+
+    @Test
+    public void testChangeCycle() throws Exception {
+        DevLoopMetrics metrics = new DevLoopMetrics();
+        long now = System.currentTimeMillis();
+        metrics.changeDetected(now - 30, now - 20);
+        // later changes do not restart the cycle
+        metrics.changeDetected(now - 15, now - 10);
+        assertTrue(metrics.inCycle());
+        assertEquals(2, metrics.getHistogram(Stage.DETECT).getCount());
+        assertEquals(10, metrics.getHistogram(Stage.DETECT).getMax());
+
+        metrics.recordSinceCycleStart(Stage.DEBOUNCE);
+        assertTrue(metrics.getHistogram(Stage.DEBOUNCE).getMax() >= 20);
+
+        metrics.endCycle();
+        assertFalse(metrics.inCycle());
+        assertEquals(1, metrics.getHistogram(Stage.END_TO_END).getCount());
+        assertTrue(metrics.getHistogram(Stage.END_TO_END).getMax() >= 20);
+
+        // ending again without a new change records nothing
+        metrics.endCycle();
+        assertEquals(1, metrics.getHistogram(Stage.END_TO_END).getCount());
+    }
+
+    @Test
+    public void testFormatAndWrite() throws Exception {
+        DevLoopMetrics metrics = new DevLoopMetrics();
+        File file = new File(temp.getRoot(), "logs/devLoopTimings.txt");
+        assertTrue(metrics.format().isEmpty());
+        assertFalse(metrics.write(file));
+        assertFalse(file.exists());
+
+        metrics.record(Stage.COMPILE, 250);
+        metrics.record(Stage.APP_UPDATE, 1200);
+        assertTrue(metrics.write(file));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("stage (ms)"));
+        assertTrue(lines.get(1).startsWith("compile"));
+        assertTrue(lines.get(1).endsWith("250"));
+        assertTrue(lines.get(2).startsWith("app update"));
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DevUtilJavaCompilationTest extends BaseDevUtilTest {
+
+    // the compile wait of DevTestUtil
+    private static final long COMPILE_WAIT = 500;
+
+    /**
+     * Records the compiles instead of running them, and holds the source compile
+     * until it is released.
+     */
+    private class CompileRecordingUtil extends DevTestUtil {
+        private final List<String> compiles = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch sourceCompileStarted = new CountDownLatch(1);
+        private final CountDownLatch releaseSourceCompile = new CountDownLatch(1);
+        private final CountDownLatch testCompileDone = new CountDownLatch(1);
+
+        CompileRecordingUtil(File sourceDirectory, File testSourceDirectory) {
+            super(null, sourceDirectory, testSourceDirectory, null, null, false, false);
+        }
+
+        @Override
+        protected boolean recompileJavaSource(Collection<File> javaFilesChanged, List<String> artifactPaths,
+                ThreadPoolExecutor executor, File outputDirectory, File testOutputDirectory) {
+            sourceCompileStarted.countDown();
+            try {
+                releaseSourceCompile.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            compiles.add("sources " + names(javaFilesChanged));
+            return true;
+        }
+
+        @Override
+        protected boolean recompileJavaTest(Collection<File> javaFilesChanged, List<String> artifactPaths,
+                ThreadPoolExecutor executor, File outputDirectory, File testOutputDirectory) {
+            compiles.add("tests " + names(javaFilesChanged));
+            testCompileDone.countDown();
+            return true;
+        }
+    }
+
+    private CompileRecordingUtil util;
+    private File outputDirectory;
+    private File testOutputDirectory;
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        util = new CompileRecordingUtil(temp.newFolder("src"), temp.newFolder("test"));
+        outputDirectory = temp.newFolder("classes");
+        testOutputDirectory = temp.newFolder("test-classes");
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1, true));
+        util.recompileJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        util.recompileJavaTests = Collections.synchronizedSet(new HashSet<File>());
+        util.deleteJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        util.deleteJavaTests = Collections.synchronizedSet(new HashSet<File>());
+        util.failedCompilationJavaSources = Collections.synchronizedSet(new HashSet<File>());
+        util.failedCompilationJavaTests = Collections.synchronizedSet(new HashSet<File>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        util.releaseSourceCompile.countDown();
+        executor.shutdownNow();
+    }
+
+    private static List<String> names(Collection<File> files) {
+        List<String> names = new ArrayList<String>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void testNoWaitLimitWithoutPendingFiles() throws Exception {
+        assertEquals(Long.MAX_VALUE, util.getJavaCompilationWaitMillis());
+    }
+
+    @Test
+    public void testWaitForPendingSources() throws Exception {
+        util.recompileJavaSources.add(new File("A.java"));
+        util.lastJavaSourceChange = System.currentTimeMillis();
+        long wait = util.getJavaCompilationWaitMillis();
+        assertTrue("wait " + wait, wait > 0 && wait <= COMPILE_WAIT + 1);
+    }
+
+    @Test
+    public void testTestsWaitForSourceChanges() throws Exception {
+        // the test files are due, but they are only compiled once the sources are quiet
+        long now = System.currentTimeMillis();
+        util.recompileJavaTests.add(new File("ATest.java"));
+        util.deleteJavaTests.add(new File("BTest.java"));
+        util.lastJavaTestChange = now - 10 * COMPILE_WAIT;
+        util.lastJavaSourceChange = now;
+        long wait = util.getJavaCompilationWaitMillis();
+        assertTrue("wait " + wait, wait > COMPILE_WAIT / 2 && wait <= COMPILE_WAIT + 1);
+    }
+
+    @Test
+    public void testNoSpeculationDeadlineWhenSpeculationCannotStart() throws Exception {
+        // pending deletes prevent a speculative compile, so the wait is the full compile wait
+        util.recompileJavaSources.add(new File("A.java"));
+        util.deleteJavaSources.add(new File("B.java"));
+        util.javaChangeGeneration = 1;
+        util.lastJavaSourceChange = System.currentTimeMillis();
+        long wait = util.getJavaCompilationWaitMillis();
+        assertTrue("wait " + wait, wait > COMPILE_WAIT / 2 && wait <= COMPILE_WAIT + 1);
+    }
+
+    @Test
+    public void testPipelineTakesChangesWhenCompileIsDone() throws Exception {
+        long past = System.currentTimeMillis() - 10 * COMPILE_WAIT;
+        util.recompileJavaSources.add(new File("A.java"));
+        util.lastJavaSourceChange = past;
+        util.processJavaCompilation(outputDirectory, testOutputDirectory, executor, null);
+        assertTrue(util.sourceCompileStarted.await(10, TimeUnit.SECONDS));
+        assertTrue(util.recompileJavaSources.isEmpty());
+
+        // a change during the compile waits for it instead of being due right away
+        util.recompileJavaSources.add(new File("B.java"));
+        util.processJavaCompilation(outputDirectory, testOutputDirectory, executor, null);
+        assertEquals(Collections.singleton(new File("B.java")), new HashSet<File>(util.recompileJavaSources));
+        assertEquals(Long.MAX_VALUE, util.getJavaCompilationWaitMillis());
+
+        util.releaseSourceCompile.countDown();
+        waitForCompiles(1);
+        assertTrue(util.getJavaCompilationWaitMillis() <= 1);
+        util.processJavaCompilation(outputDirectory, testOutputDirectory, executor, null);
+        assertTrue(util.recompileJavaSources.isEmpty());
+        waitForCompiles(2);
+        assertEquals(Arrays.asList("sources [A.java]", "sources [B.java]"), util.compiles);
+    }
+
+    @Test
+    public void testTestsAreCompiledAfterSources() throws Exception {
+        long past = System.currentTimeMillis() - 10 * COMPILE_WAIT;
+        util.recompileJavaSources.add(new File("A.java"));
+        util.recompileJavaTests.add(new File("ATest.java"));
+        util.lastJavaSourceChange = past;
+        util.lastJavaTestChange = past;
+        // both pipelines start, and the test compile waits for the source compile
+        util.processJavaCompilation(outputDirectory, testOutputDirectory, executor, null);
+        assertTrue(util.sourceCompileStarted.await(10, TimeUnit.SECONDS));
+        assertTrue(util.recompileJavaSources.isEmpty());
+        assertTrue(util.recompileJavaTests.isEmpty());
+        assertFalse(util.testCompileDone.await(200, TimeUnit.MILLISECONDS));
+        assertTrue(util.compiles.isEmpty());
+
+        util.releaseSourceCompile.countDown();
+        assertTrue(util.testCompileDone.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("sources [A.java]", "tests [ATest.java]"), util.compiles);
+    }
+
+    private void waitForCompiles(int count) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (util.compiles.size() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, util.compiles.size());
+        // the compile job is done once its pipeline stops compiling
+        while (util.getJavaCompilationWaitMillis() == Long.MAX_VALUE && !util.recompileJavaSources.isEmpty()
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+}
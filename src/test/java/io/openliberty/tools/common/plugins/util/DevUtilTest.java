@@ -18,6 +18,7 @@ package io.openliberty.tools.common.plugins.util;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -32,6 +33,10 @@ import java.net.ServerSocket;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -425,4 +430,49 @@ public class DevUtilTest extends BaseDevUtilTest {
         assertTrue("File should be detected as a generated file", util.isGeneratedConfigFile(sourceFile, configDirectory, targetDir));
     }
 
+    @Test
+    public void testGetApplicationUpdateTrigger() throws Exception {
+        assertNull(DevUtil.getApplicationUpdateTrigger(serverDirectory));
+
+        File serverXml = new File(serverDirectory, "server.xml");
+        FileUtils.write(serverXml, "<server><applicationMonitor updateTrigger=\"mbean\"/></server>", StandardCharsets.UTF_8);
+        assertEquals("mbean", DevUtil.getApplicationUpdateTrigger(serverDirectory));
+
+        // defaults are overridden by the server.xml, which is overridden by the overrides
+        File defaults = new File(serverDirectory, "configDropins/defaults/monitor.xml");
+        FileUtils.write(defaults, "<server><applicationMonitor updateTrigger=\"disabled\"/></server>", StandardCharsets.UTF_8);
+        assertEquals("mbean", DevUtil.getApplicationUpdateTrigger(serverDirectory));
+        File overrides = new File(serverDirectory, "configDropins/overrides/monitor.xml");
+        FileUtils.write(overrides, "<server><applicationMonitor pollingRate=\"1s\" updateTrigger=\"polled\"/></server>", StandardCharsets.UTF_8);
+        assertEquals("polled", DevUtil.getApplicationUpdateTrigger(serverDirectory));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testTestJobRequestsTests() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // keep the executor busy, so that the requested tests wait to run
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // the test is done
+                    }
+                }
+            });
+            DevUtil.TestJob job = util.new TestJob(false, 0, executor, false, true);
+            assertTrue(job.isManualInvocation());
+            job.run();
+            assertEquals(TestScheduler.State.PENDING, util.getTestState());
+        } finally {
+            // drop the requested tests instead of running them
+            executor.shutdownNow();
+        }
+    }
+
 }
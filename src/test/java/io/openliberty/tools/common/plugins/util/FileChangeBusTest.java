@@ -0,0 +1,129 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.openliberty.tools.common.plugins.util.DevUtil.ChangeType;
+import io.openliberty.tools.common.plugins.util.FileChangeBus.Batch;
+import io.openliberty.tools.common.plugins.util.FileChangeBus.FileChangeEvent;
+
+public class FileChangeBusTest {
+
+    private static final File A = new File("a.java");
+    private static final File B = new File("b.java");
+
+    @Test
+    public void testDuplicateModifyEventsAreMerged() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0);
+        bus.publish(A, false, ChangeType.MODIFY);
+        bus.publish(A, false, ChangeType.MODIFY);
+        bus.publish(A, false, ChangeType.MODIFY);
+
+        List<FileChangeEvent> batch = bus.drain().getEvents();
+        assertEquals(1, batch.size());
+        assertEquals(ChangeType.MODIFY, batch.get(0).getChangeType());
+        assertEquals(3, batch.get(0).getRawEvents());
+        assertFalse(bus.hasPending());
+    }
+
+    @Test
+    public void testNetChangeType() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0);
+        // created then modified is still a create
+        bus.publish(A, false, ChangeType.CREATE);
+        bus.publish(A, false, ChangeType.MODIFY);
+        // deleted then recreated is a modify
+        bus.publish(B, false, ChangeType.DELETE);
+        bus.publish(B, false, ChangeType.CREATE);
+
+        List<FileChangeEvent> batch = bus.drain().getEvents();
+        assertEquals(2, batch.size());
+        assertEquals(ChangeType.CREATE, batch.get(0).getChangeType());
+        assertEquals(ChangeType.MODIFY, batch.get(1).getChangeType());
+    }
+
+    @Test
+    public void testCreateThenDeleteIsDropped() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0);
+        bus.publish(A, false, ChangeType.CREATE);
+        bus.publish(A, false, ChangeType.DELETE);
+        assertFalse(bus.hasPending());
+        assertTrue(bus.drain().isEmpty());
+    }
+
+    @Test
+    public void testBatchIsOrderedByFirstEvent() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0);
+        bus.publish(B, false, ChangeType.MODIFY);
+        bus.publish(A, false, ChangeType.MODIFY);
+        bus.publish(B, false, ChangeType.MODIFY);
+
+        List<FileChangeEvent> batch = bus.drain().getEvents();
+        assertEquals(2, batch.size());
+        assertEquals(B, batch.get(0).getFile());
+        assertEquals(A, batch.get(1).getFile());
+    }
+
+    @Test
+    public void testEventsHeldUntilWindowElapses() throws Exception {
+        FileChangeBus bus = new FileChangeBus(60000);
+        bus.publish(A, false, ChangeType.MODIFY);
+        assertTrue(bus.drain().isEmpty());
+        assertTrue(bus.hasPending());
+
+        bus.setWindowMillis(0);
+        assertEquals(1, bus.drain().size());
+    }
+
+    @Test
+    public void testStormHeldUntilQuiet() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0, 3, 60000);
+        bus.publish(A, false, ChangeType.MODIFY);
+        bus.publish(B, false, ChangeType.MODIFY);
+        assertFalse(bus.isStorm());
+        bus.publish(new File("c.java"), false, ChangeType.CREATE);
+        assertTrue(bus.isStorm());
+        // the coalesce window has passed, but the storm is still settling
+        assertTrue(bus.drain().isEmpty());
+
+        bus.setStormQuietMillis(0);
+        Batch batch = bus.drain();
+        assertEquals(3, batch.size());
+        assertTrue(batch.isStorm());
+        assertFalse(bus.isStorm());
+    }
+
+    @Test
+    public void testStormDetectionDisabled() throws Exception {
+        FileChangeBus bus = new FileChangeBus(0, 0, 60000);
+        for (int i = 0; i < 100; i++) {
+            bus.publish(new File(i + ".java"), false, ChangeType.MODIFY);
+        }
+        assertFalse(bus.isStorm());
+        Batch batch = bus.drain();
+        assertEquals(100, batch.size());
+        assertFalse(batch.isStorm());
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileFingerprintCacheTest {
+
+    private static final long OLD_TIMESTAMP = System.currentTimeMillis() - 60000;
+
+    private File dir;
+    private FileFingerprintCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("target/test-classes/fingerprint-cache-test").getAbsoluteFile();
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        cache = new FileFingerprintCache();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String name, String content, long lastModified) throws Exception {
+        File file = new File(dir, name);
+        FileUtils.write(file, content, "UTF-8");
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+    @Test
+    public void testRewriteWithSameContentIsUnchanged() throws Exception {
+        File file = write("jvm.options", "-Xmx1g", OLD_TIMESTAMP);
+        cache.record(file);
+
+        write("jvm.options", "-Xmx1g", OLD_TIMESTAMP + 5000);
+        assertTrue(cache.isUnchanged(file));
+    }
+
+    @Test
+    public void testSameSizeDifferentContentIsChanged() throws Exception {
+        File file = write("jvm.options", "-Xmx1g", OLD_TIMESTAMP);
+        cache.record(file);
+
+        write("jvm.options", "-Xmx2g", OLD_TIMESTAMP + 5000);
+        assertFalse(cache.isUnchanged(file));
+        // the new content is recorded
+        write("jvm.options", "-Xmx2g", OLD_TIMESTAMP + 10000);
+        assertTrue(cache.isUnchanged(file));
+    }
+
+    @Test
+    public void testRecentlyWrittenFileIsCompared() throws Exception {
+        // the timestamp may not change when a file is rewritten right after it was recorded
+        long now = System.currentTimeMillis();
+        File file = write("server.env", "a=1", now);
+        cache.record(file);
+
+        write("server.env", "a=2", now);
+        assertFalse(cache.isUnchanged(file));
+    }
+
+    @Test
+    public void testUnknownFileIsChanged() throws Exception {
+        File file = write("A.java", "class A {}", OLD_TIMESTAMP);
+        assertFalse(cache.isUnchanged(file));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testRecordAllAndRemove() throws Exception {
+        File a = write("sub/A.java", "class A {}", OLD_TIMESTAMP);
+        write("sub/B.java", "class B {}", OLD_TIMESTAMP);
+        write("C.java", "class C {}", OLD_TIMESTAMP);
+        cache.recordAll(dir, null);
+        assertEquals(3, cache.size());
+
+        write("sub/A.java", "class A {}", OLD_TIMESTAMP + 5000);
+        assertTrue(cache.isUnchanged(a));
+
+        cache.remove(new File(dir, "sub"));
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HotSwapClientTest {
+
+    private static final String LISTENING = "Listening for transport dt_socket at address: ";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+    private Process process;
+    private BufferedReader output;
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        compiler.close();
+        if (process != null) {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private File compile(String... sources) throws Exception {
+        File src = temp.newFolder();
+        File classes = temp.newFolder();
+        File[] files = new File[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            String name = sources[i].replaceAll("(?s).*class (\\w+).*", "$1");
+            files[i] = new File(src, name + ".java");
+            FileUtils.write(files[i], sources[i], "UTF-8");
+        }
+        assertTrue(compiler.compile(Arrays.asList(files), Collections.<File>emptyList(), classes,
+                Arrays.asList("-proc:none")));
+        return classes;
+    }
+
+    private static String greeter(String body) {
+        return "public class Greeter { public static String greet() { " + body + " } }";
+    }
+
+    private Map<String, byte[]> classFile(File classes, String className) throws IOException {
+        return Collections.singletonMap(className,
+                FileUtils.readFileToByteArray(new File(classes, className + ".class")));
+    }
+
+    /**
+     * Start a JVM with a JDWP port that prints what the greeter returns whenever
+     * it changes.
+     *
+     * @return the JDWP port
+     */
+    private int start(File classes) throws Exception {
+        int port = getAvailablePort();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        ProcessBuilder builder = new ProcessBuilder(java,
+                "-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=127.0.0.1:" + port, "-cp",
+                classes.getPath(), "Main");
+        builder.redirectErrorStream(true);
+        process = builder.start();
+        output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        readUntilListening();
+        return port;
+    }
+
+    private static int getAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Read the output until the JVM listens for a debugger, which it does again
+     * after each connection.
+     *
+     * @return the lines printed before that
+     */
+    private List<String> readUntilListening() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.startsWith(LISTENING)) {
+                return lines;
+            }
+            lines.add(line);
+        }
+        fail("The JVM did not listen for a debugger: " + lines);
+        return lines;
+    }
+
+    /**
+     * Read the greeting after a connection, and the line that says the JVM
+     * listens again, which can come before or after it.
+     */
+    private String nextGreeting() throws IOException {
+        String line = output.readLine();
+        if (line != null && line.startsWith(LISTENING)) {
+            line = output.readLine();
+        } else {
+            readUntilListening();
+        }
+        return line;
+    }
+
+    @Test(timeout = 60000)
+    public void testRedefineClasses() throws Exception {
+        File classes = compile(greeter("return \"hello\";"),
+                "public class Main { public static void main(String[] args) throws Exception { String last = null; "
+                        + "while (true) { String greeting = Greeter.greet(); if (!greeting.equals(last)) { "
+                        + "System.out.println(greeting); last = greeting; } Thread.sleep(20); } } }");
+        int port = start(classes);
+        assertEquals("hello", output.readLine());
+
+        HotSwapClient client = new HotSwapClient("127.0.0.1", port);
+        assertEquals(1, client.redefineClasses(classFile(compile(greeter("return \"bye\";")), "Greeter")));
+        assertEquals("bye", nextGreeting());
+
+        // classes that are not loaded are left to be loaded from their class files
+        assertEquals(0, client.redefineClasses(classFile(compile("public class Unused { }"), "Unused")));
+        assertTrue(readUntilListening().isEmpty());
+
+        try {
+            client.redefineClasses(classFile(compile(
+                    "public class Greeter { public static String greet() { return other(); } "
+                            + "static String other() { return \"other\"; } }"),
+                    "Greeter"));
+            fail("Adding a method was not rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(readUntilListening().isEmpty());
+        assertEquals(1, client.redefineClasses(classFile(compile(greeter("return \"again\";")), "Greeter")));
+        assertEquals("again", nextGreeting());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoJvm() throws Exception {
+        HotSwapClient client = new HotSwapClient("127.0.0.1", getAvailablePort());
+        client.setTimeoutMillis(1000);
+        client.redefineClasses(Collections.singletonMap("Greeter", new byte[0]));
+    }
+}
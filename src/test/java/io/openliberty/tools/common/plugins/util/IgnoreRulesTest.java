@@ -0,0 +1,118 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class IgnoreRulesTest {
+
+    private static final File BASE = new File("target/test-classes/ignore-rules-test").getAbsoluteFile();
+
+    private static File file(String path) {
+        return new File(BASE, path);
+    }
+
+    private static IgnoreRules rules(String... patterns) {
+        return new IgnoreRules.Builder(BASE).addAll(Arrays.asList(IgnoreRules.DEFAULT_PATTERNS))
+                .addAll(Arrays.asList(patterns)).build();
+    }
+
+    @Test
+    public void testDefaultPatterns() throws Exception {
+        IgnoreRules rules = rules();
+        assertTrue(rules.isIgnored(file("src/main/java/.A.java.swp"), false));
+        assertTrue(rules.isIgnored(file(".git"), true));
+        assertTrue(rules.isIgnored(file("src/main/java/A.java~"), false));
+        assertTrue(rules.isIgnored(file("core.20200101.dmp"), false));
+        assertTrue(rules.isIgnored(file("A.java___jb_tmp___"), false));
+        assertFalse(rules.isIgnored(file("src/main/java/A.java"), false));
+    }
+
+    @Test
+    public void testNameAndWildcardPatterns() throws Exception {
+        IgnoreRules rules = rules("node_modules", "*.min.js", "asset?");
+        assertTrue(rules.isIgnored(file("src/main/webapp/node_modules"), true));
+        assertTrue(rules.isIgnored(file("src/main/webapp/js/app.min.js"), false));
+        assertFalse(rules.isIgnored(file("src/main/webapp/js/app.js"), false));
+        assertTrue(rules.isIgnored(file("src/main/webapp/assets"), true));
+        assertFalse(rules.isIgnored(file("src/main/webapp/assets2"), true));
+    }
+
+    @Test
+    public void testDirectoryOnlyPattern() throws Exception {
+        IgnoreRules rules = rules("generated/");
+        assertTrue(rules.isIgnored(file("src/main/generated"), true));
+        assertFalse(rules.isIgnored(file("src/main/generated"), false));
+    }
+
+    @Test
+    public void testAnchoredPatterns() throws Exception {
+        IgnoreRules rules = rules("/src/main/webapp/static", "src/**/generated-sources", "docs/**");
+        assertTrue(rules.isIgnored(file("src/main/webapp/static"), true));
+        assertFalse(rules.isIgnored(file("other/src/main/webapp/static"), true));
+        assertTrue(rules.isIgnored(file("src/generated-sources"), true));
+        assertTrue(rules.isIgnored(file("src/main/java/generated-sources"), true));
+        assertTrue(rules.isIgnored(file("docs/a/b.html"), false));
+        assertFalse(rules.isIgnored(file("docs"), true));
+        // anchored patterns never match outside of the base directory
+        assertFalse(rules.isIgnored(new File("/docs/a.html"), false));
+    }
+
+    @Test
+    public void testNegationLastRuleWins() throws Exception {
+        IgnoreRules rules = rules("*.properties", "!server.properties");
+        assertTrue(rules.isIgnored(file("a.properties"), false));
+        assertFalse(rules.isIgnored(file("server.properties"), false));
+
+        rules = rules("!.well-known");
+        assertFalse(rules.isIgnored(file("src/main/webapp/.well-known"), true));
+        assertTrue(rules.isIgnored(file("src/main/webapp/.hidden"), true));
+    }
+
+    @Test
+    public void testGitIgnoreFile() throws Exception {
+        File gitIgnore = file(".gitignore");
+        FileUtils.write(gitIgnore, "# build output\ntarget/\n\n*.log\n!keep.log\n", "UTF-8");
+        try {
+            IgnoreRules rules = new IgnoreRules.Builder(BASE).addFile(gitIgnore).build();
+            assertTrue(rules.isIgnored(file("target"), true));
+            assertTrue(rules.isIgnored(file("messages.log"), false));
+            assertFalse(rules.isIgnored(file("keep.log"), false));
+            assertFalse(rules.isIgnored(file("# build output"), false));
+        } finally {
+            FileUtils.deleteQuietly(BASE);
+        }
+    }
+
+    @Test
+    public void testGlobToRegex() throws Exception {
+        assertTrue("a.b".matches(IgnoreRules.toRegex("a.b")));
+        assertFalse("axb".matches(IgnoreRules.toRegex("a.b")));
+        assertTrue("x1".matches(IgnoreRules.toRegex("x[0-9]")));
+        assertFalse("x1".matches(IgnoreRules.toRegex("x[!0-9]")));
+        assertFalse("a/b".matches(IgnoreRules.toRegex("a*b")));
+        assertTrue("a/x/y/b".matches(IgnoreRules.toRegex("a/**/b")));
+        assertTrue("a/b".matches(IgnoreRules.toRegex("a/**/b")));
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IntegrationTestSharderTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File historyFile;
+    private File reportsDir;
+    private IntegrationTestSharder sharder;
+
+    @Before
+    public void setUp() throws Exception {
+        historyFile = new File(temp.getRoot(), ".liberty-dev-it-durations");
+        reportsDir = new File(temp.getRoot(), "reports");
+        sharder = new IntegrationTestSharder(historyFile);
+    }
+
+    private static String report(String testClass, double seconds, String... failedMethods) {
+        StringBuilder cases = new StringBuilder();
+        for (String method : failedMethods) {
+            cases.append("<testcase name=\"").append(method).append("\" classname=\"").append(testClass)
+                    .append("\" time=\"0.1\"><failure message=\"expected\"/></testcase>");
+        }
+        cases.append("<testcase name=\"testPasses\" classname=\"").append(testClass).append("\" time=\"0.1\"/>");
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuite name=\"" + testClass + "\" time=\"" + seconds
+                + "\" tests=\"" + (failedMethods.length + 1) + "\" errors=\"0\" skipped=\"0\" failures=\""
+                + failedMethods.length + "\">" + cases + "</testsuite>";
+    }
+
+    private void writeReport(IntegrationTestShard shard, String testClass, double seconds, String... failed)
+            throws Exception {
+        FileUtils.write(new File(shard.getReportsDirectory(), "TEST-" + testClass + ".xml"),
+                report(testClass, seconds, failed), "UTF-8");
+    }
+
+    @Test
+    public void testBalanceByDuration() throws Exception {
+        List<String> testClasses = Arrays.asList("app.AIT", "app.BIT", "app.CIT", "app.DIT");
+        // without history, the classes are spread evenly
+        List<IntegrationTestShard> shards = sharder.plan(testClasses, 2, temp.getRoot(), reportsDir, "localhost",
+                "9080", "9443");
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("app.AIT", "app.CIT"), shards.get(0).getTestClasses());
+        assertEquals(Arrays.asList("app.BIT", "app.DIT"), shards.get(1).getTestClasses());
+        assertEquals("9080", shards.get(1).getHttpPort());
+        assertEquals(new File(reportsDir, "shard-1"), shards.get(1).getReportsDirectory());
+
+        sharder.prepare(shards, reportsDir);
+        writeReport(shards.get(0), "app.AIT", 9.0);
+        writeReport(shards.get(0), "app.CIT", 1.0);
+        writeReport(shards.get(1), "app.BIT", 1.0);
+        writeReport(shards.get(1), "app.DIT", 1.0, "testFails");
+        IntegrationTestSharder.Report report = sharder.merge(shards, reportsDir);
+        assertEquals(5, report.getTests());
+        assertEquals(1, report.getFailures());
+        assertEquals(Collections.singletonList("app.DIT.testFails"), report.getFailedTests());
+        assertTrue(new File(reportsDir, "TEST-app.DIT.xml").isFile());
+
+        // the next run, even by a new sharder, puts the slow class alone
+        sharder = new IntegrationTestSharder(historyFile);
+        assertEquals(9000, sharder.getDuration("app.AIT"));
+        List<List<String>> balanced = sharder.balance(Arrays.asList("app.AIT", "app.BIT", "app.CIT", "app.DIT",
+                "app.NewIT"), 2);
+        assertEquals(Collections.singletonList("app.AIT"), balanced.get(0));
+        assertEquals(Arrays.asList("app.BIT", "app.CIT", "app.DIT", "app.NewIT"), balanced.get(1));
+    }
+
+    @Test
+    public void testSerialTests() throws Exception {
+        File src = temp.newFolder("src");
+        File classes = temp.newFolder("classes");
+        File annotation = new File(src, "app/Serial.java");
+        FileUtils.write(annotation, "package app; public @interface Serial { }", "UTF-8");
+        File annotated = new File(src, "app/AnnotatedIT.java");
+        FileUtils.write(annotated, "package app; @Serial public class AnnotatedIT { }", "UTF-8");
+        File plain = new File(src, "app/PlainIT.java");
+        FileUtils.write(plain, "package app; public class PlainIT { }", "UTF-8");
+        try (JavaCompilerService compiler = new JavaCompilerService()) {
+            assertTrue(compiler.compile(Arrays.asList(annotation, annotated, plain), Collections.<File>emptyList(),
+                    classes, Arrays.asList("-proc:none")));
+        }
+
+        assertFalse(sharder.isSerial("app.AnnotatedIT", classes));
+        sharder.setSerialAnnotations(Collections.singleton("app.Serial"));
+        sharder.setSerialPatterns(Collections.singleton(".*DatabaseIT"));
+        assertTrue(sharder.isSerial("app.AnnotatedIT", classes));
+        assertFalse(sharder.isSerial("app.PlainIT", classes));
+
+        List<IntegrationTestShard> shards = sharder.plan(
+                Arrays.asList("app.PlainIT", "app.AnnotatedIT", "app.DatabaseIT", "app.OtherIT"), 4, classes,
+                reportsDir, null, null, null);
+        assertEquals(3, shards.size());
+        assertFalse(shards.get(0).isSerial());
+        assertFalse(shards.get(1).isSerial());
+        assertTrue(shards.get(2).isSerial());
+        assertEquals(Arrays.asList("app.AnnotatedIT", "app.DatabaseIT"), shards.get(2).getTestClasses());
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavaCompilerServiceTest {
+
+    private static final List<String> OPTIONS = Arrays.asList("-g", "-proc:none");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService service;
+    private File src;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new JavaCompilerService();
+        src = temp.newFolder("src");
+        classes = temp.newFolder("classes");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    private File source(String name, String content) throws Exception {
+        File file = new File(src, name + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        return file;
+    }
+
+    /** Build a jar containing the compiled classes of the given sources */
+    private File jar(String name, File... sources) throws Exception {
+        File jarClasses = temp.newFolder();
+        assertTrue(service.compile(Arrays.asList(sources), Collections.<File>emptyList(), jarClasses, OPTIONS));
+        File jar = new File(temp.getRoot(), name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (File classFile : FileUtils.listFiles(jarClasses, new String[] { "class" }, true)) {
+                out.putNextEntry(new JarEntry(jarClasses.toPath().relativize(classFile.toPath()).toString()));
+                out.write(Files.readAllBytes(classFile.toPath()));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    public void testFileManagerIsReused() throws Exception {
+        File a = source("A", "public class A {}");
+        assertTrue(service.compile(Collections.singletonList(a), Collections.singletonList(classes), classes, OPTIONS));
+        assertTrue(new File(classes, "A.class").exists());
+
+        File b = source("B", "public class B { A a; }");
+        assertTrue(service.compile(Collections.singletonList(b), Collections.singletonList(classes), classes, OPTIONS));
+        assertTrue(new File(classes, "B.class").exists());
+        assertEquals(1, service.getFileManagerCount());
+
+        File broken = source("C", "public class C { D d; }");
+        assertFalse(service.compile(Collections.singletonList(broken), Collections.singletonList(classes), classes,
+                OPTIONS));
+    }
+
+    @Test
+    public void testClassPathChange() throws Exception {
+        File lib = jar("lib.jar", source("Lib", "public class Lib {}"));
+        File app = source("App", "public class App { Lib lib; }");
+        assertFalse(service.compile(Collections.singletonList(app), Collections.singletonList(classes), classes,
+                OPTIONS));
+
+        List<File> classPath = new ArrayList<File>(Arrays.asList(classes, lib));
+        assertTrue(service.compile(Collections.singletonList(app), classPath, classes, OPTIONS));
+        // a new class path does not need a new file manager
+        assertEquals(1, service.getFileManagerCount());
+    }
+
+    @Test
+    public void testModifiedJarRecreatesFileManager() throws Exception {
+        File lib = jar("lib.jar", source("Lib", "public class Lib {}"));
+        File app = source("App", "public class App { int i = new Lib().hashCode(); }");
+        List<File> classPath = Arrays.asList(classes, lib);
+        assertTrue(service.compile(Collections.singletonList(app), classPath, classes, OPTIONS));
+
+        // rebuild the jar with a method the app now needs
+        File newLib = jar("lib2.jar", source("Lib", "public class Lib { public int size() { return 0; } }"));
+        Files.copy(newLib.toPath(), lib.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        lib.setLastModified(lib.lastModified() + 5000);
+        int before = service.getFileManagerCount();
+        app = source("App", "public class App { int i = new Lib().size(); }");
+        assertTrue(service.compile(Collections.singletonList(app), classPath, classes, OPTIONS));
+        assertEquals(before + 1, service.getFileManagerCount());
+    }
+
+    @Test
+    public void testStagedOutput() throws Exception {
+        File a = source("A", "public class A { Runnable r = new Runnable() { public void run() {} }; }");
+        Map<File, File> classFiles = new HashMap<File, File>();
+        assertTrue(service.compile(Collections.singletonList(a), Collections.singletonList(classes), classes, OPTIONS,
+                classFiles));
+        File anonymous = new File(classes, "A$1.class");
+        assertTrue(anonymous.exists());
+        assertEquals(2, classFiles.size());
+        assertEquals(a, classFiles.get(anonymous));
+
+        // a failed compile does not write anything
+        source("A", "public class A { B b; }");
+        classFiles.clear();
+        assertFalse(service.compile(Collections.singletonList(a), Collections.singletonList(classes), classes,
+                OPTIONS, classFiles, Collections.singletonList(anonymous)));
+        assertTrue(anonymous.exists());
+        assertTrue(classFiles.isEmpty());
+
+        // the anonymous class that is no longer produced is removed
+        source("A", "public class A { }");
+        assertTrue(service.compile(Collections.singletonList(a), Collections.singletonList(classes), classes, OPTIONS,
+                classFiles, Arrays.asList(new File(classes, "A.class"), anonymous)));
+        assertFalse(anonymous.exists());
+        assertTrue(new File(classes, "A.class").exists());
+        assertEquals(1, service.getLastPublish().getDeleted());
+    }
+
+    @Test
+    public void testSpeculation() throws Exception {
+        File a = source("A", "public class A { }");
+        List<File> classPath = Collections.singletonList(classes);
+        service.speculate(Collections.singletonList(a), classPath, classes, OPTIONS).get();
+        // nothing is published until the regular compile
+        assertFalse(new File(classes, "A.class").exists());
+        Map<File, File> classFiles = new HashMap<File, File>();
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, OPTIONS, classFiles, null,
+                new CompileReport()));
+        assertEquals(1, service.getSpeculativeCompileCount());
+        assertTrue(new File(classes, "A.class").exists());
+        assertEquals(a, classFiles.get(new File(classes, "A.class")));
+
+        // a change after the speculative compile discards it
+        service.speculate(Collections.singletonList(a), classPath, classes, OPTIONS).get();
+        source("A", "public class A { int i; }");
+        a.setLastModified(a.lastModified() + 5000);
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, OPTIONS));
+        assertEquals(1, service.getSpeculativeCompileCount());
+
+        // so does a compile of other files
+        File b = source("B", "public class B { }");
+        service.speculate(Collections.singletonList(a), classPath, classes, OPTIONS).get();
+        assertTrue(service.compile(Collections.singletonList(b), classPath, classes, OPTIONS));
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, OPTIONS));
+        assertEquals(1, service.getSpeculativeCompileCount());
+    }
+
+    @Test
+    public void testSpeculationMessagesAreReported() throws Exception {
+        File a = source("A", "public class A { java.util.List l = new java.util.ArrayList(); }");
+        List<File> classPath = Collections.singletonList(classes);
+        List<String> options = Arrays.asList("-g", "-proc:none", "-Xlint:rawtypes");
+        service.speculate(Collections.singletonList(a), classPath, classes, options).get();
+        // without a report the held back messages cannot be passed on, so the files are compiled again
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, options));
+        assertEquals(0, service.getSpeculativeCompileCount());
+
+        service.speculate(Collections.singletonList(a), classPath, classes, options).get();
+        CompileReport report = new CompileReport();
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, options, null, null, report));
+        assertEquals(1, service.getSpeculativeCompileCount());
+        assertFalse(report.getMessages().isEmpty());
+    }
+
+    @Test
+    public void testCancelSpeculation() throws Exception {
+        File a = source("A", "public class A { }");
+        List<File> classPath = Collections.singletonList(classes);
+        service.speculate(Collections.singletonList(a), classPath, classes, OPTIONS).get();
+        service.cancelSpeculation();
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, OPTIONS));
+        assertEquals(0, service.getSpeculativeCompileCount());
+    }
+
+    @Test
+    public void testCompileCanceller() throws Exception {
+        File a = source("A", "public class A { }");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager manager = compiler.getStandardFileManager(null, null, null);
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, manager, null,
+                    Arrays.asList("-proc:none", "-d", classes.getAbsolutePath()), null,
+                    manager.getJavaFileObjects(a));
+            AtomicBoolean cancelled = new AtomicBoolean();
+            assertTrue(CompileCanceller.install(task, cancelled));
+            cancelled.set(true);
+            try {
+                task.call();
+                fail("The cancelled task ran to the end");
+            } catch (RuntimeException e) {
+                Throwable cause = e;
+                while (cause != null && !(cause instanceof CancellationException)) {
+                    cause = cause.getCause();
+                }
+                assertNotNull(cause);
+            }
+            assertFalse(new File(classes, "A.class").exists());
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void testCancelSpeculationDoesNotWaitForCompile() throws Exception {
+        final File a = source("A", "public class A { }");
+        final List<File> classPath = Collections.singletonList(classes);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // holds the lock like a running compile
+        Thread compile = new Thread() {
+            @Override
+            public void run() {
+                synchronized (service) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // end the test
+                    }
+                }
+            }
+        };
+        compile.start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    service.speculate(Collections.singletonList(a), classPath, classes, OPTIONS);
+                    service.cancelSpeculation();
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            compile.join();
+            executor.shutdownNow();
+        }
+        assertTrue(service.compile(Collections.singletonList(a), classPath, classes, OPTIONS));
+        assertEquals(0, service.getSpeculativeCompileCount());
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        Thread thread = service.prewarm(new Callable<Collection<File>>() {
+            @Override
+            public Collection<File> call() throws Exception {
+                return Collections.singletonList(classes);
+            }
+        });
+        thread.join(60000);
+        assertFalse(thread.isAlive());
+        // the warm-up does not write any classes
+        assertEquals(0, classes.list().length);
+
+        File a = source("A", "public class A {}");
+        assertTrue(service.compile(Collections.singletonList(a), Collections.singletonList(classes), classes, OPTIONS));
+        assertEquals(1, service.getFileManagerCount());
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessagesLogTailerTest {
+
+    private static final String UPDATED = "CWWKZ0003I.*myapp";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File logFile;
+    private MessagesLogTailer tailer;
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = new File(temp.newFolder("logs"), "messages.log");
+        tailer = new MessagesLogTailer(logFile);
+        tailer.setPollIntervalMillis(20);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tailer.close();
+    }
+
+    private static String message(String code, String text) {
+        return "[1/1/20 0:00:00:000 EST] 00000001 com.ibm.ws.app.manager A " + code + ": " + text + "\n";
+    }
+
+    private void append(String text) throws Exception {
+        FileUtils.write(logFile, text, "UTF-8", true);
+    }
+
+    @Test
+    public void testIncrementalCounts() throws Exception {
+        assertEquals(0, tailer.count(UPDATED));
+        append(message("CWWKZ0001I", "Application myapp started in 1.0 seconds."));
+        append(message("CWWKZ0003I", "The application myapp updated in 0.5 seconds."));
+        assertEquals(1, tailer.count(UPDATED));
+        assertEquals(1, tailer.getCount("CWWKZ0001I"));
+
+        // a line that is still being written is counted when it is complete
+        append("[1/1/20 0:00:01:000 EST] 00000001 com.ibm.ws.app.manager A CWWKZ0003I: The application my");
+        assertEquals(1, tailer.count(UPDATED));
+        append("app updated in 0.2 seconds.\r\n");
+        assertEquals(2, tailer.count(UPDATED));
+        assertEquals(2, tailer.getCount("CWWKZ0003I"));
+        assertTrue(tailer.getLatest("CWWKZ0003I").endsWith("updated in 0.2 seconds."));
+        assertNull(tailer.getLatest("CWWKF0011I"));
+    }
+
+    @Test
+    public void testNewPattern() throws Exception {
+        append(message("CWWKO0219I", "TCP Channel defaultHttpEndpoint has been started and is now listening for "
+                + "requests on host localhost  (IPv4: 127.0.0.1) port 9080."));
+        append(message("CWWKO0219I", "TCP Channel defaultHttpEndpoint-ssl has been started and is now listening for "
+                + "requests on host localhost  (IPv4: 127.0.0.1) port 9443."));
+        tailer.poll();
+        // a pattern asked about later still sees the lines that were already read
+        assertEquals(2, tailer.getMatches("CWWKO0219I:").size());
+        assertTrue(tailer.find("CWWKO0219I:").contains("port 9080"));
+        assertNull(tailer.find("CWWKO0221E:"));
+
+        // a line that is still being written is not matched twice
+        append("[1/1/20 0:00:01:000 EST] 00000001 com.ibm.ws.app.manager A CWWKZ0001I: Application myapp");
+        tailer.poll();
+        assertEquals(0, tailer.count("CWWKZ0001I:"));
+        append(" started in 1.0 seconds.\n");
+        assertEquals(1, tailer.count("CWWKZ0001I:"));
+    }
+
+    @Test
+    public void testRolledLog() throws Exception {
+        append(message("CWWKZ0003I", "The application myapp updated in 0.5 seconds."));
+        assertEquals(1, tailer.count(UPDATED));
+        append(message("CWWKZ0003I", "The application myapp updated in 0.6 seconds."));
+        // the server rolls the log before the new line is read
+        assertTrue(logFile.renameTo(new File(logFile.getParentFile(), "messages_20.01.01_00.00.00.0.log")));
+        append(message("CWWKZ0003I", "The application myapp updated in 0.7 seconds."));
+        assertEquals(3, tailer.count(UPDATED));
+        assertEquals(1, tailer.getRollCount());
+        assertTrue(tailer.getMatches(UPDATED).get(2).contains("0.7 seconds"));
+        // a pattern asked about after the roll also counts the lines of the rolled log
+        assertEquals(3, tailer.count("CWWKZ0003I:"));
+        assertEquals(3, tailer.getCount("CWWKZ0003I"));
+    }
+
+    @Test
+    public void testWaitFor() throws Exception {
+        tailer.start();
+        append(message("CWWKZ0003I", "The application myapp updated in 0.5 seconds."));
+        assertNull(tailer.waitFor(UPDATED, 2, 100));
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    append(message("CWWKZ0003I", "The application myapp updated in 0.6 seconds."));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+        String line = tailer.waitFor(UPDATED, 2, 10000);
+        writer.join();
+        assertTrue(line, line.contains("0.6 seconds"));
+        assertEquals(Arrays.asList(line), tailer.getMatches(UPDATED).subList(1, 2));
+        assertNull(tailer.waitFor(UPDATED, 0, 10000));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.openliberty.tools.common.plugins.util.PathClassifier.Classification;
+import io.openliberty.tools.common.plugins.util.PathClassifier.PathCategory;
+
+public class PathClassifierTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File project;
+    private File src;
+    private File config;
+    private File resources1;
+    private File resources2;
+    private File pom;
+    private PathClassifier classifier;
+
+    @Before
+    public void setUp() throws Exception {
+        project = temp.newFolder("project");
+        src = new File(project, "src/main/java");
+        config = new File(project, "src/main/liberty/config");
+        resources1 = new File(project, "src/main/resources");
+        resources2 = new File(project, "src/main/webapp");
+        pom = new File(project, "pom.xml");
+        classifier = new PathClassifier.Builder()
+                .addDirectory(PathCategory.JAVA_SOURCE, src)
+                .addDirectory(PathCategory.CONFIG, config)
+                .addFile(PathCategory.SERVER_XML, new File(config, "server.xml"))
+                .addDirectory(PathCategory.RESOURCE, resources1)
+                .addDirectory(PathCategory.RESOURCE, resources2)
+                .addFile(PathCategory.BUILD_FILE, pom)
+                .build();
+    }
+
+    @Test
+    public void testDirectoryRoots() throws Exception {
+        List<Classification> result = classifier.classify(new File(src, "com/example/Foo.java"));
+        assertEquals(1, result.size());
+        assertEquals(PathCategory.JAVA_SOURCE, result.get(0).getCategory());
+
+        result = classifier.classify(new File(resources2, "index.html"));
+        assertEquals(1, result.size());
+        assertEquals(PathCategory.RESOURCE, result.get(0).getCategory());
+        assertEquals(1, result.get(0).getIndex());
+        assertEquals(resources2, result.get(0).getRoot());
+    }
+
+    @Test
+    public void testRootItselfDoesNotMatch() throws Exception {
+        assertTrue(classifier.classify(src).isEmpty());
+    }
+
+    @Test
+    public void testPrecedence() throws Exception {
+        List<Classification> result = classifier.classify(new File(config, "server.xml"));
+        assertEquals(2, result.size());
+        assertEquals(PathCategory.CONFIG, result.get(0).getCategory());
+        assertEquals(PathCategory.SERVER_XML, result.get(1).getCategory());
+    }
+
+    @Test
+    public void testSingleFiles() throws Exception {
+        List<Classification> result = classifier.classify(pom);
+        assertEquals(1, result.size());
+        assertEquals(PathCategory.BUILD_FILE, result.get(0).getCategory());
+
+        assertTrue(classifier.classify(new File(project, "build.gradle")).isEmpty());
+    }
+
+    @Test
+    public void testUnnormalizedPath() throws Exception {
+        List<Classification> result = classifier.classify(new File(project, "src/main/../main/java/Foo.java"));
+        assertEquals(1, result.size());
+        assertEquals(PathCategory.JAVA_SOURCE, result.get(0).getCategory());
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.openliberty.tools.common.plugins.util.DevUtil.ChangeType;
+
+public class PollingScannerTest {
+
+    private File dir;
+    private Map<File, ChangeType> changes;
+    private PollingScanner scanner;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("target/test-classes/polling-scanner-test").getAbsoluteFile();
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        changes = new LinkedHashMap<File, ChangeType>();
+        scanner = new PollingScanner(new PollingScanner.Listener() {
+            @Override
+            public void onChange(File file, boolean isDirectory, ChangeType changeType, boolean fallbackRoot) {
+                changes.put(file, changeType);
+            }
+        }, 0, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scanner.close();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testInitialContentsNotReported() throws Exception {
+        FileUtils.write(new File(dir, "a.txt"), "a", "UTF-8");
+        scanner.addRoot(dir, null, true, false);
+        assertFalse(scanner.scanIfDue());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testCreateModifyDelete() throws Exception {
+        File existing = new File(dir, "sub/existing.txt");
+        FileUtils.write(existing, "a", "UTF-8");
+        scanner.addRoot(dir, null, true, false);
+
+        File created = new File(dir, "sub/created.txt");
+        FileUtils.write(created, "b", "UTF-8");
+        FileUtils.write(existing, "changed", "UTF-8");
+        assertTrue(scanner.scanIfDue());
+        assertEquals(ChangeType.CREATE, changes.get(created));
+        assertEquals(ChangeType.MODIFY, changes.get(existing));
+
+        changes.clear();
+        FileUtils.deleteDirectory(new File(dir, "sub"));
+        scanner.resetInterval();
+        assertTrue(scanner.scanIfDue());
+        assertEquals(ChangeType.DELETE, changes.get(created));
+        assertEquals(ChangeType.DELETE, changes.get(existing));
+        assertEquals(ChangeType.DELETE, changes.get(new File(dir, "sub")));
+    }
+
+    @Test
+    public void testNonRecursiveRootWithFilter() throws Exception {
+        final File watched = new File(dir, "server.env");
+        scanner.addRoot(dir, new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().equals(watched.getName());
+            }
+        }, false, false);
+
+        FileUtils.write(new File(dir, "other.txt"), "a", "UTF-8");
+        FileUtils.write(new File(dir, "nested/server.env"), "a", "UTF-8");
+        assertFalse(scanner.scanIfDue());
+
+        FileUtils.write(watched, "a", "UTF-8");
+        scanner.resetInterval();
+        assertTrue(scanner.scanIfDue());
+        assertEquals(1, changes.size());
+        assertEquals(ChangeType.CREATE, changes.get(watched));
+    }
+
+    @Test
+    public void testCoveredRoots() throws Exception {
+        File sub = new File(dir, "sub");
+        sub.mkdirs();
+        assertTrue(scanner.addRoot(dir, null, true, false));
+        assertFalse(scanner.addRoot(sub, null, true, false));
+        assertTrue(scanner.isPolled(sub));
+
+        // roots polled because of the watch limit are tracked separately
+        assertTrue(scanner.addRoot(sub, null, true, true));
+        assertEquals(2, scanner.getRootCount());
+
+        scanner.retainFallbackRoots();
+        assertEquals(1, scanner.getRootCount());
+        assertTrue(scanner.isPolled(sub));
+        assertFalse(scanner.isPolled(dir));
+    }
+
+    @Test
+    public void testRecursiveRootReplacesContainedRoots() throws Exception {
+        File sub = new File(dir, "sub");
+        sub.mkdirs();
+        scanner.addRoot(sub, null, true, false);
+        scanner.addRoot(dir, null, true, false);
+        assertEquals(1, scanner.getRootCount());
+    }
+
+    @Test
+    public void testComparePathsVisitsChildrenFirst() throws Exception {
+        assertTrue(PollingScanner.Snapshot.comparePaths("a", "a/b") < 0);
+        assertTrue(PollingScanner.Snapshot.comparePaths("a/b", "a-b") < 0);
+        assertTrue(PollingScanner.Snapshot.comparePaths("a-b", "b") < 0);
+        assertEquals(0, PollingScanner.Snapshot.comparePaths("a/b", "a/b"));
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagedClassOutputTest {
+
+    private static final long OLD_TIMESTAMP = System.currentTimeMillis() - 60000;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private void write(StagedClassOutput output, File classFile, byte[] bytes) throws Exception {
+        try (OutputStream out = output.openOutputStream(classFile)) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        File classes = temp.newFolder("classes");
+        StagedClassOutput output = new StagedClassOutput(classes);
+        File a = output.getClassFile("app.A");
+        assertEquals(new File(classes, "app" + File.separator + "A.class"), a);
+
+        write(output, a, new byte[] { 1, 2, 3 });
+        // nothing is written until the output is published
+        assertFalse(a.exists());
+        assertEquals(Collections.singletonList(a), output.getClassFiles());
+
+        StagedClassOutput.Result result = output.publish(null);
+        assertEquals(1, result.getWritten());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(a.toPath()));
+        assertTrue(output.getClassFiles().isEmpty());
+        // the staging directory is removed
+        assertEquals(1, temp.getRoot().list().length);
+    }
+
+    @Test
+    public void testUnchangedAndStaleClassFiles() throws Exception {
+        File classes = temp.newFolder("classes");
+        StagedClassOutput output = new StagedClassOutput(classes);
+        File a = output.getClassFile("app.A");
+        File inner = output.getClassFile("app.A$1");
+        File b = output.getClassFile("app.B");
+        a.getParentFile().mkdirs();
+        Files.write(a.toPath(), new byte[] { 1 });
+        Files.write(inner.toPath(), new byte[] { 2 });
+        Files.write(b.toPath(), new byte[] { 3 });
+        a.setLastModified(OLD_TIMESTAMP);
+
+        write(output, a, new byte[] { 1 });
+        write(output, b, new byte[] { 4 });
+        StagedClassOutput.Result result = output.publish(Arrays.asList(a, inner, b));
+        assertEquals(1, result.getWritten());
+        assertEquals(1, result.getUnchanged());
+        assertEquals(1, result.getDeleted());
+        // unchanged class files are not rewritten
+        assertEquals(OLD_TIMESTAMP / 1000, a.lastModified() / 1000);
+        assertFalse(inner.exists());
+        assertArrayEquals(new byte[] { 4 }, Files.readAllBytes(b.toPath()));
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        File classes = temp.newFolder("classes");
+        StagedClassOutput output = new StagedClassOutput(classes);
+        File a = output.getClassFile("A");
+        write(output, a, new byte[] { 1 });
+        output.discard();
+        assertEquals(0, output.publish(null).getWritten());
+        assertFalse(a.exists());
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestImpactAnalyzerTest {
+
+    private static final List<String> OPTIONS = Arrays.asList("-g", "-proc:none");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+    private ClassDependencyGraph graph;
+    private TestImpactAnalyzer analyzer;
+    private File src;
+    private File testSrc;
+    private File classes;
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+        graph = new ClassDependencyGraph();
+        src = temp.newFolder("src");
+        testSrc = temp.newFolder("test");
+        classes = temp.newFolder("classes");
+        analyzer = new TestImpactAnalyzer(graph, testSrc);
+
+        File service = source(src, "app.Service", "package app; public class Service { int get() { return 1; } }");
+        File resource = source(src, "app.Resource",
+                "package app; public class Resource { int call() { return new Service().get(); } }");
+        File other = source(src, "app.Other", "package app; public class Other { }");
+        File base = source(testSrc, "app.BaseTest",
+                "package app; public abstract class BaseTest { Service service = new Service(); }");
+        File serviceTest = source(testSrc, "app.ServiceTest",
+                "package app; public class ServiceTest extends BaseTest { }");
+        File resourceTest = source(testSrc, "app.ResourceTest", "package app; public class ResourceTest { "
+                + "Runnable test = new Runnable() { public void run() { new Resource().call(); } }; }");
+        File otherTest = source(testSrc, "app.OtherTest", "package app; public class OtherTest { Other other; }");
+        compile(service, resource, other, base, serviceTest, resourceTest, otherTest);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        compiler.close();
+    }
+
+    private File source(File dir, String name, String content) throws Exception {
+        File file = new File(dir, name.replace('.', '/') + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        return file;
+    }
+
+    private void compile(File... sources) throws Exception {
+        Map<File, File> classFiles = new HashMap<File, File>();
+        Collection<File> files = Arrays.asList(sources);
+        assertTrue(compiler.compile(files, Collections.singletonList(classes), classes, OPTIONS, classFiles));
+        Map<ClassFileInfo, File> infos = new HashMap<ClassFileInfo, File>();
+        for (Map.Entry<File, File> entry : classFiles.entrySet()) {
+            infos.put(ClassFileInfo.read(entry.getKey()), entry.getValue());
+        }
+        graph.update(files, infos);
+    }
+
+    private static HashSet<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testTestClasses() throws Exception {
+        assertEquals(set("app.BaseTest", "app.ServiceTest", "app.ResourceTest", "app.OtherTest"),
+                analyzer.getTestClasses());
+    }
+
+    @Test
+    public void testAffectedThroughReferences() throws Exception {
+        // reached through the resource, the base class, and an anonymous class
+        assertEquals(set("app.BaseTest", "app.ServiceTest", "app.ResourceTest"),
+                analyzer.getAffectedTests(Collections.singleton("app.Service")));
+        assertEquals(set("app.ResourceTest"), analyzer.getAffectedTests(Collections.singleton("app.Resource")));
+        // a changed test is affected by its own change
+        assertEquals(set("app.OtherTest"), analyzer.getAffectedTests(Collections.singleton("app.OtherTest")));
+        assertTrue(analyzer.getAffectedTests(Collections.<String>emptySet()).isEmpty());
+        assertNull(analyzer.getAffectedTests(null));
+    }
+
+    @Test
+    public void testResourcesNeedCoverage() throws Exception {
+        // without coverage, the tests that use a resource cannot be found
+        assertNull(analyzer.getAffectedTests(Arrays.asList("app.Other", "META-INF/app.properties")));
+
+        analyzer.recordCoverage("app.BaseTest", Collections.<String>emptySet());
+        analyzer.recordCoverage("app.ServiceTest", Arrays.asList("app.Service", "META-INF/app.properties"));
+        analyzer.recordCoverage("app.ResourceTest", Arrays.asList("app.Resource", "app.Service"));
+        assertTrue(analyzer.hasCoverage("app.ServiceTest"));
+        assertNull(analyzer.getAffectedTests(Collections.singleton("META-INF/app.properties")));
+
+        analyzer.recordCoverage("app.OtherTest", Collections.singleton("app.Other"));
+        assertEquals(set("app.OtherTest", "app.ServiceTest"),
+                analyzer.getAffectedTests(Arrays.asList("app.Other", "META-INF/app.properties")));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestOutcomeStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testRecord() throws Exception {
+        File file = new File(temp.getRoot(), ".liberty-dev-test-outcomes");
+        TestOutcomeStore store = new TestOutcomeStore(file);
+        Map<String, List<String>> results = new HashMap<String, List<String>>();
+        results.put("app.FirstTest", Arrays.asList("testB", "testA"));
+        results.put("app.SecondTest", Collections.<String>emptyList());
+        store.record(results);
+        assertEquals(Collections.singleton("app.FirstTest"), store.getFailedTestClasses());
+        assertEquals(Arrays.asList("testA", "testB"), Arrays.asList(store.getFailedTests("app.FirstTest").toArray()));
+
+        // only the classes that ran again are replaced, and the outcomes are kept
+        store.record(Collections.singletonMap("app.SecondTest", Arrays.asList("testC")));
+        store = new TestOutcomeStore(file);
+        assertEquals(new TreeSet<String>(Arrays.asList("app.FirstTest", "app.SecondTest")),
+                store.getFailedTestClasses());
+        store.record(Collections.singletonMap("app.FirstTest", Collections.<String>emptyList()));
+        assertEquals(Collections.singleton("app.SecondTest"), store.getFailedTestClasses());
+        assertTrue(store.getFailedTests("app.FirstTest").isEmpty());
+    }
+
+    @Test
+    public void testRetainExisting() throws Exception {
+        File file = new File(temp.getRoot(), ".liberty-dev-test-outcomes");
+        File testClasses = temp.newFolder("test-classes");
+        FileUtils.touch(new File(testClasses, "app/FirstTest.class"));
+        FileUtils.touch(new File(testClasses, "app/FirstTest$NestedIT.class"));
+        TestOutcomeStore store = new TestOutcomeStore(file);
+        Map<String, List<String>> results = new HashMap<String, List<String>>();
+        results.put("app.FirstTest", Arrays.asList("testA"));
+        results.put("app.FirstTest$NestedIT", Arrays.asList("testB"));
+        results.put("app.RenamedTest", Arrays.asList("testC"));
+        store.record(results);
+
+        // the outcomes of classes that are gone are dropped, and the file is updated
+        store.retainExisting(testClasses);
+        assertEquals(new TreeSet<String>(Arrays.asList("app.FirstTest", "app.FirstTest$NestedIT")),
+                store.getFailedTestClasses());
+        store = new TestOutcomeStore(file);
+        assertEquals(new TreeSet<String>(Arrays.asList("app.FirstTest", "app.FirstTest$NestedIT")),
+                store.getFailedTestClasses());
+    }
+
+    @Test
+    public void testRecordReports() throws Exception {
+        File reports = temp.newFolder("reports");
+        FileUtils.write(new File(reports, "TEST-app.PassingIT.xml"),
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuite name=\"app.PassingIT\" tests=\"1\">"
+                        + "<testcase name=\"testPasses\" classname=\"app.PassingIT\"/></testsuite>",
+                "UTF-8");
+        FileUtils.write(new File(reports, "TEST-app.FailingIT.xml"),
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuite name=\"app.FailingIT\" tests=\"3\">"
+                        + "<testcase name=\"testFails\" classname=\"app.FailingIT\"><failure/></testcase>"
+                        + "<testcase name=\"testErrors\" classname=\"app.FailingIT\"><error/></testcase>"
+                        + "<testcase name=\"testPasses\" classname=\"app.FailingIT\"/></testsuite>",
+                "UTF-8");
+        TestOutcomeStore store = new TestOutcomeStore(null);
+        store.record(Collections.singletonMap("app.PassingIT", Arrays.asList("testPasses")));
+        store.recordReports(reports, 0);
+        assertEquals(Collections.singleton("app.FailingIT"), store.getFailedTestClasses());
+        assertEquals(new TreeSet<String>(Arrays.asList("testErrors", "testFails")),
+                store.getFailedTests("app.FailingIT"));
+
+        // reports older than the run are not recorded again
+        store = new TestOutcomeStore(null);
+        store.recordReports(reports, System.currentTimeMillis() + 60000);
+        assertTrue(store.getFailedTestClasses().isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSchedulerTest {
+
+    private ThreadPoolExecutor executor;
+    private TestScheduler scheduler;
+    private final List<TestScheduler.Request> runs = Collections
+            .synchronizedList(new ArrayList<TestScheduler.Request>());
+    private final List<TestScheduler.Request> cancelled = Collections
+            .synchronizedList(new ArrayList<TestScheduler.Request>());
+    private final List<Boolean> interrupted = Collections.synchronizedList(new ArrayList<Boolean>());
+    private CountDownLatch started;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1, true));
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        scheduler = new TestScheduler(new TestScheduler.Runner() {
+            @Override
+            public void run(TestScheduler.Request request) {
+                runs.add(request);
+                if (runs.size() > 1) {
+                    return;
+                }
+                // the first run waits until it is cancelled or released
+                started.countDown();
+                scheduler.setInterruptible(true);
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                    interrupted.add(false);
+                } catch (InterruptedException e) {
+                    interrupted.add(true);
+                } finally {
+                    scheduler.setInterruptible(false);
+                }
+            }
+
+            @Override
+            public void cancelled(TestScheduler.Request running) {
+                cancelled.add(running);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitIdle() throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getState() != TestScheduler.State.IDLE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(TestScheduler.State.IDLE, scheduler.getState());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        TestScheduler.Request merged = new TestScheduler.Request(true, 3, true, false)
+                .merge(new TestScheduler.Request(true, 5, false, false));
+        assertTrue(merged.isWaitForApplicationUpdate());
+        assertEquals(5, merged.getMessageOccurrences());
+        assertFalse(merged.isForceSkipUTs());
+        assertFalse(merged.isManualInvocation());
+
+        merged = new TestScheduler.Request(true, 3, true, false).merge(new TestScheduler.Request(false, -1, true, true));
+        assertTrue(merged.isWaitForApplicationUpdate());
+        assertEquals(3, merged.getMessageOccurrences());
+        assertTrue(merged.isForceSkipUTs());
+        assertTrue(merged.isManualInvocation());
+
+        // the changes of both are included, unless either can affect any test
+        merged = new TestScheduler.Request(false, -1, false, false, Arrays.asList("app.A"))
+                .merge(new TestScheduler.Request(false, -1, false, false, Arrays.asList("app.B", "app.A")));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("app.A", "app.B")), merged.getChanges());
+        merged = merged.merge(new TestScheduler.Request(false, -1, false, false));
+        assertNull(merged.getChanges());
+        assertEquals(TestScheduler.FailedTests.ANY, merged.getFailedTests());
+
+        // changes detected after the failed tests were requested still run only them
+        merged = new TestScheduler.Request(false, -1, false, true, null, TestScheduler.FailedTests.ONLY)
+                .merge(new TestScheduler.Request(true, 2, false, false, Arrays.asList("app.A")));
+        assertEquals(TestScheduler.FailedTests.ONLY, merged.getFailedTests());
+        merged = merged.merge(new TestScheduler.Request(false, -1, false, true, null,
+                TestScheduler.FailedTests.FIRST));
+        assertEquals(TestScheduler.FailedTests.FIRST, merged.getFailedTests());
+        merged = merged.merge(new TestScheduler.Request(false, -1, false, true));
+        assertEquals(TestScheduler.FailedTests.ANY, merged.getFailedTests());
+    }
+
+    @Test
+    public void testLatestWins() throws Exception {
+        assertEquals(TestScheduler.State.IDLE, scheduler.getState());
+        scheduler.request(executor, new TestScheduler.Request(true, 1, false, false));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(TestScheduler.State.RUNNING, scheduler.getState());
+
+        // newer requests cancel the running tests and are merged into one run
+        scheduler.request(executor, new TestScheduler.Request(true, 2, true, false));
+        scheduler.request(executor, new TestScheduler.Request(false, -1, true, true));
+        awaitIdle();
+
+        assertEquals(2, runs.size());
+        assertEquals(1, cancelled.size());
+        assertEquals(Collections.singletonList(true), interrupted);
+        TestScheduler.Request next = runs.get(1);
+        assertTrue(next.isWaitForApplicationUpdate());
+        assertEquals(2, next.getMessageOccurrences());
+        // the cancelled run did not get to run the unit tests
+        assertFalse(next.isForceSkipUTs());
+        assertTrue(next.isManualInvocation());
+        assertEquals(0, executor.getQueue().size());
+    }
+
+    @Test
+    public void testNotCancelledOutsideRun() throws Exception {
+        assertFalse(scheduler.isCancelled());
+        scheduler.request(executor, new TestScheduler.Request(false, -1, false, false));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        awaitIdle();
+        assertEquals(1, runs.size());
+        assertEquals(Collections.singletonList(false), interrupted);
+        assertTrue(cancelled.isEmpty());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WarmUnitTestRunnerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private JavaCompilerService compiler;
+    private WarmUnitTestRunner runner;
+    private File src;
+    private File testClasses;
+    private List<File> classPath;
+    private final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+
+    private final WarmUnitTestRunner.Listener listener = new WarmUnitTestRunner.Listener() {
+        @Override
+        public void testFinished(String testClass, String test, String status, String message) {
+            results.add(status + " " + testClass + "." + test);
+        }
+
+        @Override
+        public void output(String line) {
+            output.add(line);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        compiler = new JavaCompilerService();
+        runner = new WarmUnitTestRunner();
+        src = temp.newFolder("src");
+        testClasses = temp.newFolder("test-classes");
+        File junit = new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File hamcrest = new File(
+                org.hamcrest.Matcher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        classPath = Arrays.asList(junit, hamcrest, testClasses);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        runner.close();
+        compiler.close();
+    }
+
+    private void compile(String name, String content) throws Exception {
+        File file = new File(src, name.replace('.', '/') + ".java");
+        FileUtils.write(file, content, "UTF-8");
+        assertTrue(compiler.compile(Collections.singletonList(file), classPath, testClasses,
+                Arrays.asList("-proc:none")));
+    }
+
+    private static String test(String className, String value) {
+        return "package app; import static org.junit.Assert.assertEquals; import org.junit.Test; public class "
+                + className + " { @Test public void testValue() { System.out.println(\"value " + value
+                + "\"); assertEquals(\"1\", \"" + value + "\"); } }";
+    }
+
+    @Test(timeout = 60000)
+    public void testReloadsClasses() throws Exception {
+        compile("app.FirstTest", test("FirstTest", "1"));
+        compile("app.SecondTest", test("SecondTest", "2"));
+        compile("app.Helper", "package app; public class Helper { }");
+
+        WarmUnitTestRunner.Result result = runner.run(classPath, testClasses, null, listener);
+        assertNull(result.getError());
+        assertEquals(2, result.getTests());
+        assertEquals(1, result.getFailures());
+        assertEquals(1, results.size());
+        assertEquals(Arrays.asList("FAILED app.SecondTest.testValue"), results);
+        assertEquals(Arrays.asList("app.FirstTest", "app.SecondTest"), result.getTestClasses());
+
+        // the same JVM runs the recompiled class
+        results.clear();
+        compile("app.SecondTest", test("SecondTest", "1"));
+        result = runner.run(classPath, testClasses, Arrays.asList("app.SecondTest", "app.Helper"), listener);
+        assertNull(result.getError());
+        assertEquals(1, result.getTests());
+        assertEquals(0, result.getFailures());
+        assertEquals(Arrays.asList("app.SecondTest"), result.getTestClasses());
+        assertTrue(results.isEmpty());
+        assertEquals(1, runner.getStartCount());
+        assertTrue(output.toString(), output.contains("value 1"));
+    }
+
+    @Test(timeout = 60000)
+    public void testCancel() throws Exception {
+        compile("app.SlowTest", "package app; import org.junit.Test; public class SlowTest { "
+                + "@Test public void testSlow() throws Exception { Thread.sleep(60000); } }");
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                runner.cancel();
+            }
+        });
+        canceller.start();
+        try {
+            runner.run(classPath, testClasses, null, listener);
+            throw new AssertionError("The run was not cancelled");
+        } catch (IOException e) {
+            // expected
+        }
+        canceller.join();
+
+        // the next run starts a new test JVM
+        compile("app.SlowTest", "package app; import org.junit.Test; public class SlowTest { "
+                + "@Test public void testSlow() { } }");
+        assertEquals(1, runner.run(classPath, testClasses, null, listener).getTests());
+        assertEquals(2, runner.getStartCount());
+    }
+}
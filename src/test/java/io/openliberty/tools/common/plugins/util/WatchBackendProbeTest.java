@@ -0,0 +1,148 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatchBackendProbeTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static class Result {
+        private final Path root;
+        private final boolean nativeEvents;
+        private final boolean recheck;
+
+        Result(Path root, boolean nativeEvents, boolean recheck) {
+            this.root = root;
+            this.nativeEvents = nativeEvents;
+            this.recheck = recheck;
+        }
+    }
+
+    private final List<Result> results = new ArrayList<Result>();
+
+    private WatchBackendProbe newProbe(long timeoutMillis, long recheckMillis) {
+        return new WatchBackendProbe(new WatchBackendProbe.Listener() {
+            @Override
+            public void onResult(Path root, boolean nativeEvents, long latencyMillis, boolean recheck) {
+                results.add(new Result(root, nativeEvents, recheck));
+            }
+        }, timeoutMillis, recheckMillis);
+    }
+
+    @Test
+    public void testNativeEventsDetected() throws Exception {
+        Path root = temp.newFolder("src").toPath();
+        WatchBackendProbe probe = newProbe(60000, 0);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            probe.probe(root);
+            assertTrue(probe.isPending());
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (probe.isPending() && System.currentTimeMillis() < deadline) {
+                WatchKey key = watcher.poll(100, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Path changed = root.resolve((Path) event.context());
+                        assertTrue(probe.onWatchEvent(changed));
+                    }
+                    key.reset();
+                }
+            }
+        }
+        assertEquals(1, results.size());
+        assertEquals(root, results.get(0).root);
+        assertTrue(results.get(0).nativeEvents);
+        // the canary is removed
+        assertEquals(0, root.toFile().list().length);
+    }
+
+    @Test
+    public void testMissingEventFallsBackAndRecheckUpgrades() throws Exception {
+        Path root = temp.newFolder("mount").toPath();
+        WatchBackendProbe probe = newProbe(0, 1);
+        probe.probe(root);
+        probe.tick();
+        assertFalse(probe.isPending());
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).nativeEvents);
+        assertFalse(results.get(0).recheck);
+
+        // a re-check that also gets no event does not report again
+        Thread.sleep(5);
+        probe.tick();
+        probe.tick();
+        assertEquals(1, results.size());
+
+        // a re-check that gets the event upgrades the root
+        Thread.sleep(5);
+        probe.tick();
+        assertTrue(probe.isPending());
+        File[] canaries = root.toFile().listFiles();
+        assertEquals(1, canaries.length);
+        assertTrue(WatchBackendProbe.isCanary(canaries[0]));
+        // an empty directory, which version control does not track
+        assertTrue(canaries[0].isDirectory());
+        assertTrue(probe.onWatchEvent(canaries[0].toPath()));
+        assertEquals(2, results.size());
+        assertTrue(results.get(1).nativeEvents);
+        assertTrue(results.get(1).recheck);
+        assertEquals(0, root.toFile().list().length);
+    }
+
+    @Test
+    public void testDeleteStaleCanaries() throws Exception {
+        Path root = temp.newFolder("project").toPath();
+        File staleFile = new File(root.toFile(), WatchBackendProbe.CANARY_PREFIX + "1");
+        File staleDirectory = new File(root.toFile(), WatchBackendProbe.CANARY_PREFIX + "2");
+        File source = new File(root.toFile(), "pom.xml");
+        assertTrue(staleFile.createNewFile());
+        assertTrue(staleDirectory.mkdir());
+        assertTrue(source.createNewFile());
+        WatchBackendProbe.deleteStaleCanaries(root);
+        assertFalse(staleFile.exists());
+        assertFalse(staleDirectory.exists());
+        assertTrue(source.exists());
+    }
+
+    @Test
+    public void testOtherEventsAreNotConsumed() throws Exception {
+        WatchBackendProbe probe = newProbe(60000, 0);
+        assertFalse(probe.onWatchEvent(new File("src/A.java").toPath()));
+        assertTrue(probe.onWatchEvent(new File("src/" + WatchBackendProbe.CANARY_PREFIX + "1").toPath()));
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * (C) Copyright IBM Corporation 2020.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.openliberty.tools.common.plugins.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.openliberty.tools.common.plugins.util.WatchRegistrationManager.WatchPriority;
+
+public class WatchRegistrationManagerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private WatchService watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.close();
+    }
+
+    @Test
+    public void testBudgetIsEnforced() throws Exception {
+        WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 2);
+        assertTrue(manager.register(temp.newFolder("a").toPath(), WatchPriority.HIGH));
+        assertTrue(manager.register(temp.newFolder("b").toPath(), WatchPriority.HIGH));
+        assertFalse(manager.register(temp.newFolder("c").toPath(), WatchPriority.HIGH));
+        assertEquals(2, manager.getWatchCount());
+    }
+
+    @Test
+    public void testDuplicateRegistrationIsNotCounted() throws Exception {
+        WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 1);
+        Path dir = temp.newFolder("a").toPath();
+        assertTrue(manager.register(dir, WatchPriority.HIGH));
+        assertTrue(manager.register(dir, WatchPriority.HIGH));
+        assertEquals(1, manager.getWatchCount());
+    }
+
+    @Test
+    public void testLowPriorityCannotUseReserve() throws Exception {
+        WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 10);
+        for (int i = 0; i < 9; i++) {
+            assertTrue(manager.register(temp.newFolder("low" + i).toPath(), WatchPriority.LOW));
+        }
+        // the last watch is reserved for high priority directories
+        assertFalse(manager.register(temp.newFolder("low9").toPath(), WatchPriority.LOW));
+        assertTrue(manager.register(temp.newFolder("high").toPath(), WatchPriority.HIGH));
+    }
+
+    @Test
+    public void testPollingRoots() throws Exception {
+        WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 1);
+        Path root = temp.newFolder("polled").toPath();
+        manager.addPollingRoot(root);
+        assertTrue(manager.isPolled(root.resolve("sub/dir")));
+        assertFalse(manager.isPolled(temp.getRoot().toPath()));
+    }
+
+    @Test
+    public void testConcurrentRegistrationStaysWithinBudget() throws Exception {
+        final WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 4; t++) {
+                // each thread registers its own root, like the dev mode startup roots
+                final List<Path> dirs = new ArrayList<Path>();
+                for (int i = 0; i < 10; i++) {
+                    dirs.add(temp.newFolder("root" + t, "dir" + i).toPath());
+                }
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int registered = 0;
+                        for (Path dir : dirs) {
+                            if (manager.register(dir, WatchPriority.HIGH)) {
+                                registered++;
+                            }
+                        }
+                        return registered;
+                    }
+                }));
+            }
+            int registered = 0;
+            for (Future<Integer> future : futures) {
+                registered += future.get();
+            }
+            assertEquals(20, registered);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(20, manager.getWatchCount());
+    }
+
+    @Test
+    public void testRootRegistrations() throws Exception {
+        WatchRegistrationManager manager = new WatchRegistrationManager(watcher, 0);
+        Path root = temp.newFolder("root").toPath();
+        manager.recordRoot(root, 3, 5000000);
+        assertEquals(1, manager.getRootRegistrations().size());
+        assertEquals(root, manager.getRootRegistrations().get(0).getRoot());
+        assertEquals(3, manager.getRootRegistrations().get(0).getDirectories());
+        assertEquals(5, manager.getRootRegistrations().get(0).getMillis());
+    }
+}